@@ -0,0 +1,715 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks do analisador léxico, da tabela de símbolos e da geração de relatório.
+ * Os resultados são gravados em JSON, um resultado por linha, e podem ser comparados
+ * com um arquivo de referência para detectar regressões
+ *
+ * Uso: java BenchmarkLexico [--max=BYTES] [--saida=ARQUIVO] [--referencia=ARQUIVO]
+ *                           [--tolerancia=0.10] [--iteracoes=N]
+ * @author Diogo Ferreira Saucedo
+ */
+public class BenchmarkLexico {
+    // Tamanhos de corpus, de 1KB a 500MB; os acima de --max são ignorados
+    private static final int[] TAMANHOS = {
+            1 << 10, 64 << 10, 1 << 20, 16 << 20, 128 << 20, 500 << 20
+    };
+    private static final String[] MISTURAS = { "identificadores", "strings", "igualdade", "tabelas", "misto" };
+    private static final long TEMPO_MINIMO_ITERACAO_NS = 200_000_000L;
+    // Medições de memória retida, tiradas em média; abaixo de RUIDO_MEMORIA_BYTES no total,
+    // a diferença se confunde com a variação do próprio heap e não é informada
+    private static final int MEDICOES_MEMORIA = 3;
+    private static final long RUIDO_MEMORIA_BYTES = 1 << 20;
+    // Métricas em que um valor menor é melhor; nas demais, maior é melhor
+    private static final Set<String> MENOR_E_MELHOR = new HashSet<>(
+            Arrays.asList("bytesRetidosPorToken", "bytesGerados", "msPorRequisicao", "bytesAlocadosPorArquivo"));
+
+    private int iteracoes = 5;
+    private List<Resultado> resultados = new ArrayList<>();
+    // Mantém o analisador medido alcançável enquanto o heap é lido
+    private Object retido;
+
+    public static void main(String[] args) throws IOException {
+        long tamanhoMaximo = 16 << 20;
+        String saida = "benchmark.json";
+        String referencia = null;
+        double tolerancia = 0.10;
+        BenchmarkLexico benchmark = new BenchmarkLexico();
+
+        for (String arg : args) {
+            if (arg.startsWith("--max=")) {
+                tamanhoMaximo = Long.parseLong(arg.substring("--max=".length()));
+            } else if (arg.startsWith("--saida=")) {
+                saida = arg.substring("--saida=".length());
+            } else if (arg.startsWith("--referencia=")) {
+                referencia = arg.substring("--referencia=".length());
+            } else if (arg.startsWith("--tolerancia=")) {
+                tolerancia = Double.parseDouble(arg.substring("--tolerancia=".length()));
+            } else if (arg.startsWith("--iteracoes=")) {
+                benchmark.iteracoes = Integer.parseInt(arg.substring("--iteracoes=".length()));
+            } else {
+                System.err.println("Opção desconhecida: " + arg);
+                System.exit(2);
+            }
+        }
+
+        for (int tamanho : TAMANHOS) {
+            if (tamanho > tamanhoMaximo) {
+                continue;
+            }
+            for (String mistura : MISTURAS) {
+                String corpus = gerarCorpus(mistura, tamanho);
+                benchmark.medirAnalisador(mistura, corpus);
+            }
+        }
+        for (String mistura : new String[] { "strings", "misto" }) {
+            benchmark.medirParalelo(mistura, gerarCorpus(mistura, (int) Math.min(tamanhoMaximo, 64 << 20)));
+        }
+        for (String mistura : MISTURAS) {
+            benchmark.medirVarredura(mistura, gerarCorpus(mistura, 1 << 20));
+            benchmark.medirFormatoBinario(mistura, gerarCorpus(mistura, 1 << 20));
+            benchmark.medirMetricas(mistura, gerarCorpus(mistura, 1 << 20));
+        }
+        benchmark.medirTabelaSimbolos(100_000);
+        benchmark.medirCache(1000, 16 << 10);
+        benchmark.medirPool(1000, 2 << 10);
+        benchmark.medirRelatorio(gerarCorpus("misto", 1 << 20));
+        benchmark.medirServidor(16 << 10);
+
+        benchmark.gravar(Paths.get(saida));
+        System.out.println("Resultados salvos em: " + saida);
+
+        if (referencia != null) {
+            int regressoes = benchmark.comparar(Paths.get(referencia), tolerancia);
+            if (regressoes > 0) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Gera um programa Pascal sintético com aproximadamente o tamanho pedido
+     */
+    static String gerarCorpus(String mistura, int tamanho) {
+        Random aleatorio = new Random(42);
+        StringBuilder codigo = new StringBuilder(tamanho + 128);
+        codigo.append("program Benchmark;\n\nvar\n  a, b, contador, total_geral: integer;\n  letra: char;\n\nbegin\n");
+
+        while (codigo.length() < tamanho) {
+            String variavel = "v" + aleatorio.nextInt(1000);
+            switch (mistura) {
+                case "identificadores":
+                    codigo.append("  ").append(variavel).append(" := contador + total_geral * ")
+                            .append(variavel).append(" div b;\n");
+                    break;
+                case "strings":
+                    codigo.append("  writeln('Linha de texto relativamente longa numero ")
+                            .append(aleatorio.nextInt(100000)).append(" com aspas '' escapadas');\n");
+                    break;
+                case "tabelas":
+                    // Indentação profunda, colunas numéricas e strings longas
+                    codigo.append("            writeln(").append(aleatorio.nextInt(Integer.MAX_VALUE)).append(", ")
+                            .append(aleatorio.nextInt(Integer.MAX_VALUE)).append(", ")
+                            .append(aleatorio.nextInt(Integer.MAX_VALUE))
+                            .append(", 'coluna de texto descritivo da tabela numerica');\n");
+                    break;
+                case "igualdade":
+                    // Sem IF/THEN antes, cada '=' é uma atribuição incorreta
+                    codigo.append("  ").append(variavel).append(" = ").append(aleatorio.nextInt(1000)).append(";\n");
+                    break;
+                default:
+                    codigo.append("  if a >= ").append(aleatorio.nextInt(100)).append(" then\n")
+                            .append("    ").append(variavel).append(" := a + 1\n")
+                            .append("  else\n")
+                            .append("    writeln('valor: ', ").append(variavel).append(");\n");
+                    break;
+            }
+        }
+
+        codigo.append("end.\n");
+        return codigo.toString();
+    }
+
+    /**
+     * Mede AnalisadorLexico.analisar() em tokens/s e bytes/s, e a memória retida por token
+     */
+    void medirAnalisador(String mistura, String codigo) {
+        int bytes = codigo.getBytes(StandardCharsets.UTF_8).length;
+        int[] tokens = new int[1];
+
+        Medicao medicao = medir(() -> {
+            AnalisadorLexico analisador = new AnalisadorLexico(codigo);
+            analisador.analisar();
+            tokens[0] = analisador.getBufferTokens().tamanho();
+        });
+
+        Resultado resultado = new Resultado("analisador.analisar", mistura, bytes);
+        resultado.metricas.put("tokensPorSegundo", tokens[0] / medicao.segundosPorOperacao());
+        resultado.metricas.put("bytesPorSegundo", bytes / medicao.segundosPorOperacao());
+        double retidos = memoriaRetidaPorToken(codigo);
+        if (retidos >= 0) {
+            resultado.metricas.put("bytesRetidosPorToken", retidos);
+        }
+        adicionar(resultado);
+    }
+
+    /**
+     * Compara analisarParalelo() com analisar() sobre o mesmo código, só com quebras de linha
+     * '\n'. Cada bloco da análise paralela tem a sua varredura, então uma busca que fosse até
+     * o fim do código (como a de '\r', que não aparece) seria repetida em cada bloco. Avisa
+     * se, com mais de um processador, a análise paralela for mais lenta que a sequencial
+     */
+    void medirParalelo(String mistura, String codigo) {
+        int bytes = codigo.getBytes(StandardCharsets.UTF_8).length;
+
+        Medicao sequencial = medir(() -> new AnalisadorLexico(codigo).analisar());
+        Medicao paralela = medir(() -> new AnalisadorLexico(codigo).analisarParalelo());
+
+        double aceleracao = sequencial.segundosPorOperacao() / paralela.segundosPorOperacao();
+        Resultado resultado = new Resultado("analisador.paralelo", mistura, bytes);
+        resultado.metricas.put("bytesPorSegundo", bytes / paralela.segundosPorOperacao());
+        resultado.metricas.put("aceleracao", aceleracao);
+        adicionar(resultado);
+        if (aceleracao < 1 && ForkJoinPool.commonPool().getParallelism() > 1) {
+            System.err.printf(Locale.ROOT, "Aviso: a análise paralela de %s (%d bytes) levou %.2fx o tempo da sequencial%n",
+                    mistura, bytes, 1 / aceleracao);
+        }
+    }
+
+    /**
+     * Mede a análise com as métricas ligadas, para comparar com analisador.analisar, que as
+     * deixa desligadas
+     */
+    void medirMetricas(String mistura, String codigo) {
+        int bytes = codigo.getBytes(StandardCharsets.UTF_8).length;
+        int[] tokens = new int[1];
+
+        Medicao medicao = medir(() -> {
+            AnalisadorLexico analisador = new AnalisadorLexico(codigo);
+            analisador.setMetricas(new MetricasAnalise());
+            analisador.analisar();
+            tokens[0] = analisador.getBufferTokens().tamanho();
+        });
+
+        Resultado resultado = new Resultado("analisador.metricas", mistura, bytes);
+        resultado.metricas.put("tokensPorSegundo", tokens[0] / medicao.segundosPorOperacao());
+        resultado.metricas.put("bytesPorSegundo", bytes / medicao.segundosPorOperacao());
+        adicionar(resultado);
+    }
+
+    /**
+     * Compara a leitura caractere a caractere com a varredura em blocos, com o código em
+     * String e mapeado de um arquivo ISO-8859-1
+     */
+    void medirVarredura(String mistura, String codigo) throws IOException {
+        Path arquivo = Files.createTempFile("benchmark", ".pas");
+        try {
+            Files.write(arquivo, codigo.getBytes(StandardCharsets.ISO_8859_1));
+            CharSequence mapeado = FonteArquivo.ler(arquivo, StandardCharsets.ISO_8859_1);
+
+            for (boolean emBlocos : new boolean[] { false, true }) {
+                String nome = emBlocos ? "varredura.blocos" : "varredura.escalar";
+                medirVarredura(nome, mistura, codigo, emBlocos);
+                medirVarredura(nome + ".mapeado", mistura, mapeado, emBlocos);
+            }
+        } finally {
+            Files.deleteIfExists(arquivo);
+        }
+    }
+
+    private void medirVarredura(String nome, String mistura, CharSequence codigo, boolean emBlocos) {
+        Medicao medicao = medir(() -> {
+            AnalisadorLexico analisador = new AnalisadorLexico(codigo);
+            analisador.setVarreduraEmBlocos(emBlocos);
+            analisador.analisar();
+        });
+
+        Resultado resultado = new Resultado(nome, mistura, codigo.length());
+        resultado.metricas.put("bytesPorSegundo", codigo.length() / medicao.segundosPorOperacao());
+        adicionar(resultado);
+    }
+
+    /**
+     * Mede a gravação do resultado no formato binário e a sua leitura, percorrendo todos os
+     * tokens com os valores, para comparar com analisador.analisar
+     */
+    void medirFormatoBinario(String mistura, String codigo) {
+        AnalisadorLexico analisador = new AnalisadorLexico(codigo);
+        analisador.analisar();
+        int tokens = analisador.getBufferTokens().tamanho();
+        ByteBuffer[] dados = new ByteBuffer[1];
+
+        Medicao escrita = medir(() -> dados[0] = EscritorBinario.paraBuffer(analisador));
+        int[] caracteres = new int[1];
+        Medicao leitura = medir(() -> {
+            LeitorBinario leitor = new LeitorBinario(dados[0]);
+            while (leitor.proximoToken()) {
+                caracteres[0] += leitor.getValor().length();
+            }
+        });
+
+        Resultado resultado = new Resultado("binario.escrever", mistura, codigo.length());
+        resultado.metricas.put("tokensPorSegundo", tokens / escrita.segundosPorOperacao());
+        resultado.metricas.put("bytesGerados", (double) dados[0].remaining());
+        adicionar(resultado);
+        resultado = new Resultado("binario.ler", mistura, codigo.length());
+        resultado.metricas.put("tokensPorSegundo", tokens / leitura.segundosPorOperacao());
+        adicionar(resultado);
+    }
+
+    /**
+     * Memória que permanece alocada após a análise, dividida pelo número de tokens. O heap é
+     * lido após o GC antes e depois da análise, com o analisador guardado em retido para que
+     * não seja coletado antes da segunda leitura, e a diferença é a média de MEDICOES_MEMORIA
+     * medições. Retorna -1 se a média ficar abaixo de RUIDO_MEMORIA_BYTES
+     */
+    private double memoriaRetidaPorToken(String codigo) {
+        long total = 0;
+        int tokens = 0;
+        for (int i = 0; i < MEDICOES_MEMORIA; i++) {
+            long antes = memoriaUsada();
+            AnalisadorLexico analisador = new AnalisadorLexico(codigo);
+            analisador.analisar();
+            retido = analisador;
+            total += memoriaUsada() - antes;
+            tokens = analisador.getBufferTokens().tamanho();
+            retido = null;
+        }
+        long media = total / MEDICOES_MEMORIA;
+        return media < RUIDO_MEMORIA_BYTES ? -1 : media / (double) tokens;
+    }
+
+    private static long memoriaUsada() {
+        java.lang.management.MemoryMXBean memoria = java.lang.management.ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            memoria.gc();
+        }
+        return memoria.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Mede inserções e buscas na tabela de símbolos
+     */
+    void medirTabelaSimbolos(int quantidade) {
+        String[] nomes = new String[quantidade];
+        for (int i = 0; i < quantidade; i++) {
+            nomes[i] = "variavel_" + i;
+        }
+        TabelaSimbolos[] tabela = new TabelaSimbolos[1];
+
+        Medicao insercao = medir(() -> {
+            tabela[0] = new TabelaSimbolos();
+            for (int i = 0; i < quantidade; i++) {
+                tabela[0].adicionarSimbolo(nomes[i], "indefinido", i);
+            }
+        });
+        Resultado resultado = new Resultado("tabelaSimbolos.adicionarSimbolo", "distintos", quantidade);
+        resultado.metricas.put("operacoesPorSegundo", quantidade / insercao.segundosPorOperacao());
+        adicionar(resultado);
+
+        int[] encontrados = new int[1];
+        Medicao busca = medir(() -> {
+            for (int i = 0; i < quantidade; i++) {
+                if (tabela[0].buscarSimbolo(nomes[i]) != null) {
+                    encontrados[0]++;
+                }
+            }
+        });
+        resultado = new Resultado("tabelaSimbolos.buscarSimbolo", "distintos", quantidade);
+        resultado.metricas.put("operacoesPorSegundo", quantidade / busca.segundosPorOperacao());
+        adicionar(resultado);
+
+        TabelaSimbolos[] copia = new TabelaSimbolos[1];
+        Medicao instantaneo = medir(() -> copia[0] = tabela[0].instantaneo());
+        resultado = new Resultado("tabelaSimbolos.instantaneo", "distintos", quantidade);
+        resultado.metricas.put("simbolosPorSegundo", quantidade / instantaneo.segundosPorOperacao());
+        adicionar(resultado);
+
+        // Tabelas de 64 arquivos, com metade dos nomes em comum entre eles
+        List<TabelaSimbolos> arquivos = new ArrayList<>();
+        for (int arquivo = 0; arquivo < 64; arquivo++) {
+            TabelaSimbolos tabelaArquivo = new TabelaSimbolos();
+            for (int i = 0; i < quantidade / 64; i++) {
+                String nome = i % 2 == 0 ? nomes[i] : nomes[(arquivo * quantidade / 64 + i) % quantidade];
+                tabelaArquivo.adicionarSimbolo(nome, "indefinido", i);
+            }
+            arquivos.add(tabelaArquivo);
+        }
+        Medicao mesclagem = medir(() -> copia[0] = TabelaSimbolos.mesclar(arquivos));
+        resultado = new Resultado("tabelaSimbolos.mesclar", "arquivos", quantidade);
+        resultado.metricas.put("simbolosPorSegundo", quantidade / mesclagem.segundosPorOperacao());
+        adicionar(resultado);
+    }
+
+    /**
+     * Compara a análise dos arquivos de um diretório com a leitura dos mesmos resultados de
+     * um CacheLexico já preenchido
+     */
+    void medirCache(int arquivos, int tamanho) throws IOException {
+        Path diretorio = Files.createTempDirectory("benchmark");
+        try {
+            List<Path> fontes = new ArrayList<>();
+            long bytes = 0;
+            for (int i = 0; i < arquivos; i++) {
+                // Conteúdos diferentes, para que cada arquivo tenha a sua entrada no cache
+                byte[] conteudo = gerarCorpus("misto", tamanho).replace("program Benchmark;", "program Benchmark" + i + ";")
+                        .getBytes(StandardCharsets.UTF_8);
+                Path fonte = diretorio.resolve("fonte" + i + ".pas");
+                Files.write(fonte, conteudo);
+                fontes.add(fonte);
+                bytes += conteudo.length;
+            }
+            CacheLexico cache = new CacheLexico(diretorio.resolve("cache"));
+            Diagnosticos configuracao = new Diagnosticos();
+
+            Medicao semCache = medir(() -> {
+                try {
+                    for (Path fonte : fontes) {
+                        new AnalisadorLexico(FonteArquivo.ler(fonte, StandardCharsets.UTF_8)).analisar();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            Medicao comCache = medir(() -> {
+                try {
+                    for (Path fonte : fontes) {
+                        cache.analisar(fonte, StandardCharsets.UTF_8, configuracao, true);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            Resultado resultado = new Resultado("cache.desligado", "misto", bytes);
+            resultado.metricas.put("arquivosPorSegundo", arquivos / semCache.segundosPorOperacao());
+            resultado.metricas.put("bytesPorSegundo", bytes / semCache.segundosPorOperacao());
+            adicionar(resultado);
+            resultado = new Resultado("cache.acerto", "misto", bytes);
+            resultado.metricas.put("arquivosPorSegundo", arquivos / comCache.segundosPorOperacao());
+            resultado.metricas.put("bytesPorSegundo", bytes / comCache.segundosPorOperacao());
+            adicionar(resultado);
+        } finally {
+            try (java.util.stream.Stream<Path> criados = Files.walk(diretorio)) {
+                criados.sorted(Comparator.reverseOrder()).forEach(arquivo -> arquivo.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Compara a análise de muitos arquivos pequenos, já em memória, criando um analisador por
+     * arquivo (analisador.novo) e reaproveitando os de um PoolAnalisadores (analisador.pool).
+     * Além da vazão, mede os bytes alocados por arquivo, quando a JVM informa
+     */
+    void medirPool(int arquivos, int tamanho) {
+        List<String> codigos = new ArrayList<>();
+        long bytes = 0;
+        for (int i = 0; i < arquivos; i++) {
+            String codigo = gerarCorpus("misto", tamanho).replace("program Benchmark;", "program Benchmark" + i + ";");
+            codigos.add(codigo);
+            bytes += codigo.getBytes(StandardCharsets.UTF_8).length;
+        }
+        PoolAnalisadores pool = new PoolAnalisadores(1);
+
+        Runnable novo = () -> {
+            for (String codigo : codigos) {
+                new AnalisadorLexico(codigo).analisar();
+            }
+        };
+        Runnable reaproveitado = () -> {
+            for (String codigo : codigos) {
+                AnalisadorLexico analisador = pool.obter(codigo);
+                analisador.analisar();
+                pool.devolver(analisador);
+            }
+        };
+
+        for (String nome : new String[] { "analisador.novo", "analisador.pool" }) {
+            Runnable operacao = nome.equals("analisador.novo") ? novo : reaproveitado;
+            Medicao medicao = medir(operacao);
+            Resultado resultado = new Resultado(nome, "misto", bytes);
+            resultado.metricas.put("arquivosPorSegundo", arquivos / medicao.segundosPorOperacao());
+            resultado.metricas.put("bytesPorSegundo", bytes / medicao.segundosPorOperacao());
+            long alocados = bytesAlocados(operacao);
+            if (alocados >= 0) {
+                resultado.metricas.put("bytesAlocadosPorArquivo", alocados / (double) arquivos);
+            }
+            adicionar(resultado);
+        }
+    }
+
+    /**
+     * Bytes alocados pela thread atual durante a operação, ou -1 se a JVM não informa
+     */
+    private static long bytesAlocados(Runnable operacao) {
+        java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean alocacao = (com.sun.management.ThreadMXBean) threads;
+        long thread = Thread.currentThread().getId();
+        long antes = alocacao.getThreadAllocatedBytes(thread);
+        operacao.run();
+        return alocacao.getThreadAllocatedBytes(thread) - antes;
+    }
+
+    /**
+     * Mede a escrita dos relatórios em cada formato, sem incluir o custo de disco. A lista de
+     * tokens escrita com printf (relatorio.printf) serve de comparação com a formatação à mão
+     */
+    void medirRelatorio(String codigo) {
+        AnalisadorLexico analisador = new AnalisadorLexico(codigo);
+        analisador.analisar();
+        int tokens = analisador.getBufferTokens().tamanho();
+        long[] caracteres = new long[1];
+
+        for (FormatoRelatorio formato : FormatoRelatorio.values()) {
+            Medicao medicao = medir(() -> {
+                ContadorCaracteres contador = new ContadorCaracteres();
+                try (RelatorioAnalise relatorio = RelatorioAnalise.criar(formato, new EscritorRelatorio(contador),
+                        "benchmark.pas", RelatorioAnalise.Conteudo.COMPLETO)) {
+                    relatorio.escrever(analisador);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                caracteres[0] = contador.total;
+            });
+            adicionarRelatorio("relatorio." + formato.name().toLowerCase(Locale.ROOT), codigo, tokens, caracteres[0], medicao);
+        }
+
+        List<Token> lista = analisador.getTokens();
+        Medicao medicao = medir(() -> {
+            ContadorCaracteres contador = new ContadorCaracteres();
+            PrintWriter writer = new PrintWriter(contador);
+            for (int i = 0; i < lista.size(); i++) {
+                Token token = lista.get(i);
+                writer.printf("%-4d %-20s %-15s %-8d %-8d%n", i + 1, token.getTipo(), "'" + token.getValor() + "'",
+                        token.getLinha(), token.getColuna());
+            }
+            writer.flush();
+            caracteres[0] = contador.total;
+        });
+        adicionarRelatorio("relatorio.printf", codigo, tokens, caracteres[0], medicao);
+    }
+
+    private void adicionarRelatorio(String nome, String codigo, int tokens, long caracteres, Medicao medicao) {
+        Resultado resultado = new Resultado(nome, "misto", codigo.length());
+        resultado.metricas.put("tokensPorSegundo", tokens / medicao.segundosPorOperacao());
+        resultado.metricas.put("caracteresPorSegundo", caracteres / medicao.segundosPorOperacao());
+        adicionar(resultado);
+    }
+
+    /**
+     * Mede a ida e volta de uma análise pelo ServidorLexico, com o relatório completo no
+     * console, em uma conexão mantida aberta. Não inclui a inicialização da JVM do cliente
+     */
+    void medirServidor(int tamanho) throws IOException {
+        byte[] codigo = gerarCorpus("misto", tamanho).getBytes(StandardCharsets.UTF_8);
+        ServidorLexico servidor = new ServidorLexico(0, 1);
+        servidor.iniciar();
+        try (ClienteLexico cliente = new ClienteLexico(servidor.getPorta())) {
+            Medicao medicao = medir(() -> {
+                try {
+                    ClienteLexico.Resposta resposta = cliente.analisar("benchmark.pas", codigo,
+                            Collections.emptyList());
+                    resposta.getTexto().close();
+                    if (!resposta.isSucesso()) {
+                        throw new IllegalStateException(resposta.getFalha());
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            Resultado resultado = new Resultado("servidor.requisicao", "misto", codigo.length);
+            resultado.metricas.put("requisicoesPorSegundo", 1 / medicao.segundosPorOperacao());
+            resultado.metricas.put("msPorRequisicao", medicao.segundosPorOperacao() * 1000);
+            adicionar(resultado);
+        } finally {
+            servidor.encerrar();
+        }
+    }
+
+    /**
+     * Executa a operação em iterações de pelo menos TEMPO_MINIMO_ITERACAO_NS, descartando a
+     * primeira metade como aquecimento do JIT, e retorna a melhor iteração medida
+     */
+    private Medicao medir(Runnable operacao) {
+        Medicao melhor = null;
+        for (int i = 0; i < iteracoes * 2; i++) {
+            long operacoes = 0;
+            long inicio = System.nanoTime();
+            long decorrido;
+            do {
+                operacao.run();
+                operacoes++;
+                decorrido = System.nanoTime() - inicio;
+            } while (decorrido < TEMPO_MINIMO_ITERACAO_NS);
+
+            Medicao medicao = new Medicao(operacoes, decorrido);
+            if (i >= iteracoes && (melhor == null || medicao.segundosPorOperacao() < melhor.segundosPorOperacao())) {
+                melhor = medicao;
+            }
+        }
+        return melhor;
+    }
+
+    private void adicionar(Resultado resultado) {
+        resultados.add(resultado);
+        System.out.println(resultado.paraJson());
+    }
+
+    /**
+     * Grava os resultados em JSON, um objeto por linha dentro do array
+     */
+    void gravar(Path arquivo) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(arquivo, StandardCharsets.UTF_8)) {
+            writer.write("[\n");
+            for (int i = 0; i < resultados.size(); i++) {
+                writer.write("  " + resultados.get(i).paraJson());
+                writer.write(i + 1 < resultados.size() ? ",\n" : "\n");
+            }
+            writer.write("]\n");
+        }
+    }
+
+    /**
+     * Compara com um arquivo gravado por gravar(). Toda métrica é do tipo "maior é melhor",
+     * exceto as de MENOR_E_MELHOR. Retorna o número de regressões acima da tolerância
+     */
+    int comparar(Path arquivoReferencia, double tolerancia) throws IOException {
+        Map<String, Resultado> referencia = new HashMap<>();
+        for (String linha : Files.readAllLines(arquivoReferencia, StandardCharsets.UTF_8)) {
+            Resultado resultado = Resultado.deJson(linha);
+            if (resultado != null) {
+                referencia.put(resultado.chave(), resultado);
+            }
+        }
+
+        int regressoes = 0;
+        for (Resultado atual : resultados) {
+            Resultado anterior = referencia.get(atual.chave());
+            if (anterior == null) {
+                continue;
+            }
+            for (Map.Entry<String, Double> metrica : atual.metricas.entrySet()) {
+                Double valorAnterior = anterior.metricas.get(metrica.getKey());
+                if (valorAnterior == null || valorAnterior == 0) {
+                    continue;
+                }
+                double variacao = (metrica.getValue() - valorAnterior) / Math.abs(valorAnterior);
+                boolean menorEMelhor = MENOR_E_MELHOR.contains(metrica.getKey());
+                if (menorEMelhor ? variacao > tolerancia : variacao < -tolerancia) {
+                    System.out.printf("REGRESSÃO %s %s: %.1f -> %.1f (%+.1f%%)%n",
+                            atual.chave(), metrica.getKey(), valorAnterior, metrica.getValue(), variacao * 100);
+                    regressoes++;
+                }
+            }
+        }
+
+        System.out.println(regressoes == 0 ? "Nenhuma regressão em relação à referência"
+                : "Regressões encontradas: " + regressoes);
+        return regressoes;
+    }
+
+    private static class Medicao {
+        private final long operacoes;
+        private final long nanos;
+
+        Medicao(long operacoes, long nanos) {
+            this.operacoes = operacoes;
+            this.nanos = nanos;
+        }
+
+        double segundosPorOperacao() {
+            return nanos / 1e9 / operacoes;
+        }
+    }
+
+    private static class Resultado {
+        private static final Pattern CAMPO = Pattern.compile("\"(\\w+)\": (\"[^\"]*\"|[-0-9.Ee]+)");
+
+        private final String nome;
+        private final String mistura;
+        private final long tamanho;
+        private final Map<String, Double> metricas = new LinkedHashMap<>();
+
+        Resultado(String nome, String mistura, long tamanho) {
+            this.nome = nome;
+            this.mistura = mistura;
+            this.tamanho = tamanho;
+        }
+
+        String chave() {
+            return nome + "/" + mistura + "/" + tamanho;
+        }
+
+        String paraJson() {
+            StringBuilder json = new StringBuilder();
+            json.append("{\"nome\": \"").append(nome)
+                    .append("\", \"mistura\": \"").append(mistura)
+                    .append("\", \"tamanho\": ").append(tamanho);
+            for (Map.Entry<String, Double> metrica : metricas.entrySet()) {
+                json.append(", \"").append(metrica.getKey()).append("\": ")
+                        .append(String.format(Locale.ROOT, "%.2f", metrica.getValue()));
+            }
+            return json.append('}').toString();
+        }
+
+        static Resultado deJson(String linha) {
+            Matcher campos = CAMPO.matcher(linha);
+            String nome = null;
+            String mistura = null;
+            long tamanho = -1;
+            Map<String, Double> metricas = new LinkedHashMap<>();
+
+            while (campos.find()) {
+                String chave = campos.group(1);
+                String valor = campos.group(2);
+                if (chave.equals("nome")) {
+                    nome = valor.substring(1, valor.length() - 1);
+                } else if (chave.equals("mistura")) {
+                    mistura = valor.substring(1, valor.length() - 1);
+                } else if (chave.equals("tamanho")) {
+                    tamanho = Long.parseLong(valor);
+                } else {
+                    metricas.put(chave, Double.parseDouble(valor));
+                }
+            }
+
+            if (nome == null || mistura == null || tamanho < 0) {
+                return null;
+            }
+            Resultado resultado = new Resultado(nome, mistura, tamanho);
+            resultado.metricas.putAll(metricas);
+            return resultado;
+        }
+    }
+
+    /**
+     * Writer que só conta os caracteres recebidos
+     */
+    private static class ContadorCaracteres extends Writer {
+        private long total;
+
+        @Override
+        public void write(char[] caracteres, int inicio, int tamanho) {
+            total += tamanho;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
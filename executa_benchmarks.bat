@@ -0,0 +1,26 @@
+@echo off
+echo === Compilando o Compilador Lexico ===
+javac -d out ./src/*.java
+
+if %errorlevel% neq 0 (
+    echo Erro na compilacao!
+    pause
+    exit /b 1
+)
+
+echo === Compilando os Benchmarks ===
+javac -cp out -d out-benchmark ./benchmark/*.java
+
+if %errorlevel% neq 0 (
+    echo Erro na compilacao dos benchmarks!
+    pause
+    exit /b 1
+)
+
+echo.
+echo === Executando os Benchmarks ===
+rem Parametros extras sao repassados, por exemplo: --max=524288000 --referencia=benchmark_base.json
+java -Xmx4g -cp out;out-benchmark BenchmarkLexico --saida=benchmark.json %*
+
+echo.
+echo === Benchmarks concluidos ===
@@ -1,17 +1,68 @@
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Analisador léxico para a linguagem Pascal simplificada
  * @author Diogo Ferreira Saucedo
  */
 public class AnalisadorLexico {
-    private String codigo;
+    // Tamanho mínimo de cada bloco na análise paralela
+    private static final int TAMANHO_MINIMO_BLOCO = 1 << 20;
+    // Tokens mínimos entre duas publicações da tabela de símbolos
+    private static final int INTERVALO_PUBLICACAO = 4096;
+    // Tokens entre dois pontos de controle, de onde reanalisar() retoma o registro
+    private static final int INTERVALO_PONTOS_CONTROLE = 1024;
+    // Versão do comportamento do analisador. Deve mudar sempre que a mesma entrada passar a
+    // gerar tokens, símbolos ou diagnósticos diferentes, o que invalida os resultados em cache
+    public static final int VERSAO = 1;
+
+    private CharSequence codigo;
+    // Fim da região varrida; menor que o tamanho do código só nos blocos da análise paralela
+    private int limite;
     private int posicao;
     private int linha;
     private int coluna;
     private TabelaSimbolos tabelaSimbolos;
-    private List<String> erros;
-    private List<Token> tokens; // Palavras reservadas da linguagem Pascal
+    private Diagnosticos diagnosticos;
+    private BufferTokens tokens;
+    // Indica se já foi emitido algum IF/THEN, o que faz '=' ser lido como comparação
+    private boolean contextoCondicional;
+    private boolean fimEmitido;
+    // Com false, os tokens só passam pela análise e não ficam em getTokens()
+    private boolean guardarTokens;
+    private int totalTokens;
+    private AnalisadorSemantico semantico;
+    private List<ObservadorTokens> observadores;
+    // Varredura em blocos de espaços, dígitos e strings; null usa só a leitura caractere a caractere
+    private VarreduraEmBlocos varredura;
+    // Métricas da análise; null, o padrão, não mede nada
+    private MetricasAnalise metricas;
+    // Modo de recuperação: cada sequência de caracteres inválidos vira um único token ERRO
+    private boolean recuperacao;
+    // Publica instantâneos da tabela de símbolos durante a análise, para outras threads
+    private boolean publicarTabela;
+    private int tokensAtePublicacao;
+    private volatile TabelaSimbolos tabelaPublicada;
+    // Estado do registro a cada INTERVALO_PONTOS_CONTROLE tokens, em ordem, e depois do EOF,
+    // para reanalisar(); null se a análise não guarda os tokens
+    private List<PontoControle> pontosControle;
+    private PontoControle pontoFinal;
+    private int proximoPontoControle;
+    // Índice do último token de cada nome, pelo id, para saber quais nomes são usados depois
+    // de um ponto de controle. Pode ficar maior que o real depois de uma reanálise, nunca menor
+    private int[] ultimasOcorrencias;
+
+    // Token lido por proximoToken(), ainda sem objeto Token correspondente
+    private TipoToken tipoAtual;
+    private int inicioAtual;
+    private int fimAtual;
+    // Id do nome na tabela de nomes quando o token é um identificador; -1 nos demais
+    private int nomeAtual;
+    private int linhaAtual;
+    private int colunaAtual; // Palavras reservadas da linguagem Pascal
     private static final Map<String, TipoToken> PALAVRAS_RESERVADAS = new HashMap<>();
     static {
         PALAVRAS_RESERVADAS.put("program", TipoToken.PROGRAM);
@@ -29,6 +80,14 @@ public class AnalisadorLexico {
         PALAVRAS_RESERVADAS.put("div", TipoToken.DIV);
     }
 
+    // Texto de cada palavra reservada, indexado pelo ordinal do tipo
+    private static final String[] TEXTO_PALAVRAS = new String[TipoToken.values().length];
+    static {
+        for (Map.Entry<String, TipoToken> palavra : PALAVRAS_RESERVADAS.entrySet()) {
+            TEXTO_PALAVRAS[palavra.getValue().ordinal()] = palavra.getKey();
+        }
+    }
+
     // Palavras reservadas com erros de escrita comuns
     private static final Map<String, String> PALAVRAS_ERRO = new HashMap<>();
     static {
@@ -37,291 +96,1177 @@ public class AnalisadorLexico {
         PALAVRAS_ERRO.put("intege", "integer");
     }
 
-    public AnalisadorLexico(String codigo) {
+    // Reconhecimento das duas tabelas acima direto no código, sem criar Strings
+    private static final ReconhecedorPalavras PALAVRAS =
+            new ReconhecedorPalavras(PALAVRAS_RESERVADAS, PALAVRAS_ERRO.keySet());
+
+    public AnalisadorLexico(CharSequence codigo) {
+        this.tabelaSimbolos = new TabelaSimbolos();
+        this.diagnosticos = new Diagnosticos();
+        this.tokens = new BufferTokens(codigo, tabelaSimbolos.getNomes());
+        this.observadores = new ArrayList<>();
+
+        // Realiza análise semântica básica à medida que os tokens são emitidos
+        this.semantico = new AnalisadorSemantico(tabelaSimbolos, diagnosticos);
+        iniciarCodigo(codigo);
+    }
+
+    /**
+     * Prepara o analisador para analisar outro código, como se tivesse acabado de ser
+     * criado: as opções voltam ao padrão e os observadores são removidos, mas
+     * os vetores de tokens, símbolos, nomes e diagnósticos já alocados são reaproveitados.
+     * Tokens, símbolos, instantâneos da tabela e diagnósticos obtidos da análise anterior
+     * deixam de valer
+     */
+    public void reiniciar(CharSequence codigo) {
+        tabelaSimbolos.limpar();
+        diagnosticos.limpar();
+        tokens.limpar(codigo);
+        observadores.clear();
+        semantico.limpar();
+        iniciarCodigo(codigo);
+    }
+
+    private void iniciarCodigo(CharSequence codigo) {
         this.codigo = codigo;
+        this.varredura = VarreduraEmBlocos.para(codigo);
+        this.limite = codigo.length();
         this.posicao = 0;
         this.linha = 1;
         this.coluna = 1;
-        this.tabelaSimbolos = new TabelaSimbolos();
-        this.erros = new ArrayList<>();
-        this.tokens = new ArrayList<>();
+        this.contextoCondicional = false;
+        this.fimEmitido = false;
+        this.guardarTokens = true;
+        this.totalTokens = 0;
+        this.metricas = null;
+        this.recuperacao = false;
+        this.publicarTabela = false;
+        this.tabelaPublicada = null;
+        this.pontosControle = null;
+        this.pontoFinal = null;
+        this.ultimasOcorrencias = null;
+    }
+
+    /**
+     * Solta as referências ao código, aos nomes, aos diagnósticos, aos observadores e às
+     * métricas, para que um analisador parado no pool não os mantenha vivos. Só reiniciar()
+     * o deixa usável de novo
+     */
+    void liberar() {
+        this.codigo = "";
+        this.varredura = null;
+        this.limite = 0;
+        this.metricas = null;
+        this.tabelaPublicada = null;
+        this.pontosControle = null;
+        this.pontoFinal = null;
+        this.ultimasOcorrencias = null;
+        tokens.limpar(codigo);
+        tabelaSimbolos.limpar();
+        diagnosticos.limpar();
+        semantico.limpar();
+        observadores.clear();
+    }
+
+    /**
+     * Maior capacidade entre os vetores de tokens, símbolos, nomes e diagnósticos, que dá a
+     * memória que o analisador mantém entre uma análise e outra
+     */
+    int capacidadeRetida() {
+        return Math.max(Math.max(tokens.capacidade(), diagnosticos.capacidade()),
+                Math.max(tabelaSimbolos.capacidade(), tabelaSimbolos.getNomes().capacidade()));
     }
 
     /**
      * Realiza a análise léxica completa do código
      */
     public void analisar() {
-        while (posicao < codigo.length()) {
-            Token token = proximoToken();
-            if (token != null) {
-                tokens.add(token);
-
-                // Se for um identificador, adiciona à tabela de símbolos
-                if (token.getTipo() == TipoToken.IDENTIFICADOR) {
-                    tabelaSimbolos.adicionarSimbolo(token.getValor(), "indefinido", token.getLinha());
+        iniciarPontosControle();
+        while (avancar()) {
+            guardarTokenAtual();
+        }
+    }
+
+    /**
+     * Realiza a análise completa dividindo o código em blocos varridos em paralelo no pool
+     * comum. O resultado é idêntico ao de analisar()
+     */
+    public void analisarParalelo() {
+        analisarParalelo(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Realiza a análise completa dividindo o código em blocos varridos em paralelo no pool
+     * informado. Os blocos começam sempre no início de uma linha: como strings não podem
+     * atravessar quebras de linha, nenhum token cruza essa fronteira e cada bloco pode ser
+     * varrido de forma independente. Depois, os tokens de cada bloco são registrados em
+     * ordem, o que mantém a classificação do '=', os erros e a análise semântica iguais aos
+     * da análise sequencial. Só getParallelism() + 1 blocos ficam em andamento: o próximo
+     * bloco é enviado ao pool quando um bloco é registrado, e os tokens do bloco registrado
+     * são descartados, então a memória extra não cresce com o tamanho do código. Com
+     * paralelismo 1, a análise é sequencial, como em analisar()
+     */
+    public void analisarParalelo(ForkJoinPool pool) {
+        if (posicao != 0 || fimEmitido) {
+            throw new IllegalStateException("A análise já foi iniciada");
+        }
+
+        int[] fronteiras = pool.getParallelism() == 1 ? null : dividirEmBlocos();
+        if (fronteiras == null || fronteiras.length <= 2) {
+            analisar();
+            return;
+        }
+        if (metricas != null) {
+            metricas.iniciar(limite);
+        }
+        iniciarPontosControle();
+
+        int quantidade = fronteiras.length - 1;
+        int maximoEmAndamento = Math.min(quantidade, pool.getParallelism() + 1);
+        Deque<ForkJoinTask<Bloco>> tarefas = new ArrayDeque<>(maximoEmAndamento);
+        int enviados = 0;
+        while (enviados < maximoEmAndamento) {
+            tarefas.add(enviarBloco(pool, fronteiras, enviados++));
+        }
+
+        // As linhas de cada bloco são relativas ao seu início
+        int linhaBase = 0;
+        while (!tarefas.isEmpty()) {
+            Bloco bloco = tarefas.poll().join();
+            if (enviados < quantidade) {
+                tarefas.add(enviarBloco(pool, fronteiras, enviados++));
+            }
+            registrarTokens(bloco.tokens, 0, bloco.tokens.tamanho(), 0, linhaBase, 0, 0);
+            linhaBase += bloco.linhaFinal - 1;
+            linha = linhaBase + 1;
+            coluna = bloco.colunaFinal;
+        }
+
+        posicao = limite;
+        avancar();
+        guardarTokenAtual();
+    }
+
+    /**
+     * Envia ao pool a varredura do bloco indice, entre duas fronteiras
+     */
+    private ForkJoinTask<Bloco> enviarBloco(ForkJoinPool pool, int[] fronteiras, int indice) {
+        int inicio = fronteiras[indice];
+        int fim = fronteiras[indice + 1];
+        return pool.submit(() -> varrerBloco(codigo, inicio, fim, recuperacao));
+    }
+
+    /**
+     * Adiciona o token atual a getTokens(), se os tokens estiverem sendo guardados
+     */
+    private void guardarTokenAtual() {
+        if (guardarTokens) {
+            tokens.adicionar(tipoAtual, inicioAtual, fimAtual, linhaAtual, colunaAtual, nomeAtual);
+        }
+    }
+
+    /**
+     * Com os tokens guardados, passa a capturar os pontos de controle e o histórico de que
+     * reanalisar() precisa para retomar o registro dos tokens no meio do código
+     */
+    private void iniciarPontosControle() {
+        if (guardarTokens && totalTokens == 0 && pontosControle == null) {
+            pontosControle = new ArrayList<>();
+            proximoPontoControle = 0;
+            ultimasOcorrencias = new int[16];
+            Arrays.fill(ultimasOcorrencias, -1);
+            tabelaSimbolos.registrarAlteracoes();
+            semantico.manterUsos();
+        }
+    }
+
+    /**
+     * Registra, em ordem, os tokens [de, ate) que já foram varridos e os adiciona a
+     * getTokens(). As posições no código são deslocadas em deslocamento, as linhas em
+     * deslocamentoLinha e as colunas da linha linhaColunas em deslocamentoColuna
+     */
+    private void registrarTokens(BufferTokens origem, int de, int ate, int deslocamento, int deslocamentoLinha,
+            int linhaColunas, int deslocamentoColuna) {
+        for (int i = de; i < ate; i++) {
+            tipoAtual = origem.getTipo(i);
+            // O '=' volta a ser classificado de acordo com o contexto
+            if (tipoAtual == TipoToken.ATRIBUICAO_ERRO) {
+                tipoAtual = TipoToken.IGUAL;
+            }
+            inicioAtual = origem.getInicio(i) + deslocamento;
+            fimAtual = origem.getFim(i) + deslocamento;
+            linhaAtual = origem.getLinha(i);
+            colunaAtual = origem.getColuna(i) + (linhaAtual == linhaColunas ? deslocamentoColuna : 0);
+            linhaAtual += deslocamentoLinha;
+            fimEmitido = tipoAtual == TipoToken.EOF;
+
+            registrarTokenAtual();
+            guardarTokenAtual();
+        }
+    }
+
+    /**
+     * Aplica uma edição de texto ao código desta análise e retorna uma nova análise do
+     * código editado: removidos caracteres a partir de offset são trocados por inseridos.
+     * Só o trecho afetado é varrido novamente, a partir do início da linha editada, até que
+     * um token volte a começar onde começava um token da análise anterior; os tokens
+     * seguintes são reaproveitados com as posições ajustadas. O registro dos tokens (erros,
+     * tabela de símbolos e análise semântica) também é retomado perto da edição, a partir
+     * do último ponto de controle antes dela, e só vai até o primeiro ponto de controle
+     * depois dela a partir do qual os tokens têm os mesmos efeitos nas duas análises; os
+     * efeitos dos tokens seguintes são copiados desta análise. O custo depende do tamanho da
+     * edição e não do código, exceto por cópias de vetores. Com diagnósticos agrupados todos
+     * os tokens são registrados de novo. Esta análise precisa ter sido concluída com
+     * analisar() e não é alterada
+     */
+    public AnalisadorLexico reanalisar(int offset, int removidos, CharSequence inseridos) {
+        if (!fimEmitido || tokens.tamanho() == 0) {
+            throw new IllegalStateException(
+                    "reanalisar() exige uma análise concluída com analisar() e com os tokens guardados");
+        }
+        if (offset < 0 || removidos < 0 || offset + removidos > codigo.length()) {
+            throw new IndexOutOfBoundsException("Edição fora do código: offset " + offset
+                    + ", removidos " + removidos + ", tamanho " + codigo.length());
+        }
+
+        String novoCodigo = new StringBuilder(codigo.length() - removidos + inseridos.length())
+                .append(codigo, 0, offset)
+                .append(inseridos)
+                .append(codigo, offset + removidos, codigo.length())
+                .toString();
+        int deslocamento = inseridos.length() - removidos;
+        int fimEdicao = offset + inseridos.length();
+
+        // O início da linha nunca fica dentro de um token
+        int reinicio = offset;
+        while (reinicio > 0 && codigo.charAt(reinicio - 1) != '\n') {
+            reinicio--;
+        }
+        int primeiro = tokens.primeiroAPartirDe(reinicio);
+
+        // Varre a partir do início da linha até reencontrar um token da análise anterior
+        AnalisadorLexico varredor = new AnalisadorLexico(novoCodigo);
+        // A varredura costuma parar logo depois da edição, antes do fim do código
+        varredor.varredura = VarreduraEmBlocos.paraTrecho(novoCodigo);
+        varredor.recuperacao = recuperacao;
+        varredor.posicao = reinicio;
+        varredor.coluna = 1;
+        if (primeiro == 0) {
+            varredor.linha = 1 + contarQuebras(codigo, 0, reinicio);
+        } else {
+            varredor.linha = tokens.getLinha(primeiro - 1) + contarQuebras(codigo, tokens.getFim(primeiro - 1), reinicio);
+        }
+
+        BufferTokens varridos = new BufferTokens(novoCodigo);
+        int antigo = primeiro;
+        boolean sincronizou = false;
+        while (varredor.proximoToken()) {
+            if (varredor.inicioAtual >= fimEdicao) {
+                int inicioAntigo = varredor.inicioAtual - deslocamento;
+                while (antigo < tokens.tamanho() && tokens.getInicio(antigo) < inicioAntigo) {
+                    antigo++;
+                }
+                if (antigo < tokens.tamanho() && tokens.getInicio(antigo) == inicioAntigo
+                        && tokens.getTipo(antigo) != TipoToken.EOF) {
+                    sincronizou = true;
+                    break;
                 }
             }
+            varridos.adicionar(varredor.tipoAtual, varredor.inicioAtual, varredor.fimAtual,
+                    varredor.linhaAtual, varredor.colunaAtual);
         }
 
-        // Adiciona token EOF
-        tokens.add(new Token(TipoToken.EOF, "", linha, coluna));
+        Edicao edicao;
+        if (sincronizou) {
+            // Daqui em diante os tokens são os mesmos; só as posições mudam
+            int linhaSincronia = tokens.getLinha(antigo);
+            edicao = new Edicao(primeiro, varridos, antigo, deslocamento, varredor.linhaAtual - linhaSincronia,
+                    linhaSincronia, varredor.colunaAtual - tokens.getColuna(antigo));
+        } else {
+            varridos.adicionar(TipoToken.EOF, varredor.posicao, varredor.posicao, varredor.linha, varredor.coluna);
+            edicao = new Edicao(primeiro, varridos, tokens.tamanho(), deslocamento, 0, 0, 0);
+        }
 
-        // Realiza análise semântica básica
-        analisarSemantica();
+        AnalisadorLexico novo = new AnalisadorLexico(novoCodigo);
+        novo.recuperacao = recuperacao;
+        novo.diagnosticos.copiarConfiguracao(diagnosticos);
+        novo.iniciarPontosControle();
+        novo.registrarEdicao(this, edicao);
+        novo.posicao = novo.limite;
+        return novo;
     }
 
     /**
-     * Obtém o próximo token do código
+     * Registra os tokens do código editado, que são os desta análise anterior à edição, os
+     * varridos de novo e os seguintes da anterior. Quando a anterior guardou os pontos de
+     * controle, o registro é retomado do último antes da edição e para no primeiro depois
+     * dela em que o estado está sincronizado com o da anterior; daí em diante,
+     * acrescentarSeguintes() copia os efeitos dos tokens restantes
      */
-    private Token proximoToken() {
-        pularEspacos();
+    private void registrarEdicao(AnalisadorLexico anterior, Edicao edicao) {
+        List<PontoControle> pontosAnteriores = anterior.pontosControle;
+        // Diagnósticos agrupados mudam diagnósticos já guardados, e não dá para retomá-los
+        boolean retomar = pontosAnteriores != null && anterior.pontoFinal != null
+                && !diagnosticos.isAgruparIguais();
 
-        if (posicao >= codigo.length()) {
-            return null;
+        // Espaço para todos os tokens, sem realocações ao juntar os trechos
+        tokens.reservar(anterior.tokens.tamanho() - edicao.antigo + edicao.primeiro + edicao.varridos.tamanho());
+        PontoControle retomada = null;
+        if (retomar) {
+            int indice = ultimoPontoControleAte(pontosAnteriores, edicao.primeiro);
+            retomada = pontosAnteriores.get(indice);
+            retomar(anterior, retomada);
+            pontosControle.addAll(pontosAnteriores.subList(0, indice));
         }
+        int inicio = retomada == null ? 0 : retomada.token;
+        registrarTokens(anterior.tokens, inicio, edicao.primeiro, 0, 0, 0, 0);
+        registrarTokens(edicao.varridos, 0, edicao.varridos.tamanho(), 0, 0, 0, 0);
 
-        char c = codigo.charAt(posicao);
-        int linhaToken = linha;
-        int colunaToken = coluna;
+        int atual = edicao.antigo;
+        if (retomar) {
+            for (int i = ultimoPontoControleAte(pontosAnteriores, edicao.antigo - 1) + 1;
+                    i < pontosAnteriores.size(); i++) {
+                PontoControle ponto = pontosAnteriores.get(i);
+                registrarTokens(anterior.tokens, atual, ponto.token, edicao.deslocamento, edicao.deslocamentoLinha,
+                        edicao.linhaSincronia, edicao.deslocamentoColuna);
+                atual = ponto.token;
+                int[] ids = sincronizar(anterior, retomada, ponto);
+                if (ids != null) {
+                    acrescentarSeguintes(anterior, i, edicao, ids);
+                    return;
+                }
+            }
+        }
+        registrarTokens(anterior.tokens, atual, anterior.tokens.tamanho(), edicao.deslocamento,
+                edicao.deslocamentoLinha, edicao.linhaSincronia, edicao.deslocamentoColuna);
+    }
 
-        // Números
-        if (Character.isDigit(c)) {
-            return lerNumero(linhaToken, colunaToken);
+    /**
+     * Volta o registro ao ponto de controle da análise anterior: tokens, nomes, símbolos,
+     * diagnósticos e análise semântica ficam como estavam nela antes do token do ponto
+     */
+    private void retomar(AnalisadorLexico anterior, PontoControle ponto) {
+        tokens.acrescentar(anterior.tokens, 0, ponto.token, 0, 0, 0, 0, null);
+        tabelaSimbolos.copiar(anterior.tabelaSimbolos);
+        tabelaSimbolos.voltarPara(ponto.simbolos, ponto.nomes, ponto.alteracoes);
+        diagnosticos.restaurar(anterior.diagnosticos, ponto.diagnosticos);
+        semantico.restaurar(ponto.semantico, anterior.semantico);
+        // As ocorrências depois do ponto na anterior só deixam os valores maiores que os reais
+        ultimasOcorrencias = Arrays.copyOf(anterior.ultimasOcorrencias, anterior.ultimasOcorrencias.length);
+        Arrays.fill(ultimasOcorrencias, ponto.nomes, ultimasOcorrencias.length, -1);
+        contextoCondicional = ponto.contextoCondicional;
+        totalTokens = ponto.token;
+        proximoPontoControle = ponto.token;
+    }
+
+    /**
+     * Compara o registro com o da análise anterior no ponto de controle, sabendo que os dois
+     * eram iguais na retomada. Estão sincronizados se o contexto e o reconhecimento das
+     * declarações são os mesmos e se cada nome que a anterior usa a partir do ponto tem aqui
+     * o mesmo tipo e a mesma marcação de declarado que tinha nela: os tokens seguintes, que
+     * são os mesmos, terão então os mesmos efeitos nas duas. Nomes que só uma das duas
+     * registrou ou alterou desde a retomada não impedem a sincronia se os tokens seguintes
+     * não os usam. Os diagnósticos só são comparados quando há limites, que dependem de
+     * quantos já foram guardados. Retorna, para cada id de nome da anterior, o id do mesmo
+     * nome aqui, com -1 para os que não são usados depois do ponto e para os que a anterior
+     * só registrou depois dele; ou null se ainda não estão sincronizados
+     */
+    private int[] sincronizar(AnalisadorLexico anterior, PontoControle retomada, PontoControle ponto) {
+        if (contextoCondicional != ponto.contextoCondicional
+                || (diagnosticos.temLimites() && !diagnosticos.mesmosGuardados(ponto.diagnosticos))) {
+            return null;
         }
+        TabelaNomes nomes = tabelaSimbolos.getNomes();
+        TabelaNomes nomesAnteriores = anterior.tabelaSimbolos.getNomes();
 
-        // Identificadores e palavras reservadas
-        if (Character.isLetter(c)) {
-            return lerIdentificadorOuPalavraReservada(linhaToken, colunaToken);
-        } // Strings
-        if (c == '\'') {
-            return lerString(linhaToken, colunaToken);
+        // Um nome que esta análise registrou depois da retomada e que a anterior só registrou
+        // depois do ponto seria usado pelos tokens seguintes
+        for (int id = retomada.nomes; id < nomes.tamanho(); id++) {
+            if (nomesAnteriores.buscar(nomes.getNome(id)) >= ponto.nomes) {
+                return null;
+            }
         }
 
-        // Símbolos especiais
-        switch (c) {
-            case ':':
-                posicao++;
-                coluna++;
-                if (posicao < codigo.length() && codigo.charAt(posicao) == '=') {
-                    posicao++;
-                    coluna++;
-                    return new Token(TipoToken.ATRIBUICAO_PASCAL, ":=", linhaToken, colunaToken);
+        int[] ids = new int[nomesAnteriores.tamanho()];
+        for (int id = 0; id < retomada.nomes; id++) {
+            ids[id] = id;
+        }
+        Arrays.fill(ids, retomada.nomes, ids.length, -1);
+        for (int id = retomada.nomes; id < ponto.nomes; id++) {
+            if (anterior.usadoDepois(id, ponto)) {
+                ids[id] = nomes.buscar(nomesAnteriores.getNome(id));
+                if (ids[id] < 0) {
+                    return null;
                 }
-                return new Token(TipoToken.DOIS_PONTOS, ":", linhaToken, colunaToken);
-            case '=':
-                posicao++;
-                coluna++;
-                // Verifica se estamos na zona de declaração de variáveis ou em expressões
-                // condicionais
-                boolean estaEmCondicional = false;
-                for (int i = tokens.size() - 1; i >= 0; i--) {
-                    if (tokens.get(i).getTipo() == TipoToken.IF || tokens.get(i).getTipo() == TipoToken.THEN) {
-                        estaEmCondicional = true;
-                        break;
-                    }
+            }
+        }
+        if (!semantico.mesmoEstado(ponto.semantico, ids)) {
+            return null;
+        }
+
+        // Só podem ter valores diferentes os nomes registrados ou alterados desde a retomada.
+        // Os que a anterior não alterou entre a retomada e o ponto tinham no ponto o valor da
+        // retomada, que é o mesmo aqui, ou o valor inicial se foram registrados depois dela
+        Map<Integer, Integer> valoresNoPonto = anterior.tabelaSimbolos.valoresAlterados(retomada.alteracoes,
+                ponto.alteracoes, true);
+        Map<Integer, Integer> valoresNaRetomada = tabelaSimbolos.valoresAlterados(retomada.alteracoes,
+                tabelaSimbolos.getQuantidadeAlteracoes(), false);
+        Set<Integer> comparados = new HashSet<>(valoresNoPonto.keySet());
+        for (int id : valoresNaRetomada.keySet()) {
+            if (id < retomada.nomes) {
+                comparados.add(id);
+            }
+        }
+        for (int id = retomada.nomes; id < ponto.nomes; id++) {
+            comparados.add(id);
+        }
+        for (int id : comparados) {
+            if (!anterior.usadoDepois(id, ponto)) {
+                continue;
+            }
+            Integer esperado = valoresNoPonto.get(id);
+            if (esperado == null) {
+                esperado = id >= retomada.nomes ? TabelaSimbolos.valorInicial()
+                        : valoresNaRetomada.containsKey(id) ? valoresNaRetomada.get(id)
+                        : tabelaSimbolos.valorDoNome(id);
+            }
+            if (tabelaSimbolos.valorDoNome(ids[id]) != esperado) {
+                return null;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Indica se a análise anterior usa o nome com o id informado a partir do ponto de
+     * controle: num dos tokens seguintes ou numa declaração de variáveis em andamento
+     */
+    private boolean usadoDepois(int id, PontoControle ponto) {
+        return id >= ponto.nomes || ultimasOcorrencias[id] >= ponto.token || ponto.semantico.temVariavel(id);
+    }
+
+    private void registrarOcorrencia(int id, int token) {
+        if (id >= ultimasOcorrencias.length) {
+            int tamanho = ultimasOcorrencias.length;
+            ultimasOcorrencias = Arrays.copyOf(ultimasOcorrencias, Math.max(id + 1, tamanho * 2));
+            Arrays.fill(ultimasOcorrencias, tamanho, ultimasOcorrencias.length, -1);
+        }
+        ultimasOcorrencias[id] = token;
+    }
+
+    /**
+     * Conclui o registro copiando da análise anterior os efeitos dos tokens a partir do seu
+     * ponto de controle indice, com o qual o registro está sincronizado: os tokens, nomes,
+     * símbolos, alterações, usos pendentes e diagnósticos seguintes, com as posições
+     * deslocadas pela edição e os ids de nomes levados por ids aos desta análise, e os pontos
+     * de controle seguintes. Só os diagnósticos do fim da análise semântica são gerados de
+     * novo
+     */
+    private void acrescentarSeguintes(AnalisadorLexico anterior, int indice, Edicao edicao, int[] ids) {
+        PontoControle ponto = anterior.pontosControle.get(indice);
+        PontoControle atual = capturarPontoControle();
+
+        // Completa ids com os nomes que a anterior registrou depois do ponto
+        tabelaSimbolos.acrescentar(anterior.tabelaSimbolos, ponto.simbolos, ponto.nomes, ponto.alteracoes,
+                edicao.deslocamentoLinha, ids);
+        tokens.acrescentar(anterior.tokens, ponto.token, anterior.tokens.tamanho(), edicao.deslocamento,
+                edicao.deslocamentoLinha, edicao.linhaSincronia, edicao.deslocamentoColuna, ids);
+        semantico.acrescentar(anterior.semantico, ponto.semantico.getUsos(), edicao.deslocamentoLinha,
+                edicao.linhaSincronia, edicao.deslocamentoColuna, ids);
+        diagnosticos.acrescentar(anterior.diagnosticos, ponto.diagnosticos, anterior.pontoFinal.diagnosticos,
+                edicao.deslocamentoLinha, edicao.linhaSincronia, edicao.deslocamentoColuna);
+        contextoCondicional = anterior.contextoCondicional;
+        totalTokens = anterior.totalTokens - ponto.token + atual.token;
+        for (int id = 0; id < ids.length; id++) {
+            if (anterior.ultimasOcorrencias[id] >= ponto.token) {
+                registrarOcorrencia(ids[id], anterior.ultimasOcorrencias[id] - ponto.token + atual.token);
+            }
+        }
+
+        while (!pontosControle.isEmpty() && pontosControle.get(pontosControle.size() - 1).token >= atual.token) {
+            pontosControle.remove(pontosControle.size() - 1);
+        }
+        for (PontoControle seguinte : anterior.pontosControle.subList(indice, anterior.pontosControle.size())) {
+            pontosControle.add(seguinte.deslocado(ponto, atual, ids));
+        }
+        pontoFinal = anterior.pontoFinal.deslocado(ponto, atual, ids);
+
+        fimEmitido = true;
+        semantico.analiseConcluida();
+    }
+
+    private PontoControle capturarPontoControle() {
+        return new PontoControle(totalTokens, contextoCondicional, semantico.capturar(),
+                tabelaSimbolos.getNomes().tamanho(), tabelaSimbolos.tamanho(),
+                tabelaSimbolos.getQuantidadeAlteracoes(), diagnosticos.contar());
+    }
+
+    /**
+     * Índice do último ponto de controle antes do token de índice token, ou com esse índice;
+     * -1 se não houver
+     */
+    private static int ultimoPontoControleAte(List<PontoControle> pontos, int token) {
+        int baixo = 0;
+        int alto = pontos.size();
+        while (baixo < alto) {
+            int meio = (baixo + alto) >>> 1;
+            if (pontos.get(meio).token <= token) {
+                baixo = meio + 1;
+            } else {
+                alto = meio;
+            }
+        }
+        return baixo - 1;
+    }
+
+    /**
+     * Estado do registro antes de um token: com ele a análise pode ser retomada a partir desse
+     * token ou comparada com outra análise do mesmo código editado
+     */
+    private static final class PontoControle {
+        private final int token;
+        private final boolean contextoCondicional;
+        private final AnalisadorSemantico.Estado semantico;
+        private final int nomes;
+        private final int simbolos;
+        private final int alteracoes;
+        private final Diagnosticos.Contagem diagnosticos;
+
+        PontoControle(int token, boolean contextoCondicional, AnalisadorSemantico.Estado semantico, int nomes,
+                int simbolos, int alteracoes, Diagnosticos.Contagem diagnosticos) {
+            this.token = token;
+            this.contextoCondicional = contextoCondicional;
+            this.semantico = semantico;
+            this.nomes = nomes;
+            this.simbolos = simbolos;
+            this.alteracoes = alteracoes;
+            this.diagnosticos = diagnosticos;
+        }
+
+        /**
+         * Este ponto de outra análise trazido para a análise em que o ponto de controle de
+         * corresponde a para, com os ids de nomes levados por ids aos dessa análise
+         */
+        PontoControle deslocado(PontoControle de, PontoControle para, int[] ids) {
+            return new PontoControle(token - de.token + para.token, contextoCondicional,
+                    semantico.deslocado(para.semantico.getUsos() - de.semantico.getUsos(), ids),
+                    nomes - de.nomes + para.nomes, simbolos - de.simbolos + para.simbolos,
+                    alteracoes - de.alteracoes + para.alteracoes,
+                    diagnosticos.deslocada(de.diagnosticos, para.diagnosticos));
+        }
+    }
+
+    /**
+     * Resultado da varredura de uma edição: os tokens anteriores a primeiro e a partir de
+     * antigo são os da análise anterior, estes deslocados, e os varridos ficam entre eles.
+     * Nos tokens da linha linhaSincronia também a coluna é deslocada
+     */
+    private static final class Edicao {
+        private final int primeiro;
+        private final BufferTokens varridos;
+        private final int antigo;
+        private final int deslocamento;
+        private final int deslocamentoLinha;
+        private final int linhaSincronia;
+        private final int deslocamentoColuna;
+
+        Edicao(int primeiro, BufferTokens varridos, int antigo, int deslocamento, int deslocamentoLinha,
+                int linhaSincronia, int deslocamentoColuna) {
+            this.primeiro = primeiro;
+            this.varridos = varridos;
+            this.antigo = antigo;
+            this.deslocamento = deslocamento;
+            this.deslocamentoLinha = deslocamentoLinha;
+            this.linhaSincronia = linhaSincronia;
+            this.deslocamentoColuna = deslocamentoColuna;
+        }
+    }
+
+    /**
+     * Conta as quebras de linha em um trecho, tratando \r\n como uma só
+     */
+    private static int contarQuebras(CharSequence codigo, int inicio, int fim) {
+        int quebras = 0;
+        for (int i = inicio; i < fim; i++) {
+            char c = codigo.charAt(i);
+            if (c == '\r' || (c == '\n' && (i == 0 || codigo.charAt(i - 1) != '\r'))) {
+                quebras++;
+            }
+        }
+        return quebras;
+    }
+
+    /**
+     * Calcula as fronteiras de blocos de pelo menos TAMANHO_MINIMO_BLOCO caracteres: cada uma
+     * fica logo após uma quebra de linha. Retorna só [0, tamanho] quando o código é pequeno
+     * demais para ser dividido
+     */
+    private int[] dividirEmBlocos() {
+        int quantidade = limite / TAMANHO_MINIMO_BLOCO;
+        if (quantidade < 2) {
+            return new int[] { 0, limite };
+        }
+
+        int tamanhoBloco = limite / quantidade;
+        int[] fronteiras = new int[quantidade + 1];
+        int total = 1;
+        for (int i = 1; i < quantidade; i++) {
+            int alvo = Math.max(i * tamanhoBloco, fronteiras[total - 1] + 1);
+            int fronteira = proximaLinha(alvo);
+            if (fronteira >= limite) {
+                break;
+            }
+            fronteiras[total++] = fronteira;
+        }
+        fronteiras[total++] = limite;
+        return Arrays.copyOf(fronteiras, total);
+    }
+
+    /**
+     * Posição logo após a primeira quebra de linha a partir de inicio, ou o fim do código.
+     * Aceita '\n', '\r' sozinho e '\r\n', que nunca é separado
+     */
+    private int proximaLinha(int inicio) {
+        for (int i = inicio; i < limite; i++) {
+            char c = codigo.charAt(i);
+            if (c == '\n') {
+                return i + 1;
+            }
+            if (c == '\r') {
+                return i + 1 < limite && codigo.charAt(i + 1) == '\n' ? i + 2 : i + 1;
+            }
+        }
+        return limite;
+    }
+
+    /**
+     * Varre um bloco do código sem registrar os tokens, com linhas contadas a partir de 1
+     */
+    private static Bloco varrerBloco(CharSequence codigo, int inicio, int fim, boolean recuperacao) {
+        AnalisadorLexico varredor = new AnalisadorLexico(codigo);
+        varredor.varredura = VarreduraEmBlocos.paraTrecho(codigo);
+        varredor.recuperacao = recuperacao;
+        varredor.posicao = inicio;
+        varredor.limite = fim;
+
+        BufferTokens tokensBloco = new BufferTokens(codigo);
+        while (varredor.proximoToken()) {
+            tokensBloco.adicionar(varredor.tipoAtual, varredor.inicioAtual, varredor.fimAtual,
+                    varredor.linhaAtual, varredor.colunaAtual);
+        }
+        return new Bloco(tokensBloco, varredor.linha, varredor.coluna);
+    }
+
+    /**
+     * Tokens de um bloco da análise paralela e a posição em que a varredura terminou
+     */
+    private static class Bloco {
+        private final BufferTokens tokens;
+        private final int linhaFinal;
+        private final int colunaFinal;
+
+        Bloco(BufferTokens tokens, int linhaFinal, int colunaFinal) {
+            this.tokens = tokens;
+            this.linhaFinal = linhaFinal;
+            this.colunaFinal = colunaFinal;
+        }
+    }
+
+    /**
+     * Retorna os tokens sob demanda, terminando no EOF. Os tokens não são guardados em
+     * getTokens(), e a análise só pode ser percorrida uma vez
+     */
+    public Iterator<Token> iterator() {
+        return new Iterator<Token>() {
+            private Token proximo;
+            private boolean consultado;
+
+            @Override
+            public boolean hasNext() {
+                if (!consultado) {
+                    proximo = avancar() ? criarTokenAtual() : null;
+                    consultado = true;
                 }
+                return proximo != null;
+            }
 
-                // Se não estiver em uma expressão condicional, é um erro de atribuição
-                if (!estaEmCondicional) {
-                    erros.add(String.format(
-                            "ERRO (linha %d, coluna %d): Uso incorreto de '=' para atribuição. Use ':=' em Pascal.",
-                            linhaToken, colunaToken));
-                    return new Token(TipoToken.ATRIBUICAO_ERRO, "=", linhaToken, colunaToken);
-                } else {
-                    return new Token(TipoToken.IGUAL, "=", linhaToken, colunaToken);
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
                 }
+                consultado = false;
+                return proximo;
+            }
+        };
+    }
 
-            case ';':
-                posicao++;
-                coluna++;
-                return new Token(TipoToken.PONTO_VIRGULA, ";", linhaToken, colunaToken);
+    /**
+     * Mesmo que iterator(), na forma de Stream sequencial
+     */
+    public Stream<Token> stream() {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL),
+                false);
+    }
 
-            case ',':
-                posicao++;
-                coluna++;
-                return new Token(TipoToken.VIRGULA, ",", linhaToken, colunaToken);
+    /**
+     * Registra um observador que será notificado de cada token emitido
+     */
+    public void adicionarObservador(ObservadorTokens observador) {
+        observadores.add(observador);
+    }
 
-            case '.':
-                posicao++;
-                coluna++;
-                return new Token(TipoToken.PONTO, ".", linhaToken, colunaToken);
+    /**
+     * Lê o próximo token, incluindo o EOF ao final, e o registra. Retorna false quando
+     * não há mais tokens
+     */
+    private boolean avancar() {
+        if (fimEmitido) {
+            return false;
+        }
+        if (metricas != null && totalTokens == 0) {
+            metricas.iniciar(limite);
+        }
 
-            case '+':
-                posicao++;
-                coluna++;
-                return new Token(TipoToken.SOMA, "+", linhaToken, colunaToken);
+        if (!proximoToken()) {
+            tipoAtual = TipoToken.EOF;
+            inicioAtual = posicao;
+            fimAtual = posicao;
+            linhaAtual = linha;
+            colunaAtual = coluna;
+            fimEmitido = true;
+        }
 
-            case '-':
-                posicao++;
-                coluna++;
-                return new Token(TipoToken.SUBTRACAO, "-", linhaToken, colunaToken);
+        registrarTokenAtual();
+        return true;
+    }
 
-            case '*':
-                posicao++;
-                coluna++;
-                return new Token(TipoToken.MULTIPLICACAO, "*", linhaToken, colunaToken);
+    /**
+     * Registra o token atual na ordem do código: classifica o '=', gera os erros léxicos,
+     * alimenta a tabela de símbolos e notifica a análise semântica e os observadores
+     */
+    private void registrarTokenAtual() {
+        if (pontosControle != null && totalTokens >= proximoPontoControle) {
+            pontosControle.add(capturarPontoControle());
+            proximoPontoControle = totalTokens + INTERVALO_PONTOS_CONTROLE;
+        }
+        String valor = null;
+        nomeAtual = -1;
+        totalTokens++;
 
-            case '/':
-                posicao++;
-                coluna++;
-                return new Token(TipoToken.DIVISAO, "/", linhaToken, colunaToken);
+        switch (tipoAtual) {
+            case IF:
+            case THEN:
+                contextoCondicional = true;
+                break;
 
-            case '<':
-                posicao++;
-                coluna++;
-                if (posicao < codigo.length()) {
-                    if (codigo.charAt(posicao) == '=') {
-                        posicao++;
-                        coluna++;
-                        return new Token(TipoToken.MENOR_IGUAL, "<=", linhaToken, colunaToken);
-                    } else if (codigo.charAt(posicao) == '>') {
-                        posicao++;
-                        coluna++;
-                        return new Token(TipoToken.DIFERENTE, "<>", linhaToken, colunaToken);
+            case IGUAL:
+                // Se nenhum IF/THEN foi emitido até aqui, é um erro de atribuição
+                if (!contextoCondicional) {
+                    diagnosticos.adicionar(CodigoDiagnostico.ATRIBUICAO_INCORRETA, linhaAtual, colunaAtual);
+                    tipoAtual = TipoToken.ATRIBUICAO_ERRO;
+                }
+                break;
+
+            case PALAVRA_RESERVADA_ERRO:
+                valor = valorDe(codigo, tipoAtual, inicioAtual, fimAtual);
+                diagnosticos.adicionar(CodigoDiagnostico.PALAVRA_RESERVADA_INCORRETA, linhaAtual, colunaAtual,
+                        valor, PALAVRAS_ERRO.get(valor));
+                break;
+
+            case ERRO:
+                if (codigo.charAt(inicioAtual) != '\'') {
+                    if (fimAtual - inicioAtual > 1) {
+                        // Sequência agrupada pelo modo de recuperação
+                        diagnosticos.adicionar(CodigoDiagnostico.CARACTERES_INVALIDOS, linhaAtual, colunaAtual,
+                                fimAtual - inicioAtual, codigo.charAt(inicioAtual));
+                    } else {
+                        diagnosticos.adicionar(CodigoDiagnostico.CARACTERE_INVALIDO, linhaAtual, colunaAtual,
+                                codigo.charAt(inicioAtual));
                     }
+                } else if (fimAtual < codigo.length()) {
+                    // String não foi fechada antes da quebra de linha
+                    diagnosticos.adicionar(CodigoDiagnostico.STRING_NAO_FECHADA_NA_LINHA, linhaAtual, colunaAtual);
+                } else {
+                    diagnosticos.adicionar(CodigoDiagnostico.STRING_NAO_FECHADA_NO_ARQUIVO, linhaAtual, colunaAtual);
                 }
-                return new Token(TipoToken.MENOR, "<", linhaToken, colunaToken);
+                break;
 
-            case '>':
-                posicao++;
-                coluna++;
-                if (posicao < codigo.length() && codigo.charAt(posicao) == '=') {
-                    posicao++;
-                    coluna++;
-                    return new Token(TipoToken.MAIOR_IGUAL, ">=", linhaToken, colunaToken);
+            case IDENTIFICADOR:
+                // Se for um identificador, adiciona à tabela de símbolos. O nome é procurado
+                // direto no código, sem criar uma String para nomes já vistos
+                int conhecidos = tabelaSimbolos.getNomes().tamanho();
+                nomeAtual = tabelaSimbolos.getNomes().registrar(codigo, inicioAtual, fimAtual);
+                tabelaSimbolos.adicionarSimbolo(nomeAtual, TipoSimbolo.INDEFINIDO, linhaAtual);
+                if (metricas != null) {
+                    metricas.nomeRegistrado(nomeAtual < conhecidos);
                 }
-                return new Token(TipoToken.MAIOR, ">", linhaToken, colunaToken);
+                if (ultimasOcorrencias != null) {
+                    registrarOcorrencia(nomeAtual, totalTokens - 1);
+                }
+                break;
 
-            case '(':
-                posicao++;
-                coluna++;
-                return new Token(TipoToken.PARENTESE_ESQ, "(", linhaToken, colunaToken);
+            default:
+                break;
+        }
+
+        // Com métricas, o tempo até aqui é da varredura, e cada etapa abaixo marca o seu
+        if (metricas != null) {
+            metricas.tokenLido(tipoAtual);
+        }
+        semantico.tokenEmitido(tipoAtual, nomeAtual, valor, linhaAtual, colunaAtual);
+        if (metricas != null) {
+            metricas.semanticaConcluida();
+        }
+        if (!observadores.isEmpty()) {
+            Token token = criarTokenAtual();
+            for (ObservadorTokens observador : observadores) {
+                observador.tokenEmitido(token);
+            }
+            if (metricas != null) {
+                metricas.observadoresNotificados();
+            }
+        }
+
+        if (fimEmitido) {
+            if (pontosControle != null) {
+                pontoFinal = capturarPontoControle();
+            }
+            semantico.analiseConcluida();
+            if (metricas != null) {
+                metricas.semanticaConcluida();
+            }
+            for (ObservadorTokens observador : observadores) {
+                observador.analiseConcluida();
+            }
+            if (metricas != null) {
+                metricas.observadoresNotificados();
+                metricas.analiseConcluida(diagnosticos);
+            }
+        }
+
+        if (publicarTabela && (--tokensAtePublicacao == 0 || fimEmitido)) {
+            publicarTabela();
+        }
+    }
+
+    /**
+     * Publica um instantâneo da tabela de símbolos. O intervalo até a próxima publicação
+     * cresce com a tabela, para que o custo das cópias, somado, fique proporcional ao número
+     * de tokens
+     */
+    private void publicarTabela() {
+        tabelaPublicada = tabelaSimbolos.instantaneo();
+        tokensAtePublicacao = Math.max(INTERVALO_PUBLICACAO, 4 * tabelaSimbolos.tamanho());
+    }
+
+    /**
+     * Cria o objeto Token para o token atual
+     */
+    private Token criarTokenAtual() {
+        String valor = nomeAtual >= 0 ? tabelaSimbolos.getNomes().getNome(nomeAtual)
+                : valorDe(codigo, tipoAtual, inicioAtual, fimAtual);
+        return new Token(tipoAtual, valor, linhaAtual, colunaAtual);
+    }
+
+    /**
+     * Lê o próximo token do código, guardando tipo e posição nos campos do token atual.
+     * Retorna false se só restavam espaços
+     */
+    private boolean proximoToken() {
+        pularEspacos();
+
+        if (posicao >= limite) {
+            return false;
+        }
+
+        char c = codigo.charAt(posicao);
+        inicioAtual = posicao;
+        linhaAtual = linha;
+        colunaAtual = coluna;
+
+        if (Character.isDigit(c)) {
+            // Números
+            lerNumero();
+        } else if (Character.isLetter(c)) {
+            // Identificadores e palavras reservadas
+            lerIdentificadorOuPalavraReservada();
+        } else if (c == '\'') {
+            // Strings
+            lerString();
+        } else {
+            // Símbolos especiais
+            lerSimbolo(c);
+        }
+        if (recuperacao && tipoAtual == TipoToken.ERRO && c != '\'') {
+            pularInvalidos();
+        }
+
+        fimAtual = posicao;
+        return true;
+    }
+
+    /**
+     * Resumo (hash FNV-1a de 64 bits) de tudo que define o resultado da análise: VERSAO, as
+     * tabelas de palavras reservadas e os nomes dos tipos de token, de símbolo e dos códigos
+     * de diagnóstico. Resultados guardados com outro valor não servem para esta versão
+     */
+    static long impressaoDigital() {
+        List<String> partes = new ArrayList<>();
+        partes.add("versao=" + VERSAO);
+        for (Map.Entry<String, TipoToken> palavra : new TreeMap<>(PALAVRAS_RESERVADAS).entrySet()) {
+            partes.add("reservada=" + palavra.getKey() + ":" + palavra.getValue().name());
+        }
+        for (Map.Entry<String, String> palavra : new TreeMap<>(PALAVRAS_ERRO).entrySet()) {
+            partes.add("erro=" + palavra.getKey() + ":" + palavra.getValue());
+        }
+        for (TipoToken tipo : TipoToken.values()) {
+            partes.add("token=" + tipo.name());
+        }
+        for (TipoSimbolo tipo : TipoSimbolo.values()) {
+            partes.add("simbolo=" + tipo.name());
+        }
+        for (CodigoDiagnostico codigo : CodigoDiagnostico.values()) {
+            partes.add("diagnostico=" + codigo.name());
+        }
+
+        long hash = 0xcbf29ce484222325L;
+        for (String parte : partes) {
+            for (int i = 0; i < parte.length(); i++) {
+                hash = (hash ^ parte.charAt(i)) * 0x100000001b3L;
+            }
+            hash = (hash ^ '\n') * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Análise já concluída montada a partir de um resultado guardado, como o do cache, sem
+     * varrer o código. Os tokens guardados devem ser adicionados depois a getBufferTokens()
+     */
+    static AnalisadorLexico restaurada(CharSequence codigo, TabelaSimbolos tabelaSimbolos,
+            Diagnosticos diagnosticos, int totalTokens, boolean guardarTokens) {
+        AnalisadorLexico analisador = new AnalisadorLexico(codigo);
+        analisador.tabelaSimbolos = tabelaSimbolos;
+        analisador.diagnosticos = diagnosticos;
+        analisador.tokens = new BufferTokens(codigo, tabelaSimbolos.getNomes());
+        analisador.semantico = new AnalisadorSemantico(tabelaSimbolos, diagnosticos);
+        analisador.guardarTokens = guardarTokens;
+        analisador.totalTokens = totalTokens;
+        analisador.posicao = analisador.limite;
+        analisador.fimEmitido = true;
+        return analisador;
+    }
+
+    /**
+     * Lê um operador ou delimitador
+     */
+    private void lerSimbolo(char c) {
+        posicao++;
+        coluna++;
 
+        switch (c) {
+            case ':':
+                tipoAtual = consumir('=') ? TipoToken.ATRIBUICAO_PASCAL : TipoToken.DOIS_PONTOS;
+                break;
+            case '=':
+                // A diferença entre comparação e atribuição incorreta é decidida ao registrar o token
+                tipoAtual = TipoToken.IGUAL;
+                break;
+            case ';':
+                tipoAtual = TipoToken.PONTO_VIRGULA;
+                break;
+            case ',':
+                tipoAtual = TipoToken.VIRGULA;
+                break;
+            case '.':
+                tipoAtual = TipoToken.PONTO;
+                break;
+            case '+':
+                tipoAtual = TipoToken.SOMA;
+                break;
+            case '-':
+                tipoAtual = TipoToken.SUBTRACAO;
+                break;
+            case '*':
+                tipoAtual = TipoToken.MULTIPLICACAO;
+                break;
+            case '/':
+                tipoAtual = TipoToken.DIVISAO;
+                break;
+            case '<':
+                if (consumir('=')) {
+                    tipoAtual = TipoToken.MENOR_IGUAL;
+                } else if (consumir('>')) {
+                    tipoAtual = TipoToken.DIFERENTE;
+                } else {
+                    tipoAtual = TipoToken.MENOR;
+                }
+                break;
+            case '>':
+                tipoAtual = consumir('=') ? TipoToken.MAIOR_IGUAL : TipoToken.MAIOR;
+                break;
+            case '(':
+                tipoAtual = TipoToken.PARENTESE_ESQ;
+                break;
             case ')':
-                posicao++;
-                coluna++;
-                return new Token(TipoToken.PARENTESE_DIR, ")", linhaToken, colunaToken);
+                tipoAtual = TipoToken.PARENTESE_DIR;
+                break;
+            default:
+                tipoAtual = TipoToken.ERRO;
+                break;
+        }
+    }
 
+    /**
+     * Avança até o próximo caractere que pode começar um token, ou até um espaço. Como as
+     * quebras de linha são espaços, a sequência nunca passa para outra linha
+     */
+    private void pularInvalidos() {
+        int inicio = posicao;
+        while (posicao < limite && invalido(codigo.charAt(posicao))) {
+            posicao++;
+        }
+        coluna += posicao - inicio;
+    }
+
+    /**
+     * Indica se o caractere não é espaço nem pode começar um token
+     */
+    private static boolean invalido(char c) {
+        switch (c) {
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\r':
+            case '\'':
+            case ':':
+            case '=':
+            case ';':
+            case ',':
+            case '.':
+            case '+':
+            case '-':
+            case '*':
+            case '/':
+            case '<':
+            case '>':
+            case '(':
+            case ')':
+                return false;
             default:
-                posicao++;
-                coluna++;
-                erros.add(String.format("ERRO (linha %d, coluna %d): Caractere inválido '%c'",
-                        linhaToken, colunaToken, c));
-                return new Token(TipoToken.ERRO, String.valueOf(c), linhaToken, colunaToken);
+                return !Character.isLetterOrDigit(c);
         }
     }
 
     /**
-     * Lê um número do código
+     * Avança sobre o caractere esperado, se for o próximo do código
      */
-    private Token lerNumero(int linhaToken, int colunaToken) {
-        StringBuilder numero = new StringBuilder();
+    private boolean consumir(char esperado) {
+        if (posicao < limite && codigo.charAt(posicao) == esperado) {
+            posicao++;
+            coluna++;
+            return true;
+        }
+        return false;
+    }
 
-        while (posicao < codigo.length() && Character.isDigit(codigo.charAt(posicao))) {
-            numero.append(codigo.charAt(posicao));
+    /**
+     * Lê um número do código
+     */
+    private void lerNumero() {
+        if (varredura != null) {
+            int fim = varredura.fimDosDigitos(posicao, limite);
+            coluna += fim - posicao;
+            posicao = fim;
+        }
+        // Continua caractere a caractere para os dígitos fora do ASCII
+        while (posicao < limite && Character.isDigit(codigo.charAt(posicao))) {
             posicao++;
             coluna++;
         }
 
-        return new Token(TipoToken.NUMERO, numero.toString(), linhaToken, colunaToken);
+        tipoAtual = TipoToken.NUMERO;
     }
 
     /**
      * Lê um identificador ou palavra reservada
      */
-    private Token lerIdentificadorOuPalavraReservada(int linhaToken, int colunaToken) {
-        StringBuilder palavra = new StringBuilder();
-
-        while (posicao < codigo.length() &&
+    private void lerIdentificadorOuPalavraReservada() {
+        while (posicao < limite &&
                 (Character.isLetterOrDigit(codigo.charAt(posicao)) || codigo.charAt(posicao) == '_')) {
-            palavra.append(codigo.charAt(posicao));
             posicao++;
             coluna++;
         }
 
-        String valor = palavra.toString().toLowerCase();
-
-        // Verifica se é uma palavra reservada
-        if (PALAVRAS_RESERVADAS.containsKey(valor)) {
-            return new Token(PALAVRAS_RESERVADAS.get(valor), valor, linhaToken, colunaToken);
-        }
-
-        // Verifica se é uma palavra reservada com erro de escrita
-        if (PALAVRAS_ERRO.containsKey(valor)) {
-            String palavraCorreta = PALAVRAS_ERRO.get(valor);
-            erros.add(String.format(
-                    "ERRO (linha %d, coluna %d): Palavra reservada '%s' escrita incorretamente. Deveria ser '%s'",
-                    linhaToken, colunaToken, valor, palavraCorreta));
-            return new Token(TipoToken.PALAVRA_RESERVADA_ERRO, valor, linhaToken, colunaToken);
-        }
-
-        // É um identificador
-        return new Token(TipoToken.IDENTIFICADOR, palavra.toString(), linhaToken, colunaToken);
+        // Palavra reservada, palavra reservada com erro de escrita ou identificador
+        TipoToken palavra = PALAVRAS.reconhecer(codigo, inicioAtual, posicao);
+        tipoAtual = palavra != null ? palavra : TipoToken.IDENTIFICADOR;
     }
 
     /**
-     * Lê uma string do código (conteúdo entre aspas simples)
+     * Lê uma string do código (conteúdo entre aspas simples). Uma string sem fechamento
+     * termina antes da quebra de linha ou no fim do arquivo e vira um token ERRO
      */
-    private Token lerString(int linhaToken, int colunaToken) {
-        StringBuilder texto = new StringBuilder();
+    private void lerString() {
         posicao++; // Pula a primeira aspa
         coluna++;
 
-        boolean fechouString = false;
-
-        while (posicao < codigo.length()) {
+        while (posicao < limite) {
             char c = codigo.charAt(posicao);
 
             if (c == '\'') {
                 // Verifica se é uma aspa escapada ('') que representa uma aspa dentro da string
-                if (posicao + 1 < codigo.length() && codigo.charAt(posicao + 1) == '\'') {
-                    texto.append(c);
+                if (posicao + 1 < limite && codigo.charAt(posicao + 1) == '\'') {
                     posicao += 2; // Pula as duas aspas
                     coluna += 2;
                 } else {
                     // É o fim da string
                     posicao++;
                     coluna++;
-                    fechouString = true;
-                    break;
+                    tipoAtual = TipoToken.STRING;
+                    return;
                 }
             } else if (c == '\n' || c == '\r') {
                 // String não foi fechada antes da quebra de linha
-                erros.add(String.format(
-                        "ERRO (linha %d, coluna %d): String não foi fechada antes da quebra de linha",
-                        linhaToken, colunaToken));
-                return new Token(TipoToken.ERRO, texto.toString(), linhaToken, colunaToken);
+                tipoAtual = TipoToken.ERRO;
+                return;
+            } else if (varredura != null) {
+                // Avança de uma vez até a próxima aspa ou quebra de linha
+                int fim = varredura.fimDoTextoString(posicao, limite);
+                coluna += fim - posicao;
+                posicao = fim;
             } else {
-                texto.append(c);
                 posicao++;
                 coluna++;
             }
         }
 
-        if (!fechouString) {
-            erros.add(String.format(
-                    "ERRO (linha %d, coluna %d): String não foi fechada até o fim do arquivo",
-                    linhaToken, colunaToken));
-            return new Token(TipoToken.ERRO, texto.toString(), linhaToken, colunaToken);
-        }
-
-        return new Token(TipoToken.STRING, texto.toString(), linhaToken, colunaToken);
+        tipoAtual = TipoToken.ERRO;
     }
 
     /**
      * Pula espaços em branco e quebras de linha
      */
     private void pularEspacos() {
-        while (posicao < codigo.length()) {
+        while (posicao < limite) {
             char c = codigo.charAt(posicao);
             if (c == ' ' || c == '\t') {
-                posicao++;
-                coluna++;
+                if (varredura != null) {
+                    // Avança de uma vez a sequência de espaços e tabulações
+                    int fim = varredura.fimDosEspacos(posicao, limite);
+                    coluna += fim - posicao;
+                    posicao = fim;
+                } else {
+                    posicao++;
+                    coluna++;
+                }
             } else if (c == '\n' || c == '\r') {
                 posicao++;
                 linha++;
                 coluna = 1;
-                if (c == '\r' && posicao < codigo.length() && codigo.charAt(posicao) == '\n') {
+                if (c == '\r' && posicao < limite && codigo.charAt(posicao) == '\n') {
                     posicao++; // Pula o \n após \r
                 }
             } else {
@@ -331,104 +1276,156 @@ public class AnalisadorLexico {
     }
 
     /**
-     * Realiza análise semântica básica
+     * Calcula o valor de um token a partir do trecho do código que ele ocupa
      */
-    private void analisarSemantica() {
-        // Analisa declarações de variáveis
-        analisarDeclaracoes();
+    static String valorDe(CharSequence codigo, TipoToken tipo, int inicio, int fim) {
+        String palavra = TEXTO_PALAVRAS[tipo.ordinal()];
+        if (palavra != null) {
+            return palavra;
+        }
 
-        // Verifica uso de variáveis não declaradas
-        verificarVariaveisNaoDeclaradas();
+        switch (tipo) {
+            case PALAVRA_RESERVADA_ERRO:
+                return codigo.subSequence(inicio, fim).toString().toLowerCase(Locale.ROOT);
+            case STRING:
+                // Remove as aspas externas
+                return conteudoString(codigo, inicio + 1, fim - 1);
+            case ERRO:
+                // Uma string sem fechamento guarda o conteúdo após a aspa de abertura
+                if (codigo.charAt(inicio) == '\'') {
+                    return conteudoString(codigo, inicio + 1, fim);
+                }
+                return codigo.subSequence(inicio, fim).toString();
+            default:
+                return codigo.subSequence(inicio, fim).toString();
+        }
     }
 
     /**
-     * Analisa as declarações de variáveis
+     * Conteúdo de uma string, trocando cada aspa escapada ('') por uma aspa
      */
-    private void analisarDeclaracoes() {
-        boolean dentroSecaoVar = false;
-        List<String> variaveisDeclaradas = new ArrayList<>();
+    private static String conteudoString(CharSequence codigo, int inicio, int fim) {
+        StringBuilder texto = new StringBuilder(fim - inicio);
+        for (int i = inicio; i < fim; i++) {
+            char c = codigo.charAt(i);
+            texto.append(c);
+            if (c == '\'') {
+                i++;
+            }
+        }
+        return texto.toString();
+    }
 
-        for (int i = 0; i < tokens.size(); i++) {
-            Token token = tokens.get(i);
+    // Getters
 
-            if (token.getTipo() == TipoToken.VAR) {
-                dentroSecaoVar = true;
-                continue;
-            }
+    /**
+     * Mensagens dos diagnósticos, montadas à medida que são lidas
+     */
+    public List<String> getErros() {
+        return diagnosticos.getMensagens();
+    }
 
-            if (token.getTipo() == TipoToken.BEGIN) {
-                dentroSecaoVar = false;
-                continue;
-            }
+    /**
+     * Diagnósticos da análise, onde também são configurados os limites de erros
+     */
+    public Diagnosticos getDiagnosticos() {
+        return diagnosticos;
+    }
 
-            if (dentroSecaoVar && token.getTipo() == TipoToken.IDENTIFICADOR) {
-                variaveisDeclaradas.add(token.getValor());
+    /**
+     * Tokens da última chamada a analisar(), criados sob demanda a partir de getBufferTokens()
+     */
+    public List<Token> getTokens() {
+        return tokens.comoLista();
+    }
 
-                // Procura o tipo após os dois pontos
-                int j = i + 1;
-                while (j < tokens.size() && tokens.get(j).getTipo() != TipoToken.DOIS_PONTOS) {
-                    if (tokens.get(j).getTipo() == TipoToken.IDENTIFICADOR) {
-                        variaveisDeclaradas.add(tokens.get(j).getValor());
-                    }
-                    j++;
-                }
+    public BufferTokens getBufferTokens() {
+        return tokens;
+    }
 
-                if (j < tokens.size() - 1) {
-                    Token tipoToken = tokens.get(j + 1);
-                    String tipo = "indefinido";
-
-                    if (tipoToken.getTipo() == TipoToken.INTEGER) {
-                        tipo = "integer";
-                    } else if (tipoToken.getTipo() == TipoToken.CHAR) {
-                        tipo = "char";
-                    } else if (tipoToken.getTipo() == TipoToken.PALAVRA_RESERVADA_ERRO &&
-                            tipoToken.getValor().equals("intege")) {
-                        tipo = "integer";
-                    }
+    /**
+     * Define se os tokens ficam guardados em getTokens(). Quando só os erros e a tabela de
+     * símbolos interessam, desligar evita manter um registro por token; getTotalTokens()
+     * continua contando. Deve ser chamado antes da análise
+     */
+    public void setGuardarTokens(boolean guardarTokens) {
+        if (totalTokens > 0) {
+            throw new IllegalStateException("A análise já foi iniciada");
+        }
+        this.guardarTokens = guardarTokens;
+    }
 
-                    // Define o tipo para todas as variáveis coletadas
-                    for (String var : variaveisDeclaradas) {
-                        tabelaSimbolos.definirTipo(var, tipo);
-                        // Marca as variáveis como declaradas
-                        tabelaSimbolos.marcarComoDeclarado(var);
-                    }
-                }
+    /**
+     * Número de tokens emitidos até aqui, incluindo o EOF, guardados ou não
+     */
+    public int getTotalTokens() {
+        return totalTokens;
+    }
 
-                i = j + 1; // Pula para depois do tipo
-                variaveisDeclaradas.clear();
-            }
+    /**
+     * Liga ou desliga a varredura em blocos das sequências de espaços, dígitos e strings.
+     * O resultado é o mesmo; desligada, o código é lido um caractere por vez
+     */
+    public void setVarreduraEmBlocos(boolean ativa) {
+        this.varredura = ativa ? VarreduraEmBlocos.para(codigo) : null;
+    }
+
+    /**
+     * Liga a coleta de métricas desta análise, ou a desliga com null. Deve ser chamado antes
+     * da análise
+     */
+    public void setMetricas(MetricasAnalise metricas) {
+        if (totalTokens > 0) {
+            throw new IllegalStateException("A análise já foi iniciada");
         }
+        this.metricas = metricas;
     }
 
     /**
-     * Verifica uso de variáveis não declaradas
+     * Liga o modo de recuperação de erros: cada sequência de caracteres inválidos seguidos
+     * vira um único token ERRO e um único erro, e a varredura continua no próximo caractere
+     * que pode começar um token. Assim, um arquivo com lixo ou na codificação errada não gera
+     * um token e um erro por caractere. Deve ser chamado antes da análise
      */
-    private void verificarVariaveisNaoDeclaradas() {
-        boolean aposBegin = false;
+    public void setRecuperacao(boolean recuperacao) {
+        if (totalTokens > 0) {
+            throw new IllegalStateException("A análise já foi iniciada");
+        }
+        this.recuperacao = recuperacao;
+    }
 
-        for (Token token : tokens) {
-            if (token.getTipo() == TipoToken.BEGIN) {
-                aposBegin = true;
-                continue;
-            }
+    public boolean isRecuperacao() {
+        return recuperacao;
+    }
 
-            if (aposBegin && token.getTipo() == TipoToken.IDENTIFICADOR) {
-                Simbolo simbolo = tabelaSimbolos.buscarSimbolo(token.getValor());
-                if (simbolo == null || !simbolo.isDeclarado()) {
-                    erros.add(String.format("ERRO (linha %d, coluna %d): Variável '%s' não foi declarada",
-                            token.getLinha(), token.getColuna(), token.getValor()));
-                }
-            }
+    /**
+     * Liga a publicação de instantâneos da tabela de símbolos durante a análise, lidos por
+     * outras threads com getTabelaPublicada() enquanto a análise continua. Um instantâneo é
+     * publicado a cada tantos tokens e outro no fim da análise. Deve ser chamado antes da
+     * análise
+     */
+    public void setPublicarTabela(boolean publicarTabela) {
+        if (totalTokens > 0) {
+            throw new IllegalStateException("A análise já foi iniciada");
         }
+        this.publicarTabela = publicarTabela;
+        this.tokensAtePublicacao = INTERVALO_PUBLICACAO;
     }
 
-    // Getters
-    public List<String> getErros() {
-        return erros;
+    /**
+     * Último instantâneo da tabela de símbolos publicado com setPublicarTabela(), ou null se
+     * nenhum foi publicado ainda. Pode ser chamado de qualquer thread
+     */
+    public TabelaSimbolos getTabelaPublicada() {
+        return tabelaPublicada;
     }
 
-    public List<Token> getTokens() {
-        return tokens;
+    public CharSequence getCodigo() {
+        return codigo;
+    }
+
+    public MetricasAnalise getMetricas() {
+        return metricas;
     }
 
     public TabelaSimbolos getTabelaSimbolos() {
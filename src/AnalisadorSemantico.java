@@ -0,0 +1,311 @@
+import java.util.*;
+
+/**
+ * Análise semântica básica realizada de forma incremental, à medida que os tokens são emitidos
+ * @author Diogo Ferreira Saucedo
+ */
+public class AnalisadorSemantico implements ObservadorTokens {
+    // Estados do reconhecimento das declarações de variáveis
+    private static final int FORA_SECAO_VAR = 0;
+    private static final int DENTRO_SECAO_VAR = 1;
+    private static final int LENDO_VARIAVEIS = 2;
+    private static final int AGUARDANDO_TIPO = 3;
+
+    private TabelaSimbolos tabelaSimbolos;
+    private Diagnosticos diagnosticos;
+    private int estado;
+    private boolean aposBegin;
+    // Ids dos nomes das variáveis da declaração atual
+    private int[] variaveisDeclaradas;
+    private int quantidadeVariaveis;
+    // Usos ainda não declarados, em trios (id do nome, linha, coluna); só viram erro se
+    // continuarem assim até o fim do arquivo
+    private int[] usosPendentes;
+    private int quantidadeUsos;
+    // Mantém todos os usos pendentes, na ordem em que apareceram, sem descartar os que foram
+    // declarados depois; as reanálises retomam a lista a partir de um ponto anterior
+    private boolean manterUsos;
+
+    public AnalisadorSemantico(TabelaSimbolos tabelaSimbolos, Diagnosticos diagnosticos) {
+        this.tabelaSimbolos = tabelaSimbolos;
+        this.diagnosticos = diagnosticos;
+        this.estado = FORA_SECAO_VAR;
+        this.aposBegin = false;
+        this.variaveisDeclaradas = new int[8];
+        this.quantidadeVariaveis = 0;
+        this.usosPendentes = new int[3 * 16];
+        this.quantidadeUsos = 0;
+    }
+
+    @Override
+    public void tokenEmitido(Token token) {
+        int idNome = -1;
+        if (token.getTipo() == TipoToken.IDENTIFICADOR) {
+            idNome = tabelaSimbolos.getNomes().registrar(token.getValor());
+        }
+        tokenEmitido(token.getTipo(), idNome, token.getValor(), token.getLinha(), token.getColuna());
+    }
+
+    /**
+     * Processa um token sem precisar do objeto Token. Identificadores são conhecidos pelo id
+     * do nome na tabela de nomes; o valor só é usado para palavras reservadas incorretas e
+     * pode ser null nos demais casos
+     */
+    public void tokenEmitido(TipoToken tipo, int idNome, String valor, int linha, int coluna) {
+        // Analisa declarações de variáveis
+        analisarDeclaracao(tipo, idNome, valor);
+
+        // Verifica uso de variáveis não declaradas
+        verificarUso(tipo, idNome, linha, coluna);
+    }
+
+    @Override
+    public void analiseConcluida() {
+        // Como a marcação de declarado nunca é desfeita, os usos que continuam pendentes são
+        // os mesmos que sobrariam ao descartar os declarados a cada BEGIN
+        for (int i = 0; i < quantidadeUsos; i += 3) {
+            if (!tabelaSimbolos.isDeclarado(usosPendentes[i])) {
+                diagnosticos.adicionar(CodigoDiagnostico.VARIAVEL_NAO_DECLARADA, usosPendentes[i + 1],
+                        usosPendentes[i + 2], tabelaSimbolos.getNomes().getNome(usosPendentes[i]));
+            }
+        }
+        if (!manterUsos) {
+            quantidadeUsos = 0;
+        }
+    }
+
+    /**
+     * Volta ao estado inicial para analisar outro código, mantendo os vetores já alocados
+     */
+    void limpar() {
+        estado = FORA_SECAO_VAR;
+        aposBegin = false;
+        quantidadeVariaveis = 0;
+        quantidadeUsos = 0;
+        manterUsos = false;
+    }
+
+    /**
+     * Mantém todos os usos pendentes até o fim e depois dele, para que uma reanálise possa
+     * retomar a análise de um ponto intermediário com restaurar()
+     */
+    void manterUsos() {
+        manterUsos = true;
+    }
+
+    /**
+     * Estado atual do reconhecimento das declarações e quantos usos pendentes há
+     */
+    Estado capturar() {
+        return new Estado(estado, aposBegin, Arrays.copyOf(variaveisDeclaradas, quantidadeVariaveis),
+                quantidadeUsos);
+    }
+
+    /**
+     * Volta ao estado capturado, com os usos pendentes que a origem tinha naquele momento.
+     * A origem deve manter todos os usos, como em manterUsos()
+     */
+    void restaurar(Estado capturado, AnalisadorSemantico origem) {
+        estado = capturado.estado;
+        aposBegin = capturado.aposBegin;
+        variaveisDeclaradas = Arrays.copyOf(capturado.variaveis, Math.max(capturado.variaveis.length, 8));
+        quantidadeVariaveis = capturado.variaveis.length;
+        usosPendentes = Arrays.copyOf(origem.usosPendentes, Math.max(origem.usosPendentes.length, 3 * 16));
+        quantidadeUsos = capturado.usos;
+    }
+
+    /**
+     * Indica se o reconhecimento das declarações está no estado capturado em outra análise,
+     * o que faz os próximos tokens terem o mesmo efeito. ids leva os ids de nomes da outra
+     * análise aos desta. Os usos pendentes não são comparados
+     */
+    boolean mesmoEstado(Estado capturado, int[] ids) {
+        if (estado != capturado.estado || aposBegin != capturado.aposBegin
+                || quantidadeVariaveis != capturado.variaveis.length) {
+            return false;
+        }
+        for (int i = 0; i < quantidadeVariaveis; i++) {
+            if (variaveisDeclaradas[i] != ids[capturado.variaveis[i]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Passa ao estado final da origem, acrescentando os usos pendentes que ela registrou a
+     * partir de usosDe. ids leva os ids de nomes da origem aos desta análise. As linhas são
+     * deslocadas em deslocamentoLinha, e as colunas da linha linhaColunas em
+     * deslocamentoColuna
+     */
+    void acrescentar(AnalisadorSemantico origem, int usosDe, int deslocamentoLinha, int linhaColunas,
+            int deslocamentoColuna, int[] ids) {
+        estado = origem.estado;
+        aposBegin = origem.aposBegin;
+        variaveisDeclaradas = Arrays.copyOf(origem.variaveisDeclaradas, origem.variaveisDeclaradas.length);
+        quantidadeVariaveis = origem.quantidadeVariaveis;
+        for (int i = 0; i < quantidadeVariaveis; i++) {
+            variaveisDeclaradas[i] = ids[variaveisDeclaradas[i]];
+        }
+        int total = quantidadeUsos + origem.quantidadeUsos - usosDe;
+        if (total > usosPendentes.length) {
+            usosPendentes = Arrays.copyOf(usosPendentes, Math.max(total, usosPendentes.length * 2));
+        }
+        for (int i = usosDe; i < origem.quantidadeUsos; i += 3) {
+            int linha = origem.usosPendentes[i + 1];
+            usosPendentes[quantidadeUsos++] = ids[origem.usosPendentes[i]];
+            usosPendentes[quantidadeUsos++] = linha + deslocamentoLinha;
+            usosPendentes[quantidadeUsos++] = origem.usosPendentes[i + 2]
+                    + (linha == linhaColunas ? deslocamentoColuna : 0);
+        }
+    }
+
+    /**
+     * Descarta os usos pendentes de variáveis que já foram declaradas. É feito a cada BEGIN,
+     * quando as declarações anteriores já foram lidas, e no fim do arquivo. Os usos que
+     * continuam pendentes só viram erro no fim, pois outra seção VAR ainda pode declará-los
+     */
+    private void resolverUsosPendentes() {
+        int restantes = 0;
+        for (int i = 0; i < quantidadeUsos; i += 3) {
+            if (!tabelaSimbolos.isDeclarado(usosPendentes[i])) {
+                usosPendentes[restantes] = usosPendentes[i];
+                usosPendentes[restantes + 1] = usosPendentes[i + 1];
+                usosPendentes[restantes + 2] = usosPendentes[i + 2];
+                restantes += 3;
+            }
+        }
+        quantidadeUsos = restantes;
+    }
+
+    /**
+     * Avança o reconhecimento das declarações de variáveis
+     */
+    private void analisarDeclaracao(TipoToken tipo, int idNome, String valor) {
+        switch (estado) {
+            case FORA_SECAO_VAR:
+            case DENTRO_SECAO_VAR:
+                if (tipo == TipoToken.VAR) {
+                    estado = DENTRO_SECAO_VAR;
+                } else if (tipo == TipoToken.BEGIN) {
+                    estado = FORA_SECAO_VAR;
+                } else if (estado == DENTRO_SECAO_VAR && tipo == TipoToken.IDENTIFICADOR) {
+                    adicionarVariavel(idNome);
+                    estado = LENDO_VARIAVEIS;
+                }
+                break;
+
+            case LENDO_VARIAVEIS:
+                // Coleta os identificadores até os dois pontos
+                if (tipo == TipoToken.DOIS_PONTOS) {
+                    estado = AGUARDANDO_TIPO;
+                } else if (tipo == TipoToken.IDENTIFICADOR) {
+                    adicionarVariavel(idNome);
+                }
+                break;
+
+            case AGUARDANDO_TIPO:
+                TipoSimbolo tipoVariavel = TipoSimbolo.INDEFINIDO;
+
+                if (tipo == TipoToken.INTEGER) {
+                    tipoVariavel = TipoSimbolo.INTEGER;
+                } else if (tipo == TipoToken.CHAR) {
+                    tipoVariavel = TipoSimbolo.CHAR;
+                } else if (tipo == TipoToken.PALAVRA_RESERVADA_ERRO && valor.equals("intege")) {
+                    tipoVariavel = TipoSimbolo.INTEGER;
+                }
+
+                // Define o tipo para todas as variáveis coletadas
+                for (int i = 0; i < quantidadeVariaveis; i++) {
+                    tabelaSimbolos.definirTipo(variaveisDeclaradas[i], tipoVariavel);
+                    // Marca as variáveis como declaradas
+                    tabelaSimbolos.marcarComoDeclarado(variaveisDeclaradas[i]);
+                }
+
+                // O token do tipo é consumido aqui, mesmo que seja VAR ou BEGIN
+                quantidadeVariaveis = 0;
+                estado = DENTRO_SECAO_VAR;
+                break;
+        }
+    }
+
+    /**
+     * Verifica se um identificador usado após o BEGIN já foi declarado
+     */
+    private void verificarUso(TipoToken tipo, int idNome, int linha, int coluna) {
+        if (tipo == TipoToken.BEGIN) {
+            aposBegin = true;
+            if (!manterUsos) {
+                resolverUsosPendentes();
+            }
+            return;
+        }
+
+        if (aposBegin && tipo == TipoToken.IDENTIFICADOR) {
+            // A declaração pode aparecer depois do uso, então a decisão fica para o fim
+            if (!tabelaSimbolos.isDeclarado(idNome)) {
+                if (quantidadeUsos == usosPendentes.length) {
+                    usosPendentes = Arrays.copyOf(usosPendentes, usosPendentes.length * 2);
+                }
+                usosPendentes[quantidadeUsos++] = idNome;
+                usosPendentes[quantidadeUsos++] = linha;
+                usosPendentes[quantidadeUsos++] = coluna;
+            }
+        }
+    }
+
+    private void adicionarVariavel(int idNome) {
+        if (quantidadeVariaveis == variaveisDeclaradas.length) {
+            variaveisDeclaradas = Arrays.copyOf(variaveisDeclaradas, quantidadeVariaveis * 2);
+        }
+        variaveisDeclaradas[quantidadeVariaveis++] = idNome;
+    }
+
+    /**
+     * Estado capturado por capturar(); não muda depois de criado
+     */
+    static final class Estado {
+        private final int estado;
+        private final boolean aposBegin;
+        private final int[] variaveis;
+        private final int usos;
+
+        private Estado(int estado, boolean aposBegin, int[] variaveis, int usos) {
+            this.estado = estado;
+            this.aposBegin = aposBegin;
+            this.variaveis = variaveis;
+            this.usos = usos;
+        }
+
+        /**
+         * Número de posições ocupadas pelos usos pendentes
+         */
+        int getUsos() {
+            return usos;
+        }
+
+        /**
+         * Indica se o nome com o id informado é de uma das variáveis da declaração atual
+         */
+        boolean temVariavel(int id) {
+            for (int variavel : variaveis) {
+                if (variavel == id) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * O mesmo estado em outra análise, com os usos pendentes deslocados em deslocamento
+         * posições e os ids de nomes levados por ids aos da outra análise
+         */
+        Estado deslocado(int deslocamento, int[] ids) {
+            int[] mapeadas = new int[variaveis.length];
+            for (int i = 0; i < variaveis.length; i++) {
+                mapeadas[i] = ids[variaveis[i]];
+            }
+            return new Estado(estado, aposBegin, mapeadas, usos + deslocamento);
+        }
+    }
+}
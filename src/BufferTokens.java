@@ -0,0 +1,240 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Armazena os tokens em vetores paralelos (tipo, posição e trecho do código), sem um objeto
+ * por token. Os objetos Token só são criados quando solicitados
+ * @author Diogo Ferreira Saucedo
+ */
+public class BufferTokens {
+    private static final TipoToken[] TIPOS = TipoToken.values();
+    private static final int CAPACIDADE_INICIAL = 64;
+
+    private CharSequence codigo;
+    // Tabela de nomes dos identificadores; null se o buffer não guarda ids de nomes
+    private TabelaNomes nomes;
+    private int tamanho;
+    private byte[] tipos;
+    private int[] inicios;
+    private int[] comprimentos;
+    private int[] linhas;
+    private int[] colunas;
+    private int[] idsNomes;
+
+    public BufferTokens(CharSequence codigo) {
+        this(codigo, null);
+    }
+
+    /**
+     * Cria um buffer cujos identificadores referenciam a tabela de nomes informada
+     */
+    public BufferTokens(CharSequence codigo, TabelaNomes nomes) {
+        this.codigo = codigo;
+        this.nomes = nomes;
+        this.tamanho = 0;
+        this.tipos = new byte[CAPACIDADE_INICIAL];
+        this.inicios = new int[CAPACIDADE_INICIAL];
+        this.comprimentos = new int[CAPACIDADE_INICIAL];
+        this.linhas = new int[CAPACIDADE_INICIAL];
+        this.colunas = new int[CAPACIDADE_INICIAL];
+        this.idsNomes = new int[CAPACIDADE_INICIAL];
+    }
+
+    /**
+     * Garante espaço para pelo menos capacidade tokens, sem realocações ao adicioná-los
+     */
+    void reservar(int capacidade) {
+        if (capacidade > tipos.length) {
+            redimensionar(capacidade);
+        }
+    }
+
+    /**
+     * Adiciona um token que ocupa o trecho [inicio, fim) do código
+     */
+    public void adicionar(TipoToken tipo, int inicio, int fim, int linha, int coluna) {
+        adicionar(tipo, inicio, fim, linha, coluna, -1);
+    }
+
+    /**
+     * Adiciona um token que ocupa o trecho [inicio, fim) do código, com o id do seu nome na
+     * tabela de nomes (-1 se não for um identificador)
+     */
+    public void adicionar(TipoToken tipo, int inicio, int fim, int linha, int coluna, int idNome) {
+        if (tamanho == tipos.length) {
+            crescer();
+        }
+        tipos[tamanho] = (byte) tipo.ordinal();
+        inicios[tamanho] = inicio;
+        comprimentos[tamanho] = fim - inicio;
+        linhas[tamanho] = linha;
+        colunas[tamanho] = coluna;
+        idsNomes[tamanho] = idNome;
+        tamanho++;
+    }
+
+    /**
+     * Acrescenta os tokens [de, ate) de outro buffer, com as posições no código deslocadas em
+     * deslocamento, as linhas em deslocamentoLinha e as colunas da linha linhaColunas em
+     * deslocamentoColuna. Os ids dos nomes são levados por ids aos deste buffer, ou copiados
+     * como estão se ids for null
+     */
+    void acrescentar(BufferTokens origem, int de, int ate, int deslocamento, int deslocamentoLinha,
+            int linhaColunas, int deslocamentoColuna, int[] ids) {
+        int quantidade = ate - de;
+        reservar(tamanho + quantidade);
+        System.arraycopy(origem.tipos, de, tipos, tamanho, quantidade);
+        System.arraycopy(origem.inicios, de, inicios, tamanho, quantidade);
+        System.arraycopy(origem.comprimentos, de, comprimentos, tamanho, quantidade);
+        System.arraycopy(origem.linhas, de, linhas, tamanho, quantidade);
+        System.arraycopy(origem.colunas, de, colunas, tamanho, quantidade);
+        System.arraycopy(origem.idsNomes, de, idsNomes, tamanho, quantidade);
+        int fim = tamanho + quantidade;
+        for (int i = tamanho; i < fim && linhas[i] == linhaColunas; i++) {
+            colunas[i] += deslocamentoColuna;
+        }
+        if (deslocamento != 0 || deslocamentoLinha != 0) {
+            for (int i = tamanho; i < fim; i++) {
+                inicios[i] += deslocamento;
+                linhas[i] += deslocamentoLinha;
+            }
+        }
+        if (ids != null) {
+            for (int i = tamanho; i < fim; i++) {
+                if (idsNomes[i] >= 0) {
+                    idsNomes[i] = ids[idsNomes[i]];
+                }
+            }
+        }
+        tamanho = fim;
+    }
+
+    /**
+     * Esvazia o buffer para os tokens de outro código, mantendo os vetores já alocados
+     */
+    void limpar(CharSequence codigo) {
+        this.codigo = codigo;
+        this.tamanho = 0;
+    }
+
+    /**
+     * Capacidade atual, em tokens
+     */
+    int capacidade() {
+        return tipos.length;
+    }
+
+    private void crescer() {
+        redimensionar(tipos.length + (tipos.length >> 1));
+    }
+
+    private void redimensionar(int novaCapacidade) {
+        tipos = Arrays.copyOf(tipos, novaCapacidade);
+        inicios = Arrays.copyOf(inicios, novaCapacidade);
+        comprimentos = Arrays.copyOf(comprimentos, novaCapacidade);
+        linhas = Arrays.copyOf(linhas, novaCapacidade);
+        colunas = Arrays.copyOf(colunas, novaCapacidade);
+        idsNomes = Arrays.copyOf(idsNomes, novaCapacidade);
+    }
+
+    public int tamanho() {
+        return tamanho;
+    }
+
+    public TipoToken getTipo(int indice) {
+        verificarIndice(indice);
+        return TIPOS[tipos[indice]];
+    }
+
+    public int getInicio(int indice) {
+        verificarIndice(indice);
+        return inicios[indice];
+    }
+
+    public int getFim(int indice) {
+        verificarIndice(indice);
+        return inicios[indice] + comprimentos[indice];
+    }
+
+    public int getLinha(int indice) {
+        verificarIndice(indice);
+        return linhas[indice];
+    }
+
+    public int getColuna(int indice) {
+        verificarIndice(indice);
+        return colunas[indice];
+    }
+
+    /**
+     * Id do nome do token na tabela de nomes, ou -1 se não for um identificador
+     */
+    public int getIdNome(int indice) {
+        verificarIndice(indice);
+        return idsNomes[indice];
+    }
+
+    /**
+     * Índice do primeiro token que começa em posicao ou depois dela (busca binária, já que os
+     * tokens estão em ordem), ou tamanho() se não houver
+     */
+    public int primeiroAPartirDe(int posicao) {
+        int baixo = 0;
+        int alto = tamanho;
+        while (baixo < alto) {
+            int meio = (baixo + alto) >>> 1;
+            if (inicios[meio] < posicao) {
+                baixo = meio + 1;
+            } else {
+                alto = meio;
+            }
+        }
+        return baixo;
+    }
+
+    /**
+     * Valor do token, calculado a partir do trecho do código. Identificadores usam a String
+     * única da tabela de nomes
+     */
+    public String getValor(int indice) {
+        if (nomes != null && getIdNome(indice) >= 0) {
+            return nomes.getNome(idsNomes[indice]);
+        }
+        return AnalisadorLexico.valorDe(codigo, getTipo(indice), inicios[indice],
+                inicios[indice] + comprimentos[indice]);
+    }
+
+    /**
+     * Cria o objeto Token para a posição informada
+     */
+    public Token getToken(int indice) {
+        return new Token(getTipo(indice), getValor(indice), linhas[indice], colunas[indice]);
+    }
+
+    /**
+     * Visão somente leitura do buffer como lista de Token
+     */
+    public List<Token> comoLista() {
+        return new VisaoTokens();
+    }
+
+    private void verificarIndice(int indice) {
+        if (indice < 0 || indice >= tamanho) {
+            throw new IndexOutOfBoundsException("Índice: " + indice + ", tamanho: " + tamanho);
+        }
+    }
+
+    private class VisaoTokens extends AbstractList<Token> implements RandomAccess {
+        @Override
+        public Token get(int indice) {
+            return getToken(indice);
+        }
+
+        @Override
+        public int size() {
+            return tamanho;
+        }
+    }
+}
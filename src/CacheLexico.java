@@ -0,0 +1,328 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Cache em disco dos resultados da análise (tokens, tabela de símbolos e diagnósticos),
+ * indexado pelo hash SHA-256 do conteúdo do arquivo. Arquivos que não mudaram entre duas
+ * execuções são carregados do cache em vez de analisados novamente.
+ *
+ * Cada resultado fica em um arquivo próprio no diretório do cache, no formato de
+ * FormatoBinario, em que cada valor distinto de token é gravado uma única vez. O tamanho
+ * total é limitado, descartando os resultados usados há mais tempo (LRU, pela data de
+ * modificação, que é atualizada a cada acerto). Todos os resultados são invalidados quando a versão do
+ * analisador ou as tabelas de palavras reservadas mudam (AnalisadorLexico.impressaoDigital()).
+ * Pode ser usado por várias threads ao mesmo tempo
+ * @author Diogo Ferreira Saucedo
+ */
+public class CacheLexico {
+    public static final long TAMANHO_MAXIMO_PADRAO = 256L << 20;
+
+    private static final String EXTENSAO = ".lex";
+    private static final String EXTENSAO_TEMPORARIA = ".tmp";
+    // Guarda a impressão digital do analisador que gerou os resultados do diretório
+    private static final String ARQUIVO_VERSAO = "versao";
+
+    private final Path diretorio;
+    private final long tamanhoMaximo;
+    private final long impressaoDigital;
+    // Resultados em ordem de uso, do mais antigo ao mais recente, com o tamanho de cada um
+    private final LinkedHashMap<String, Long> entradas;
+    private long tamanhoTotal;
+    private final AtomicInteger acertos;
+    private final AtomicInteger falhas;
+
+    public CacheLexico(Path diretorio) throws IOException {
+        this(diretorio, TAMANHO_MAXIMO_PADRAO);
+    }
+
+    /**
+     * Abre (ou cria) o cache no diretório informado, limitado a tamanhoMaximo bytes
+     */
+    public CacheLexico(Path diretorio, long tamanhoMaximo) throws IOException {
+        if (tamanhoMaximo <= 0) {
+            throw new IllegalArgumentException("O tamanho máximo do cache deve ser positivo");
+        }
+        this.diretorio = diretorio;
+        this.tamanhoMaximo = tamanhoMaximo;
+        this.impressaoDigital = AnalisadorLexico.impressaoDigital();
+        this.entradas = new LinkedHashMap<>(16, 0.75f, true);
+        this.tamanhoTotal = 0;
+        this.acertos = new AtomicInteger();
+        this.falhas = new AtomicInteger();
+
+        Files.createDirectories(diretorio);
+        if (!versaoAtual()) {
+            limpar();
+            Files.write(diretorio.resolve(ARQUIVO_VERSAO),
+                    Long.toHexString(impressaoDigital).getBytes(StandardCharsets.US_ASCII));
+        }
+        carregarIndice();
+        // O limite pode ser menor que o usado nas execuções anteriores
+        apagar(descartarAntigas());
+    }
+
+    /**
+     * Retorna a análise concluída do arquivo, do cache se o mesmo conteúdo já foi analisado
+     * com a mesma codificação e a mesma configuração, ou analisando-o e guardando o resultado
+     */
+    public AnalisadorLexico analisar(Path arquivo, Charset codificacao, Diagnosticos configuracao,
+            boolean guardarTokens) throws IOException {
+        return analisar(arquivo, codificacao, configuracao, guardarTokens, false, null);
+    }
+
+    /**
+     * Mesmo que o anterior, no modo de recuperação de AnalisadorLexico quando informado, que
+     * também recusa arquivos binários, e coletando as métricas quando o arquivo precisa ser
+     * analisado; resultados vindos do cache não alteram as métricas
+     */
+    public AnalisadorLexico analisar(Path arquivo, Charset codificacao, Diagnosticos configuracao,
+            boolean guardarTokens, boolean recuperacao, MetricasAnalise metricas) throws IOException {
+        MappedByteBuffer mapeado = FonteArquivo.mapear(arquivo);
+        if (recuperacao) {
+            FonteArquivo.verificarTexto(mapeado, codificacao);
+        }
+        String chave = calcularChave(mapeado, codificacao, configuracao, guardarTokens, recuperacao);
+
+        AnalisadorLexico analisador = carregar(chave, mapeado, codificacao);
+        if (analisador != null) {
+            acertos.incrementAndGet();
+            return analisador;
+        }
+
+        falhas.incrementAndGet();
+        analisador = new AnalisadorLexico(FonteArquivo.ler(mapeado.duplicate(), codificacao));
+        analisador.getDiagnosticos().copiarConfiguracao(configuracao);
+        analisador.setGuardarTokens(guardarTokens);
+        analisador.setRecuperacao(recuperacao);
+        analisador.setMetricas(metricas);
+        analisador.analisar();
+        gravar(chave, analisador);
+        return analisador;
+    }
+
+    /**
+     * Número de análises carregadas do cache
+     */
+    public int getAcertos() {
+        return acertos.get();
+    }
+
+    /**
+     * Número de análises que não estavam no cache e foram feitas
+     */
+    public int getFalhas() {
+        return falhas.get();
+    }
+
+    /**
+     * Tamanho, em bytes, dos resultados guardados
+     */
+    public synchronized long getTamanhoTotal() {
+        return tamanhoTotal;
+    }
+
+    /**
+     * Chave do resultado: o hash do conteúdo junto com tudo que altera o resultado
+     */
+    private static String calcularChave(ByteBuffer conteudo, Charset codificacao, Diagnosticos configuracao,
+            boolean guardarTokens, boolean recuperacao) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Toda JVM é obrigada a oferecer SHA-256
+            throw new IllegalStateException(e);
+        }
+        digest.update(conteudo.duplicate());
+        String parametros = codificacao.name() + "|" + configuracao.getMaximo() + "|"
+                + configuracao.getMaximoPorCodigo() + "|" + configuracao.isAgruparIguais() + "|" + guardarTokens
+                + (recuperacao ? "|recuperacao" : "");
+        digest.update(parametros.getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder hexadecimal = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hexadecimal.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hexadecimal.toString();
+    }
+
+    /**
+     * Lê o resultado guardado com a chave, ou retorna null se ele não existir ou não for
+     * válido para esta versão do analisador
+     */
+    private AnalisadorLexico carregar(String chave, ByteBuffer conteudo, Charset codificacao) throws IOException {
+        synchronized (this) {
+            // get() também move a entrada para o fim da ordem de uso
+            if (entradas.get(chave) == null) {
+                return null;
+            }
+        }
+
+        Path arquivo = diretorio.resolve(chave + EXTENSAO);
+        ByteBuffer dados;
+        try {
+            dados = ByteBuffer.wrap(Files.readAllBytes(arquivo));
+            // Marca o uso para a ordem do LRU também nas próximas execuções
+            Files.setLastModifiedTime(arquivo, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            // Removido por outro processo que usa o mesmo diretório
+            remover(chave);
+            return null;
+        }
+
+        try {
+            LeitorBinario leitor = new LeitorBinario(dados);
+            if (leitor.getImpressaoDigital() != impressaoDigital) {
+                remover(chave);
+                return null;
+            }
+            // Os valores dos tokens vêm do código, que só é lido se houver tokens guardados
+            CharSequence codigo = leitor.getQuantidadeTokens() > 0
+                    ? FonteArquivo.ler(conteudo.duplicate(), codificacao) : "";
+            return leitor.lerAnalise(codigo);
+        } catch (IllegalArgumentException e) {
+            // Arquivo truncado ou corrompido
+            remover(chave);
+            return null;
+        }
+    }
+
+    /**
+     * Grava o resultado da análise com a chave e descarta os resultados mais antigos se o
+     * limite de tamanho for ultrapassado. Falhas de escrita só deixam de guardar o resultado
+     */
+    private void gravar(String chave, AnalisadorLexico analisador) {
+        ByteBuffer dados;
+        try {
+            dados = EscritorBinario.paraBuffer(analisador);
+        } catch (IllegalArgumentException e) {
+            // Resultado com algum dado que o formato não representa
+            return;
+        }
+        int tamanho = dados.remaining();
+
+        Path arquivo = diretorio.resolve(chave + EXTENSAO);
+        Path temporario = diretorio.resolve(chave + "." + Thread.currentThread().getId() + EXTENSAO_TEMPORARIA);
+        try {
+            Files.write(temporario, Arrays.copyOfRange(dados.array(), dados.position(), dados.limit()));
+            Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temporario);
+            } catch (IOException ignorada) {
+                // Será removido na próxima abertura do cache
+            }
+            return;
+        }
+
+        List<String> descartadas;
+        synchronized (this) {
+            Long anterior = entradas.put(chave, (long) tamanho);
+            tamanhoTotal += tamanho - (anterior == null ? 0 : anterior);
+            descartadas = descartarAntigas();
+        }
+        apagar(descartadas);
+    }
+
+    /**
+     * Retira do índice as entradas usadas há mais tempo até o total caber no limite, e
+     * retorna as chaves retiradas. Deve ser chamado com o lock do cache
+     */
+    private List<String> descartarAntigas() {
+        List<String> descartadas = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> antigas = entradas.entrySet().iterator();
+        while (tamanhoTotal > tamanhoMaximo && antigas.hasNext()) {
+            Map.Entry<String, Long> antiga = antigas.next();
+            tamanhoTotal -= antiga.getValue();
+            descartadas.add(antiga.getKey());
+            antigas.remove();
+        }
+        return descartadas;
+    }
+
+    private void apagar(List<String> descartadas) {
+        for (String descartada : descartadas) {
+            try {
+                Files.deleteIfExists(diretorio.resolve(descartada + EXTENSAO));
+            } catch (IOException e) {
+                // Arquivo em uso ou já removido; o índice já não o considera
+            }
+        }
+    }
+
+    private synchronized void remover(String chave) {
+        Long tamanho = entradas.remove(chave);
+        if (tamanho != null) {
+            tamanhoTotal -= tamanho;
+        }
+        try {
+            Files.deleteIfExists(diretorio.resolve(chave + EXTENSAO));
+        } catch (IOException e) {
+            // O índice já não considera o arquivo
+        }
+    }
+
+    /**
+     * Indica se os resultados do diretório foram gerados por esta versão do analisador
+     */
+    private boolean versaoAtual() throws IOException {
+        Path arquivo = diretorio.resolve(ARQUIVO_VERSAO);
+        if (!Files.isRegularFile(arquivo)) {
+            return false;
+        }
+        String gravada = new String(Files.readAllBytes(arquivo), StandardCharsets.US_ASCII).trim();
+        return gravada.equals(Long.toHexString(impressaoDigital));
+    }
+
+    /**
+     * Remove todos os resultados e arquivos temporários do diretório
+     */
+    private void limpar() throws IOException {
+        try (Stream<Path> arquivos = Files.list(diretorio)) {
+            for (Path arquivo : (Iterable<Path>) arquivos::iterator) {
+                String nome = arquivo.getFileName().toString();
+                if (nome.endsWith(EXTENSAO) || nome.endsWith(EXTENSAO_TEMPORARIA)) {
+                    Files.deleteIfExists(arquivo);
+                }
+            }
+        }
+    }
+
+    /**
+     * Monta a ordem do LRU a partir das datas de modificação dos resultados guardados, e
+     * remove os temporários deixados por execuções interrompidas
+     */
+    private void carregarIndice() throws IOException {
+        List<Path> resultados = new ArrayList<>();
+        Map<Path, Long> modificacoes = new HashMap<>();
+        try (Stream<Path> arquivos = Files.list(diretorio)) {
+            for (Path arquivo : (Iterable<Path>) arquivos::iterator) {
+                String nome = arquivo.getFileName().toString();
+                if (nome.endsWith(EXTENSAO_TEMPORARIA)) {
+                    Files.deleteIfExists(arquivo);
+                } else if (nome.endsWith(EXTENSAO)) {
+                    resultados.add(arquivo);
+                    modificacoes.put(arquivo, Files.getLastModifiedTime(arquivo).toMillis());
+                }
+            }
+        }
+        resultados.sort(Comparator.comparing(modificacoes::get));
+
+        for (Path arquivo : resultados) {
+            String nome = arquivo.getFileName().toString();
+            long tamanho = Files.size(arquivo);
+            entradas.put(nome.substring(0, nome.length() - EXTENSAO.length()), tamanho);
+            tamanhoTotal += tamanho;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cliente do modo servidor: envia os arquivos para o ServidorLexico local e escreve os
+ * relatórios no console à medida que chegam. Não carrega o analisador, então cada execução
+ * custa só a inicialização da JVM e a ida e volta pela conexão. As opções de análise são
+ * repassadas ao servidor. Para encerrá-lo, lê o token que o servidor gravou no diretório do
+ * usuário
+ *
+ * Uso: java ClienteLexico [--porta=N] [--formato=console|texto|json|csv] [--codificacao=NOME]
+ *                         [--max-erros=N] [--max-por-codigo=N] [--agrupar-iguais] [--resumo]
+ *                         [--somente-erros] [--recuperar] <arquivo>...
+ *      java ClienteLexico [--porta=N] --estado | --encerrar
+ * @author Diogo Ferreira Saucedo
+ */
+public class ClienteLexico implements Closeable {
+    private final Socket socket;
+    private final DataInputStream entrada;
+    private final DataOutputStream saida;
+
+    /**
+     * Conecta ao servidor na porta local informada
+     */
+    public ClienteLexico(int porta) throws IOException {
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), porta);
+        socket.setTcpNoDelay(true);
+        this.entrada = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        this.saida = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+    }
+
+    public static void main(String[] args) {
+        int porta = ProtocoloServidor.PORTA_PADRAO;
+        byte comando = ProtocoloServidor.ANALISAR;
+        List<String> opcoes = new ArrayList<>();
+        List<String> arquivos = new ArrayList<>();
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--porta=")) {
+                    porta = Integer.parseInt(arg.substring("--porta=".length()));
+                } else if (arg.equals("--estado")) {
+                    comando = ProtocoloServidor.ESTADO;
+                } else if (arg.equals("--encerrar")) {
+                    comando = ProtocoloServidor.ENCERRAR;
+                } else if (arg.startsWith("--")) {
+                    opcoes.add(arg);
+                } else {
+                    arquivos.add(arg);
+                }
+            }
+            if (comando == ProtocoloServidor.ANALISAR && arquivos.isEmpty()) {
+                throw new IllegalArgumentException("Informe ao menos um arquivo");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Uso: java ClienteLexico [--porta=N] [--formato=console|texto|json|csv] [opções da análise] "
+                    + "<arquivo>... | --estado | --encerrar");
+            System.exit(2);
+        }
+
+        String token = null;
+        if (comando == ProtocoloServidor.ENCERRAR) {
+            Path arquivoToken = ProtocoloServidor.arquivoToken(porta);
+            try {
+                token = new String(Files.readAllBytes(arquivoToken), StandardCharsets.US_ASCII).trim();
+            } catch (NoSuchFileException e) {
+                System.err.println("Token do servidor não encontrado em " + arquivoToken
+                        + ": o servidor não está ativo na porta " + porta + " ou é de outro usuário");
+                System.exit(2);
+            } catch (IOException e) {
+                System.err.println("Erro ao ler o token do servidor: " + e.getMessage());
+                System.exit(2);
+            }
+        }
+
+        int falhas = 0;
+        try (ClienteLexico cliente = new ClienteLexico(porta)) {
+            if (comando == ProtocoloServidor.ENCERRAR) {
+                falhas += cliente.exibir(cliente.encerrar(token), System.out);
+            } else if (comando == ProtocoloServidor.ESTADO) {
+                falhas += cliente.exibir(cliente.enviarComando(comando), System.out);
+            }
+            for (String arquivo : arquivos) {
+                byte[] codigo;
+                try {
+                    codigo = Files.readAllBytes(Paths.get(arquivo));
+                } catch (IOException e) {
+                    System.err.println("Erro ao ler o arquivo: " + e.getMessage());
+                    falhas++;
+                    continue;
+                }
+                falhas += cliente.exibir(cliente.analisar(arquivo, codigo, opcoes), System.out);
+            }
+        } catch (IOException e) {
+            System.err.println("Erro na conexão com o servidor na porta " + porta + ": " + e.getMessage());
+            System.exit(2);
+        }
+        System.exit(falhas > 0 ? 1 : 0);
+    }
+
+    /**
+     * Envia o código para análise e retorna a resposta, cujo texto deve ser lido (ou
+     * descartado com close()) antes da próxima requisição
+     */
+    public Resposta analisar(String nomeArquivo, byte[] codigo, List<String> opcoes) throws IOException {
+        saida.writeInt(ProtocoloServidor.ASSINATURA);
+        saida.writeByte(ProtocoloServidor.ANALISAR);
+        saida.writeUTF(nomeArquivo);
+        saida.writeShort(opcoes.size());
+        for (String opcao : opcoes) {
+            saida.writeUTF(opcao);
+        }
+        saida.writeInt(codigo.length);
+        saida.write(codigo);
+        saida.flush();
+        return new Resposta(entrada);
+    }
+
+    /**
+     * Envia um comando sem argumentos, como ESTADO
+     */
+    public Resposta enviarComando(byte comando) throws IOException {
+        saida.writeInt(ProtocoloServidor.ASSINATURA);
+        saida.writeByte(comando);
+        saida.flush();
+        return new Resposta(entrada);
+    }
+
+    /**
+     * Pede o encerramento do servidor com o token lido de ProtocoloServidor.arquivoToken()
+     */
+    public Resposta encerrar(String token) throws IOException {
+        saida.writeInt(ProtocoloServidor.ASSINATURA);
+        saida.writeByte(ProtocoloServidor.ENCERRAR);
+        saida.writeUTF(token);
+        saida.flush();
+        return new Resposta(entrada);
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Copia o texto da resposta para o destino e exibe a falha, se houver. Retorna 1 em caso
+     * de falha e 0 em caso de sucesso
+     */
+    private int exibir(Resposta resposta, PrintStream destino) throws IOException {
+        try (Reader texto = resposta.getTexto()) {
+            char[] bloco = new char[8192];
+            int lidos;
+            while ((lidos = texto.read(bloco)) >= 0) {
+                destino.append(CharBuffer.wrap(bloco, 0, lidos));
+            }
+        }
+        destino.flush();
+        if (!resposta.isSucesso()) {
+            System.err.println("Falha no servidor: " + resposta.getFalha());
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Resposta do servidor: o texto, lido à medida que chega, e depois o status
+     */
+    public static class Resposta {
+        private final DataInputStream entrada;
+        private final Reader texto;
+        private boolean concluida;
+        private boolean sucesso;
+        private int totalTokens;
+        private int totalErros;
+        private String falha;
+
+        Resposta(DataInputStream entrada) {
+            this.entrada = entrada;
+            this.texto = new InputStreamReader(new ProtocoloServidor.EntradaEmBlocos(entrada), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Texto da resposta (o relatório, no formato pedido). Fechá-lo descarta o que não
+         * foi lido
+         */
+        public Reader getTexto() {
+            return texto;
+        }
+
+        public boolean isSucesso() throws IOException {
+            concluir();
+            return sucesso;
+        }
+
+        public int getTotalTokens() throws IOException {
+            concluir();
+            return totalTokens;
+        }
+
+        public int getTotalErros() throws IOException {
+            concluir();
+            return totalErros;
+        }
+
+        /**
+         * Mensagem do servidor quando a requisição falhou
+         */
+        public String getFalha() throws IOException {
+            concluir();
+            return falha;
+        }
+
+        /**
+         * Descarta o texto não lido e lê o status
+         */
+        private void concluir() throws IOException {
+            if (concluida) {
+                return;
+            }
+            texto.close();
+            sucesso = entrada.readByte() == ProtocoloServidor.SUCESSO;
+            if (sucesso) {
+                totalTokens = entrada.readInt();
+                totalErros = entrada.readInt();
+            } else {
+                falha = entrada.readUTF();
+            }
+            concluida = true;
+        }
+    }
+}
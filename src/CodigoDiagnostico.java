@@ -0,0 +1,37 @@
+/**
+ * Tipos de diagnóstico emitidos pela análise, com a gravidade e o modelo da mensagem.
+ * Os argumentos do modelo são guardados no Diagnostico e só formatados quando exibidos
+ * @author Diogo Ferreira Saucedo
+ */
+public enum CodigoDiagnostico {
+    ATRIBUICAO_INCORRETA(Diagnostico.Severidade.ERRO,
+            "Uso incorreto de '=' para atribuição. Use ':=' em Pascal."),
+    PALAVRA_RESERVADA_INCORRETA(Diagnostico.Severidade.ERRO,
+            "Palavra reservada '%s' escrita incorretamente. Deveria ser '%s'"),
+    CARACTERE_INVALIDO(Diagnostico.Severidade.ERRO, "Caractere inválido '%c'"),
+    STRING_NAO_FECHADA_NA_LINHA(Diagnostico.Severidade.ERRO,
+            "String não foi fechada antes da quebra de linha"),
+    STRING_NAO_FECHADA_NO_ARQUIVO(Diagnostico.Severidade.ERRO,
+            "String não foi fechada até o fim do arquivo"),
+    VARIAVEL_NAO_DECLARADA(Diagnostico.Severidade.ERRO, "Variável '%s' não foi declarada"),
+    // Resumo das ocorrências descartadas pelos limites de Diagnosticos
+    DIAGNOSTICOS_OMITIDOS(Diagnostico.Severidade.AVISO, "%d ocorrência(s) de %s omitida(s) pelo limite de erros"),
+    // Só no modo de recuperação; fica por último porque o formato binário grava o ordinal
+    CARACTERES_INVALIDOS(Diagnostico.Severidade.ERRO, "Sequência de %d caracteres inválidos a partir de '%c'");
+
+    private final Diagnostico.Severidade severidade;
+    private final String modelo;
+
+    CodigoDiagnostico(Diagnostico.Severidade severidade, String modelo) {
+        this.severidade = severidade;
+        this.modelo = modelo;
+    }
+
+    public Diagnostico.Severidade getSeveridade() {
+        return severidade;
+    }
+
+    public String getModelo() {
+        return modelo;
+    }
+}
@@ -0,0 +1,458 @@
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Modo em lote: analisa vários arquivos em paralelo, gerando um relatório por arquivo
+ * e um resumo geral. Cada arquivo usa o seu próprio AnalisadorLexico
+ *
+ * Uso: java CompiladorMain --lote [--threads=N] [--padrao=GLOB] [--saida=DIR]
+ *                                 [--codificacao=NOME] [--max-erros=N] [--max-por-codigo=N]
+ *                                 [--agrupar-iguais] [--somente-erros] [--cache=DIR] [--cache-max=MB]
+ *                                 [--binario] [--saidas=texto,json,csv] [--resumo] [--metricas]
+ *                                 [--recuperar] <arquivo|diretório|glob>...
+ * @author Diogo Ferreira Saucedo
+ */
+public class CompiladorLote {
+    // Arquivos considerados ao percorrer um diretório
+    static final String PADRAO_PADRAO = "*.{pas,txt}";
+    private static final String NOME_RESUMO = "relatorio_lote.txt";
+    private static final String NOME_METRICAS = "metricas_lote.json";
+    // Seguido da extensão de cada formato de relatório
+    private static final String SUFIXO_RELATORIO = ".relatorio";
+    private static final String SUFIXO_BINARIO = ".tokens.lxb";
+
+    private int threads;
+    private String padrao;
+    private Path diretorioSaida;
+    private Charset codificacao;
+    private Diagnosticos configuracaoDiagnosticos;
+    // Relatórios só com estatísticas, símbolos e erros, sem guardar os tokens
+    private boolean somenteErros;
+    // Cache dos resultados por conteúdo; null analisa todos os arquivos
+    private Path diretorioCache;
+    private long tamanhoMaximoCache;
+    private CacheLexico cache;
+    // Analisadores reaproveitados entre os arquivos analisados sem o cache
+    private PoolAnalisadores pool;
+    // Grava também o resultado de cada arquivo no formato binário
+    private boolean gravarBinario;
+    // Formatos dos relatórios de cada arquivo
+    private Set<FormatoRelatorio> saidas;
+    // Relatórios só com as estatísticas e os erros
+    private boolean resumo;
+    // Coleta as métricas de cada análise em MetricasLexico.global(), também visível via JMX
+    private boolean metricas;
+    // Modo de recuperação de AnalisadorLexico; arquivos binários falham sem ser analisados
+    private boolean recuperar;
+    private List<String> caminhos;
+
+    public CompiladorLote() {
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.padrao = PADRAO_PADRAO;
+        this.diretorioSaida = null;
+        this.codificacao = FonteArquivo.CODIFICACAO_PADRAO;
+        this.configuracaoDiagnosticos = new Diagnosticos();
+        this.somenteErros = false;
+        this.diretorioCache = null;
+        this.tamanhoMaximoCache = CacheLexico.TAMANHO_MAXIMO_PADRAO;
+        this.cache = null;
+        this.pool = null;
+        this.gravarBinario = false;
+        this.saidas = EnumSet.of(FormatoRelatorio.TEXTO);
+        this.resumo = false;
+        this.metricas = false;
+        this.recuperar = false;
+        this.caminhos = new ArrayList<>();
+    }
+
+    /**
+     * Ponto de entrada do modo em lote, com os argumentos após "--lote"
+     */
+    public static void executar(String[] args) {
+        CompiladorLote lote = new CompiladorLote();
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--threads=")) {
+                    lote.threads = Integer.parseInt(arg.substring("--threads=".length()));
+                } else if (arg.startsWith("--padrao=")) {
+                    lote.padrao = arg.substring("--padrao=".length());
+                } else if (arg.startsWith("--saida=")) {
+                    lote.diretorioSaida = Paths.get(arg.substring("--saida=".length()));
+                } else if (arg.startsWith("--codificacao=")) {
+                    lote.codificacao = Charset.forName(arg.substring("--codificacao=".length()));
+                } else if (arg.equals("--somente-erros")) {
+                    lote.somenteErros = true;
+                } else if (arg.startsWith("--cache=")) {
+                    lote.diretorioCache = Paths.get(arg.substring("--cache=".length()));
+                } else if (arg.equals("--binario")) {
+                    lote.gravarBinario = true;
+                } else if (arg.startsWith("--saidas=")) {
+                    lote.saidas = FormatoRelatorio.deLista(arg.substring("--saidas=".length()));
+                } else if (arg.equals("--resumo")) {
+                    lote.resumo = true;
+                } else if (arg.equals("--metricas")) {
+                    lote.metricas = true;
+                } else if (arg.equals("--recuperar")) {
+                    lote.recuperar = true;
+                } else if (arg.startsWith("--cache-max=")) {
+                    lote.tamanhoMaximoCache = Long.parseLong(arg.substring("--cache-max=".length())) << 20;
+                } else if (lote.configuracaoDiagnosticos.configurarOpcao(arg)) {
+                    // Limites de erros, aplicados a cada arquivo
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Opção desconhecida: " + arg);
+                } else {
+                    lote.caminhos.add(arg);
+                }
+            }
+            if (lote.tamanhoMaximoCache <= 0) {
+                throw new IllegalArgumentException("O tamanho máximo do cache deve ser positivo");
+            }
+            if (lote.saidas.contains(FormatoRelatorio.CONSOLE)) {
+                throw new IllegalArgumentException("O modo em lote não gera relatórios no console");
+            }
+            if (lote.threads < 1) {
+                throw new IllegalArgumentException("O número de threads deve ser positivo");
+            }
+            if (lote.caminhos.isEmpty()) {
+                throw new IllegalArgumentException("Informe ao menos um arquivo, diretório ou glob");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Uso: java CompiladorMain --lote [--threads=N] [--padrao=GLOB] [--saida=DIR] "
+                    + "[--codificacao=NOME] [--max-erros=N] [--max-por-codigo=N] "
+                    + "[--agrupar-iguais] [--somente-erros] [--cache=DIR] [--cache-max=MB] [--binario] "
+                    + "[--saidas=texto,json,csv] [--resumo] [--metricas] [--recuperar] <arquivo|diretório|glob>...");
+            return;
+        }
+
+        try {
+            lote.processar();
+        } catch (IOException e) {
+            System.err.println("Erro no modo em lote: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Modo em lote interrompido");
+        }
+    }
+
+    /**
+     * Analisa todos os arquivos encontrados e gera os relatórios
+     */
+    public void processar() throws IOException, InterruptedException {
+        List<Path> arquivos = coletarArquivos(caminhos, padrao);
+        if (diretorioSaida != null) {
+            Files.createDirectories(diretorioSaida);
+        }
+        if (diretorioCache != null) {
+            cache = new CacheLexico(diretorioCache, tamanhoMaximoCache);
+        }
+        pool = new PoolAnalisadores(threads);
+
+        System.out.println("=== COMPILADOR LÉXICO PASCAL - MODO EM LOTE ===");
+        System.out.println("Arquivos encontrados: " + arquivos.size());
+        System.out.println("Threads: " + threads);
+
+        long inicio = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<ResultadoArquivo> resultados = new ArrayList<>();
+        try {
+            List<Future<ResultadoArquivo>> tarefas = new ArrayList<>();
+            for (Path arquivo : arquivos) {
+                tarefas.add(executor.submit(() -> analisarArquivo(arquivo)));
+            }
+            for (Future<ResultadoArquivo> tarefa : tarefas) {
+                resultados.add(tarefa.get());
+            }
+        } catch (ExecutionException e) {
+            // analisarArquivo já trata as falhas de cada arquivo
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        long duracaoMs = (System.nanoTime() - inicio) / 1_000_000;
+
+        gerarResumo(resultados, duracaoMs);
+    }
+
+    /**
+     * Expande os caminhos informados: arquivos entram direto, diretórios são percorridos
+     * filtrando pelo padrão e globs são avaliados a partir da sua parte fixa. Também usado
+     * pelo IndiceIdentificadores
+     */
+    static List<Path> coletarArquivos(List<String> caminhos, String padrao) throws IOException {
+        Set<Path> arquivos = new TreeSet<>();
+        PathMatcher filtroNome = FileSystems.getDefault().getPathMatcher("glob:" + padrao);
+
+        for (String caminho : caminhos) {
+            if (contemGlob(caminho)) {
+                Path base = baseDoGlob(caminho);
+                PathMatcher glob = FileSystems.getDefault().getPathMatcher("glob:" + caminho);
+                try (Stream<Path> encontrados = Files.walk(base)) {
+                    encontrados.filter(Files::isRegularFile)
+                            .filter(glob::matches)
+                            .forEach(arquivos::add);
+                }
+            } else {
+                Path path = Paths.get(caminho);
+                if (Files.isDirectory(path)) {
+                    try (Stream<Path> encontrados = Files.walk(path)) {
+                        encontrados.filter(Files::isRegularFile)
+                                .filter(p -> filtroNome.matches(p.getFileName()))
+                                .forEach(arquivos::add);
+                    }
+                } else if (Files.isRegularFile(path)) {
+                    arquivos.add(path);
+                } else {
+                    throw new NoSuchFileException(caminho);
+                }
+            }
+        }
+
+        // Ignora os arquivos gerados por execuções anteriores
+        arquivos.removeIf(arquivo -> gerado(arquivo.getFileName().toString()));
+        return new ArrayList<>(arquivos);
+    }
+
+    /**
+     * Se o arquivo é um relatório, formato binário ou resumo gravado pelo modo em lote. Também
+     * usado pelo CompiladorObservador
+     */
+    static boolean gerado(String nome) {
+        for (FormatoRelatorio formato : FormatoRelatorio.values()) {
+            if (formato.getExtensao() != null && nome.endsWith(SUFIXO_RELATORIO + formato.getExtensao())) {
+                return true;
+            }
+        }
+        return nome.endsWith(SUFIXO_BINARIO) || nome.equals(NOME_RESUMO) || nome.equals(NOME_METRICAS);
+    }
+
+    private static boolean contemGlob(String caminho) {
+        return caminho.indexOf('*') >= 0 || caminho.indexOf('?') >= 0
+                || caminho.indexOf('[') >= 0 || caminho.indexOf('{') >= 0;
+    }
+
+    /**
+     * Maior prefixo de diretórios do glob que não contém caracteres especiais
+     */
+    private static Path baseDoGlob(String glob) {
+        String fixo = glob.substring(0, primeiroEspecial(glob));
+        int barra = Math.max(fixo.lastIndexOf('/'), fixo.lastIndexOf(File.separatorChar));
+        if (barra < 0) {
+            return Paths.get("");
+        }
+        return Paths.get(barra == 0 ? fixo.substring(0, 1) : fixo.substring(0, barra));
+    }
+
+    private static int primeiroEspecial(String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return i;
+            }
+        }
+        return glob.length();
+    }
+
+    /**
+     * Analisa um arquivo de forma isolada e grava os seus relatórios. Sem o cache, os
+     * relatórios são escritos à medida que os tokens são emitidos, e os tokens só são
+     * guardados para o formato binário. O analisador vem do pool e só é devolvido depois que
+     * relatórios, formato binário e métricas foram gravados
+     */
+    private ResultadoArquivo analisarArquivo(Path arquivo) {
+        long inicio = System.nanoTime();
+        EventoAnaliseJfr evento = EventoAnaliseJfr.iniciar();
+        AnalisadorLexico analisadorDoPool = null;
+        try {
+            AnalisadorLexico analisador;
+            MetricasAnalise metricasArquivo = metricas ? new MetricasAnalise() : null;
+            List<RelatorioAnalise> relatorios = new ArrayList<>();
+            try {
+                RelatorioAnalise.Conteudo conteudo = resumo ? RelatorioAnalise.Conteudo.RESUMO
+                        : somenteErros ? RelatorioAnalise.Conteudo.SEM_TOKENS : RelatorioAnalise.Conteudo.COMPLETO;
+                for (FormatoRelatorio formato : saidas) {
+                    EscritorRelatorio saida = EscritorRelatorio.paraArquivo(
+                            caminhoSaida(arquivo, SUFIXO_RELATORIO + formato.getExtensao()), formato.getCodificacao());
+                    relatorios.add(RelatorioAnalise.criar(formato, saida, arquivo.toString(), conteudo));
+                }
+
+                if (cache != null) {
+                    analisador = cache.analisar(arquivo, codificacao, configuracaoDiagnosticos, !somenteErros, recuperar,
+                            metricasArquivo);
+                    for (RelatorioAnalise relatorio : relatorios) {
+                        relatorio.escrever(analisador);
+                    }
+                } else {
+                    CharSequence codigo = recuperar ? FonteArquivo.lerTexto(arquivo, codificacao)
+                            : FonteArquivo.ler(arquivo, codificacao);
+                    analisador = analisadorDoPool = pool.obter(codigo);
+                    analisador.setRecuperacao(recuperar);
+                    analisador.getDiagnosticos().copiarConfiguracao(configuracaoDiagnosticos);
+                    analisador.setGuardarTokens(gravarBinario && !somenteErros);
+                    analisador.setMetricas(metricasArquivo);
+                    for (RelatorioAnalise relatorio : relatorios) {
+                        relatorio.acompanhar(analisador);
+                    }
+                    analisador.analisar();
+                }
+            } finally {
+                fechar(relatorios);
+            }
+
+            if (gravarBinario) {
+                EscritorBinario.gravar(analisador, caminhoSaida(arquivo, SUFIXO_BINARIO));
+            }
+            if (metricasArquivo != null && metricasArquivo.getAnalises() > 0) {
+                metricasArquivo.registrarBytes(Files.size(arquivo));
+                MetricasLexico.global().acumular(metricasArquivo);
+            }
+            if (evento != null) {
+                evento.concluir(arquivo.toString(), analisador);
+            }
+
+            return new ResultadoArquivo(arquivo, analisador.getTotalTokens(),
+                    analisador.getErros().size(), analisador.getTabelaSimbolos().getSimbolos().size(),
+                    (System.nanoTime() - inicio) / 1_000_000, null);
+        } catch (IOException | RuntimeException e) {
+            return new ResultadoArquivo(arquivo, 0, 0, 0, (System.nanoTime() - inicio) / 1_000_000,
+                    e.getClass().getSimpleName() + ": " + e.getMessage());
+        } finally {
+            if (analisadorDoPool != null) {
+                pool.devolver(analisadorDoPool);
+            }
+        }
+    }
+
+    /**
+     * Fecha todos os relatórios, lançando o primeiro erro depois de tentar fechar os demais
+     */
+    private static void fechar(List<RelatorioAnalise> relatorios) throws IOException {
+        IOException primeiro = null;
+        for (RelatorioAnalise relatorio : relatorios) {
+            try {
+                relatorio.close();
+            } catch (IOException e) {
+                if (primeiro == null) {
+                    primeiro = e;
+                }
+            }
+        }
+        if (primeiro != null) {
+            throw primeiro;
+        }
+    }
+
+    /**
+     * Os arquivos gerados ficam ao lado do arquivo analisado, ou no diretório de saída com o
+     * caminho achatado
+     */
+    private Path caminhoSaida(Path arquivo, String sufixo) {
+        if (diretorioSaida == null) {
+            return arquivo.resolveSibling(arquivo.getFileName() + sufixo);
+        }
+        String nome = arquivo.normalize().toString().replace(File.separatorChar, '_').replace(':', '_');
+        return diretorioSaida.resolve(nome + sufixo);
+    }
+
+    /**
+     * Exibe e grava o resumo geral do lote
+     */
+    private void gerarResumo(List<ResultadoArquivo> resultados, long duracaoMs) throws IOException {
+        long totalTokens = 0;
+        long totalErros = 0;
+        int arquivosComErro = 0;
+        int falhas = 0;
+        for (ResultadoArquivo resultado : resultados) {
+            totalTokens += resultado.tokens;
+            totalErros += resultado.erros;
+            if (resultado.falha != null) {
+                falhas++;
+            } else if (resultado.erros > 0) {
+                arquivosComErro++;
+            }
+        }
+
+        Path resumo = diretorioSaida == null ? Paths.get(NOME_RESUMO) : diretorioSaida.resolve(NOME_RESUMO);
+        try (EscritorRelatorio saida = EscritorRelatorio.paraArquivo(resumo, FormatoRelatorio.TEXTO.getCodificacao())) {
+            saida.linha("=== RESUMO DA ANÁLISE EM LOTE ===");
+            saida.texto("Data/Hora: ").linha(java.time.LocalDateTime.now().toString());
+            saida.texto("Threads: ").numero(threads).novaLinha();
+            saida.texto("Tempo total: ").numero(duracaoMs).linha(" ms");
+            saida.novaLinha();
+
+            saida.linha("=== ESTATÍSTICAS ===");
+            saida.texto("Arquivos analisados: ").numero(resultados.size()).novaLinha();
+            saida.texto("Arquivos com erros: ").numero(arquivosComErro).novaLinha();
+            saida.texto("Arquivos que falharam: ").numero(falhas).novaLinha();
+            saida.texto("Total de tokens: ").numero(totalTokens).novaLinha();
+            saida.texto("Total de erros: ").numero(totalErros).novaLinha();
+            if (cache != null) {
+                saida.texto("Resultados do cache: ").numero(cache.getAcertos()).texto(" de ")
+                        .numero(resultados.size()).novaLinha();
+            }
+            saida.novaLinha();
+
+            saida.linha("=== ARQUIVOS ===");
+            saida.alinhado("Arquivo", 40).caractere(' ').alinhado("Tokens", 10).caractere(' ').alinhado("Erros", 8)
+                    .caractere(' ').alinhado("Símbolos", 9).caractere(' ').alinhado("Tempo", 8).novaLinha();
+            saida.linha("-------------------------------------------------------------------------------");
+            for (ResultadoArquivo resultado : resultados) {
+                saida.alinhado(resultado.arquivo.toString(), 40).caractere(' ');
+                if (resultado.falha != null) {
+                    saida.texto("FALHA: ").linha(resultado.falha);
+                } else {
+                    saida.alinhado(resultado.tokens, 10).caractere(' ').alinhado(resultado.erros, 8).caractere(' ')
+                            .alinhado(resultado.simbolos, 9).caractere(' ').numero(resultado.duracaoMs).linha(" ms");
+                }
+            }
+        }
+
+        System.out.println("\n=== RESUMO ===");
+        System.out.println("Arquivos analisados: " + resultados.size());
+        System.out.println("Arquivos com erros: " + arquivosComErro);
+        System.out.println("Arquivos que falharam: " + falhas);
+        System.out.println("Total de tokens: " + totalTokens);
+        System.out.println("Total de erros: " + totalErros);
+        if (cache != null) {
+            System.out.println("Resultados do cache: " + cache.getAcertos() + " de " + resultados.size());
+        }
+        System.out.println("Tempo total: " + duracaoMs + " ms");
+        System.out.println("Resumo salvo em: " + resumo);
+
+        if (metricas) {
+            Path arquivoMetricas = diretorioSaida == null ? Paths.get(NOME_METRICAS)
+                    : diretorioSaida.resolve(NOME_METRICAS);
+            try (EscritorRelatorio saida = EscritorRelatorio.paraArquivo(arquivoMetricas,
+                    FormatoRelatorio.JSON.getCodificacao())) {
+                saida.texto(MetricasLexico.global().getResumoJson());
+            }
+            System.out.println("Métricas salvas em: " + arquivoMetricas);
+        }
+    }
+
+    /**
+     * Resultado da análise de um arquivo do lote
+     */
+    private static class ResultadoArquivo {
+        private final Path arquivo;
+        private final int tokens;
+        private final int erros;
+        private final int simbolos;
+        private final long duracaoMs;
+        private final String falha;
+
+        ResultadoArquivo(Path arquivo, int tokens, int erros, int simbolos, long duracaoMs, String falha) {
+            this.arquivo = arquivo;
+            this.tokens = tokens;
+            this.erros = erros;
+            this.simbolos = simbolos;
+            this.duracaoMs = duracaoMs;
+            this.falha = falha;
+        }
+    }
+}
@@ -1,14 +1,108 @@
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
 import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Classe principal do compilador léxico para Pascal
  * @author Diogo Ferreira Saucedo
  */
 public class CompiladorMain {
+    // Nome dos relatórios gravados em arquivo, com a extensão de cada formato
+    private static final String NOME_RELATORIO = "relatorio_analise";
+    private static final String NOME_METRICAS = "metricas_analise.json";
+
     public static void main(String[] args) {
+        // Modo em lote: vários arquivos, diretórios ou globs analisados em paralelo
+        if (args.length > 0 && args[0].equals("--lote")) {
+            CompiladorLote.executar(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        // Modo servidor: mantém o analisador aquecido para as requisições de ClienteLexico
+        if (args.length > 0 && args[0].equals("--servidor")) {
+            ServidorLexico.executar(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        // Modo observação: reanalisa os arquivos alterados a cada gravação
+        if (args.length > 0 && args[0].equals("--observar")) {
+            CompiladorObservador.executar(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        // Modo índice: atualiza ou consulta o índice de identificadores do projeto
+        if (args.length > 0 && args[0].equals("--indice")) {
+            IndiceIdentificadores.executar(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         String nomeArquivo;
+        Charset codificacao = FonteArquivo.CODIFICACAO_PADRAO;
+        // Só os erros são exibidos, sem guardar os tokens
+        boolean somenteErros = false;
+        // Limites de erros, copiados para o analisador
+        Diagnosticos configuracaoDiagnosticos = new Diagnosticos();
+        // Arquivo onde o resultado é gravado no formato binário; null não grava
+        String arquivoBinario = null;
+        // Saídas do relatório; --silencioso retira o console
+        Set<FormatoRelatorio> saidas = EnumSet.of(FormatoRelatorio.CONSOLE, FormatoRelatorio.TEXTO);
+        boolean resumo = false;
+        boolean silencioso = false;
+        // Arquivo onde as métricas da análise são gravadas em JSON; null não as coleta
+        String arquivoMetricas = null;
+        // Agrupa os caracteres inválidos seguidos e recusa arquivos binários
+        boolean recuperar = false;
+
+        // Opções no formato --nome=valor podem aparecer em qualquer posição
+        List<String> posicionais = new ArrayList<>();
+        for (String arg : args) {
+            try {
+                if (arg.equals("--somente-erros")) {
+                    somenteErros = true;
+                } else if (arg.startsWith("--binario=")) {
+                    arquivoBinario = arg.substring("--binario=".length());
+                } else if (arg.startsWith("--saidas=")) {
+                    saidas = FormatoRelatorio.deLista(arg.substring("--saidas=".length()));
+                } else if (arg.equals("--resumo")) {
+                    resumo = true;
+                } else if (arg.equals("--silencioso")) {
+                    silencioso = true;
+                } else if (arg.equals("--recuperar")) {
+                    recuperar = true;
+                } else if (arg.equals("--metricas")) {
+                    arquivoMetricas = NOME_METRICAS;
+                } else if (arg.startsWith("--metricas=")) {
+                    arquivoMetricas = arg.substring("--metricas=".length());
+                } else if (!configuracaoDiagnosticos.configurarOpcao(arg)) {
+                    posicionais.add(arg);
+                }
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                return;
+            }
+        }
+        args = posicionais.toArray(new String[0]);
+        if (silencioso) {
+            saidas.remove(FormatoRelatorio.CONSOLE);
+        }
+        RelatorioAnalise.Conteudo conteudo = resumo ? RelatorioAnalise.Conteudo.RESUMO
+                : somenteErros ? RelatorioAnalise.Conteudo.SEM_TOKENS : RelatorioAnalise.Conteudo.COMPLETO;
+
+        // A codificação do arquivo pode ser informada como segundo argumento
+        if (args.length > 1) {
+            try {
+                codificacao = Charset.forName(args[1]);
+            } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                System.err.println("Codificação não suportada: " + args[1]);
+                return;
+            }
+        }
 
         // Permite escolher o arquivo via argumento da linha de comando
         if (args.length > 0) {
@@ -21,39 +115,91 @@ public class CompiladorMain {
             System.out.println("2. Programa_Simples.txt (correto)");
             System.out.println("3. Programa_Correto.txt (correto e complexo)");
             System.out.println("\nAnalisando o arquivo padrão: Programa_Fonte.txt");
-            System.out.println("Para analisar outro arquivo, execute: java CompiladorMain <nome_do_arquivo>");
+            System.out.println("Para analisar outro arquivo, execute: java CompiladorMain <nome_do_arquivo> [codificacao]"
+                    + " [--max-erros=N] [--max-por-codigo=N] [--agrupar-iguais] [--somente-erros] [--binario=ARQUIVO]"
+                    + " [--saidas=console,texto,json,csv] [--resumo] [--silencioso] [--metricas[=ARQUIVO]]"
+                    + " [--recuperar]");
             System.out.println();
             nomeArquivo = "Programa_Fonte.txt";
         }
 
         try {
             // Lê o arquivo fonte
-            String codigoFonte = lerArquivo(nomeArquivo);
-
-            System.out.println("=== COMPILADOR LÉXICO PASCAL ===");
-            System.out.println("Arquivo: " + nomeArquivo);
-            System.out.println("\nCódigo fonte:");
-            System.out.println("----------------------------------------");
-            System.out.println(codigoFonte);
-            System.out.println("----------------------------------------");
+            EventoAnaliseJfr evento = EventoAnaliseJfr.iniciar();
+            CharSequence codigoFonte = lerArquivo(nomeArquivo, codificacao, recuperar);
+
+            // Tudo que vai para o console passa pelo mesmo buffer
+            EscritorRelatorio console = null;
+            if (saidas.contains(FormatoRelatorio.CONSOLE)) {
+                console = EscritorRelatorio.paraConsole();
+                console.linha("=== COMPILADOR LÉXICO PASCAL ===");
+                console.texto("Arquivo: ").linha(nomeArquivo);
+                if (conteudo == RelatorioAnalise.Conteudo.COMPLETO) {
+                    console.novaLinha().linha("Código fonte:");
+                    console.linha("----------------------------------------");
+                    console.linha(codigoFonte);
+                    console.linha("----------------------------------------");
+                }
+            }
 
-            // Cria o analisador léxico
+            // Cria o analisador léxico. Os relatórios são escritos à medida que os tokens são
+            // emitidos, então os tokens só precisam ser guardados para o formato binário
             AnalisadorLexico analisador = new AnalisadorLexico(codigoFonte);
+            analisador.getDiagnosticos().copiarConfiguracao(configuracaoDiagnosticos);
+            analisador.setGuardarTokens(arquivoBinario != null && !somenteErros);
+            analisador.setRecuperacao(recuperar);
+            MetricasAnalise metricas = null;
+            if (arquivoMetricas != null) {
+                metricas = new MetricasAnalise();
+                metricas.registrarBytes(Files.size(Paths.get(nomeArquivo)));
+                analisador.setMetricas(metricas);
+            }
 
-            // Realiza a análise
-            analisador.analisar();
-
-            // Exibe os tokens encontrados
-            exibirTokens(analisador.getTokens());
+            Map<FormatoRelatorio, RelatorioAnalise> relatorios = new EnumMap<>(FormatoRelatorio.class);
+            for (FormatoRelatorio formato : saidas) {
+                RelatorioAnalise relatorio = abrirRelatorio(formato, console, nomeArquivo, conteudo);
+                if (relatorio != null) {
+                    relatorio.acompanhar(analisador);
+                    relatorios.put(formato, relatorio);
+                }
+            }
 
-            // Exibe a tabela de símbolos
-            analisador.getTabelaSimbolos().exibirTabela();
+            // Realiza a análise, dividindo arquivos grandes entre os núcleos disponíveis
+            analisador.analisarParalelo();
+
+            // O console vem primeiro na ordem do EnumMap, antes das mensagens abaixo
+            for (Map.Entry<FormatoRelatorio, RelatorioAnalise> relatorio : relatorios.entrySet()) {
+                try {
+                    relatorio.getValue().close();
+                    if (relatorio.getKey() != FormatoRelatorio.CONSOLE && !silencioso) {
+                        System.out.println("Relatório salvo em: " + nomeRelatorio(relatorio.getKey()));
+                    }
+                } catch (IOException e) {
+                    System.err.println("Erro ao gerar relatório: " + e.getMessage());
+                }
+            }
+            if (evento != null) {
+                evento.concluir(nomeArquivo, analisador);
+            }
 
-            // Exibe os erros encontrados
-            exibirErros(analisador.getErros());
+            if (metricas != null) {
+                try {
+                    gravarMetricas(metricas, Paths.get(arquivoMetricas));
+                    if (!silencioso) {
+                        System.out.println("Métricas salvas em: " + arquivoMetricas);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Erro ao gravar as métricas: " + e.getMessage());
+                }
+            }
 
-            // Gera relatório
-            gerarRelatorio(analisador, nomeArquivo);
+            // Resultado para outras ferramentas, que podem lê-lo sem analisar o código de novo
+            if (arquivoBinario != null) {
+                EscritorBinario.gravar(analisador, Paths.get(arquivoBinario));
+                if (!silencioso) {
+                    System.out.println("Resultado binário salvo em: " + arquivoBinario);
+                }
+            }
 
         } catch (IOException e) {
             System.err.println("Erro ao ler o arquivo: " + e.getMessage());
@@ -61,113 +207,46 @@ public class CompiladorMain {
     }
 
     /**
-     * Lê o conteúdo de um arquivo
+     * Lê o conteúdo de um arquivo na codificação informada. No modo de recuperação, um
+     * arquivo que parece binário é recusado antes da análise
      */
-    private static String lerArquivo(String nomeArquivo) throws IOException {
-        return new String(Files.readAllBytes(Paths.get(nomeArquivo)));
+    private static CharSequence lerArquivo(String nomeArquivo, Charset codificacao, boolean recuperar)
+            throws IOException {
+        if (recuperar) {
+            return FonteArquivo.lerTexto(Paths.get(nomeArquivo), codificacao);
+        }
+        return FonteArquivo.ler(Paths.get(nomeArquivo), codificacao);
     }
 
     /**
-     * Exibe os tokens encontrados
+     * Cria o relatório no formato informado, no console ou no arquivo relatorio_analise com
+     * a extensão do formato. Retorna null se o arquivo não puder ser criado
      */
-    private static void exibirTokens(List<Token> tokens) {
-        System.out.println("\n=== TOKENS ENCONTRADOS ===");
-        System.out.printf("%-4s %-20s %-15s %-8s %-8s%n", "#", "Tipo", "Valor", "Linha", "Coluna");
-        System.out.println("------------------------------------------------------------");
-
-        for (int i = 0; i < tokens.size(); i++) {
-            Token token = tokens.get(i);
-            System.out.printf("%-4d %-20s %-15s %-8d %-8d%n",
-                    i + 1,
-                    token.getTipo(),
-                    "'" + token.getValor() + "'",
-                    token.getLinha(),
-                    token.getColuna());
+    private static RelatorioAnalise abrirRelatorio(FormatoRelatorio formato, EscritorRelatorio console,
+            String nomeArquivo, RelatorioAnalise.Conteudo conteudo) {
+        if (formato == FormatoRelatorio.CONSOLE) {
+            return RelatorioAnalise.criar(formato, console, nomeArquivo, conteudo);
+        }
+        try {
+            EscritorRelatorio saida = EscritorRelatorio.paraArquivo(Paths.get(nomeRelatorio(formato)),
+                    formato.getCodificacao());
+            return RelatorioAnalise.criar(formato, saida, nomeArquivo, conteudo);
+        } catch (IOException e) {
+            System.err.println("Erro ao gerar relatório: " + e.getMessage());
+            return null;
         }
-        System.out.println();
     }
 
     /**
-     * Exibe os erros encontrados
+     * Grava as métricas em JSON no arquivo informado
      */
-    private static void exibirErros(List<String> erros) {
-        System.out.println("\n=== RELATÓRIO DE ERROS ===");
-
-        if (erros.isEmpty()) {
-            System.out.println("Nenhum erro encontrado! ✓");
-        } else {
-            System.out.println("Total de erros encontrados: " + erros.size());
-            System.out.println();
-
-            for (int i = 0; i < erros.size(); i++) {
-                System.out.println((i + 1) + ". " + erros.get(i));
-            }
+    private static void gravarMetricas(MetricasAnalise metricas, Path arquivo) throws IOException {
+        try (EscritorRelatorio saida = EscritorRelatorio.paraArquivo(arquivo, FormatoRelatorio.JSON.getCodificacao())) {
+            metricas.escreverJson(saida);
         }
-        System.out.println();
     }
 
-    /**
-     * Gera um relatório detalhado da análise
-     */
-    private static void gerarRelatorio(AnalisadorLexico analisador, String nomeArquivo) {
-        try {
-            String nomeRelatorio = "relatorio_analise.txt";
-            PrintWriter writer = new PrintWriter(nomeRelatorio);
-
-            writer.println("=== RELATÓRIO DE ANÁLISE LÉXICA ===");
-            writer.println("Arquivo analisado: " + nomeArquivo);
-            writer.println("Data/Hora: " + java.time.LocalDateTime.now());
-            writer.println();
-
-            // Estatísticas
-            List<Token> tokens = analisador.getTokens();
-            List<String> erros = analisador.getErros();
-
-            writer.println("=== ESTATÍSTICAS ===");
-            writer.println("Total de tokens: " + tokens.size());
-            writer.println("Total de erros: " + erros.size());
-            writer.println("Total de símbolos na tabela: " + analisador.getTabelaSimbolos().getSimbolos().size());
-            writer.println();
-
-            // Tokens
-            writer.println("=== TOKENS ENCONTRADOS ===");
-            for (int i = 0; i < tokens.size(); i++) {
-                Token token = tokens.get(i);
-                writer.printf("%d. %s - '%s' (linha %d, coluna %d)%n",
-                        i + 1, token.getTipo(), token.getValor(),
-                        token.getLinha(), token.getColuna());
-            }
-            writer.println();
-
-            // Tabela de símbolos
-            writer.println("=== TABELA DE SÍMBOLOS ===");
-            writer.printf("%-15s %-10s %-8s %-10s%n", "Nome", "Tipo", "Linha", "Declarado");
-            writer.println("------------------------------------------------");
-
-            for (Simbolo simbolo : analisador.getTabelaSimbolos().getSimbolos()) {
-                writer.printf("%-15s %-10s %-8d %-10s%n",
-                        simbolo.getNome(),
-                        simbolo.getTipo(),
-                        simbolo.getLinha(),
-                        simbolo.isDeclarado() ? "Sim" : "Não");
-            }
-            writer.println();
-
-            // Erros
-            writer.println("=== ERROS ENCONTRADOS ===");
-            if (erros.isEmpty()) {
-                writer.println("Nenhum erro encontrado!");
-            } else {
-                for (int i = 0; i < erros.size(); i++) {
-                    writer.println((i + 1) + ". " + erros.get(i));
-                }
-            }
-
-            writer.close();
-            System.out.println("Relatório salvo em: " + nomeRelatorio);
-
-        } catch (IOException e) {
-            System.err.println("Erro ao gerar relatório: " + e.getMessage());
-        }
+    private static String nomeRelatorio(FormatoRelatorio formato) {
+        return NOME_RELATORIO + formato.getExtensao();
     }
 }
@@ -0,0 +1,488 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Modo observação: analisa os arquivos uma vez, mantém os resultados em memória e, a cada
+ * alteração avisada pelo WatchService, analisa de novo só os arquivos alterados e exibe os
+ * diagnósticos atualizados, sem pagar a inicialização da JVM a cada execução.
+ *
+ * Os eventos de uma rajada, como um editor que salva em vários passos ou um checkout, são
+ * agrupados: a thread de observação espera alguns milissegundos sem eventos novos antes de
+ * entregar os arquivos à fila de trabalho. A fila é limitada e guarda cada arquivo uma única
+ * vez, então edições repetidas do mesmo arquivo enquanto ele espera ou está sendo analisado
+ * resultam em uma só análise a mais, com o conteúdo mais recente.
+ *
+ * Uso: java CompiladorMain --observar [--threads=N] [--padrao=GLOB] [--espera=MS] [--codificacao=NOME]
+ *                                     [--max-erros=N] [--max-por-codigo=N] [--agrupar-iguais] [--recuperar]
+ *                                     <arquivo|diretório>...
+ * @author Diogo Ferreira Saucedo
+ */
+public class CompiladorObservador {
+    // Silêncio, em ms, que encerra uma rajada de eventos
+    private static final int ESPERA_PADRAO_MS = 10;
+    // Uma rajada que não para é entregue mesmo assim depois deste múltiplo da espera
+    private static final int RAJADA_MAXIMA_ESPERAS = 10;
+    // Arquivos distintos aguardando análise; acima disso, a thread de observação espera
+    private static final int CAPACIDADE_FILA = 1024;
+
+    private int threads;
+    private String padrao;
+    private int esperaMs;
+    private Charset codificacao;
+    private Diagnosticos configuracaoDiagnosticos;
+    private boolean recuperar;
+    private List<String> caminhos;
+
+    // Diretórios observados com os seus subdiretórios e arquivos informados diretamente
+    private final List<Path> raizes;
+    private final Set<Path> arquivosInformados;
+    private PathMatcher filtroNome;
+    private WatchService observador;
+    private final Map<WatchKey, Path> diretorios;
+
+    // Último resultado de cada arquivo
+    private final Map<Path, Resultado> resultados;
+    private final AtomicInteger totalErros;
+    private final AtomicInteger arquivosComErros;
+    private final FilaCoalescente fila;
+    private PoolAnalisadores pool;
+    // Na análise inicial só os arquivos com diagnósticos são exibidos
+    private volatile boolean analiseInicial;
+    private final EscritorRelatorio saida;
+
+    public CompiladorObservador() {
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.padrao = CompiladorLote.PADRAO_PADRAO;
+        this.esperaMs = ESPERA_PADRAO_MS;
+        this.codificacao = FonteArquivo.CODIFICACAO_PADRAO;
+        this.configuracaoDiagnosticos = new Diagnosticos();
+        this.recuperar = false;
+        this.caminhos = new ArrayList<>();
+        this.raizes = new ArrayList<>();
+        this.arquivosInformados = new HashSet<>();
+        this.diretorios = new HashMap<>();
+        this.resultados = new ConcurrentHashMap<>();
+        this.totalErros = new AtomicInteger();
+        this.arquivosComErros = new AtomicInteger();
+        this.fila = new FilaCoalescente(CAPACIDADE_FILA);
+        this.saida = EscritorRelatorio.paraConsole();
+    }
+
+    /**
+     * Ponto de entrada do modo observação, com os argumentos após "--observar"
+     */
+    public static void executar(String[] args) {
+        CompiladorObservador observacao = new CompiladorObservador();
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--threads=")) {
+                    observacao.threads = Integer.parseInt(arg.substring("--threads=".length()));
+                } else if (arg.startsWith("--padrao=")) {
+                    observacao.padrao = arg.substring("--padrao=".length());
+                } else if (arg.startsWith("--espera=")) {
+                    observacao.esperaMs = Integer.parseInt(arg.substring("--espera=".length()));
+                } else if (arg.startsWith("--codificacao=")) {
+                    observacao.codificacao = Charset.forName(arg.substring("--codificacao=".length()));
+                } else if (arg.equals("--recuperar")) {
+                    observacao.recuperar = true;
+                } else if (observacao.configuracaoDiagnosticos.configurarOpcao(arg)) {
+                    // Limites de erros, aplicados a cada arquivo
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Opção desconhecida: " + arg);
+                } else {
+                    observacao.caminhos.add(arg);
+                }
+            }
+            if (observacao.threads < 1) {
+                throw new IllegalArgumentException("O número de threads deve ser positivo");
+            }
+            if (observacao.esperaMs < 1) {
+                throw new IllegalArgumentException("A espera deve ser positiva");
+            }
+            if (observacao.caminhos.isEmpty()) {
+                throw new IllegalArgumentException("Informe ao menos um arquivo ou diretório");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Uso: java CompiladorMain --observar [--threads=N] [--padrao=GLOB] [--espera=MS] "
+                    + "[--codificacao=NOME] [--max-erros=N] [--max-por-codigo=N] "
+                    + "[--agrupar-iguais] [--recuperar] <arquivo|diretório>...");
+            return;
+        }
+
+        try {
+            observacao.processar();
+        } catch (IOException e) {
+            System.err.println("Erro no modo observação: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Modo observação interrompido");
+        }
+    }
+
+    /**
+     * Analisa todos os arquivos e passa a observar as alterações, até a thread ser interrompida
+     */
+    public void processar() throws IOException, InterruptedException {
+        filtroNome = FileSystems.getDefault().getPathMatcher("glob:" + padrao);
+        observador = FileSystems.getDefault().newWatchService();
+        try {
+            // Registra os diretórios antes da análise inicial, para não perder alterações feitas durante ela
+            for (String caminho : caminhos) {
+                Path path = Paths.get(caminho).toAbsolutePath().normalize();
+                if (Files.isDirectory(path)) {
+                    raizes.add(path);
+                    registrarArvore(path);
+                } else if (Files.isRegularFile(path)) {
+                    arquivosInformados.add(path);
+                    registrar(path.getParent());
+                } else {
+                    throw new NoSuchFileException(caminho);
+                }
+            }
+            pool = new PoolAnalisadores(threads);
+            for (int i = 0; i < threads; i++) {
+                Thread trabalhador = new Thread(this::trabalhar, "observador-lexico-" + i);
+                trabalhador.setDaemon(true);
+                trabalhador.start();
+            }
+
+            System.out.println("=== COMPILADOR LÉXICO PASCAL - MODO OBSERVAÇÃO ===");
+            long inicio = System.nanoTime();
+            analiseInicial = true;
+            List<Path> arquivos = CompiladorLote.coletarArquivos(caminhos, padrao);
+            for (Path arquivo : arquivos) {
+                fila.colocar(arquivo.toAbsolutePath().normalize(), inicio);
+            }
+            fila.aguardarOciosa();
+            analiseInicial = false;
+            synchronized (saida) {
+                saida.texto("Arquivos analisados: ").numero(arquivos.size())
+                        .texto(" (").numero((System.nanoTime() - inicio) / 1_000_000).linha(" ms)");
+                exibirTotais();
+                saida.linha("Observando alterações. Ctrl+C encerra.");
+                saida.descarregar();
+            }
+
+            observar();
+        } finally {
+            observador.close();
+        }
+    }
+
+    /**
+     * Laço da thread de observação: junta os eventos de cada rajada e entrega os arquivos
+     * alterados à fila
+     */
+    private void observar() throws IOException, InterruptedException {
+        while (true) {
+            WatchKey chave = observador.take();
+            long inicio = System.nanoTime();
+            long limite = inicio + TimeUnit.MILLISECONDS.toNanos((long) esperaMs * RAJADA_MAXIMA_ESPERAS);
+            Set<Path> alterados = new LinkedHashSet<>();
+            boolean perdidos = false;
+            while (chave != null) {
+                perdidos |= coletarEventos(chave, alterados);
+                chave = System.nanoTime() < limite ? observador.poll(esperaMs, TimeUnit.MILLISECONDS) : null;
+            }
+            if (perdidos) {
+                // O sistema descartou eventos: todos os arquivos são reavaliados
+                alterados.addAll(resultados.keySet());
+                for (String caminho : caminhos) {
+                    try {
+                        for (Path arquivo : CompiladorLote.coletarArquivos(Collections.singletonList(caminho), padrao)) {
+                            alterados.add(arquivo.toAbsolutePath().normalize());
+                        }
+                    } catch (NoSuchFileException e) {
+                        // Removido antes da varredura; se tinha sido analisado, está nos resultados
+                    } catch (UncheckedIOException e) {
+                        propagarSeNaoAusente(e);
+                    }
+                }
+            }
+            for (Path arquivo : alterados) {
+                fila.colocar(arquivo, inicio);
+            }
+        }
+    }
+
+    /**
+     * Acrescenta os arquivos relevantes dos eventos da chave e a reativa. Retorna true se o
+     * sistema avisou que eventos foram perdidos
+     */
+    private boolean coletarEventos(WatchKey chave, Set<Path> alterados) throws IOException {
+        Path diretorio = diretorios.get(chave);
+        boolean perdidos = false;
+        for (WatchEvent<?> evento : chave.pollEvents()) {
+            if (evento.kind() == StandardWatchEventKinds.OVERFLOW || diretorio == null) {
+                perdidos = true;
+                continue;
+            }
+            Path caminho = diretorio.resolve((Path) evento.context());
+            if (evento.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(caminho, LinkOption.NOFOLLOW_LINKS) && dentroDasRaizes(caminho)) {
+                // Um diretório novo pode ter sido criado já com arquivos, como em uma cópia
+                try {
+                    registrarArvore(caminho);
+                    try (Stream<Path> encontrados = Files.walk(caminho)) {
+                        encontrados.filter(Files::isRegularFile).filter(this::relevante).forEach(alterados::add);
+                    }
+                } catch (NoSuchFileException e) {
+                    // O diretório já foi removido: a remoção chega como evento do diretório pai
+                } catch (UncheckedIOException e) {
+                    propagarSeNaoAusente(e);
+                }
+            } else if (relevante(caminho)) {
+                alterados.add(caminho);
+            }
+        }
+        if (!chave.reset()) {
+            // Diretório removido ou movido: os arquivos dele são reavaliados e saem dos resultados
+            diretorios.remove(chave);
+            for (Path arquivo : resultados.keySet()) {
+                if (diretorio != null && arquivo.startsWith(diretorio)) {
+                    alterados.add(arquivo);
+                }
+            }
+        }
+        return perdidos;
+    }
+
+    /**
+     * Falha de Files.walk: um caminho que sumiu durante a varredura é ignorado, como nos
+     * eventos, e as demais falhas são propagadas
+     */
+    private static void propagarSeNaoAusente(UncheckedIOException e) throws IOException {
+        if (!(e.getCause() instanceof NoSuchFileException)) {
+            throw e.getCause();
+        }
+    }
+
+    private boolean relevante(Path arquivo) {
+        if (arquivosInformados.contains(arquivo)) {
+            return true;
+        }
+        Path nome = arquivo.getFileName();
+        return nome != null && filtroNome.matches(nome) && !CompiladorLote.gerado(nome.toString())
+                && dentroDasRaizes(arquivo);
+    }
+
+    private boolean dentroDasRaizes(Path caminho) {
+        for (Path raiz : raizes) {
+            if (caminho.startsWith(raiz)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void registrarArvore(Path raiz) throws IOException {
+        Files.walkFileTree(raiz, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path diretorio, BasicFileAttributes atributos) throws IOException {
+                registrar(diretorio);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void registrar(Path diretorio) throws IOException {
+        WatchKey chave = diretorio.register(observador, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        diretorios.put(chave, diretorio);
+    }
+
+    /**
+     * Laço das threads de trabalho: analisa os arquivos retirados da fila
+     */
+    private void trabalhar() {
+        try {
+            while (true) {
+                Map.Entry<Path, Long> pendente = fila.retirar();
+                try {
+                    analisar(pendente.getKey(), pendente.getValue());
+                } finally {
+                    fila.concluir(pendente.getKey());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Analisa o arquivo, guarda o resultado no lugar do anterior e exibe os diagnósticos. Um
+     * arquivo que não existe mais sai dos resultados
+     */
+    private void analisar(Path arquivo, long instanteEvento) {
+        if (!Files.isRegularFile(arquivo)) {
+            Resultado anterior = resultados.remove(arquivo);
+            if (anterior != null) {
+                contabilizar(anterior, null);
+                exibir(arquivo, anterior, null, 0, instanteEvento);
+            }
+            return;
+        }
+
+        long inicio = System.nanoTime();
+        Resultado resultado;
+        AnalisadorLexico analisador = null;
+        try {
+            analisador = pool.obter(FonteArquivo.lerCopia(arquivo, codificacao, recuperar));
+            analisador.setRecuperacao(recuperar);
+            analisador.getDiagnosticos().copiarConfiguracao(configuracaoDiagnosticos);
+            analisador.setGuardarTokens(false);
+            analisador.analisar();
+            resultado = new Resultado(new ArrayList<>(analisador.getDiagnosticos().getMensagens()),
+                    analisador.getErros().size());
+        } catch (IOException | RuntimeException e) {
+            resultado = new Resultado(Collections.singletonList("Falha: " + e.getClass().getSimpleName() + ": "
+                    + e.getMessage()), 1);
+        } finally {
+            if (analisador != null) {
+                pool.devolver(analisador);
+            }
+        }
+        long duracaoMs = (System.nanoTime() - inicio) / 1_000_000;
+
+        // Um arquivo nunca é analisado por duas threads ao mesmo tempo, então não há corrida aqui
+        Resultado anterior = resultados.put(arquivo, resultado);
+        contabilizar(anterior, resultado);
+        if (!analiseInicial || !resultado.mensagens.isEmpty()) {
+            exibir(arquivo, anterior, resultado, duracaoMs, instanteEvento);
+        }
+    }
+
+    private void contabilizar(Resultado anterior, Resultado atual) {
+        int errosAnteriores = anterior == null ? 0 : anterior.erros;
+        int errosAtuais = atual == null ? 0 : atual.erros;
+        totalErros.addAndGet(errosAtuais - errosAnteriores);
+        arquivosComErros.addAndGet((errosAtuais > 0 ? 1 : 0) - (errosAnteriores > 0 ? 1 : 0));
+    }
+
+    /**
+     * Exibe os diagnósticos do arquivo, ou só uma linha se eles não mudaram, com o tempo da
+     * análise e o tempo desde o primeiro evento que a provocou
+     */
+    private void exibir(Path arquivo, Resultado anterior, Resultado atual, long duracaoMs, long instanteEvento) {
+        synchronized (saida) {
+            try {
+                saida.texto("[").texto(arquivo.toString()).texto("] ");
+                if (atual == null) {
+                    saida.linha("removido");
+                } else {
+                    saida.numero(atual.erros).texto(atual.erros == 1 ? " erro" : " erros")
+                            .texto(" (análise ").numero(duracaoMs).texto(" ms");
+                    if (!analiseInicial) {
+                        saida.texto(", ").numero((System.nanoTime() - instanteEvento) / 1_000_000)
+                                .texto(" ms após a alteração");
+                    }
+                    saida.linha(")");
+                    if (anterior != null && anterior.mensagens.equals(atual.mensagens)) {
+                        saida.linha("  diagnósticos inalterados");
+                    } else {
+                        for (String mensagem : atual.mensagens) {
+                            saida.texto("  ").linha(mensagem);
+                        }
+                    }
+                }
+                if (!analiseInicial) {
+                    exibirTotais();
+                }
+                saida.descarregar();
+            } catch (IOException e) {
+                // O console fechado não interrompe a observação
+            }
+        }
+    }
+
+    private void exibirTotais() {
+        saida.texto("Total: ").numero(totalErros.get()).texto(" erros em ").numero(arquivosComErros.get())
+                .texto(" de ").numero(resultados.size()).linha(" arquivos");
+    }
+
+    /**
+     * Diagnósticos de um arquivo, guardados já como texto, pois o analisador volta ao pool
+     */
+    private static class Resultado {
+        private final List<String> mensagens;
+        private final int erros;
+
+        Resultado(List<String> mensagens, int erros) {
+            this.mensagens = mensagens;
+            this.erros = erros;
+        }
+    }
+
+    /**
+     * Fila limitada de arquivos a analisar, em que cada arquivo aparece uma única vez, com o
+     * instante do primeiro evento ainda não atendido. Um arquivo em análise não é entregue a
+     * outra thread: se for alterado de novo, volta para a fila e é analisado quando a análise
+     * atual terminar
+     */
+    private static final class FilaCoalescente {
+        private final int capacidade;
+        private final LinkedHashMap<Path, Long> pendentes;
+        private final Set<Path> emAnalise;
+
+        FilaCoalescente(int capacidade) {
+            this.capacidade = capacidade;
+            this.pendentes = new LinkedHashMap<>();
+            this.emAnalise = new HashSet<>();
+        }
+
+        /**
+         * Acrescenta o arquivo, se ainda não estiver na fila, esperando enquanto ela estiver cheia
+         */
+        synchronized void colocar(Path arquivo, long instante) throws InterruptedException {
+            while (pendentes.size() >= capacidade && !pendentes.containsKey(arquivo)) {
+                wait();
+            }
+            if (!pendentes.containsKey(arquivo)) {
+                pendentes.put(arquivo, instante);
+                notifyAll();
+            }
+        }
+
+        /**
+         * Retira o arquivo mais antigo que não está em análise, esperando se não houver nenhum
+         */
+        synchronized Map.Entry<Path, Long> retirar() throws InterruptedException {
+            while (true) {
+                Iterator<Map.Entry<Path, Long>> iterador = pendentes.entrySet().iterator();
+                while (iterador.hasNext()) {
+                    Map.Entry<Path, Long> pendente = iterador.next();
+                    if (emAnalise.add(pendente.getKey())) {
+                        iterador.remove();
+                        notifyAll();
+                        return new AbstractMap.SimpleImmutableEntry<>(pendente);
+                    }
+                }
+                wait();
+            }
+        }
+
+        synchronized void concluir(Path arquivo) {
+            emAnalise.remove(arquivo);
+            notifyAll();
+        }
+
+        /**
+         * Espera até não haver arquivos na fila nem em análise
+         */
+        synchronized void aguardarOciosa() throws InterruptedException {
+            while (!pendentes.isEmpty() || !emAnalise.isEmpty()) {
+                wait();
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.Arrays;
+
+/**
+ * Diagnóstico da análise (código, posição e argumentos). A mensagem só é montada quando
+ * o diagnóstico é exibido
+ * @author Diogo Ferreira Saucedo
+ */
+public final class Diagnostico {
+    /**
+     * Gravidade do diagnóstico
+     */
+    public enum Severidade {
+        ERRO,
+        AVISO
+    }
+
+    private static final Object[] SEM_ARGUMENTOS = new Object[0];
+
+    private final CodigoDiagnostico codigo;
+    private final int linha;
+    private final int coluna;
+    private final Object[] argumentos;
+    private int ocorrencias;
+
+    public Diagnostico(CodigoDiagnostico codigo, int linha, int coluna, Object... argumentos) {
+        this.codigo = codigo;
+        this.linha = linha;
+        this.coluna = coluna;
+        this.argumentos = argumentos.length == 0 ? SEM_ARGUMENTOS : argumentos;
+        this.ocorrencias = 1;
+    }
+
+    public CodigoDiagnostico getCodigo() {
+        return codigo;
+    }
+
+    public Severidade getSeveridade() {
+        return codigo.getSeveridade();
+    }
+
+    /**
+     * Linha do diagnóstico; 0 para diagnósticos sem posição, como os resumos
+     */
+    public int getLinha() {
+        return linha;
+    }
+
+    public int getColuna() {
+        return coluna;
+    }
+
+    public Object[] getArgumentos() {
+        return argumentos.clone();
+    }
+
+    /**
+     * Quantas vezes o diagnóstico ocorreu, quando diagnósticos iguais são agrupados
+     */
+    public int getOcorrencias() {
+        return ocorrencias;
+    }
+
+    void registrarRepeticao() {
+        ocorrencias++;
+    }
+
+    /**
+     * Usado ao restaurar um diagnóstico agrupado, como os lidos do cache
+     */
+    void definirOcorrencias(int ocorrencias) {
+        this.ocorrencias = ocorrencias;
+    }
+
+    /**
+     * Indica se o outro diagnóstico tem o mesmo código e os mesmos argumentos
+     */
+    boolean mesmoConteudo(CodigoDiagnostico outroCodigo, Object[] outrosArgumentos) {
+        return codigo == outroCodigo && Arrays.equals(argumentos, outrosArgumentos);
+    }
+
+    /**
+     * Monta a mensagem no formato "ERRO (linha L, coluna C): texto"
+     */
+    public String getMensagem() {
+        StringBuilder mensagem = new StringBuilder(codigo.getSeveridade().name());
+        if (linha > 0) {
+            mensagem.append(" (linha ").append(linha).append(", coluna ").append(coluna).append(')');
+        }
+        mensagem.append(": ");
+        mensagem.append(argumentos.length == 0 ? codigo.getModelo() : String.format(codigo.getModelo(), argumentos));
+        if (ocorrencias > 1) {
+            mensagem.append(" (").append(ocorrencias).append(" ocorrências)");
+        }
+        return mensagem.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getMensagem();
+    }
+}
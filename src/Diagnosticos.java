@@ -0,0 +1,318 @@
+import java.util.*;
+
+/**
+ * Coleção dos diagnósticos de uma análise. Limita o total guardado e o número por código,
+ * contando as ocorrências descartadas, e pode agrupar diagnósticos iguais (mesmo código e
+ * argumentos) em um só. Sem limites configurados, guarda todos
+ * @author Diogo Ferreira Saucedo
+ */
+public class Diagnosticos {
+    private static final CodigoDiagnostico[] CODIGOS = CodigoDiagnostico.values();
+    private static final Object[] SEM_ARGUMENTOS = new Object[0];
+
+    private List<Diagnostico> lista;
+    private int maximo;
+    private int maximoPorCodigo;
+    private boolean agruparIguais;
+    private int[] guardadosPorCodigo;
+    private int[] omitidosPorCodigo;
+    // Diagnósticos já guardados, pela combinação de código e argumentos; só com agruparIguais
+    private Map<List<Object>, Diagnostico> iguais;
+
+    public Diagnosticos() {
+        this.lista = new ArrayList<>();
+        this.maximo = Integer.MAX_VALUE;
+        this.maximoPorCodigo = Integer.MAX_VALUE;
+        this.agruparIguais = false;
+        this.guardadosPorCodigo = new int[CODIGOS.length];
+        this.omitidosPorCodigo = new int[CODIGOS.length];
+        this.iguais = new HashMap<>();
+    }
+
+    /**
+     * Adiciona um diagnóstico sem argumentos
+     */
+    public void adicionar(CodigoDiagnostico codigo, int linha, int coluna) {
+        adicionar(codigo, linha, coluna, SEM_ARGUMENTOS);
+    }
+
+    /**
+     * Adiciona um diagnóstico, respeitando os limites e o agrupamento configurados
+     */
+    public void adicionar(CodigoDiagnostico codigo, int linha, int coluna, Object... argumentos) {
+        List<Object> chave = null;
+        if (agruparIguais) {
+            chave = new ArrayList<>(argumentos.length + 1);
+            chave.add(codigo);
+            Collections.addAll(chave, argumentos);
+            Diagnostico existente = iguais.get(chave);
+            if (existente != null) {
+                existente.registrarRepeticao();
+                return;
+            }
+        }
+
+        int indice = codigo.ordinal();
+        if (lista.size() >= maximo || guardadosPorCodigo[indice] >= maximoPorCodigo) {
+            omitidosPorCodigo[indice]++;
+            return;
+        }
+
+        Diagnostico diagnostico = new Diagnostico(codigo, linha, coluna, argumentos);
+        lista.add(diagnostico);
+        guardadosPorCodigo[indice]++;
+        if (chave != null) {
+            iguais.put(chave, diagnostico);
+        }
+    }
+
+    /**
+     * Diagnósticos guardados, seguidos de um resumo para cada código com ocorrências omitidas
+     */
+    public List<Diagnostico> getLista() {
+        if (getOmitidos() == 0) {
+            return Collections.unmodifiableList(lista);
+        }
+        List<Diagnostico> completa = new ArrayList<>(lista);
+        for (CodigoDiagnostico codigo : CODIGOS) {
+            if (omitidosPorCodigo[codigo.ordinal()] > 0) {
+                completa.add(new Diagnostico(CodigoDiagnostico.DIAGNOSTICOS_OMITIDOS, 0, 0,
+                        omitidosPorCodigo[codigo.ordinal()], codigo));
+            }
+        }
+        return Collections.unmodifiableList(completa);
+    }
+
+    /**
+     * Visão das mensagens de getLista(), montadas à medida que são lidas
+     */
+    public List<String> getMensagens() {
+        return new AbstractList<String>() {
+            private final List<Diagnostico> diagnosticos = getLista();
+
+            @Override
+            public String get(int indice) {
+                return diagnosticos.get(indice).getMensagem();
+            }
+
+            @Override
+            public int size() {
+                return diagnosticos.size();
+            }
+        };
+    }
+
+    /**
+     * Total de ocorrências descartadas pelos limites
+     */
+    public int getOmitidos() {
+        int total = 0;
+        for (int omitidos : omitidosPorCodigo) {
+            total += omitidos;
+        }
+        return total;
+    }
+
+    /**
+     * Diagnósticos guardados, sem os resumos dos omitidos
+     */
+    List<Diagnostico> getGuardados() {
+        return Collections.unmodifiableList(lista);
+    }
+
+    /**
+     * Ocorrências do código descartadas pelos limites
+     */
+    int getOmitidos(CodigoDiagnostico codigo) {
+        return omitidosPorCodigo[codigo.ordinal()];
+    }
+
+    /**
+     * Guarda um diagnóstico já produzido por outra análise, sem aplicar os limites
+     */
+    void restaurar(Diagnostico diagnostico) {
+        lista.add(diagnostico);
+        guardadosPorCodigo[diagnostico.getCodigo().ordinal()]++;
+    }
+
+    /**
+     * Restaura a contagem de ocorrências omitidas de um código
+     */
+    void restaurarOmitidos(CodigoDiagnostico codigo, int omitidos) {
+        omitidosPorCodigo[codigo.ordinal()] = omitidos;
+    }
+
+    /**
+     * Quantos diagnósticos foram guardados e omitidos até aqui, no total e por código
+     */
+    Contagem contar() {
+        return new Contagem(lista.size(), guardadosPorCodigo.clone(), omitidosPorCodigo.clone());
+    }
+
+    /**
+     * Volta ao ponto da contagem, com os diagnósticos que a origem tinha guardado até ali. A
+     * lista já fica com espaço para todos os da origem
+     */
+    void restaurar(Diagnosticos origem, Contagem contagem) {
+        lista = new ArrayList<>(Math.max(origem.lista.size(), 10));
+        lista.addAll(origem.lista.subList(0, contagem.guardados));
+        guardadosPorCodigo = contagem.guardadosPorCodigo.clone();
+        omitidosPorCodigo = contagem.omitidosPorCodigo.clone();
+    }
+
+    /**
+     * Indica se os limites fazem os próximos diagnósticos dependerem de quantos já foram
+     * guardados
+     */
+    boolean temLimites() {
+        return maximo != Integer.MAX_VALUE || maximoPorCodigo != Integer.MAX_VALUE;
+    }
+
+    /**
+     * Indica se foram guardados os mesmos números de diagnósticos da contagem, no total e
+     * por código, o que faz os limites tratarem os próximos da mesma forma
+     */
+    boolean mesmosGuardados(Contagem contagem) {
+        return lista.size() == contagem.guardados
+                && Arrays.equals(guardadosPorCodigo, contagem.guardadosPorCodigo);
+    }
+
+    /**
+     * Acrescenta os diagnósticos que a origem guardou e omitiu entre duas contagens, com as
+     * linhas deslocadas em deslocamentoLinha e as colunas da linha linhaColunas em
+     * deslocamentoColuna. Os diagnósticos não podem estar agrupados
+     */
+    void acrescentar(Diagnosticos origem, Contagem de, Contagem ate, int deslocamentoLinha, int linhaColunas,
+            int deslocamentoColuna) {
+        for (Diagnostico diagnostico : origem.lista.subList(de.guardados, ate.guardados)) {
+            int linha = diagnostico.getLinha();
+            int coluna = linha == linhaColunas ? deslocamentoColuna : 0;
+            // Sem agrupamento os diagnósticos não mudam, e os que não se movem são compartilhados
+            lista.add(deslocamentoLinha == 0 && coluna == 0 ? diagnostico
+                    : new Diagnostico(diagnostico.getCodigo(), linha + deslocamentoLinha,
+                            diagnostico.getColuna() + coluna, diagnostico.getArgumentos()));
+        }
+        for (int i = 0; i < CODIGOS.length; i++) {
+            guardadosPorCodigo[i] += ate.guardadosPorCodigo[i] - de.guardadosPorCodigo[i];
+            omitidosPorCodigo[i] += ate.omitidosPorCodigo[i] - de.omitidosPorCodigo[i];
+        }
+    }
+
+    public int getMaximo() {
+        return maximo;
+    }
+
+    public int getMaximoPorCodigo() {
+        return maximoPorCodigo;
+    }
+
+    public boolean isAgruparIguais() {
+        return agruparIguais;
+    }
+
+    /**
+     * Número máximo de diagnósticos guardados
+     */
+    public void setMaximo(int maximo) {
+        this.maximo = maximo;
+    }
+
+    /**
+     * Número máximo de diagnósticos guardados de cada código
+     */
+    public void setMaximoPorCodigo(int maximoPorCodigo) {
+        this.maximoPorCodigo = maximoPorCodigo;
+    }
+
+    /**
+     * Agrupa diagnósticos com o mesmo código e argumentos no primeiro deles
+     */
+    public void setAgruparIguais(boolean agruparIguais) {
+        this.agruparIguais = agruparIguais;
+    }
+
+    /**
+     * Aplica uma opção de linha de comando (--max-erros=N, --max-por-codigo=N ou
+     * --agrupar-iguais). Retorna false se a opção não for de diagnósticos
+     */
+    public boolean configurarOpcao(String opcao) {
+        if (opcao.startsWith("--max-erros=")) {
+            setMaximo(lerLimite(opcao.substring("--max-erros=".length())));
+        } else if (opcao.startsWith("--max-por-codigo=")) {
+            setMaximoPorCodigo(lerLimite(opcao.substring("--max-por-codigo=".length())));
+        } else if (opcao.equals("--agrupar-iguais")) {
+            setAgruparIguais(true);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static int lerLimite(String valor) {
+        int limite = Integer.parseInt(valor);
+        if (limite < 0) {
+            throw new IllegalArgumentException("O limite de erros não pode ser negativo: " + valor);
+        }
+        return limite;
+    }
+
+    /**
+     * Remove todos os diagnósticos e volta à configuração padrão, sem limites nem
+     * agrupamento, mantendo a lista já alocada
+     */
+    void limpar() {
+        lista.clear();
+        iguais.clear();
+        Arrays.fill(guardadosPorCodigo, 0);
+        Arrays.fill(omitidosPorCodigo, 0);
+        maximo = Integer.MAX_VALUE;
+        maximoPorCodigo = Integer.MAX_VALUE;
+        agruparIguais = false;
+    }
+
+    /**
+     * Diagnósticos guardados desde a última limpeza. A lista não encolhe ao ser limpa, então
+     * este é o mínimo que ela vai manter alocado
+     */
+    int capacidade() {
+        return lista.size();
+    }
+
+    /**
+     * Usa os mesmos limites e agrupamento de outra coleção
+     */
+    public void copiarConfiguracao(Diagnosticos outra) {
+        this.maximo = outra.maximo;
+        this.maximoPorCodigo = outra.maximoPorCodigo;
+        this.agruparIguais = outra.agruparIguais;
+    }
+
+    /**
+     * Contagem capturada por contar(); não muda depois de criada
+     */
+    static final class Contagem {
+        private final int guardados;
+        private final int[] guardadosPorCodigo;
+        private final int[] omitidosPorCodigo;
+
+        private Contagem(int guardados, int[] guardadosPorCodigo, int[] omitidosPorCodigo) {
+            this.guardados = guardados;
+            this.guardadosPorCodigo = guardadosPorCodigo;
+            this.omitidosPorCodigo = omitidosPorCodigo;
+        }
+
+        /**
+         * Esta contagem, tirada depois de de, levada para outra análise que tinha a contagem
+         * para no ponto em que esta tinha de
+         */
+        Contagem deslocada(Contagem de, Contagem para) {
+            int[] guardadosDeslocados = new int[guardadosPorCodigo.length];
+            int[] omitidosDeslocados = new int[omitidosPorCodigo.length];
+            for (int i = 0; i < guardadosPorCodigo.length; i++) {
+                guardadosDeslocados[i] = guardadosPorCodigo[i] - de.guardadosPorCodigo[i] + para.guardadosPorCodigo[i];
+                omitidosDeslocados[i] = omitidosPorCodigo[i] - de.omitidosPorCodigo[i] + para.omitidosPorCodigo[i];
+            }
+            return new Contagem(guardados - de.guardados + para.guardados, guardadosDeslocados, omitidosDeslocados);
+        }
+    }
+}
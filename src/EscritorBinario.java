@@ -0,0 +1,265 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Grava o resultado de uma análise concluída no formato de FormatoBinario, direto em um
+ * ByteBuffer. O buffer cresce conforme necessário, mantendo o tipo (heap ou direto) do
+ * buffer inicial
+ * @author Diogo Ferreira Saucedo
+ */
+public class EscritorBinario {
+    private static final int CAPACIDADE_INICIAL = 4096;
+
+    static {
+        // O tipo de cada token ocupa os 6 bits baixos de um byte
+        if (TipoToken.values().length > FormatoBinario.MASCARA_TIPO + 1) {
+            throw new ExceptionInInitializerError("TipoToken tem tipos demais para o formato binário");
+        }
+    }
+
+    private ByteBuffer buffer;
+    private final int inicio;
+    // Tabela de strings: índice de cada valor distinto, na ordem em que apareceu
+    private final Map<String, Integer> indicesStrings;
+    private final List<String> strings;
+    // Índice na tabela de strings de cada id da tabela de nomes, ou -1
+    private int[] stringPorNome;
+
+    public EscritorBinario() {
+        this(ByteBuffer.allocate(CAPACIDADE_INICIAL));
+    }
+
+    /**
+     * Escreve a partir da posição atual do buffer informado
+     */
+    public EscritorBinario(ByteBuffer destino) {
+        this.buffer = destino;
+        this.inicio = destino.position();
+        this.indicesStrings = new HashMap<>();
+        this.strings = new ArrayList<>();
+        this.stringPorNome = new int[0];
+    }
+
+    /**
+     * Resultado da análise no formato binário, em um buffer pronto para leitura
+     */
+    public static ByteBuffer paraBuffer(AnalisadorLexico analisador) {
+        return new EscritorBinario().escrever(analisador);
+    }
+
+    /**
+     * Grava o resultado da análise no arquivo, substituindo o conteúdo anterior
+     */
+    public static void gravar(AnalisadorLexico analisador, Path arquivo) throws IOException {
+        ByteBuffer dados = paraBuffer(analisador);
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (dados.hasRemaining()) {
+                canal.write(dados);
+            }
+        }
+    }
+
+    /**
+     * Escreve o resultado da análise e retorna o buffer com position no início do resultado
+     * e limit no fim. Pode ser um buffer maior que o informado no construtor. Sem tokens
+     * guardados (setGuardarTokens(false)), só a contagem total é gravada. Um escritor deve
+     * ser usado para uma única análise
+     */
+    public ByteBuffer escrever(AnalisadorLexico analisador) {
+        garantir(FormatoBinario.TAMANHO_CABECALHO);
+        buffer.putInt(FormatoBinario.ASSINATURA);
+        buffer.putShort(FormatoBinario.VERSAO);
+        buffer.putShort((short) 0);
+        buffer.putLong(AnalisadorLexico.impressaoDigital());
+        buffer.putInt(analisador.getTotalTokens());
+        // As posições das seções são preenchidas no fim
+        buffer.position(buffer.position() + 4 * 4);
+
+        TabelaSimbolos tabela = analisador.getTabelaSimbolos();
+        stringPorNome = new int[tabela.getNomes().tamanho()];
+        Arrays.fill(stringPorNome, -1);
+
+        int tokens = buffer.position() - inicio;
+        escreverTokens(analisador.getBufferTokens());
+        int simbolos = buffer.position() - inicio;
+        escreverSimbolos(tabela);
+        int diagnosticos = buffer.position() - inicio;
+        escreverDiagnosticos(analisador.getDiagnosticos());
+        int tabelaStrings = buffer.position() - inicio;
+        escreverStrings();
+
+        int fim = buffer.position();
+        buffer.putInt(inicio + FormatoBinario.POSICAO_SECOES, tabelaStrings);
+        buffer.putInt(inicio + FormatoBinario.POSICAO_SECOES + 4, tokens);
+        buffer.putInt(inicio + FormatoBinario.POSICAO_SECOES + 8, simbolos);
+        buffer.putInt(inicio + FormatoBinario.POSICAO_SECOES + 12, diagnosticos);
+
+        buffer.limit(fim);
+        buffer.position(inicio);
+        return buffer;
+    }
+
+    private void escreverTokens(BufferTokens tokens) {
+        escreverVarint(tokens.tamanho());
+        int inicioAnterior = 0;
+        int fimAnterior = 0;
+        int linhaAnterior = 0;
+        int colunaAnterior = 0;
+        for (int i = 0; i < tokens.tamanho(); i++) {
+            int inicioToken = tokens.getInicio(i);
+            int linha = tokens.getLinha(i);
+            int coluna = tokens.getColuna(i);
+            int diferencaColuna = coluna - (colunaAnterior + inicioToken - inicioAnterior);
+
+            int marcas = 0;
+            if (i == 0 || linha != linhaAnterior) {
+                marcas = FormatoBinario.NOVA_LINHA;
+            } else if (diferencaColuna != 0) {
+                marcas = FormatoBinario.COLUNA_IRREGULAR;
+            }
+            garantir(1);
+            buffer.put((byte) (tokens.getTipo(i).ordinal() | marcas));
+            escreverVarint(inicioToken - fimAnterior);
+            escreverVarint(tokens.getFim(i) - inicioToken);
+            if (marcas == FormatoBinario.NOVA_LINHA) {
+                escreverVarint(linha - linhaAnterior);
+                escreverVarint(coluna);
+            } else if (marcas == FormatoBinario.COLUNA_IRREGULAR) {
+                escreverVarint(FormatoBinario.zigzag(diferencaColuna));
+            }
+            int idNome = tokens.getIdNome(i);
+            escreverVarint(idNome >= 0 ? indiceDoNome(idNome, tokens.getValor(i)) : indiceDe(tokens.getValor(i)));
+
+            inicioAnterior = inicioToken;
+            fimAnterior = tokens.getFim(i);
+            linhaAnterior = linha;
+            colunaAnterior = coluna;
+        }
+    }
+
+    private void escreverSimbolos(TabelaSimbolos tabela) {
+        TabelaNomes nomes = tabela.getNomes();
+        escreverVarint(nomes.tamanho());
+        for (int id = 0; id < nomes.tamanho(); id++) {
+            escreverVarint(indiceDoNome(id, nomes.getNome(id)));
+        }
+
+        Collection<Simbolo> simbolos = tabela.getSimbolos();
+        escreverVarint(simbolos.size());
+        for (Simbolo simbolo : simbolos) {
+            escreverVarint(simbolo.getId());
+            escreverVarint(simbolo.getTipoSimbolo().getCodigo());
+            escreverVarint(simbolo.getLinha());
+            escreverVarint(simbolo.isDeclarado() ? 1 : 0);
+            escreverVarint(simbolo.getEscopo());
+        }
+    }
+
+    private void escreverDiagnosticos(Diagnosticos diagnosticos) {
+        List<Diagnostico> guardados = diagnosticos.getGuardados();
+        escreverVarint(guardados.size());
+        for (Diagnostico diagnostico : guardados) {
+            escreverVarint(diagnostico.getCodigo().ordinal());
+            escreverVarint(diagnostico.getLinha());
+            escreverVarint(diagnostico.getColuna());
+            escreverVarint(diagnostico.getOcorrencias());
+            Object[] argumentos = diagnostico.getArgumentos();
+            escreverVarint(argumentos.length);
+            for (Object argumento : argumentos) {
+                escreverArgumento(argumento);
+            }
+        }
+
+        CodigoDiagnostico[] codigos = CodigoDiagnostico.values();
+        escreverVarint(codigos.length);
+        for (CodigoDiagnostico codigo : codigos) {
+            escreverVarint(diagnosticos.getOmitidos(codigo));
+        }
+    }
+
+    private void escreverArgumento(Object argumento) {
+        if (argumento instanceof String) {
+            escreverVarint(FormatoBinario.ARGUMENTO_TEXTO);
+            escreverVarint(indiceDe((String) argumento));
+        } else if (argumento instanceof Character) {
+            escreverVarint(FormatoBinario.ARGUMENTO_CARACTERE);
+            escreverVarint((Character) argumento);
+        } else if (argumento instanceof Integer) {
+            escreverVarint(FormatoBinario.ARGUMENTO_INTEIRO);
+            escreverVarint(FormatoBinario.zigzag((Integer) argumento));
+        } else if (argumento instanceof CodigoDiagnostico) {
+            escreverVarint(FormatoBinario.ARGUMENTO_CODIGO);
+            escreverVarint(((CodigoDiagnostico) argumento).ordinal());
+        } else {
+            throw new IllegalArgumentException("Argumento de diagnóstico não suportado: " + argumento);
+        }
+    }
+
+    private void escreverStrings() {
+        escreverVarint(strings.size());
+        for (String texto : strings) {
+            byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+            escreverVarint(bytes.length);
+            garantir(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    /**
+     * Índice do nome na tabela de strings, sem procurar a String no mapa depois da
+     * primeira ocorrência
+     */
+    private int indiceDoNome(int idNome, String nome) {
+        if (stringPorNome[idNome] < 0) {
+            stringPorNome[idNome] = indiceDe(nome);
+        }
+        return stringPorNome[idNome];
+    }
+
+    private int indiceDe(String texto) {
+        Integer indice = indicesStrings.get(texto);
+        if (indice == null) {
+            indice = strings.size();
+            indicesStrings.put(texto, indice);
+            strings.add(texto);
+        }
+        return indice;
+    }
+
+    /**
+     * Grava um inteiro não negativo em 7 bits por byte, com o bit alto indicando que há
+     * mais bytes; valores até 127 ocupam um único byte
+     */
+    private void escreverVarint(int valor) {
+        if (valor < 0) {
+            throw new IllegalArgumentException("Valor negativo não pode ser gravado como varint: " + valor);
+        }
+        garantir(5);
+        while (valor > 0x7F) {
+            buffer.put((byte) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        buffer.put((byte) valor);
+    }
+
+    private void garantir(int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        long necessario = (long) buffer.position() + bytes;
+        int capacidade = (int) Math.min(Math.max(necessario, buffer.capacity() * 2L), Integer.MAX_VALUE - 8);
+        if (capacidade < necessario) {
+            throw new IllegalStateException("Resultado grande demais para um ByteBuffer");
+        }
+        ByteBuffer maior = buffer.isDirect() ? ByteBuffer.allocateDirect(capacidade) : ByteBuffer.allocate(capacidade);
+        buffer.flip();
+        maior.put(buffer);
+        buffer = maior;
+    }
+}
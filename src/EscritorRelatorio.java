@@ -0,0 +1,214 @@
+import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Saída de texto dos relatórios, com um buffer grande e a formatação de largura fixa feita à
+ * mão, sem Formatter. O destino só é chamado quando o buffer enche ou é descarregado, o que
+ * evita uma escrita sincronizada no console por linha. Os erros de escrita são guardados e
+ * lançados por descarregar() e close(), como em PrintWriter
+ * @author Diogo Ferreira Saucedo
+ */
+public final class EscritorRelatorio implements Closeable {
+    public static final int TAMANHO_BUFFER_PADRAO = 1 << 16;
+
+    private static final String QUEBRA_LINHA = System.lineSeparator();
+    // Maior representação de um int: "-2147483648"
+    private static final int MAXIMO_DIGITOS = 11;
+
+    private final Appendable destino;
+    // O console não é fechado junto com o escritor
+    private final boolean fecharDestino;
+    private final char[] buffer;
+    private int posicao;
+    private IOException erro;
+
+    public EscritorRelatorio(Writer destino) {
+        this(destino, true, TAMANHO_BUFFER_PADRAO);
+    }
+
+    private EscritorRelatorio(Appendable destino, boolean fecharDestino, int tamanhoBuffer) {
+        this.destino = destino;
+        this.fecharDestino = fecharDestino;
+        this.buffer = new char[tamanhoBuffer];
+        this.posicao = 0;
+    }
+
+    /**
+     * Escritor para o arquivo, criado ou substituído
+     */
+    public static EscritorRelatorio paraArquivo(Path arquivo, Charset codificacao) throws IOException {
+        return new EscritorRelatorio(new OutputStreamWriter(Files.newOutputStream(arquivo), codificacao));
+    }
+
+    /**
+     * Escritor para System.out, na codificação do próprio console. close() só descarrega
+     */
+    public static EscritorRelatorio paraConsole() {
+        return new EscritorRelatorio(System.out, false, TAMANHO_BUFFER_PADRAO);
+    }
+
+    public EscritorRelatorio texto(CharSequence texto) {
+        return texto(texto, 0, texto.length());
+    }
+
+    /**
+     * Escreve o trecho [inicio, fim) do texto, sem criar uma String para ele
+     */
+    public EscritorRelatorio texto(CharSequence texto, int inicio, int fim) {
+        while (inicio < fim) {
+            if (posicao == buffer.length) {
+                esvaziar();
+            }
+            int quantidade = Math.min(fim - inicio, buffer.length - posicao);
+            if (texto instanceof String) {
+                ((String) texto).getChars(inicio, inicio + quantidade, buffer, posicao);
+            } else {
+                for (int i = 0; i < quantidade; i++) {
+                    buffer[posicao + i] = texto.charAt(inicio + i);
+                }
+            }
+            posicao += quantidade;
+            inicio += quantidade;
+        }
+        return this;
+    }
+
+    public EscritorRelatorio caractere(char c) {
+        if (posicao == buffer.length) {
+            esvaziar();
+        }
+        buffer[posicao++] = c;
+        return this;
+    }
+
+    /**
+     * Escreve o número em decimal, direto no buffer
+     */
+    public EscritorRelatorio numero(long valor) {
+        if (valor >= Integer.MIN_VALUE && valor <= Integer.MAX_VALUE) {
+            return numero((int) valor);
+        }
+        return texto(Long.toString(valor));
+    }
+
+    public EscritorRelatorio numero(int valor) {
+        if (buffer.length - posicao < MAXIMO_DIGITOS) {
+            esvaziar();
+        }
+        if (valor == Integer.MIN_VALUE) {
+            return texto("-2147483648");
+        }
+        if (valor < 0) {
+            buffer[posicao++] = '-';
+            valor = -valor;
+        }
+        int fim = posicao + digitos(valor);
+        int i = fim;
+        do {
+            buffer[--i] = (char) ('0' + valor % 10);
+            valor /= 10;
+        } while (valor != 0);
+        posicao = fim;
+        return this;
+    }
+
+    /**
+     * Texto alinhado à esquerda em uma coluna de largura fixa, como "%-Ns": textos maiores
+     * que a coluna não são cortados
+     */
+    public EscritorRelatorio alinhado(CharSequence texto, int largura) {
+        texto(texto);
+        return espacos(largura - texto.length());
+    }
+
+    /**
+     * Número alinhado à esquerda em uma coluna de largura fixa, como "%-Nd"
+     */
+    public EscritorRelatorio alinhado(int valor, int largura) {
+        numero(valor);
+        return espacos(largura - comprimento(valor));
+    }
+
+    public EscritorRelatorio espacos(int quantidade) {
+        for (int i = 0; i < quantidade; i++) {
+            caractere(' ');
+        }
+        return this;
+    }
+
+    public EscritorRelatorio novaLinha() {
+        return texto(QUEBRA_LINHA);
+    }
+
+    public EscritorRelatorio linha(CharSequence texto) {
+        return texto(texto).novaLinha();
+    }
+
+    /**
+     * Entrega ao destino o que está no buffer e o descarrega. Lança o primeiro erro de
+     * escrita ocorrido até aqui
+     */
+    public void descarregar() throws IOException {
+        esvaziar();
+        if (erro == null) {
+            try {
+                if (destino instanceof Flushable) {
+                    ((Flushable) destino).flush();
+                }
+            } catch (IOException e) {
+                erro = e;
+            }
+        }
+        if (erro != null) {
+            throw erro;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            descarregar();
+        } finally {
+            if (fecharDestino && destino instanceof Closeable) {
+                ((Closeable) destino).close();
+            }
+        }
+    }
+
+    /**
+     * Entrega o buffer ao destino. Depois de um erro, o conteúdo é descartado
+     */
+    private void esvaziar() {
+        if (posicao > 0 && erro == null) {
+            try {
+                if (destino instanceof Writer) {
+                    ((Writer) destino).write(buffer, 0, posicao);
+                } else {
+                    destino.append(CharBuffer.wrap(buffer, 0, posicao));
+                }
+            } catch (IOException e) {
+                erro = e;
+            }
+        }
+        posicao = 0;
+    }
+
+    private static int comprimento(int valor) {
+        if (valor == Integer.MIN_VALUE) {
+            return MAXIMO_DIGITOS;
+        }
+        return valor < 0 ? digitos(-valor) + 1 : digitos(valor);
+    }
+
+    private static int digitos(int valor) {
+        int digitos = 1;
+        while (valor >= 10) {
+            valor /= 10;
+            digitos++;
+        }
+        return digitos;
+    }
+}
@@ -0,0 +1,166 @@
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Evento do JDK Flight Recorder com a duração da análise de um arquivo, do início ao fim dos
+ * relatórios. O código é compilado para Java 8, então o tipo do evento é criado por reflexão
+ * com jdk.jfr.EventFactory (Java 11 em diante) e só depois que uma gravação foi iniciada, com
+ * -XX:StartFlightRecording ou pelo JMC. Sem essa API, ou sem gravação, iniciar() retorna null
+ * @author Diogo Ferreira Saucedo
+ */
+final class EventoAnaliseJfr {
+    static final String NOME = "CompiladorLexico.Analise";
+
+    // Campos do evento, na ordem usada por Event.set()
+    private static final int CAMPO_ARQUIVO = 0;
+    private static final int CAMPO_CARACTERES = 1;
+    private static final int CAMPO_TOKENS = 2;
+    private static final int CAMPO_ERROS = 3;
+
+    // FlightRecorder.isInitialized(); null quando a JVM não tem o JFR. EventFactory, cuja carga
+    // custa dezenas de milissegundos, só é carregada depois que uma gravação foi iniciada
+    private static final Method GRAVACAO_INICIADA = metodoGravacaoIniciada();
+    private static volatile Tipo tipo;
+    private static volatile boolean indisponivel = GRAVACAO_INICIADA == null;
+
+    private final Tipo tipoEvento;
+    private final Object evento;
+
+    private EventoAnaliseJfr(Tipo tipoEvento, Object evento) {
+        this.tipoEvento = tipoEvento;
+        this.evento = evento;
+    }
+
+    /**
+     * Começa o evento de um arquivo. Retorna null quando não há gravação que o registre
+     */
+    static EventoAnaliseJfr iniciar() {
+        Tipo atual = tipo();
+        if (atual == null) {
+            return null;
+        }
+        try {
+            Object evento = atual.novoEvento.invoke(atual.fabrica);
+            if (!(Boolean) atual.habilitado.invoke(evento)) {
+                return null;
+            }
+            atual.comecar.invoke(evento);
+            return new EventoAnaliseJfr(atual, evento);
+        } catch (ReflectiveOperationException e) {
+            desativar();
+            return null;
+        }
+    }
+
+    /**
+     * Termina o evento e o grava com os dados da análise concluída
+     */
+    void concluir(String arquivo, AnalisadorLexico analisador) {
+        try {
+            tipoEvento.terminar.invoke(evento);
+            if ((Boolean) tipoEvento.deveGravar.invoke(evento)) {
+                tipoEvento.definir.invoke(evento, CAMPO_ARQUIVO, arquivo);
+                tipoEvento.definir.invoke(evento, CAMPO_CARACTERES, (long) analisador.getCodigo().length());
+                tipoEvento.definir.invoke(evento, CAMPO_TOKENS, analisador.getTotalTokens());
+                tipoEvento.definir.invoke(evento, CAMPO_ERROS, analisador.getErros().size());
+                tipoEvento.gravar.invoke(evento);
+            }
+        } catch (ReflectiveOperationException e) {
+            desativar();
+        }
+    }
+
+    /**
+     * Tipo do evento, criado na primeira consulta depois que o gravador foi iniciado
+     */
+    private static Tipo tipo() {
+        Tipo atual = tipo;
+        if (atual != null || indisponivel) {
+            return atual;
+        }
+        try {
+            if (!(Boolean) GRAVACAO_INICIADA.invoke(null)) {
+                return null;
+            }
+            synchronized (EventoAnaliseJfr.class) {
+                if (tipo == null) {
+                    tipo = new Tipo();
+                }
+                return tipo;
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            desativar();
+            return null;
+        }
+    }
+
+    private static void desativar() {
+        indisponivel = true;
+        tipo = null;
+    }
+
+    private static Method metodoGravacaoIniciada() {
+        try {
+            return Class.forName("jdk.jfr.FlightRecorder").getMethod("isInitialized");
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Tipo do evento criado com EventFactory e os métodos de jdk.jfr.Event usados
+     */
+    private static final class Tipo {
+        private final Object fabrica;
+        private final Method novoEvento;
+        private final Method habilitado;
+        private final Method comecar;
+        private final Method terminar;
+        private final Method deveGravar;
+        private final Method definir;
+        private final Method gravar;
+
+        Tipo() throws ReflectiveOperationException {
+            Class<?> classeFabrica = Class.forName("jdk.jfr.EventFactory");
+            Class<?> classeEvento = Class.forName("jdk.jfr.Event");
+            Class<?> classeAnotacao = Class.forName("jdk.jfr.AnnotationElement");
+            Class<?> classeCampo = Class.forName("jdk.jfr.ValueDescriptor");
+            Constructor<?> novaAnotacao = classeAnotacao.getConstructor(Class.class, Object.class);
+            Constructor<?> novoCampo = classeCampo.getConstructor(Class.class, String.class, List.class);
+
+            List<Object> anotacoes = Arrays.asList(
+                    novaAnotacao.newInstance(anotacao("jdk.jfr.Name"), NOME),
+                    novaAnotacao.newInstance(anotacao("jdk.jfr.Label"), "Análise de arquivo"),
+                    novaAnotacao.newInstance(anotacao("jdk.jfr.Category"), new String[] {"Compilador Léxico"}),
+                    // A pilha seria sempre a mesma, a do ponto de entrada
+                    novaAnotacao.newInstance(anotacao("jdk.jfr.StackTrace"), false));
+            List<Object> campos = new ArrayList<>();
+            campos.add(novoCampo.newInstance(String.class, "arquivo",
+                    Collections.singletonList(novaAnotacao.newInstance(anotacao("jdk.jfr.Label"), "Arquivo"))));
+            campos.add(novoCampo.newInstance(long.class, "caracteres",
+                    Collections.singletonList(novaAnotacao.newInstance(anotacao("jdk.jfr.Label"), "Caracteres"))));
+            campos.add(novoCampo.newInstance(int.class, "tokens",
+                    Collections.singletonList(novaAnotacao.newInstance(anotacao("jdk.jfr.Label"), "Tokens"))));
+            campos.add(novoCampo.newInstance(int.class, "erros",
+                    Collections.singletonList(novaAnotacao.newInstance(anotacao("jdk.jfr.Label"), "Erros"))));
+
+            this.fabrica = classeFabrica.getMethod("create", List.class, List.class).invoke(null, anotacoes, campos);
+            this.novoEvento = classeFabrica.getMethod("newEvent");
+            this.habilitado = classeEvento.getMethod("isEnabled");
+            this.comecar = classeEvento.getMethod("begin");
+            this.terminar = classeEvento.getMethod("end");
+            this.deveGravar = classeEvento.getMethod("shouldCommit");
+            this.definir = classeEvento.getMethod("set", int.class, Object.class);
+            this.gravar = classeEvento.getMethod("commit");
+        }
+
+        private static Class<? extends Annotation> anotacao(String nome) throws ClassNotFoundException {
+            return Class.forName(nome).asSubclass(Annotation.class);
+        }
+    }
+}
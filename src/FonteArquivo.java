@@ -0,0 +1,498 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Leitura do código fonte via NIO, sem montar uma String com o arquivo inteiro
+ * @author Diogo Ferreira Saucedo
+ */
+public class FonteArquivo {
+    public static final Charset CODIFICACAO_PADRAO = StandardCharsets.UTF_8;
+
+    // Amostras examinadas por verificarTexto(), espalhadas do início ao fim do conteúdo
+    private static final int QUANTIDADE_AMOSTRAS = 16;
+    private static final int TAMANHO_AMOSTRA = 512;
+    // Percentual máximo de bytes de controle nas amostras de um texto
+    private static final int PERCENTUAL_MAXIMO_CONTROLE = 5;
+
+    private FonteArquivo() {
+    }
+
+    /**
+     * Lê o arquivo na codificação padrão (UTF-8)
+     */
+    public static CharSequence ler(Path arquivo) throws IOException {
+        return ler(arquivo, CODIFICACAO_PADRAO);
+    }
+
+    /**
+     * Lê o arquivo mapeando-o em memória. Para ISO-8859-1 e US-ASCII, onde cada byte é um
+     * caractere, e para UTF-8 sem bytes acima de 0x7F, o resultado é uma visão direta sobre
+     * o mapeamento; nas demais codificações o conteúdo é decodificado uma única vez em blocos
+     */
+    public static CharSequence ler(Path arquivo, Charset codificacao) throws IOException {
+        return ler(mapear(arquivo), codificacao);
+    }
+
+    /**
+     * Como ler(Path, Charset), mas recusa o arquivo se o conteúdo parecer binário, conforme
+     * verificarTexto()
+     */
+    public static CharSequence lerTexto(Path arquivo, Charset codificacao) throws IOException {
+        MappedByteBuffer mapeado = mapear(arquivo);
+        verificarTexto(mapeado, codificacao);
+        return ler(mapeado, codificacao);
+    }
+
+    /**
+     * Lê uma cópia do arquivo em vez de mapeá-lo, para arquivos que podem mudar durante a
+     * análise: um mapeamento truncado por outro processo falha no meio da leitura, e no
+     * Windows um arquivo mapeado não pode ser substituído pelo editor. Com somenteTexto,
+     * recusa conteúdo binário como lerTexto()
+     */
+    public static CharSequence lerCopia(Path arquivo, Charset codificacao, boolean somenteTexto) throws IOException {
+        ByteBuffer conteudo = ByteBuffer.wrap(Files.readAllBytes(arquivo));
+        if (somenteTexto) {
+            verificarTexto(conteudo, codificacao);
+        }
+        return ler(conteudo, codificacao);
+    }
+
+    /**
+     * Lança uma IOException se o conteúdo parecer binário, antes de qualquer análise. Só
+     * amostras espalhadas pelo conteúdo são lidas, então o custo não depende do tamanho:
+     * os bytes são contados por classe (nulo, controle e texto), e um byte nulo ou mais de
+     * PERCENTUAL_MAXIMO_CONTROLE% de bytes de controle indicam binário. Tabulações e quebras
+     * de linha são texto. Codificações que não são compatíveis com ASCII, como UTF-16, onde
+     * bytes nulos são comuns, não são verificadas
+     */
+    public static void verificarTexto(ByteBuffer conteudo, Charset codificacao) throws IOException {
+        if (!compativelComAscii(codificacao)) {
+            return;
+        }
+
+        int base = conteudo.position();
+        int tamanho = conteudo.remaining();
+        int amostras = tamanho <= QUANTIDADE_AMOSTRAS * TAMANHO_AMOSTRA ? 1 : QUANTIDADE_AMOSTRAS;
+        int tamanhoAmostra = amostras == 1 ? tamanho : TAMANHO_AMOSTRA;
+        int nulos = 0;
+        int controle = 0;
+        for (int amostra = 0; amostra < amostras; amostra++) {
+            int inicio = amostras == 1 ? 0 : (int) ((long) amostra * (tamanho - tamanhoAmostra) / (amostras - 1));
+            for (int i = inicio; i < inicio + tamanhoAmostra; i++) {
+                int b = conteudo.get(base + i) & 0xFF;
+                if (b == 0) {
+                    nulos++;
+                } else if ((b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f') || b == 0x7F) {
+                    controle++;
+                }
+            }
+        }
+
+        long examinados = (long) amostras * tamanhoAmostra;
+        if (nulos > 0 || controle * 100L > examinados * PERCENTUAL_MAXIMO_CONTROLE) {
+            throw new IOException("O conteúdo parece binário: " + (nulos + controle) + " de " + examinados
+                    + " bytes amostrados são nulos ou de controle");
+        }
+    }
+
+    private static boolean compativelComAscii(Charset codificacao) {
+        return codificacao.canEncode()
+                && Arrays.equals("\n a".getBytes(codificacao), new byte[] {'\n', ' ', 'a'});
+    }
+
+    /**
+     * Mapeia o arquivo inteiro em memória, somente leitura
+     */
+    static MappedByteBuffer mapear(Path arquivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            long tamanho = canal.size();
+            if (tamanho > Integer.MAX_VALUE) {
+                throw new IOException("Arquivo muito grande para análise: " + arquivo);
+            }
+            return canal.map(FileChannel.MapMode.READ_ONLY, 0, tamanho);
+        }
+    }
+
+    /**
+     * Texto de um arquivo já mapeado, como em ler(Path, Charset)
+     */
+    static CharSequence ler(ByteBuffer mapeado, Charset codificacao) throws IOException {
+        if (codificacao.equals(StandardCharsets.ISO_8859_1)) {
+            return new TextoMapeado(mapeado, 0, mapeado.limit(), false);
+        }
+        if (codificacao.equals(StandardCharsets.US_ASCII)
+                || (codificacao.equals(StandardCharsets.UTF_8) && somenteAscii(mapeado))) {
+            return new TextoMapeado(mapeado, 0, mapeado.limit(), true);
+        }
+        return decodificar(mapeado, codificacao);
+    }
+
+    /**
+     * Indica se nenhum byte do conteúdo passa de 0x7F, testando o bit alto de 8 bytes por
+     * vez. Em UTF-8, um conteúdo assim tem exatamente um caractere por byte
+     */
+    private static boolean somenteAscii(ByteBuffer bytes) {
+        int i = bytes.position();
+        int fim = bytes.limit();
+        while (i + 8 <= fim) {
+            if ((bytes.getLong(i) & TextoMapeado.ALTOS) != 0) {
+                return false;
+            }
+            i += 8;
+        }
+        while (i < fim) {
+            if (bytes.get(i) < 0) {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+
+    // Tamanho dos blocos copiados do mapeamento para a decodificação
+    private static final int TAMANHO_BLOCO_DECODIFICACAO = 8192;
+
+    /**
+     * Decodifica o conteúdo, trocando sequências inválidas pelo caractere de substituição,
+     * como faz new String(bytes). O texto vai para blocos de tamanho fixo alocados conforme
+     * são preenchidos, e o último é recortado, então a memória acompanha o texto decodificado
+     * e não o pior caso de maxCharsPerByte. Os decodificadores do JDK só usam o laço rápido
+     * sobre vetores; com um buffer mapeado caem no laço byte a byte, várias vezes mais lento.
+     * Por isso o conteúdo passa por um bloco no heap, sem copiar o arquivo inteiro
+     */
+    private static TextoDecodificado decodificar(ByteBuffer bytes, Charset codificacao) throws IOException {
+        CharsetDecoder decodificador = codificacao.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        ByteBuffer entrada = bytes;
+        byte[] bloco = null;
+        if (!bytes.hasArray()) {
+            bloco = new byte[Math.min(bytes.remaining(), TAMANHO_BLOCO_DECODIFICACAO)];
+            entrada = ByteBuffer.wrap(bloco);
+            entrada.limit(0);
+        }
+        CharBuffer decodificados = CharBuffer.allocate(TAMANHO_BLOCO_DECODIFICACAO);
+        List<char[]> blocos = new ArrayList<>();
+        int tamanho = 0;
+
+        CoderResult resultado;
+        boolean fim;
+        do {
+            if (bloco != null) {
+                // Os bytes de uma sequência incompleta no fim do bloco continuam na entrada
+                entrada.compact();
+                int copiados = Math.min(entrada.remaining(), bytes.remaining());
+                bytes.get(bloco, entrada.position(), copiados);
+                entrada.position(entrada.position() + copiados);
+                entrada.flip();
+            }
+            fim = bloco == null || !bytes.hasRemaining();
+            resultado = decodificador.decode(entrada, decodificados, fim);
+            tamanho = acrescentar(blocos, tamanho, decodificados);
+        } while (resultado.isOverflow() || (!fim && resultado.isUnderflow()));
+        if (resultado.isUnderflow()) {
+            do {
+                resultado = decodificador.flush(decodificados);
+                tamanho = acrescentar(blocos, tamanho, decodificados);
+            } while (resultado.isOverflow());
+        }
+        if (!resultado.isUnderflow()) {
+            throw new IOException("Falha ao decodificar o arquivo em " + codificacao.name());
+        }
+
+        if (!blocos.isEmpty()) {
+            int ultimo = blocos.size() - 1;
+            blocos.set(ultimo, Arrays.copyOf(blocos.get(ultimo), tamanho - (ultimo << TextoDecodificado.BITS_BLOCO)));
+        }
+        return new TextoDecodificado(blocos.toArray(new char[0][]), tamanho);
+    }
+
+    /**
+     * Copia os caracteres decodificados para o fim dos blocos, alocando um novo bloco quando
+     * o último se enche, e devolve o novo tamanho do texto
+     */
+    private static int acrescentar(List<char[]> blocos, int tamanho, CharBuffer decodificados) throws IOException {
+        decodificados.flip();
+        if (decodificados.remaining() > Integer.MAX_VALUE - tamanho) {
+            throw new IOException("Arquivo muito grande para análise");
+        }
+        while (decodificados.hasRemaining()) {
+            int posicao = tamanho & TextoDecodificado.MASCARA_BLOCO;
+            if (posicao == 0) {
+                blocos.add(new char[TextoDecodificado.TAMANHO_BLOCO]);
+            }
+            int copiados = Math.min(TextoDecodificado.TAMANHO_BLOCO - posicao, decodificados.remaining());
+            decodificados.get(blocos.get(blocos.size() - 1), posicao, copiados);
+            tamanho += copiados;
+        }
+        decodificados.clear();
+        return tamanho;
+    }
+
+    /**
+     * Visão de um buffer de bytes como texto, um caractere por byte. As sequências longas
+     * são varridas 8 bytes por vez, comparando todos os bytes de um long de uma só vez (SWAR)
+     */
+    private static class TextoMapeado implements CharSequence, VarreduraEmBlocos {
+        // Bit alto de cada byte, e os 7 bits restantes
+        private static final long ALTOS = 0x8080808080808080L;
+        private static final long BAIXOS = 0x7F7F7F7F7F7F7F7FL;
+        private static final long ESPACOS = 0x2020202020202020L;
+        private static final long TABULACOES = 0x0909090909090909L;
+        private static final long ZEROS = 0x3030303030303030L;
+        private static final long ASPAS = 0x2727272727272727L;
+        private static final long QUEBRAS_LF = 0x0A0A0A0A0A0A0A0AL;
+        private static final long QUEBRAS_CR = 0x0D0D0D0D0D0D0D0DL;
+        // Somado aos 7 bits baixos de um byte, chega ao bit alto só se o byte for 10 ou mais
+        private static final long LIMITE_DIGITOS = 0x7676767676767676L;
+
+        private final ByteBuffer bytes;
+        private final int inicio;
+        private final int tamanho;
+        private final boolean somenteAscii;
+
+        TextoMapeado(ByteBuffer bytes, int inicio, int tamanho, boolean somenteAscii) {
+            this.bytes = bytes;
+            this.inicio = inicio;
+            this.tamanho = tamanho;
+            this.somenteAscii = somenteAscii;
+        }
+
+        @Override
+        public int length() {
+            return tamanho;
+        }
+
+        @Override
+        public char charAt(int indice) {
+            if (indice < 0 || indice >= tamanho) {
+                throw new IndexOutOfBoundsException("Índice: " + indice);
+            }
+            int b = bytes.get(inicio + indice) & 0xFF;
+            // Em US-ASCII, bytes acima de 127 são inválidos e viram o caractere de substituição
+            return somenteAscii && b > 0x7F ? '\uFFFD' : (char) b;
+        }
+
+        @Override
+        public CharSequence subSequence(int de, int ate) {
+            if (de < 0 || ate > tamanho || de > ate) {
+                throw new IndexOutOfBoundsException("Intervalo: " + de + ", " + ate);
+            }
+            return new TextoMapeado(bytes, inicio + de, ate - de, somenteAscii);
+        }
+
+        @Override
+        public int fimDosEspacos(int de, int ate) {
+            int i = de;
+            while (i + 8 <= ate) {
+                long palavra = bytes.getLong(inicio + i);
+                long outros = ~(iguais(palavra, ESPACOS) | iguais(palavra, TABULACOES)) & ALTOS;
+                if (outros != 0) {
+                    return i + primeiroByte(outros);
+                }
+                i += 8;
+            }
+            while (i < ate) {
+                byte b = bytes.get(inicio + i);
+                if (b != ' ' && b != '\t') {
+                    break;
+                }
+                i++;
+            }
+            return i;
+        }
+
+        @Override
+        public int fimDosDigitos(int de, int ate) {
+            int i = de;
+            while (i + 8 <= ate) {
+                long diferenca = bytes.getLong(inicio + i) ^ ZEROS;
+                // Um byte é dígito se a diferença para '0' for menor que 10
+                long digitos = ~(((diferenca & BAIXOS) + LIMITE_DIGITOS) | diferenca) & ALTOS;
+                long outros = ~digitos & ALTOS;
+                if (outros != 0) {
+                    return i + primeiroByte(outros);
+                }
+                i += 8;
+            }
+            while (i < ate && (char) ((bytes.get(inicio + i) & 0xFF) - '0') <= 9) {
+                i++;
+            }
+            return i;
+        }
+
+        @Override
+        public int fimDoTextoString(int de, int ate) {
+            int i = de;
+            while (i + 8 <= ate) {
+                long palavra = bytes.getLong(inicio + i);
+                long encontrados = iguais(palavra, ASPAS) | iguais(palavra, QUEBRAS_LF) | iguais(palavra, QUEBRAS_CR);
+                if (encontrados != 0) {
+                    return i + primeiroByte(encontrados);
+                }
+                i += 8;
+            }
+            while (i < ate) {
+                byte b = bytes.get(inicio + i);
+                if (b == '\'' || b == '\n' || b == '\r') {
+                    break;
+                }
+                i++;
+            }
+            return i;
+        }
+
+        /**
+         * Bit alto ligado exatamente nos bytes da palavra iguais ao byte repetido em padrao
+         */
+        private static long iguais(long palavra, long padrao) {
+            long diferenca = palavra ^ padrao;
+            return ~(((diferenca & BAIXOS) + BAIXOS) | diferenca | BAIXOS);
+        }
+
+        /**
+         * Índice do primeiro byte marcado; o buffer mapeado é big-endian, então o primeiro
+         * byte é o mais significativo
+         */
+        private static int primeiroByte(long marcados) {
+            return Long.numberOfLeadingZeros(marcados) >>> 3;
+        }
+
+        @Override
+        public String toString() {
+            char[] caracteres = new char[tamanho];
+            for (int i = 0; i < tamanho; i++) {
+                caracteres[i] = charAt(i);
+            }
+            return new String(caracteres);
+        }
+    }
+
+    /**
+     * Texto decodificado, guardado em blocos de TAMANHO_BLOCO caracteres; todos os blocos
+     * estão cheios, menos o último, então a posição de um caractere dá o bloco e o índice
+     * dentro dele sem busca
+     */
+    private static class TextoDecodificado implements CharSequence, VarreduraEmBlocos {
+        static final int BITS_BLOCO = 16;
+        static final int TAMANHO_BLOCO = 1 << BITS_BLOCO;
+        static final int MASCARA_BLOCO = TAMANHO_BLOCO - 1;
+
+        private final char[][] blocos;
+        private final int tamanho;
+
+        TextoDecodificado(char[][] blocos, int tamanho) {
+            this.blocos = blocos;
+            this.tamanho = tamanho;
+        }
+
+        @Override
+        public int length() {
+            return tamanho;
+        }
+
+        @Override
+        public char charAt(int indice) {
+            if (indice < 0 || indice >= tamanho) {
+                throw new IndexOutOfBoundsException("Índice: " + indice);
+            }
+            return blocos[indice >>> BITS_BLOCO][indice & MASCARA_BLOCO];
+        }
+
+        /**
+         * Cópia do intervalo, como em String.subSequence
+         */
+        @Override
+        public CharSequence subSequence(int de, int ate) {
+            if (de < 0 || ate > tamanho || de > ate) {
+                throw new IndexOutOfBoundsException("Intervalo: " + de + ", " + ate);
+            }
+            char[] caracteres = new char[ate - de];
+            int i = de;
+            while (i < ate) {
+                int posicao = i & MASCARA_BLOCO;
+                int copiados = Math.min(TAMANHO_BLOCO - posicao, ate - i);
+                System.arraycopy(blocos[i >>> BITS_BLOCO], posicao, caracteres, i - de, copiados);
+                i += copiados;
+            }
+            return new String(caracteres);
+        }
+
+        @Override
+        public int fimDosEspacos(int de, int ate) {
+            int i = de;
+            while (i < ate) {
+                char[] bloco = blocos[i >>> BITS_BLOCO];
+                int j = i & MASCARA_BLOCO;
+                int limite = j + Math.min(TAMANHO_BLOCO - j, ate - i);
+                int base = i - j;
+                while (j < limite && (bloco[j] == ' ' || bloco[j] == '\t')) {
+                    j++;
+                }
+                i = base + j;
+                if (j < limite) {
+                    break;
+                }
+            }
+            return i;
+        }
+
+        @Override
+        public int fimDosDigitos(int de, int ate) {
+            int i = de;
+            while (i < ate) {
+                char[] bloco = blocos[i >>> BITS_BLOCO];
+                int j = i & MASCARA_BLOCO;
+                int limite = j + Math.min(TAMANHO_BLOCO - j, ate - i);
+                int base = i - j;
+                while (j < limite && (char) (bloco[j] - '0') <= 9) {
+                    j++;
+                }
+                i = base + j;
+                if (j < limite) {
+                    break;
+                }
+            }
+            return i;
+        }
+
+        @Override
+        public int fimDoTextoString(int de, int ate) {
+            int i = de;
+            while (i < ate) {
+                char[] bloco = blocos[i >>> BITS_BLOCO];
+                int j = i & MASCARA_BLOCO;
+                int limite = j + Math.min(TAMANHO_BLOCO - j, ate - i);
+                int base = i - j;
+                while (j < limite) {
+                    char c = bloco[j];
+                    if (c == '\'' || c == '\n' || c == '\r') {
+                        break;
+                    }
+                    j++;
+                }
+                i = base + j;
+                if (j < limite) {
+                    break;
+                }
+            }
+            return i;
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, tamanho).toString();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Formato binário do resultado da análise (tokens, tabela de símbolos e diagnósticos),
+ * gravado por EscritorBinario e lido por LeitorBinario.
+ *
+ * Cabeçalho, de tamanho fixo:
+ *   int    assinatura "LXTK"
+ *   short  versão do formato
+ *   short  reservado (0)
+ *   long   impressão digital do analisador que gerou o resultado
+ *   int    total de tokens emitidos, guardados ou não
+ *   int[4] posição do início das seções de strings, tokens, símbolos e diagnósticos,
+ *          relativa ao início do cabeçalho
+ *
+ * Seções, com os números gravados como varints (7 bits por byte):
+ *   tokens       quantidade; para cada token: um byte com o tipo (ordinal) nos 6 bits
+ *                baixos e as marcas NOVA_LINHA e COLUNA_IRREGULAR; início relativo ao fim
+ *                do token anterior; comprimento; se NOVA_LINHA, o avanço de linhas e a
+ *                coluna; senão, se COLUNA_IRREGULAR, a diferença em zigzag para a coluna
+ *                esperada (a do token anterior somada à distância entre os inícios); e o
+ *                índice do valor na tabela de strings. Na maioria dos tokens, a linha e a
+ *                coluna não ocupam nenhum byte
+ *   símbolos     quantidade de nomes e o índice de cada nome na tabela de strings, na
+ *                ordem dos ids; quantidade de símbolos e, para cada um, id do nome, tipo,
+ *                linha, declarado (0 ou 1) e profundidade do escopo
+ *   diagnósticos quantidade; para cada um: código, linha, coluna, ocorrências e os
+ *                argumentos (tipo e valor); depois, as ocorrências omitidas de cada código
+ *   strings      quantidade; para cada string, o tamanho em bytes e o texto em UTF-8. Cada
+ *                valor distinto aparece uma única vez
+ * @author Diogo Ferreira Saucedo
+ */
+final class FormatoBinario {
+    // "LXTK"
+    static final int ASSINATURA = 0x4C58544B;
+    static final short VERSAO = 1;
+    static final int TAMANHO_CABECALHO = 4 + 2 + 2 + 8 + 4 + 4 * 4;
+
+    // Posição das posições das seções no cabeçalho
+    static final int POSICAO_SECOES = 20;
+
+    // Marcas do byte de tipo de cada token
+    static final int MASCARA_TIPO = 0x3F;
+    static final int NOVA_LINHA = 0x80;
+    static final int COLUNA_IRREGULAR = 0x40;
+
+    // Tipos dos argumentos de diagnóstico
+    static final int ARGUMENTO_TEXTO = 0;
+    static final int ARGUMENTO_CARACTERE = 1;
+    static final int ARGUMENTO_INTEIRO = 2;
+    static final int ARGUMENTO_CODIGO = 3;
+
+    private FormatoBinario() {
+    }
+
+    /**
+     * Leva inteiros pequenos, positivos ou negativos, a varints curtos: 0, -1, 1, -2...
+     * viram 0, 1, 2, 3...
+     */
+    static int zigzag(int valor) {
+        return (valor << 1) ^ (valor >> 31);
+    }
+
+    static int desfazerZigzag(int valor) {
+        return (valor >>> 1) ^ -(valor & 1);
+    }
+}
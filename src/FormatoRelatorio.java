@@ -0,0 +1,64 @@
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Saídas disponíveis para o relatório da análise
+ * @author Diogo Ferreira Saucedo
+ */
+public enum FormatoRelatorio {
+    // Tabelas no console
+    CONSOLE(null, null),
+    // Relatório detalhado em texto, na codificação padrão do sistema
+    TEXTO(".txt", Charset.defaultCharset()),
+    // Mesmo conteúdo em JSON, para outras ferramentas
+    JSON(".json", StandardCharsets.UTF_8),
+    // Uma linha por token, ou uma linha de resumo quando os tokens não são listados
+    CSV(".csv", StandardCharsets.UTF_8);
+
+    private final String extensao;
+    private final Charset codificacao;
+
+    FormatoRelatorio(String extensao, Charset codificacao) {
+        this.extensao = extensao;
+        this.codificacao = codificacao;
+    }
+
+    /**
+     * Extensão do arquivo gerado, ou null para o console
+     */
+    public String getExtensao() {
+        return extensao;
+    }
+
+    /**
+     * Codificação do arquivo gerado, ou null para o console
+     */
+    public Charset getCodificacao() {
+        return codificacao;
+    }
+
+    /**
+     * Converte o nome usado na linha de comando (console, texto, json ou csv)
+     */
+    public static FormatoRelatorio deNome(String nome) {
+        for (FormatoRelatorio formato : values()) {
+            if (formato.name().equalsIgnoreCase(nome)) {
+                return formato;
+            }
+        }
+        throw new IllegalArgumentException("Saída desconhecida: " + nome + " (use console, texto, json ou csv)");
+    }
+
+    /**
+     * Converte uma lista separada por vírgulas, como "console,json"
+     */
+    public static Set<FormatoRelatorio> deLista(String lista) {
+        Set<FormatoRelatorio> formatos = EnumSet.noneOf(FormatoRelatorio.class);
+        for (String nome : lista.split(",")) {
+            formatos.add(deNome(nome.trim()));
+        }
+        return formatos;
+    }
+}
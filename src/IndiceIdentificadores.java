@@ -0,0 +1,562 @@
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Índice em disco dos identificadores de um conjunto de arquivos: para cada token
+ * IDENTIFICADOR, o arquivo, a linha, a coluna, o tipo do símbolo e se o nome foi declarado
+ * naquele arquivo. Consultas como todos os usos de um nome ou os identificadores não
+ * declarados em todo o projeto são respondidas sem analisar nenhum arquivo.
+ *
+ * O índice é formado por segmentos imutáveis (SegmentoIndice), ordenados por nome e mapeados
+ * em memória, listados no manifesto em ordem de criação. Cada atualização analisa só os
+ * arquivos novos ou alterados, pelo tamanho e pela data de modificação, e grava um segmento
+ * com eles e com os arquivos removidos; cada arquivo vale pelo segmento mais recente que o
+ * contém. Quando há segmentos demais, eles são compactados em um só, sem as ocorrências que
+ * deixaram de valer. Uma mudança na versão do analisador descarta o índice.
+ *
+ * Só um processo deve atualizar o diretório por vez, e a instância não deve ser usada por
+ * várias threads enquanto é atualizada
+ *
+ * Uso: java CompiladorMain --indice [--diretorio=DIR] [--threads=N] [--padrao=GLOB]
+ *                                   [--codificacao=NOME] <arquivo|diretório|glob>...
+ *      java CompiladorMain --indice [--diretorio=DIR] --usos=NOME | --nao-declarados | --compactar
+ * @author Diogo Ferreira Saucedo
+ */
+public final class IndiceIdentificadores {
+    public static final String DIRETORIO_PADRAO = ".indice-lexico";
+
+    // Lista dos segmentos em uso, um por linha, do mais antigo ao mais recente
+    private static final String MANIFESTO = "segmentos";
+    private static final String PREFIXO_SEGMENTO = "segmento-";
+    private static final String EXTENSAO = ".lxi";
+    private static final String EXTENSAO_TEMPORARIA = ".tmp";
+    private static final int MAXIMO_SEGMENTOS = 8;
+
+    private final Path diretorio;
+    private final long impressaoDigital;
+    // Segmentos do mais antigo ao mais recente, com os nomes dos seus arquivos
+    private final List<SegmentoIndice> segmentos;
+    private final List<String> nomesSegmentos;
+    // Para cada segmento, os seus arquivos que não aparecem em um segmento mais recente
+    private final List<boolean[]> vigentes;
+    // Segmento e posição em que vale cada arquivo, inclusive os removidos
+    private final Map<String, int[]> localizacao;
+    private int proximoSegmento;
+
+    /**
+     * Abre (ou cria) o índice no diretório informado
+     */
+    public IndiceIdentificadores(Path diretorio) throws IOException {
+        this.diretorio = diretorio;
+        this.impressaoDigital = AnalisadorLexico.impressaoDigital();
+        this.segmentos = new ArrayList<>();
+        this.nomesSegmentos = new ArrayList<>();
+        this.vigentes = new ArrayList<>();
+        this.localizacao = new HashMap<>();
+        this.proximoSegmento = 0;
+
+        Files.createDirectories(diretorio);
+        carregar();
+    }
+
+    /**
+     * Ponto de entrada do modo índice, com os argumentos após "--indice"
+     */
+    public static void executar(String[] args) {
+        Path diretorio = Paths.get(DIRETORIO_PADRAO);
+        int threads = Runtime.getRuntime().availableProcessors();
+        String padrao = CompiladorLote.PADRAO_PADRAO;
+        Charset codificacao = FonteArquivo.CODIFICACAO_PADRAO;
+        String usos = null;
+        boolean naoDeclarados = false;
+        boolean compactar = false;
+        List<String> caminhos = new ArrayList<>();
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--diretorio=")) {
+                    diretorio = Paths.get(arg.substring("--diretorio=".length()));
+                } else if (arg.startsWith("--threads=")) {
+                    threads = Integer.parseInt(arg.substring("--threads=".length()));
+                } else if (arg.startsWith("--padrao=")) {
+                    padrao = arg.substring("--padrao=".length());
+                } else if (arg.startsWith("--codificacao=")) {
+                    codificacao = Charset.forName(arg.substring("--codificacao=".length()));
+                } else if (arg.startsWith("--usos=")) {
+                    usos = arg.substring("--usos=".length());
+                } else if (arg.equals("--nao-declarados")) {
+                    naoDeclarados = true;
+                } else if (arg.equals("--compactar")) {
+                    compactar = true;
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Opção desconhecida: " + arg);
+                } else {
+                    caminhos.add(arg);
+                }
+            }
+            if (threads < 1) {
+                throw new IllegalArgumentException("O número de threads deve ser positivo");
+            }
+            if (caminhos.isEmpty() && usos == null && !naoDeclarados && !compactar) {
+                throw new IllegalArgumentException("Informe os arquivos a indexar ou uma consulta");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Uso: java CompiladorMain --indice [--diretorio=DIR] [--threads=N] [--padrao=GLOB] "
+                    + "[--codificacao=NOME] <arquivo|diretório|glob>... "
+                    + "| --usos=NOME | --nao-declarados | --compactar");
+            return;
+        }
+
+        try {
+            long inicio = System.nanoTime();
+            IndiceIdentificadores indice = new IndiceIdentificadores(diretorio);
+            if (!caminhos.isEmpty()) {
+                Atualizacao atualizacao = indice.atualizar(CompiladorLote.coletarArquivos(caminhos, padrao),
+                        codificacao, threads);
+                for (String falha : atualizacao.getFalhas()) {
+                    System.err.println("Falha ao indexar " + falha);
+                }
+                System.out.println("Arquivos analisados: " + atualizacao.getAnalisados() + ", inalterados: "
+                        + atualizacao.getInalterados() + ", removidos: " + atualizacao.getRemovidos()
+                        + ", falhas: " + atualizacao.getFalhas().size());
+            }
+            if (compactar) {
+                indice.compactar();
+            }
+            if (usos != null || naoDeclarados) {
+                long inicioConsulta = System.nanoTime();
+                List<OcorrenciaIdentificador> ocorrencias = usos != null ? indice.usos(usos) : indice.naoDeclarados();
+                long duracaoConsulta = (System.nanoTime() - inicioConsulta) / 1_000_000;
+                EscritorRelatorio saida = EscritorRelatorio.paraConsole();
+                for (OcorrenciaIdentificador ocorrencia : ocorrencias) {
+                    saida.linha(ocorrencia.toString());
+                }
+                saida.numero(ocorrencias.size()).texto(" ocorrências em ").numero(duracaoConsulta).linha(" ms");
+                saida.descarregar();
+            }
+            System.out.println("Índice: " + indice.getQuantidadeArquivos() + " arquivos em "
+                    + indice.getQuantidadeSegmentos() + " segmentos (" + (System.nanoTime() - inicio) / 1_000_000
+                    + " ms)");
+        } catch (IOException e) {
+            System.err.println("Erro no índice: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Indexação interrompida");
+        }
+    }
+
+    /**
+     * Indexa os arquivos novos ou alterados entre os informados, analisando-os em paralelo, e
+     * registra a remoção dos arquivos indexados que não existem mais. Arquivos que não puderam
+     * ser lidos mantêm o que já estava no índice
+     */
+    public Atualizacao atualizar(List<Path> arquivos, Charset codificacao, int threads)
+            throws IOException, InterruptedException {
+        Atualizacao atualizacao = new Atualizacao();
+        SortedMap<String, Path> alterados = new TreeMap<>();
+        for (Path arquivo : arquivos) {
+            Path absoluto = arquivo.toAbsolutePath().normalize();
+            String caminho = absoluto.toString();
+            int[] local = localizacao.get(caminho);
+            if (local != null) {
+                SegmentoIndice segmento = segmentos.get(local[0]);
+                if (segmento.getTamanho(local[1]) == Files.size(absoluto)
+                        && segmento.getModificado(local[1]) == Files.getLastModifiedTime(absoluto).toMillis()) {
+                    atualizacao.inalterados++;
+                    continue;
+                }
+            }
+            alterados.put(caminho, absoluto);
+        }
+
+        SortedSet<String> gravados = new TreeSet<>(alterados.keySet());
+        for (Map.Entry<String, int[]> indexado : localizacao.entrySet()) {
+            String caminho = indexado.getKey();
+            if (segmentos.get(indexado.getValue()[0]).getTamanho(indexado.getValue()[1]) >= 0
+                    && !alterados.containsKey(caminho) && !Files.isRegularFile(Paths.get(caminho))) {
+                gravados.add(caminho);
+                atualizacao.removidos++;
+            }
+        }
+        if (gravados.isEmpty()) {
+            return atualizacao;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        PoolAnalisadores pool = new PoolAnalisadores(threads);
+        SegmentoIndice.Construtor construtor = new SegmentoIndice.Construtor();
+        try {
+            Map<String, Future<ArquivoIndexado>> tarefas = new HashMap<>();
+            for (Map.Entry<String, Path> alterado : alterados.entrySet()) {
+                tarefas.put(alterado.getKey(),
+                        executor.submit(() -> indexar(alterado.getValue(), codificacao, pool)));
+            }
+            // Em ordem de caminho, consumindo cada resultado assim que fica pronto
+            for (String caminho : gravados) {
+                Future<ArquivoIndexado> tarefa = tarefas.remove(caminho);
+                if (tarefa == null) {
+                    construtor.adicionarArquivo(caminho, -1, 0);
+                    continue;
+                }
+                ArquivoIndexado indexado;
+                try {
+                    indexado = tarefa.get();
+                } catch (ExecutionException e) {
+                    atualizacao.falhas.add(caminho + ": " + e.getCause().getMessage());
+                    continue;
+                }
+                int arquivo = construtor.adicionarArquivo(caminho, indexado.tamanho, indexado.modificado);
+                for (int i = 0; i < indexado.quantidade; i++) {
+                    int[] dados = indexado.ocorrencias;
+                    construtor.adicionarOcorrencia(indexado.nomes[dados[i * 4]], arquivo, dados[i * 4 + 1],
+                            dados[i * 4 + 2], dados[i * 4 + 3]);
+                }
+                atualizacao.analisados++;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (!construtor.isVazio()) {
+            adicionarSegmento(construtor);
+            if (segmentos.size() > MAXIMO_SEGMENTOS) {
+                compactar();
+            }
+        }
+        return atualizacao;
+    }
+
+    /**
+     * Analisa o arquivo e guarda as ocorrências dos seus identificadores, com o tipo e a
+     * declaração do símbolo de cada nome ao fim da análise
+     */
+    private static ArquivoIndexado indexar(Path arquivo, Charset codificacao, PoolAnalisadores pool)
+            throws IOException {
+        // Lidos antes do conteúdo: se o arquivo mudar durante a análise, a próxima atualização o refaz
+        long tamanho = Files.size(arquivo);
+        long modificado = Files.getLastModifiedTime(arquivo).toMillis();
+        AnalisadorLexico analisador = pool.obter(FonteArquivo.ler(arquivo, codificacao));
+        try {
+            analisador.analisar();
+            TabelaSimbolos tabela = analisador.getTabelaSimbolos();
+            BufferTokens tokens = analisador.getBufferTokens();
+            String[] nomes = new String[tabela.getNomes().tamanho()];
+            int[] marcas = new int[nomes.length];
+            ArquivoIndexado indexado = new ArquivoIndexado(tamanho, modificado, nomes);
+            for (int i = 0; i < tokens.tamanho(); i++) {
+                if (tokens.getTipo(i) != TipoToken.IDENTIFICADOR) {
+                    continue;
+                }
+                int id = tokens.getIdNome(i);
+                if (nomes[id] == null) {
+                    nomes[id] = tabela.getNomes().getNome(id);
+                    Simbolo simbolo = tabela.buscarSimbolo(id);
+                    if (simbolo != null) {
+                        marcas[id] = simbolo.getTipoSimbolo().getCodigo() << 1
+                                | (simbolo.isDeclarado() ? SegmentoIndice.DECLARADO : 0);
+                    }
+                }
+                indexado.adicionar(id, tokens.getLinha(i), tokens.getColuna(i), marcas[id]);
+            }
+            return indexado;
+        } finally {
+            pool.devolver(analisador);
+        }
+    }
+
+    /**
+     * Todas as ocorrências do nome, em qualquer combinação de maiúsculas e minúsculas ASCII,
+     * em ordem de arquivo, linha e coluna. Cada ocorrência traz o nome como está no arquivo
+     */
+    public List<OcorrenciaIdentificador> usos(String nome) {
+        List<OcorrenciaIdentificador> ocorrencias = new ArrayList<>();
+        List<Integer> posicoes = new ArrayList<>();
+        for (int s = 0; s < segmentos.size(); s++) {
+            posicoes.clear();
+            segmentos.get(s).buscarGrafias(nome, posicoes);
+            for (int posicao : posicoes) {
+                adicionarOcorrencias(s, posicao, null, false, ocorrencias);
+            }
+        }
+        ocorrencias.sort(Comparator.comparing(OcorrenciaIdentificador::getArquivo)
+                .thenComparingInt(OcorrenciaIdentificador::getLinha)
+                .thenComparingInt(OcorrenciaIdentificador::getColuna));
+        return ocorrencias;
+    }
+
+    /**
+     * Ocorrências de nomes que não foram declarados no seu arquivo, em todos os arquivos, em
+     * ordem de nome, arquivo, linha e coluna
+     */
+    public List<OcorrenciaIdentificador> naoDeclarados() {
+        List<OcorrenciaIdentificador> ocorrencias = new ArrayList<>();
+        for (int s = 0; s < segmentos.size(); s++) {
+            SegmentoIndice segmento = segmentos.get(s);
+            for (int posicao = 0; posicao < segmento.getQuantidadeNomes(); posicao++) {
+                adicionarOcorrencias(s, posicao, null, true, ocorrencias);
+            }
+        }
+        Collections.sort(ocorrencias);
+        return ocorrencias;
+    }
+
+    /**
+     * Adiciona as ocorrências vigentes de um nome do segmento. O nome só é lido do segmento
+     * quando alguma ocorrência entra no resultado
+     */
+    private void adicionarOcorrencias(int s, int posicao, String nome, boolean somenteNaoDeclarados,
+            List<OcorrenciaIdentificador> ocorrencias) {
+        SegmentoIndice segmento = segmentos.get(s);
+        boolean[] vigentesSegmento = vigentes.get(s);
+        int fim = segmento.primeiraOcorrencia(posicao + 1);
+        for (int i = segmento.primeiraOcorrencia(posicao); i < fim; i++) {
+            int marcas = segmento.marcasDe(i);
+            boolean declarado = (marcas & SegmentoIndice.DECLARADO) != 0;
+            int arquivo = segmento.arquivoDe(i);
+            if (!vigentesSegmento[arquivo] || (somenteNaoDeclarados && declarado)) {
+                continue;
+            }
+            if (nome == null) {
+                nome = segmento.getNome(posicao);
+            }
+            ocorrencias.add(new OcorrenciaIdentificador(nome, segmento.getCaminho(arquivo), segmento.linhaDe(i),
+                    segmento.colunaDe(i), TipoSimbolo.deCodigo((byte) (marcas >>> 1)), declarado));
+        }
+    }
+
+    /**
+     * Junta todos os segmentos em um só, só com as ocorrências que ainda valem
+     */
+    public void compactar() throws IOException {
+        if (segmentos.size() < 2) {
+            return;
+        }
+        SegmentoIndice.Construtor construtor = new SegmentoIndice.Construtor();
+        int[][] novasPosicoes = new int[segmentos.size()][];
+        for (int s = 0; s < segmentos.size(); s++) {
+            novasPosicoes[s] = new int[segmentos.get(s).getQuantidadeArquivos()];
+            Arrays.fill(novasPosicoes[s], -1);
+        }
+        for (Map.Entry<String, int[]> arquivo : new TreeMap<>(localizacao).entrySet()) {
+            int s = arquivo.getValue()[0];
+            int posicao = arquivo.getValue()[1];
+            SegmentoIndice segmento = segmentos.get(s);
+            // Arquivos removidos saem do índice
+            if (segmento.getTamanho(posicao) >= 0) {
+                novasPosicoes[s][posicao] = construtor.adicionarArquivo(arquivo.getKey(),
+                        segmento.getTamanho(posicao), segmento.getModificado(posicao));
+            }
+        }
+
+        for (int s = 0; s < segmentos.size(); s++) {
+            SegmentoIndice segmento = segmentos.get(s);
+            for (int posicao = 0; posicao < segmento.getQuantidadeNomes(); posicao++) {
+                String nome = null;
+                int fim = segmento.primeiraOcorrencia(posicao + 1);
+                for (int i = segmento.primeiraOcorrencia(posicao); i < fim; i++) {
+                    int arquivo = novasPosicoes[s][segmento.arquivoDe(i)];
+                    if (arquivo < 0) {
+                        continue;
+                    }
+                    if (nome == null) {
+                        nome = segmento.getNome(posicao);
+                    }
+                    construtor.adicionarOcorrencia(nome, arquivo, segmento.linhaDe(i), segmento.colunaDe(i),
+                            segmento.marcasDe(i));
+                }
+            }
+        }
+
+        List<String> antigos = new ArrayList<>(nomesSegmentos);
+        segmentos.clear();
+        nomesSegmentos.clear();
+        adicionarSegmento(construtor);
+        for (String antigo : antigos) {
+            try {
+                Files.deleteIfExists(diretorio.resolve(antigo));
+            } catch (IOException e) {
+                // Ainda mapeado em algum sistema; é removido na próxima abertura do índice
+            }
+        }
+    }
+
+    /**
+     * Número de arquivos indexados, sem os removidos
+     */
+    public int getQuantidadeArquivos() {
+        int quantidade = 0;
+        for (int[] local : localizacao.values()) {
+            if (segmentos.get(local[0]).getTamanho(local[1]) >= 0) {
+                quantidade++;
+            }
+        }
+        return quantidade;
+    }
+
+    public int getQuantidadeSegmentos() {
+        return segmentos.size();
+    }
+
+    /**
+     * Grava o segmento, o acrescenta ao manifesto e passa a considerá-lo nas consultas
+     */
+    private void adicionarSegmento(SegmentoIndice.Construtor construtor) throws IOException {
+        String nome = PREFIXO_SEGMENTO + proximoSegmento++ + EXTENSAO;
+        Path arquivo = diretorio.resolve(nome);
+        construtor.gravar(arquivo, impressaoDigital);
+        segmentos.add(new SegmentoIndice(arquivo));
+        nomesSegmentos.add(nome);
+        gravarManifesto();
+        calcularVigentes();
+    }
+
+    /**
+     * Lê o manifesto e mapeia os seus segmentos. Um índice de outra versão do analisador ou
+     * com algum segmento ilegível é descartado, e os arquivos que não estão no manifesto,
+     * como os de uma atualização interrompida, são apagados
+     */
+    private void carregar() throws IOException {
+        Path manifesto = diretorio.resolve(MANIFESTO);
+        if (Files.isRegularFile(manifesto)) {
+            try {
+                for (String nome : Files.readAllLines(manifesto, StandardCharsets.UTF_8)) {
+                    if (nome.isEmpty()) {
+                        continue;
+                    }
+                    SegmentoIndice segmento = new SegmentoIndice(diretorio.resolve(nome));
+                    if (segmento.getImpressaoDigital() != impressaoDigital) {
+                        throw new IOException("Índice gerado por outra versão do analisador");
+                    }
+                    segmentos.add(segmento);
+                    nomesSegmentos.add(nome);
+                }
+            } catch (IOException e) {
+                segmentos.clear();
+                nomesSegmentos.clear();
+                Files.delete(manifesto);
+            }
+        }
+
+        try (Stream<Path> arquivos = Files.list(diretorio)) {
+            for (Path arquivo : (Iterable<Path>) arquivos::iterator) {
+                String nome = arquivo.getFileName().toString();
+                if (!nome.startsWith(PREFIXO_SEGMENTO)) {
+                    continue;
+                }
+                if (nome.endsWith(EXTENSAO) && !nomesSegmentos.contains(nome) || nome.endsWith(EXTENSAO_TEMPORARIA)) {
+                    try {
+                        Files.deleteIfExists(arquivo);
+                    } catch (IOException e) {
+                        // Fica para a próxima abertura
+                    }
+                } else if (nome.endsWith(EXTENSAO)) {
+                    String numero = nome.substring(PREFIXO_SEGMENTO.length(), nome.length() - EXTENSAO.length());
+                    try {
+                        proximoSegmento = Math.max(proximoSegmento, Integer.parseInt(numero) + 1);
+                    } catch (NumberFormatException e) {
+                        // Nome fora do padrão, criado por outra ferramenta
+                    }
+                }
+            }
+        }
+        calcularVigentes();
+    }
+
+    /**
+     * Grava o manifesto em um arquivo temporário e o move sobre o anterior, para que uma
+     * interrupção deixe o índice na versão anterior ou na nova, nunca entre as duas
+     */
+    private void gravarManifesto() throws IOException {
+        Path temporario = diretorio.resolve(MANIFESTO + EXTENSAO_TEMPORARIA);
+        Files.write(temporario, nomesSegmentos, StandardCharsets.UTF_8);
+        Files.move(temporario, diretorio.resolve(MANIFESTO), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Para cada arquivo, encontra o segmento mais recente que o contém
+     */
+    private void calcularVigentes() {
+        localizacao.clear();
+        vigentes.clear();
+        for (SegmentoIndice segmento : segmentos) {
+            vigentes.add(new boolean[segmento.getQuantidadeArquivos()]);
+        }
+        for (int s = segmentos.size() - 1; s >= 0; s--) {
+            SegmentoIndice segmento = segmentos.get(s);
+            for (int arquivo = 0; arquivo < segmento.getQuantidadeArquivos(); arquivo++) {
+                if (!localizacao.containsKey(segmento.getCaminho(arquivo))) {
+                    localizacao.put(segmento.getCaminho(arquivo), new int[] { s, arquivo });
+                    vigentes.get(s)[arquivo] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Resultado de atualizar()
+     */
+    public static class Atualizacao {
+        private int analisados;
+        private int inalterados;
+        private int removidos;
+        private final List<String> falhas = new ArrayList<>();
+
+        public int getAnalisados() {
+            return analisados;
+        }
+
+        public int getInalterados() {
+            return inalterados;
+        }
+
+        public int getRemovidos() {
+            return removidos;
+        }
+
+        /**
+         * Arquivos que não puderam ser indexados, com o motivo
+         */
+        public List<String> getFalhas() {
+            return falhas;
+        }
+    }
+
+    /**
+     * Ocorrências dos identificadores de um arquivo analisado, em quádruplas (id do nome,
+     * linha, coluna, marcas) na ordem dos tokens
+     */
+    private static final class ArquivoIndexado {
+        private final long tamanho;
+        private final long modificado;
+        private final String[] nomes;
+        private int[] ocorrencias;
+        private int quantidade;
+
+        ArquivoIndexado(long tamanho, long modificado, String[] nomes) {
+            this.tamanho = tamanho;
+            this.modificado = modificado;
+            this.nomes = nomes;
+            this.ocorrencias = new int[64];
+        }
+
+        void adicionar(int id, int linha, int coluna, int marcas) {
+            if (quantidade * 4 == ocorrencias.length) {
+                ocorrencias = Arrays.copyOf(ocorrencias, ocorrencias.length * 2);
+            }
+            ocorrencias[quantidade * 4] = id;
+            ocorrencias[quantidade * 4 + 1] = linha;
+            ocorrencias[quantidade * 4 + 2] = coluna;
+            ocorrencias[quantidade * 4 + 3] = marcas;
+            quantidade++;
+        }
+    }
+}
@@ -0,0 +1,392 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lê um resultado no formato de FormatoBinario direto do ByteBuffer, que pode ser um
+ * arquivo mapeado em memória, sem copiá-lo. Os tokens são percorridos por um cursor, sem
+ * criar objetos, e cada string da tabela só é decodificada quando usada pela primeira vez.
+ * As seções são independentes: ler os símbolos ou os diagnósticos não exige ler os tokens.
+ * Conteúdo inválido gera IllegalArgumentException
+ * @author Diogo Ferreira Saucedo
+ */
+public class LeitorBinario {
+    private static final TipoToken[] TIPOS_TOKEN = TipoToken.values();
+    private static final TipoSimbolo[] TIPOS_SIMBOLO = TipoSimbolo.values();
+    private static final CodigoDiagnostico[] CODIGOS = CodigoDiagnostico.values();
+
+    // Visão própria do buffer; as posições são relativas ao início do resultado
+    private final ByteBuffer dados;
+    private final int versao;
+    private final long impressaoDigital;
+    private final int totalTokens;
+    private final int inicioTokens;
+    private final int inicioSimbolos;
+    private final int inicioDiagnosticos;
+
+    // Tabela de strings: posição e tamanho em bytes de cada uma, e as já decodificadas
+    private final int[] posicoesStrings;
+    private final int[] tamanhosStrings;
+    private final String[] strings;
+
+    // Cursor dos tokens
+    private final int quantidadeTokens;
+    private int posicaoTokens;
+    private int lidos;
+    private TipoToken tipo;
+    private int inicio;
+    private int fim;
+    private int linha;
+    private int coluna;
+    private int indiceValor;
+
+    /**
+     * Lê o resultado que começa na posição atual do buffer. O buffer não é alterado
+     */
+    public LeitorBinario(ByteBuffer buffer) {
+        this.dados = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        try {
+            if (dados.remaining() < FormatoBinario.TAMANHO_CABECALHO
+                    || dados.getInt(0) != FormatoBinario.ASSINATURA) {
+                throw new IllegalArgumentException("O conteúdo não é um resultado binário da análise");
+            }
+            this.versao = dados.getShort(4);
+            if (versao < 1 || versao > FormatoBinario.VERSAO) {
+                throw new IllegalArgumentException("Versão do formato binário não suportada: " + versao);
+            }
+            this.impressaoDigital = dados.getLong(8);
+            this.totalTokens = dados.getInt(16);
+            int inicioStrings = secao(0);
+            this.inicioTokens = secao(1);
+            this.inicioSimbolos = secao(2);
+            this.inicioDiagnosticos = secao(3);
+
+            // Só as posições das strings são calculadas agora
+            dados.position(inicioStrings);
+            int quantidadeStrings = lerQuantidade();
+            this.posicoesStrings = new int[quantidadeStrings];
+            this.tamanhosStrings = new int[quantidadeStrings];
+            this.strings = new String[quantidadeStrings];
+            for (int i = 0; i < quantidadeStrings; i++) {
+                tamanhosStrings[i] = lerVarint();
+                posicoesStrings[i] = dados.position();
+                dados.position(dados.position() + tamanhosStrings[i]);
+            }
+
+            dados.position(inicioTokens);
+            this.quantidadeTokens = lerQuantidade();
+            this.posicaoTokens = dados.position();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("Resultado binário truncado ou corrompido", e);
+        }
+        this.lidos = 0;
+    }
+
+    private int secao(int indice) {
+        int posicao = dados.getInt(FormatoBinario.POSICAO_SECOES + 4 * indice);
+        if (posicao < FormatoBinario.TAMANHO_CABECALHO || posicao > dados.limit()) {
+            throw new IllegalArgumentException("Posição de seção inválida: " + posicao);
+        }
+        return posicao;
+    }
+
+    public int getVersao() {
+        return versao;
+    }
+
+    /**
+     * Impressão digital do analisador que gerou o resultado. Se for diferente de
+     * AnalisadorLexico.impressaoDigital(), a análise atual pode dar outro resultado
+     */
+    public long getImpressaoDigital() {
+        return impressaoDigital;
+    }
+
+    /**
+     * Número de tokens emitidos pela análise, incluindo os que não foram guardados
+     */
+    public int getTotalTokens() {
+        return totalTokens;
+    }
+
+    /**
+     * Número de tokens gravados; 0 se a análise não guardou os tokens
+     */
+    public int getQuantidadeTokens() {
+        return quantidadeTokens;
+    }
+
+    public int getQuantidadeStrings() {
+        return strings.length;
+    }
+
+    /**
+     * String da tabela, decodificada na primeira chamada
+     */
+    public String getString(int indice) {
+        String texto = strings[indice];
+        if (texto == null) {
+            int posicao = posicoesStrings[indice];
+            int tamanho = tamanhosStrings[indice];
+            if (dados.hasArray()) {
+                texto = new String(dados.array(), dados.arrayOffset() + posicao, tamanho, StandardCharsets.UTF_8);
+            } else {
+                byte[] bytes = new byte[tamanho];
+                ByteBuffer trecho = dados.duplicate();
+                trecho.position(posicao);
+                trecho.get(bytes);
+                texto = new String(bytes, StandardCharsets.UTF_8);
+            }
+            strings[indice] = texto;
+        }
+        return texto;
+    }
+
+    /**
+     * Avança o cursor para o próximo token. Retorna false quando não há mais tokens
+     */
+    public boolean proximoToken() {
+        if (lidos == quantidadeTokens) {
+            return false;
+        }
+        try {
+            dados.position(posicaoTokens);
+            int cabecalho = dados.get() & 0xFF;
+            int ordinal = cabecalho & FormatoBinario.MASCARA_TIPO;
+            if (ordinal >= TIPOS_TOKEN.length) {
+                throw new IllegalArgumentException("Tipo de token inválido: " + ordinal);
+            }
+            tipo = TIPOS_TOKEN[ordinal];
+            int inicioAnterior = inicio;
+            inicio = fim + lerVarint();
+            fim = inicio + lerVarint();
+            if ((cabecalho & FormatoBinario.NOVA_LINHA) != 0) {
+                linha += lerVarint();
+                coluna = lerVarint();
+            } else {
+                if (lidos == 0) {
+                    throw new IllegalArgumentException("O primeiro token deve começar uma linha");
+                }
+                coluna += inicio - inicioAnterior;
+                if ((cabecalho & FormatoBinario.COLUNA_IRREGULAR) != 0) {
+                    coluna += FormatoBinario.desfazerZigzag(lerVarint());
+                }
+            }
+            indiceValor = lerVarint();
+            if (indiceValor >= strings.length) {
+                throw new IllegalArgumentException("Índice de string inválido: " + indiceValor);
+            }
+            posicaoTokens = dados.position();
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Resultado binário truncado", e);
+        }
+        lidos++;
+        return true;
+    }
+
+    /**
+     * Volta o cursor para antes do primeiro token
+     */
+    public void reiniciarTokens() {
+        dados.position(inicioTokens);
+        lerVarint();
+        posicaoTokens = dados.position();
+        lidos = 0;
+        inicio = 0;
+        fim = 0;
+        linha = 0;
+        coluna = 0;
+    }
+
+    public TipoToken getTipo() {
+        return tipo;
+    }
+
+    /**
+     * Posição do token no código analisado
+     */
+    public int getInicio() {
+        return inicio;
+    }
+
+    public int getFim() {
+        return fim;
+    }
+
+    public int getLinha() {
+        return linha;
+    }
+
+    public int getColuna() {
+        return coluna;
+    }
+
+    /**
+     * Índice do valor do token na tabela de strings
+     */
+    public int getIndiceValor() {
+        return indiceValor;
+    }
+
+    public String getValor() {
+        return getString(indiceValor);
+    }
+
+    /**
+     * Todos os tokens como objetos Token
+     */
+    public List<Token> lerTokens() {
+        reiniciarTokens();
+        List<Token> tokens = new ArrayList<>(quantidadeTokens);
+        while (proximoToken()) {
+            tokens.add(new Token(tipo, getValor(), linha, coluna));
+        }
+        return tokens;
+    }
+
+    /**
+     * Monta a tabela de símbolos gravada, com a sua própria tabela de nomes
+     */
+    public TabelaSimbolos lerTabelaSimbolos() {
+        try {
+            dados.position(inicioSimbolos);
+            TabelaNomes nomes = new TabelaNomes();
+            int quantidadeNomes = lerQuantidade();
+            for (int id = 0; id < quantidadeNomes; id++) {
+                nomes.registrar(getString(lerVarint()));
+            }
+
+            TabelaSimbolos tabela = new TabelaSimbolos(nomes);
+            int quantidadeSimbolos = lerQuantidade();
+            for (int i = 0; i < quantidadeSimbolos; i++) {
+                int id = lerVarint();
+                TipoSimbolo tipoSimbolo = TIPOS_SIMBOLO[lerVarint()];
+                int linhaSimbolo = lerVarint();
+                boolean declarado = lerVarint() != 0;
+                int escopo = lerVarint();
+                if (id >= quantidadeNomes) {
+                    throw new IllegalArgumentException("Id de nome inválido: " + id);
+                }
+                tabela.restaurar(id, tipoSimbolo, linhaSimbolo, declarado, escopo);
+            }
+            return tabela;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Seção de símbolos truncada ou corrompida", e);
+        }
+    }
+
+    /**
+     * Monta os diagnósticos gravados, incluindo as contagens de ocorrências omitidas
+     */
+    public Diagnosticos lerDiagnosticos() {
+        try {
+            dados.position(inicioDiagnosticos);
+            Diagnosticos diagnosticos = new Diagnosticos();
+            int quantidade = lerQuantidade();
+            for (int i = 0; i < quantidade; i++) {
+                CodigoDiagnostico codigo = CODIGOS[lerVarint()];
+                int linhaDiagnostico = lerVarint();
+                int colunaDiagnostico = lerVarint();
+                int ocorrencias = lerVarint();
+                Object[] argumentos = new Object[lerQuantidade()];
+                for (int j = 0; j < argumentos.length; j++) {
+                    argumentos[j] = lerArgumento();
+                }
+                Diagnostico diagnostico = new Diagnostico(codigo, linhaDiagnostico, colunaDiagnostico, argumentos);
+                diagnostico.definirOcorrencias(ocorrencias);
+                diagnosticos.restaurar(diagnostico);
+            }
+
+            int codigosGravados = lerVarint();
+            for (int i = 0; i < codigosGravados; i++) {
+                int omitidos = lerVarint();
+                if (i < CODIGOS.length) {
+                    diagnosticos.restaurarOmitidos(CODIGOS[i], omitidos);
+                }
+            }
+            return diagnosticos;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("Seção de diagnósticos truncada ou corrompida", e);
+        }
+    }
+
+    /**
+     * Monta uma análise concluída com os tokens, a tabela de símbolos e os diagnósticos
+     * gravados. O código deve ser o mesmo que foi analisado: os valores dos tokens em
+     * getTokens() continuam sendo lidos dele
+     */
+    public AnalisadorLexico lerAnalise(CharSequence codigo) {
+        TabelaSimbolos tabela = lerTabelaSimbolos();
+        Diagnosticos diagnosticos = lerDiagnosticos();
+
+        // Id na tabela de nomes de cada string que é um nome
+        int[] nomePorString = new int[strings.length];
+        Arrays.fill(nomePorString, -1);
+        dados.position(inicioSimbolos);
+        int quantidadeNomes = lerVarint();
+        for (int id = 0; id < quantidadeNomes; id++) {
+            nomePorString[lerVarint()] = id;
+        }
+
+        AnalisadorLexico analisador = AnalisadorLexico.restaurada(codigo, tabela, diagnosticos, totalTokens,
+                quantidadeTokens == totalTokens);
+        BufferTokens tokens = analisador.getBufferTokens();
+        tokens.reservar(quantidadeTokens);
+        reiniciarTokens();
+        while (proximoToken()) {
+            if (fim > codigo.length()) {
+                throw new IllegalArgumentException("Token além do fim do código: posição " + fim);
+            }
+            int idNome = tipo == TipoToken.IDENTIFICADOR ? nomePorString[indiceValor] : -1;
+            tokens.adicionar(tipo, inicio, fim, linha, coluna, idNome);
+        }
+        return analisador;
+    }
+
+    private Object lerArgumento() {
+        int tipoArgumento = lerVarint();
+        switch (tipoArgumento) {
+            case FormatoBinario.ARGUMENTO_TEXTO:
+                return getString(lerVarint());
+            case FormatoBinario.ARGUMENTO_CARACTERE:
+                return (char) lerVarint();
+            case FormatoBinario.ARGUMENTO_INTEIRO:
+                return FormatoBinario.desfazerZigzag(lerVarint());
+            case FormatoBinario.ARGUMENTO_CODIGO:
+                return CODIGOS[lerVarint()];
+            default:
+                throw new IllegalArgumentException("Tipo de argumento desconhecido: " + tipoArgumento);
+        }
+    }
+
+    /**
+     * Quantidade de itens de uma lista. Cada item ocupa ao menos um byte, o que evita
+     * alocações enormes a partir de um conteúdo corrompido
+     */
+    private int lerQuantidade() {
+        int quantidade = lerVarint();
+        if (quantidade > dados.remaining()) {
+            throw new IllegalArgumentException("Quantidade maior que o conteúdo restante: " + quantidade);
+        }
+        return quantidade;
+    }
+
+    private int lerVarint() {
+        int valor = 0;
+        for (int deslocamento = 0; deslocamento < 32; deslocamento += 7) {
+            byte b = dados.get();
+            valor |= (b & 0x7F) << deslocamento;
+            if (b >= 0) {
+                if (valor < 0) {
+                    throw new IllegalArgumentException("Varint fora do intervalo de int");
+                }
+                return valor;
+            }
+        }
+        throw new IllegalArgumentException("Varint com mais de 5 bytes");
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ * Métricas de uma análise, coletadas só quando ligadas com AnalisadorLexico.setMetricas():
+ * tokens por tipo, tempo gasto na varredura, na análise semântica e nos observadores (os
+ * relatórios), acertos e faltas na tabela de nomes e erros por código. Ler o relógio a cada
+ * token custaria mais que a própria varredura, então só um token a cada INTERVALO_AMOSTRA tem
+ * a análise semântica e os observadores cronometrados, e a medida vale pelo intervalo todo; a
+ * varredura fica com o restante do tempo total. Nenhum objeto é criado por token, e, com as
+ * métricas desligadas, o analisador só testa se há métricas. Uma instância pode acumular
+ * várias análises com somar()
+ * @author Diogo Ferreira Saucedo
+ */
+public final class MetricasAnalise {
+    private static final TipoToken[] TIPOS = TipoToken.values();
+    private static final CodigoDiagnostico[] CODIGOS = CodigoDiagnostico.values();
+    private static final int INTERVALO_AMOSTRA = 64;
+
+    private long analises;
+    private long caracteres;
+    private long bytes;
+    private final long[] tokensPorTipo;
+    private final long[] errosPorCodigo;
+    private long acertosTabelaNomes;
+    private long faltasTabelaNomes;
+    private long nanosVarredura;
+    private long nanosSemantica;
+    private long nanosRelatorio;
+    private long nanosTotal;
+
+    // Início da análise em andamento; 0 fora de uma análise
+    private long inicio;
+    // Tempos da semântica e dos observadores antes da análise em andamento
+    private long semanticaAnterior;
+    private long relatorioAnterior;
+    // Tokens até a próxima amostra e peso do token atual: INTERVALO_AMOSTRA quando é
+    // cronometrado, 1 no EOF, que é sempre cronometrado, e 0 nos demais
+    private int tokensAteAmostra;
+    private long peso;
+    private long ultimaMarcacao;
+
+    public MetricasAnalise() {
+        this.tokensPorTipo = new long[TIPOS.length];
+        this.errosPorCodigo = new long[CODIGOS.length];
+    }
+
+    /**
+     * Marca o início da análise do código, se ainda não foi marcado
+     */
+    void iniciar(int caracteresCodigo) {
+        if (inicio == 0) {
+            caracteres += caracteresCodigo;
+            semanticaAnterior = nanosSemantica;
+            relatorioAnterior = nanosRelatorio;
+            tokensAteAmostra = INTERVALO_AMOSTRA;
+            inicio = System.nanoTime();
+        }
+    }
+
+    /**
+     * Conta o token, já varrido, e decide se a semântica e os observadores dele serão
+     * cronometrados
+     */
+    void tokenLido(TipoToken tipo) {
+        tokensPorTipo[tipo.ordinal()]++;
+        if (tipo == TipoToken.EOF) {
+            // O fim da análise e dos relatórios não se repete, então vale por si só
+            peso = 1;
+        } else if (--tokensAteAmostra > 0) {
+            peso = 0;
+            return;
+        } else {
+            tokensAteAmostra = INTERVALO_AMOSTRA;
+            peso = INTERVALO_AMOSTRA;
+        }
+        ultimaMarcacao = System.nanoTime();
+    }
+
+    void semanticaConcluida() {
+        if (peso != 0) {
+            long agora = System.nanoTime();
+            nanosSemantica += (agora - ultimaMarcacao) * peso;
+            ultimaMarcacao = agora;
+        }
+    }
+
+    void observadoresNotificados() {
+        if (peso != 0) {
+            long agora = System.nanoTime();
+            nanosRelatorio += (agora - ultimaMarcacao) * peso;
+            ultimaMarcacao = agora;
+        }
+    }
+
+    /**
+     * Registra a busca de um identificador na tabela de nomes: acerto quando o nome já existia
+     */
+    void nomeRegistrado(boolean existente) {
+        if (existente) {
+            acertosTabelaNomes++;
+        } else {
+            faltasTabelaNomes++;
+        }
+    }
+
+    /**
+     * Encerra a análise, contando os erros por código, inclusive os agrupados e os omitidos
+     * pelos limites
+     */
+    void analiseConcluida(Diagnosticos diagnosticos) {
+        for (Diagnostico diagnostico : diagnosticos.getGuardados()) {
+            errosPorCodigo[diagnostico.getCodigo().ordinal()] += diagnostico.getOcorrencias();
+        }
+        for (CodigoDiagnostico codigo : CODIGOS) {
+            errosPorCodigo[codigo.ordinal()] += diagnosticos.getOmitidos(codigo);
+        }
+        long duracao = System.nanoTime() - inicio;
+        long estimadas = nanosSemantica - semanticaAnterior + nanosRelatorio - relatorioAnterior;
+        nanosTotal += duracao;
+        nanosVarredura += Math.max(0, duracao - estimadas);
+        analises++;
+        inicio = 0;
+        peso = 0;
+    }
+
+    /**
+     * Tamanho do arquivo em bytes, quando conhecido, para calcular getBytesPorSegundo()
+     */
+    public void registrarBytes(long bytes) {
+        this.bytes += bytes;
+    }
+
+    /**
+     * Acumula as métricas de outra instância nesta
+     */
+    public void somar(MetricasAnalise outras) {
+        analises += outras.analises;
+        caracteres += outras.caracteres;
+        bytes += outras.bytes;
+        for (int i = 0; i < tokensPorTipo.length; i++) {
+            tokensPorTipo[i] += outras.tokensPorTipo[i];
+        }
+        for (int i = 0; i < errosPorCodigo.length; i++) {
+            errosPorCodigo[i] += outras.errosPorCodigo[i];
+        }
+        acertosTabelaNomes += outras.acertosTabelaNomes;
+        faltasTabelaNomes += outras.faltasTabelaNomes;
+        nanosVarredura += outras.nanosVarredura;
+        nanosSemantica += outras.nanosSemantica;
+        nanosRelatorio += outras.nanosRelatorio;
+        nanosTotal += outras.nanosTotal;
+    }
+
+    /**
+     * Grava as métricas em JSON. Tempos em nanossegundos, taxas em unidades por segundo
+     */
+    public void escreverJson(EscritorRelatorio saida) {
+        saida.linha("{");
+        saida.texto("  \"analises\": ").numero(analises).caractere(',').novaLinha();
+        saida.texto("  \"caracteres\": ").numero(caracteres).caractere(',').novaLinha();
+        saida.texto("  \"bytes\": ").numero(bytes).caractere(',').novaLinha();
+        saida.texto("  \"tokens\": ").numero(getTokens()).caractere(',').novaLinha();
+        saida.texto("  \"tokensPorSegundo\": ").numero(getTokensPorSegundo()).caractere(',').novaLinha();
+        saida.texto("  \"caracteresPorSegundo\": ").numero(porSegundo(caracteres)).caractere(',').novaLinha();
+        saida.texto("  \"bytesPorSegundo\": ").numero(getBytesPorSegundo()).caractere(',').novaLinha();
+        saida.texto("  \"nanos\": {\"total\": ").numero(nanosTotal)
+                .texto(", \"varredura\": ").numero(nanosVarredura)
+                .texto(", \"semantica\": ").numero(nanosSemantica)
+                .texto(", \"relatorio\": ").numero(nanosRelatorio).texto("},").novaLinha();
+        saida.texto("  \"tabelaNomes\": {\"acertos\": ").numero(acertosTabelaNomes)
+                .texto(", \"faltas\": ").numero(faltasTabelaNomes).texto("},").novaLinha();
+        saida.texto("  \"tokensPorTipo\": {");
+        boolean primeiro = true;
+        for (TipoToken tipo : TIPOS) {
+            if (tokensPorTipo[tipo.ordinal()] > 0) {
+                saida.texto(primeiro ? "" : ", ").caractere('"').texto(tipo.name()).texto("\": ")
+                        .numero(tokensPorTipo[tipo.ordinal()]);
+                primeiro = false;
+            }
+        }
+        saida.linha("},");
+        saida.texto("  \"errosPorCodigo\": {");
+        primeiro = true;
+        for (CodigoDiagnostico codigo : CODIGOS) {
+            if (errosPorCodigo[codigo.ordinal()] > 0) {
+                saida.texto(primeiro ? "" : ", ").caractere('"').texto(codigo.name()).texto("\": ")
+                        .numero(errosPorCodigo[codigo.ordinal()]);
+                primeiro = false;
+            }
+        }
+        saida.linha("}");
+        saida.linha("}");
+    }
+
+    private long porSegundo(long quantidade) {
+        return nanosTotal == 0 ? 0 : (long) (quantidade * 1e9 / nanosTotal);
+    }
+
+    // Getters
+
+    /**
+     * Número de análises concluídas
+     */
+    public long getAnalises() {
+        return analises;
+    }
+
+    public long getCaracteres() {
+        return caracteres;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getTokens() {
+        long total = 0;
+        for (long quantidade : tokensPorTipo) {
+            total += quantidade;
+        }
+        return total;
+    }
+
+    public long getTokens(TipoToken tipo) {
+        return tokensPorTipo[tipo.ordinal()];
+    }
+
+    /**
+     * Ocorrências do código, contando as agrupadas e as omitidas pelos limites
+     */
+    public long getErros(CodigoDiagnostico codigo) {
+        return errosPorCodigo[codigo.ordinal()];
+    }
+
+    public long getTokensPorSegundo() {
+        return porSegundo(getTokens());
+    }
+
+    public long getBytesPorSegundo() {
+        return porSegundo(bytes);
+    }
+
+    public long getAcertosTabelaNomes() {
+        return acertosTabelaNomes;
+    }
+
+    public long getFaltasTabelaNomes() {
+        return faltasTabelaNomes;
+    }
+
+    /**
+     * Tempo total menos o da semântica e dos observadores: a varredura, a tabela de nomes e,
+     * na análise paralela, a espera pelos blocos
+     */
+    public long getNanosVarredura() {
+        return nanosVarredura;
+    }
+
+    /**
+     * Tempo estimado da análise semântica, pelas amostras
+     */
+    public long getNanosSemantica() {
+        return nanosSemantica;
+    }
+
+    /**
+     * Tempo estimado dos observadores, que no CompiladorMain são os relatórios
+     */
+    public long getNanosRelatorio() {
+        return nanosRelatorio;
+    }
+
+    /**
+     * Tempo do início ao fim de cada análise, somado
+     */
+    public long getNanosTotal() {
+        return nanosTotal;
+    }
+}
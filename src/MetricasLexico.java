@@ -0,0 +1,149 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Métricas acumuladas de todas as análises do processo, usadas pelos modos em lote e servidor.
+ * A instância de global() é registrada no servidor de MBeans da plataforma na primeira vez
+ * que é usada. As análises são somadas uma vez cada, ao fim, então o acúmulo não disputa o
+ * caminho quente das threads
+ * @author Diogo Ferreira Saucedo
+ */
+public final class MetricasLexico implements MetricasLexicoMXBean {
+    public static final String NOME_JMX = "CompiladorLexico:type=Metricas";
+
+    private static MetricasLexico global;
+
+    private MetricasAnalise total;
+
+    private MetricasLexico() {
+        this.total = new MetricasAnalise();
+    }
+
+    /**
+     * Instância do processo, registrada via JMX em NOME_JMX
+     */
+    public static synchronized MetricasLexico global() {
+        if (global == null) {
+            global = new MetricasLexico();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(global, new ObjectName(NOME_JMX));
+            } catch (JMException e) {
+                // As métricas continuam disponíveis em getResumoJson(), só não via JMX
+                System.err.println("Não foi possível registrar as métricas via JMX: " + e.getMessage());
+            }
+        }
+        return global;
+    }
+
+    /**
+     * Soma as métricas de uma análise concluída
+     */
+    public synchronized void acumular(MetricasAnalise metricas) {
+        total.somar(metricas);
+    }
+
+    @Override
+    public synchronized long getAnalises() {
+        return total.getAnalises();
+    }
+
+    @Override
+    public synchronized long getCaracteres() {
+        return total.getCaracteres();
+    }
+
+    @Override
+    public synchronized long getBytes() {
+        return total.getBytes();
+    }
+
+    @Override
+    public synchronized long getTokens() {
+        return total.getTokens();
+    }
+
+    @Override
+    public synchronized long getTokensPorSegundo() {
+        return total.getTokensPorSegundo();
+    }
+
+    @Override
+    public synchronized long getBytesPorSegundo() {
+        return total.getBytesPorSegundo();
+    }
+
+    @Override
+    public synchronized long getMillisTotal() {
+        return TimeUnit.NANOSECONDS.toMillis(total.getNanosTotal());
+    }
+
+    @Override
+    public synchronized long getMillisVarredura() {
+        return TimeUnit.NANOSECONDS.toMillis(total.getNanosVarredura());
+    }
+
+    @Override
+    public synchronized long getMillisSemantica() {
+        return TimeUnit.NANOSECONDS.toMillis(total.getNanosSemantica());
+    }
+
+    @Override
+    public synchronized long getMillisRelatorio() {
+        return TimeUnit.NANOSECONDS.toMillis(total.getNanosRelatorio());
+    }
+
+    @Override
+    public synchronized long getAcertosTabelaNomes() {
+        return total.getAcertosTabelaNomes();
+    }
+
+    @Override
+    public synchronized long getFaltasTabelaNomes() {
+        return total.getFaltasTabelaNomes();
+    }
+
+    @Override
+    public synchronized Map<String, Long> getTokensPorTipo() {
+        Map<String, Long> porTipo = new TreeMap<>();
+        for (TipoToken tipo : TipoToken.values()) {
+            if (total.getTokens(tipo) > 0) {
+                porTipo.put(tipo.name(), total.getTokens(tipo));
+            }
+        }
+        return porTipo;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getErrosPorCodigo() {
+        Map<String, Long> porCodigo = new TreeMap<>();
+        for (CodigoDiagnostico codigo : CodigoDiagnostico.values()) {
+            if (total.getErros(codigo) > 0) {
+                porCodigo.put(codigo.name(), total.getErros(codigo));
+            }
+        }
+        return porCodigo;
+    }
+
+    @Override
+    public synchronized String getResumoJson() {
+        StringWriter texto = new StringWriter();
+        try (EscritorRelatorio saida = new EscritorRelatorio(texto)) {
+            total.escreverJson(saida);
+        } catch (IOException e) {
+            // StringWriter não lança IOException
+            throw new IllegalStateException(e);
+        }
+        return texto.toString();
+    }
+
+    @Override
+    public synchronized void zerar() {
+        total = new MetricasAnalise();
+    }
+}
@@ -0,0 +1,52 @@
+import java.util.Map;
+
+/**
+ * Interface JMX das métricas acumuladas em MetricasLexico, registradas como
+ * "CompiladorLexico:type=Metricas" e visíveis no JConsole ou no VisualVM
+ * @author Diogo Ferreira Saucedo
+ */
+public interface MetricasLexicoMXBean {
+    long getAnalises();
+
+    long getCaracteres();
+
+    long getBytes();
+
+    long getTokens();
+
+    long getTokensPorSegundo();
+
+    long getBytesPorSegundo();
+
+    long getMillisTotal();
+
+    long getMillisVarredura();
+
+    long getMillisSemantica();
+
+    long getMillisRelatorio();
+
+    long getAcertosTabelaNomes();
+
+    long getFaltasTabelaNomes();
+
+    /**
+     * Tokens emitidos por tipo, só os tipos que apareceram
+     */
+    Map<String, Long> getTokensPorTipo();
+
+    /**
+     * Ocorrências por código de diagnóstico, só os códigos que apareceram
+     */
+    Map<String, Long> getErrosPorCodigo();
+
+    /**
+     * As mesmas métricas no JSON de MetricasAnalise.escreverJson()
+     */
+    String getResumoJson();
+
+    /**
+     * Descarta as métricas acumuladas até aqui
+     */
+    void zerar();
+}
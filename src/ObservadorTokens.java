@@ -0,0 +1,15 @@
+/**
+ * Interface para quem deseja acompanhar os tokens à medida que são emitidos pelo analisador léxico
+ * @author Diogo Ferreira Saucedo
+ */
+public interface ObservadorTokens {
+    /**
+     * Chamado para cada token emitido, na ordem em que aparecem no código
+     */
+    void tokenEmitido(Token token);
+
+    /**
+     * Chamado uma única vez, após a emissão do token EOF
+     */
+    void analiseConcluida();
+}
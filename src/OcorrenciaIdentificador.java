@@ -0,0 +1,74 @@
+/**
+ * Ocorrência de um identificador encontrada no IndiceIdentificadores: o arquivo e a posição
+ * do token, com o tipo do símbolo e se o nome foi declarado naquele arquivo
+ * @author Diogo Ferreira Saucedo
+ */
+public class OcorrenciaIdentificador implements Comparable<OcorrenciaIdentificador> {
+    private final String nome;
+    private final String arquivo;
+    private final int linha;
+    private final int coluna;
+    private final TipoSimbolo tipo;
+    private final boolean declarado;
+
+    public OcorrenciaIdentificador(String nome, String arquivo, int linha, int coluna, TipoSimbolo tipo,
+            boolean declarado) {
+        this.nome = nome;
+        this.arquivo = arquivo;
+        this.linha = linha;
+        this.coluna = coluna;
+        this.tipo = tipo;
+        this.declarado = declarado;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    /**
+     * Caminho absoluto do arquivo
+     */
+    public String getArquivo() {
+        return arquivo;
+    }
+
+    public int getLinha() {
+        return linha;
+    }
+
+    public int getColuna() {
+        return coluna;
+    }
+
+    public TipoSimbolo getTipo() {
+        return tipo;
+    }
+
+    public boolean isDeclarado() {
+        return declarado;
+    }
+
+    /**
+     * Ordem por nome, arquivo, linha e coluna
+     */
+    @Override
+    public int compareTo(OcorrenciaIdentificador outra) {
+        int comparacao = nome.compareTo(outra.nome);
+        if (comparacao == 0) {
+            comparacao = arquivo.compareTo(outra.arquivo);
+        }
+        if (comparacao == 0) {
+            comparacao = Integer.compare(linha, outra.linha);
+        }
+        if (comparacao == 0) {
+            comparacao = Integer.compare(coluna, outra.coluna);
+        }
+        return comparacao;
+    }
+
+    @Override
+    public String toString() {
+        return arquivo + ":" + linha + ":" + coluna + " " + nome + " (" + tipo.getNome()
+                + (declarado ? ", declarado)" : ", não declarado)");
+    }
+}
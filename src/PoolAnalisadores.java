@@ -0,0 +1,68 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Analisadores reaproveitáveis para quem analisa muitos arquivos seguidos, como os modos em
+ * lote e servidor. Um analisador devolvido volta ao pool e é entregue de novo com
+ * reiniciar(), mantendo os vetores já alocados, então arquivos pequenos em sequência não
+ * geram lixo do analisador. Analisadores que cresceram demais com um arquivo grande são
+ * descartados na devolução, para que o pool não prenda essa memória. Pode ser usado por
+ * várias threads ao mesmo tempo
+ * @author Diogo Ferreira Saucedo
+ */
+public final class PoolAnalisadores {
+    // Capacidade, em tokens, símbolos, nomes ou diagnósticos, acima da qual o analisador não volta ao pool
+    private static final int CAPACIDADE_MAXIMA_PADRAO = 1 << 16;
+
+    // Fila com vetor fixo, que não cria um nó por operação
+    private final BlockingQueue<AnalisadorLexico> livres;
+    private final int capacidadeMaxima;
+
+    /**
+     * Cria um pool que guarda até maximoLivres analisadores, normalmente o número de threads
+     * que analisam ao mesmo tempo
+     */
+    public PoolAnalisadores(int maximoLivres) {
+        this(maximoLivres, CAPACIDADE_MAXIMA_PADRAO);
+    }
+
+    public PoolAnalisadores(int maximoLivres, int capacidadeMaxima) {
+        if (maximoLivres < 1) {
+            throw new IllegalArgumentException("O pool precisa guardar ao menos um analisador: " + maximoLivres);
+        }
+        this.livres = new ArrayBlockingQueue<>(maximoLivres);
+        this.capacidadeMaxima = capacidadeMaxima;
+    }
+
+    /**
+     * Retorna um analisador pronto para analisar o código, reaproveitado do pool se houver
+     * algum livre. Deve ser devolvido com devolver() depois que o resultado for usado
+     */
+    public AnalisadorLexico obter(CharSequence codigo) {
+        AnalisadorLexico analisador = livres.poll();
+        if (analisador == null) {
+            return new AnalisadorLexico(codigo);
+        }
+        analisador.reiniciar(codigo);
+        return analisador;
+    }
+
+    /**
+     * Devolve o analisador ao pool. Os tokens, símbolos e diagnósticos dele não podem mais
+     * ser usados, pois a próxima análise os reaproveita
+     */
+    public void devolver(AnalisadorLexico analisador) {
+        if (analisador.capacidadeRetida() <= capacidadeMaxima) {
+            analisador.liberar();
+            // Com o pool cheio, o analisador é simplesmente descartado
+            livres.offer(analisador);
+        }
+    }
+
+    /**
+     * Analisadores livres no momento
+     */
+    public int getLivres() {
+        return livres.size();
+    }
+}
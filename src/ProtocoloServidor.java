@@ -0,0 +1,185 @@
+import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Protocolo entre ServidorLexico e ClienteLexico, sobre uma conexão TCP local. Uma conexão
+ * pode levar várias requisições, uma de cada vez. Não depende das classes do analisador,
+ * para que o cliente carregue o mínimo possível.
+ *
+ * Requisição:
+ *   int    assinatura "LXSV"
+ *   byte   comando (ANALISAR, ESTADO ou ENCERRAR)
+ *   ANALISAR:
+ *     UTF    nome do arquivo, usado só no relatório
+ *     short  quantidade de opções, seguida de cada opção em UTF (as mesmas da linha de comando)
+ *     int    tamanho do código, seguido dos bytes do código
+ *   ENCERRAR:
+ *     UTF    token gravado pelo servidor em arquivoToken(porta)
+ *
+ * Resposta:
+ *   blocos do texto da resposta em UTF-8, cada um com o tamanho (int) seguido dos bytes,
+ *   terminados por um bloco de tamanho 0. O relatório é enviado à medida que é escrito
+ *   byte   SUCESSO ou FALHA
+ *   SUCESSO: int total de tokens e int total de erros
+ *   FALHA:   UTF mensagem
+ * @author Diogo Ferreira Saucedo
+ */
+final class ProtocoloServidor {
+    // "LXSV"
+    static final int ASSINATURA = 0x4C585356;
+    static final int PORTA_PADRAO = 47800;
+
+    // Comandos
+    static final byte ANALISAR = 1;
+    static final byte ESTADO = 2;
+    static final byte ENCERRAR = 3;
+
+    // Status da resposta
+    static final byte SUCESSO = 0;
+    static final byte FALHA = 1;
+
+    // Limites de uma requisição, que protegem o servidor de conteúdo inválido
+    static final int TAMANHO_MAXIMO_CODIGO = 256 << 20;
+    static final int MAXIMO_OPCOES = 64;
+
+    private static final int TAMANHO_BLOCO = 32 << 10;
+
+    private ProtocoloServidor() {
+    }
+
+    /**
+     * Arquivo, no diretório do usuário, com o token que o servidor da porta exige para
+     * encerrar
+     */
+    static Path arquivoToken(int porta) {
+        return Paths.get(System.getProperty("user.home"), ".compilador-lexico", "servidor-" + porta + ".token");
+    }
+
+    /**
+     * Envia o que é escrito em blocos com o tamanho à frente. close() envia o bloco final,
+     * de tamanho 0, sem fechar o destino
+     */
+    static final class SaidaEmBlocos extends OutputStream {
+        private final DataOutputStream destino;
+        private final byte[] bloco;
+        private int tamanho;
+        private boolean fechada;
+
+        SaidaEmBlocos(DataOutputStream destino) {
+            this.destino = destino;
+            this.bloco = new byte[TAMANHO_BLOCO];
+            this.tamanho = 0;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (tamanho == bloco.length) {
+                enviarBloco();
+            }
+            bloco[tamanho++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int inicio, int quantidade) throws IOException {
+            while (quantidade > 0) {
+                if (tamanho == bloco.length) {
+                    enviarBloco();
+                }
+                int copiados = Math.min(quantidade, bloco.length - tamanho);
+                System.arraycopy(bytes, inicio, bloco, tamanho, copiados);
+                tamanho += copiados;
+                inicio += copiados;
+                quantidade -= copiados;
+            }
+        }
+
+        /**
+         * Envia o bloco atual, para que o cliente receba o texto já escrito
+         */
+        @Override
+        public void flush() throws IOException {
+            enviarBloco();
+            destino.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!fechada) {
+                fechada = true;
+                enviarBloco();
+                destino.writeInt(0);
+            }
+        }
+
+        private void enviarBloco() throws IOException {
+            if (tamanho > 0) {
+                destino.writeInt(tamanho);
+                destino.write(bloco, 0, tamanho);
+                tamanho = 0;
+            }
+        }
+    }
+
+    /**
+     * Lê os blocos enviados por SaidaEmBlocos como um único fluxo, que termina no bloco de
+     * tamanho 0
+     */
+    static final class EntradaEmBlocos extends InputStream {
+        private final DataInputStream origem;
+        private int restantes;
+        private boolean terminada;
+
+        EntradaEmBlocos(DataInputStream origem) {
+            this.origem = origem;
+            this.restantes = 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!proximoBloco()) {
+                return -1;
+            }
+            restantes--;
+            return origem.readUnsignedByte();
+        }
+
+        @Override
+        public int read(byte[] bytes, int inicio, int quantidade) throws IOException {
+            if (quantidade == 0) {
+                return 0;
+            }
+            if (!proximoBloco()) {
+                return -1;
+            }
+            int lidos = origem.read(bytes, inicio, Math.min(quantidade, restantes));
+            if (lidos < 0) {
+                throw new EOFException("Conexão encerrada no meio da resposta");
+            }
+            restantes -= lidos;
+            return lidos;
+        }
+
+        /**
+         * Consome o restante dos blocos, deixando a conexão no status da resposta
+         */
+        @Override
+        public void close() throws IOException {
+            byte[] descarte = new byte[TAMANHO_BLOCO];
+            while (read(descarte, 0, descarte.length) >= 0) {
+                // Descarta o texto não lido
+            }
+        }
+
+        private boolean proximoBloco() throws IOException {
+            while (restantes == 0 && !terminada) {
+                restantes = origem.readInt();
+                if (restantes < 0) {
+                    throw new IOException("Bloco com tamanho inválido: " + restantes);
+                }
+                terminada = restantes == 0;
+            }
+            return !terminada;
+        }
+    }
+}
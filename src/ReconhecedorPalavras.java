@@ -0,0 +1,79 @@
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Reconhece palavras reservadas diretamente sobre um trecho do código, sem criar Strings.
+ * As palavras são organizadas em uma árvore de prefixos (trie) com transições em vetor,
+ * montada a partir das tabelas de palavras do analisador
+ * @author Diogo Ferreira Saucedo
+ */
+public class ReconhecedorPalavras {
+    private static final int LETRAS = 26;
+
+    // transicoes[estado * LETRAS + letra] é o próximo estado, ou 0 se não houver
+    private int[] transicoes;
+    // Tipo reconhecido ao terminar em cada estado, ou null
+    private TipoToken[] aceitacao;
+    private int estados;
+
+    /**
+     * Monta a árvore com as palavras reservadas e com as palavras reservadas escritas
+     * incorretamente, que são reconhecidas como PALAVRA_RESERVADA_ERRO
+     */
+    public ReconhecedorPalavras(Map<String, TipoToken> reservadas, Iterable<String> palavrasErro) {
+        this.transicoes = new int[LETRAS * 64];
+        this.aceitacao = new TipoToken[64];
+        this.estados = 1; // O estado 0 é a raiz
+
+        for (Map.Entry<String, TipoToken> palavra : reservadas.entrySet()) {
+            adicionar(palavra.getKey(), palavra.getValue());
+        }
+        for (String palavra : palavrasErro) {
+            adicionar(palavra, TipoToken.PALAVRA_RESERVADA_ERRO);
+        }
+    }
+
+    private void adicionar(String palavra, TipoToken tipo) {
+        int estado = 0;
+        for (int i = 0; i < palavra.length(); i++) {
+            int letra = palavra.charAt(i) - 'a';
+            if (letra < 0 || letra >= LETRAS) {
+                throw new IllegalArgumentException("Palavra reservada deve ter só letras minúsculas: " + palavra);
+            }
+
+            int indice = estado * LETRAS + letra;
+            if (transicoes[indice] == 0) {
+                if (estados == aceitacao.length) {
+                    transicoes = Arrays.copyOf(transicoes, transicoes.length * 2);
+                    aceitacao = Arrays.copyOf(aceitacao, aceitacao.length * 2);
+                }
+                transicoes[indice] = estados++;
+            }
+            estado = transicoes[indice];
+        }
+        aceitacao[estado] = tipo;
+    }
+
+    /**
+     * Retorna o tipo da palavra no trecho [inicio, fim) do código, ignorando maiúsculas, ou
+     * null se for um identificador comum
+     */
+    public TipoToken reconhecer(CharSequence codigo, int inicio, int fim) {
+        int estado = 0;
+        for (int i = inicio; i < fim; i++) {
+            char c = codigo.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (c < 'a' || c > 'z') {
+                return null;
+            }
+
+            estado = transicoes[estado * LETRAS + (c - 'a')];
+            if (estado == 0) {
+                return null;
+            }
+        }
+        return aceitacao[estado];
+    }
+}
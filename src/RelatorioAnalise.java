@@ -0,0 +1,168 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Relatório da análise em um dos formatos de FormatoRelatorio. Pode ser escrito de uma
+ * análise concluída (escrever) ou à medida que os tokens são emitidos (acompanhar), sem
+ * guardar os tokens: as seções que dependem do fim da análise (estatísticas, símbolos e
+ * erros) vêm depois da lista de tokens
+ * @author Diogo Ferreira Saucedo
+ */
+public abstract class RelatorioAnalise implements ObservadorTokens, Closeable {
+    /**
+     * O que o relatório inclui
+     */
+    public enum Conteudo {
+        // Tokens, estatísticas, tabela de símbolos e erros
+        COMPLETO,
+        // Tudo menos a lista de tokens (--somente-erros)
+        SEM_TOKENS,
+        // Só as estatísticas e os erros
+        RESUMO
+    }
+
+    protected final EscritorRelatorio saida;
+    protected final String nomeArquivo;
+    protected final Conteudo conteudo;
+    private AnalisadorLexico analisador;
+    private int tokensEscritos;
+
+    protected RelatorioAnalise(EscritorRelatorio saida, String nomeArquivo, Conteudo conteudo) {
+        this.saida = saida;
+        this.nomeArquivo = nomeArquivo;
+        this.conteudo = conteudo;
+        this.tokensEscritos = 0;
+    }
+
+    /**
+     * Cria o relatório no formato informado, escrito na saída
+     */
+    public static RelatorioAnalise criar(FormatoRelatorio formato, EscritorRelatorio saida, String nomeArquivo,
+            Conteudo conteudo) {
+        switch (formato) {
+            case CONSOLE:
+                return new RelatorioConsole(saida, nomeArquivo, conteudo);
+            case TEXTO:
+                return new RelatorioTexto(saida, nomeArquivo, conteudo);
+            case JSON:
+                return new RelatorioJson(saida, nomeArquivo, conteudo);
+            case CSV:
+                return new RelatorioCsv(saida, nomeArquivo, conteudo);
+            default:
+                throw new IllegalArgumentException("Formato desconhecido: " + formato);
+        }
+    }
+
+    /**
+     * Escreve o relatório de uma análise concluída, com os tokens guardados nela
+     */
+    public void escrever(AnalisadorLexico analisador) {
+        iniciar(analisador);
+        if (conteudo == Conteudo.COMPLETO) {
+            BufferTokens tokens = analisador.getBufferTokens();
+            for (int i = 0; i < tokens.tamanho(); i++) {
+                escreverToken(++tokensEscritos, tokens.getTipo(i), tokens.getValor(i),
+                        tokens.getLinha(i), tokens.getColuna(i));
+            }
+        }
+        concluir();
+    }
+
+    /**
+     * Passa a escrever o relatório à medida que o analisador emite os tokens; o relatório
+     * termina junto com a análise. Deve ser chamado antes da análise
+     */
+    public void acompanhar(AnalisadorLexico analisador) {
+        if (analisador.getTotalTokens() > 0) {
+            throw new IllegalStateException("A análise já foi iniciada");
+        }
+        iniciar(analisador);
+        analisador.adicionarObservador(this);
+    }
+
+    @Override
+    public void tokenEmitido(Token token) {
+        if (conteudo == Conteudo.COMPLETO) {
+            escreverToken(++tokensEscritos, token.getTipo(), token.getValor(), token.getLinha(), token.getColuna());
+        }
+    }
+
+    @Override
+    public void analiseConcluida() {
+        concluir();
+    }
+
+    /**
+     * Descarrega e fecha a saída
+     */
+    @Override
+    public void close() throws IOException {
+        saida.close();
+    }
+
+    private void iniciar(AnalisadorLexico analisador) {
+        this.analisador = analisador;
+        this.tokensEscritos = 0;
+        escreverInicio();
+    }
+
+    private void concluir() {
+        escreverFim();
+        try {
+            // Entrega o relatório ao destino assim que ele termina
+            saida.descarregar();
+        } catch (IOException e) {
+            // O erro fica guardado na saída e é lançado de novo por close()
+        }
+    }
+
+    protected AnalisadorLexico getAnalisador() {
+        return analisador;
+    }
+
+    /**
+     * Número de tokens listados até aqui
+     */
+    protected int getTokensEscritos() {
+        return tokensEscritos;
+    }
+
+    /**
+     * Indica se a análise teve tokens que não puderam ser listados por não terem sido guardados
+     */
+    protected boolean isTokensNaoGuardados() {
+        return conteudo != Conteudo.RESUMO && tokensEscritos == 0 && analisador.getTotalTokens() > 0;
+    }
+
+    /**
+     * Cabeçalho e abertura da lista de tokens
+     */
+    protected abstract void escreverInicio();
+
+    /**
+     * Um token da lista, numerado a partir de 1
+     */
+    protected abstract void escreverToken(int numero, TipoToken tipo, String valor, int linha, int coluna);
+
+    /**
+     * Fecha a lista de tokens e escreve as seções que dependem do fim da análise
+     */
+    protected abstract void escreverFim();
+
+    /**
+     * Tabela de símbolos em colunas de largura fixa, como exibida no console e no relatório
+     * em texto
+     */
+    static void escreverTabelaSimbolos(TabelaSimbolos tabela, EscritorRelatorio saida) {
+        saida.alinhado("Nome", 15).caractere(' ').alinhado("Tipo", 10).caractere(' ')
+                .alinhado("Linha", 8).caractere(' ').alinhado("Declarado", 10).novaLinha();
+        saida.linha("------------------------------------------------");
+
+        for (Simbolo simbolo : tabela.getSimbolos()) {
+            saida.alinhado(simbolo.getNome(), 15).caractere(' ')
+                    .alinhado(simbolo.getTipo(), 10).caractere(' ')
+                    .alinhado(simbolo.getLinha(), 8).caractere(' ')
+                    .alinhado(simbolo.isDeclarado() ? "Sim" : "Não", 10).novaLinha();
+        }
+    }
+}
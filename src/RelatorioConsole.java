@@ -0,0 +1,60 @@
+import java.util.List;
+
+/**
+ * Relatório no console: tabelas de tokens e de símbolos e a lista de erros. Sem a lista de
+ * tokens, só os erros são exibidos
+ * @author Diogo Ferreira Saucedo
+ */
+class RelatorioConsole extends RelatorioAnalise {
+    RelatorioConsole(EscritorRelatorio saida, String nomeArquivo, Conteudo conteudo) {
+        super(saida, nomeArquivo, conteudo);
+    }
+
+    @Override
+    protected void escreverInicio() {
+        if (conteudo == Conteudo.COMPLETO) {
+            saida.novaLinha().linha("=== TOKENS ENCONTRADOS ===");
+            saida.alinhado("#", 4).caractere(' ').alinhado("Tipo", 20).caractere(' ').alinhado("Valor", 15)
+                    .caractere(' ').alinhado("Linha", 8).caractere(' ').alinhado("Coluna", 8).novaLinha();
+            saida.linha("------------------------------------------------------------");
+        }
+    }
+
+    @Override
+    protected void escreverToken(int numero, TipoToken tipo, String valor, int linha, int coluna) {
+        saida.alinhado(numero, 4).caractere(' ').alinhado(tipo.name(), 20).caractere(' ');
+        // O valor entre aspas ocupa a coluna de 15 caracteres
+        saida.caractere('\'').texto(valor).caractere('\'').espacos(13 - valor.length()).caractere(' ');
+        saida.alinhado(linha, 8).caractere(' ').alinhado(coluna, 8).novaLinha();
+    }
+
+    @Override
+    protected void escreverFim() {
+        AnalisadorLexico analisador = getAnalisador();
+        if (conteudo == Conteudo.COMPLETO) {
+            saida.novaLinha();
+            saida.novaLinha().linha("=== TABELA DE SÍMBOLOS ===");
+            escreverTabelaSimbolos(analisador.getTabelaSimbolos(), saida);
+            saida.novaLinha();
+        } else if (conteudo == Conteudo.RESUMO) {
+            saida.novaLinha().linha("=== ESTATÍSTICAS ===");
+            saida.texto("Total de tokens: ").numero(analisador.getTotalTokens()).novaLinha();
+            saida.texto("Total de erros: ").numero(analisador.getErros().size()).novaLinha();
+            saida.texto("Total de símbolos na tabela: ")
+                    .numero(analisador.getTabelaSimbolos().getSimbolos().size()).novaLinha();
+        }
+
+        List<String> erros = analisador.getErros();
+        saida.novaLinha().linha("=== RELATÓRIO DE ERROS ===");
+        if (erros.isEmpty()) {
+            saida.linha("Nenhum erro encontrado! ✓");
+        } else {
+            saida.texto("Total de erros encontrados: ").numero(erros.size()).novaLinha();
+            saida.novaLinha();
+            for (int i = 0; i < erros.size(); i++) {
+                saida.numero(i + 1).texto(". ").linha(erros.get(i));
+            }
+        }
+        saida.novaLinha();
+    }
+}
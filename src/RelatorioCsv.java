@@ -0,0 +1,60 @@
+/**
+ * Relatório em CSV: uma linha por token ou, quando os tokens não são listados, uma única
+ * linha com o resumo da análise
+ * @author Diogo Ferreira Saucedo
+ */
+class RelatorioCsv extends RelatorioAnalise {
+    RelatorioCsv(EscritorRelatorio saida, String nomeArquivo, Conteudo conteudo) {
+        super(saida, nomeArquivo, conteudo);
+    }
+
+    @Override
+    protected void escreverInicio() {
+        if (conteudo == Conteudo.COMPLETO) {
+            saida.linha("numero,tipo,valor,linha,coluna");
+        } else {
+            saida.linha("arquivo,tokens,erros,simbolos");
+        }
+    }
+
+    @Override
+    protected void escreverToken(int numero, TipoToken tipo, String valor, int linha, int coluna) {
+        saida.numero(numero).caractere(',').texto(tipo.name()).caractere(',');
+        campo(valor).caractere(',').numero(linha).caractere(',').numero(coluna).novaLinha();
+    }
+
+    @Override
+    protected void escreverFim() {
+        if (conteudo != Conteudo.COMPLETO) {
+            AnalisadorLexico analisador = getAnalisador();
+            campo(nomeArquivo).caractere(',').numero(analisador.getTotalTokens())
+                    .caractere(',').numero(analisador.getErros().size())
+                    .caractere(',').numero(analisador.getTabelaSimbolos().getSimbolos().size()).novaLinha();
+        }
+    }
+
+    /**
+     * Escreve o campo, entre aspas quando contém vírgula, aspas ou quebra de linha
+     */
+    private EscritorRelatorio campo(String texto) {
+        boolean especial = false;
+        for (int i = 0; i < texto.length() && !especial; i++) {
+            char c = texto.charAt(i);
+            especial = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!especial) {
+            return saida.texto(texto);
+        }
+
+        saida.caractere('"');
+        int inicio = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            if (texto.charAt(i) == '"') {
+                // Aspas são dobradas dentro do campo
+                saida.texto(texto, inicio, i + 1).caractere('"');
+                inicio = i + 1;
+            }
+        }
+        return saida.texto(texto, inicio, texto.length()).caractere('"');
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.List;
+
+/**
+ * Relatório em JSON, com os mesmos dados do relatório em texto. Cada token, símbolo e erro
+ * ocupa uma linha
+ * @author Diogo Ferreira Saucedo
+ */
+class RelatorioJson extends RelatorioAnalise {
+    RelatorioJson(EscritorRelatorio saida, String nomeArquivo, Conteudo conteudo) {
+        super(saida, nomeArquivo, conteudo);
+    }
+
+    @Override
+    protected void escreverInicio() {
+        saida.linha("{");
+        saida.texto("  \"arquivo\": ");
+        string(nomeArquivo).caractere(',').novaLinha();
+        saida.texto("  \"dataHora\": ");
+        string(java.time.LocalDateTime.now().toString()).caractere(',').novaLinha();
+        if (conteudo == Conteudo.COMPLETO) {
+            saida.texto("  \"tokens\": [");
+        }
+    }
+
+    @Override
+    protected void escreverToken(int numero, TipoToken tipo, String valor, int linha, int coluna) {
+        if (numero > 1) {
+            saida.caractere(',');
+        }
+        saida.novaLinha().texto("    {\"tipo\": \"").texto(tipo.name()).texto("\", \"valor\": ");
+        string(valor).texto(", \"linha\": ").numero(linha).texto(", \"coluna\": ").numero(coluna).caractere('}');
+    }
+
+    @Override
+    protected void escreverFim() {
+        AnalisadorLexico analisador = getAnalisador();
+        List<Diagnostico> erros = analisador.getDiagnosticos().getLista();
+
+        if (conteudo == Conteudo.COMPLETO) {
+            fecharLista(getTokensEscritos() == 0).caractere(',').novaLinha();
+        }
+
+        saida.texto("  \"estatisticas\": {\"tokens\": ").numero(analisador.getTotalTokens())
+                .texto(", \"erros\": ").numero(erros.size())
+                .texto(", \"simbolos\": ").numero(analisador.getTabelaSimbolos().getSimbolos().size())
+                .texto("},").novaLinha();
+
+        if (conteudo != Conteudo.RESUMO) {
+            saida.texto("  \"simbolos\": [");
+            boolean primeiro = true;
+            for (Simbolo simbolo : analisador.getTabelaSimbolos().getSimbolos()) {
+                saida.texto(primeiro ? "" : ",").novaLinha().texto("    {\"nome\": ");
+                string(simbolo.getNome()).texto(", \"tipo\": ");
+                string(simbolo.getTipo()).texto(", \"linha\": ").numero(simbolo.getLinha())
+                        .texto(", \"declarado\": ").texto(simbolo.isDeclarado() ? "true" : "false").caractere('}');
+                primeiro = false;
+            }
+            fecharLista(primeiro).caractere(',').novaLinha();
+        }
+
+        saida.texto("  \"erros\": [");
+        for (int i = 0; i < erros.size(); i++) {
+            Diagnostico erro = erros.get(i);
+            saida.texto(i > 0 ? "," : "").novaLinha().texto("    {\"codigo\": \"").texto(erro.getCodigo().name())
+                    .texto("\", \"severidade\": \"").texto(erro.getSeveridade().name())
+                    .texto("\", \"linha\": ").numero(erro.getLinha())
+                    .texto(", \"coluna\": ").numero(erro.getColuna())
+                    .texto(", \"ocorrencias\": ").numero(erro.getOcorrencias())
+                    .texto(", \"mensagem\": ");
+            string(erro.getMensagem()).caractere('}');
+        }
+        fecharLista(erros.isEmpty()).novaLinha();
+        saida.linha("}");
+    }
+
+    private EscritorRelatorio fecharLista(boolean vazia) {
+        if (!vazia) {
+            saida.novaLinha().texto("  ");
+        }
+        return saida.caractere(']');
+    }
+
+    /**
+     * Escreve o texto entre aspas, escapando as aspas, a barra invertida e os caracteres de
+     * controle
+     */
+    private EscritorRelatorio string(String texto) {
+        saida.caractere('"');
+        int inicio = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            saida.texto(texto, inicio, i).caractere('\\');
+            switch (c) {
+                case '"':
+                case '\\':
+                    saida.caractere(c);
+                    break;
+                case '\n':
+                    saida.caractere('n');
+                    break;
+                case '\r':
+                    saida.caractere('r');
+                    break;
+                case '\t':
+                    saida.caractere('t');
+                    break;
+                default:
+                    saida.caractere('u').caractere('0').caractere('0')
+                            .caractere(Character.forDigit(c >> 4, 16)).caractere(Character.forDigit(c & 0xF, 16));
+                    break;
+            }
+            inicio = i + 1;
+        }
+        return saida.texto(texto, inicio, texto.length()).caractere('"');
+    }
+}
@@ -0,0 +1,65 @@
+import java.util.List;
+
+/**
+ * Relatório detalhado em texto, gravado em relatorio_analise.txt e nos relatórios do modo
+ * em lote
+ * @author Diogo Ferreira Saucedo
+ */
+class RelatorioTexto extends RelatorioAnalise {
+    RelatorioTexto(EscritorRelatorio saida, String nomeArquivo, Conteudo conteudo) {
+        super(saida, nomeArquivo, conteudo);
+    }
+
+    @Override
+    protected void escreverInicio() {
+        saida.linha("=== RELATÓRIO DE ANÁLISE LÉXICA ===");
+        saida.texto("Arquivo analisado: ").linha(nomeArquivo);
+        saida.texto("Data/Hora: ").linha(java.time.LocalDateTime.now().toString());
+        saida.novaLinha();
+
+        if (conteudo != Conteudo.RESUMO) {
+            saida.linha("=== TOKENS ENCONTRADOS ===");
+        }
+    }
+
+    @Override
+    protected void escreverToken(int numero, TipoToken tipo, String valor, int linha, int coluna) {
+        saida.numero(numero).texto(". ").texto(tipo.name()).texto(" - '").texto(valor)
+                .texto("' (linha ").numero(linha).texto(", coluna ").numero(coluna).caractere(')').novaLinha();
+    }
+
+    @Override
+    protected void escreverFim() {
+        AnalisadorLexico analisador = getAnalisador();
+        List<String> erros = analisador.getErros();
+
+        if (conteudo != Conteudo.RESUMO) {
+            if (isTokensNaoGuardados()) {
+                saida.linha("Tokens não guardados nesta análise (somente erros)");
+            }
+            saida.novaLinha();
+        }
+
+        saida.linha("=== ESTATÍSTICAS ===");
+        saida.texto("Total de tokens: ").numero(analisador.getTotalTokens()).novaLinha();
+        saida.texto("Total de erros: ").numero(erros.size()).novaLinha();
+        saida.texto("Total de símbolos na tabela: ")
+                .numero(analisador.getTabelaSimbolos().getSimbolos().size()).novaLinha();
+        saida.novaLinha();
+
+        if (conteudo != Conteudo.RESUMO) {
+            saida.linha("=== TABELA DE SÍMBOLOS ===");
+            escreverTabelaSimbolos(analisador.getTabelaSimbolos(), saida);
+            saida.novaLinha();
+        }
+
+        saida.linha("=== ERROS ENCONTRADOS ===");
+        if (erros.isEmpty()) {
+            saida.linha("Nenhum erro encontrado!");
+        } else {
+            for (int i = 0; i < erros.size(); i++) {
+                saida.numero(i + 1).texto(". ").linha(erros.get(i));
+            }
+        }
+    }
+}
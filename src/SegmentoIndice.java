@@ -0,0 +1,361 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Segmento imutável do IndiceIdentificadores: as ocorrências de identificadores de um grupo
+ * de arquivos, ordenadas por nome, lidas direto do arquivo mapeado em memória. Um nome é
+ * encontrado por busca binária, e as suas ocorrências ficam em sequência.
+ *
+ * Formato, com os números em big-endian:
+ *   int    assinatura "LXIX"
+ *   short  versão do formato
+ *   short  reservado (0)
+ *   long   impressão digital do analisador que gerou o segmento
+ *   int    quantidade de arquivos, de nomes e de ocorrências
+ *   arquivos     para cada um: tamanho em bytes (long, -1 se o arquivo foi removido),
+ *                última modificação em ms (long) e o caminho (int com o tamanho em bytes e
+ *                o texto em UTF-8), em ordem de caminho
+ *   nomes        int[quantidade + 1] com o início do texto de cada nome e int[quantidade + 1]
+ *                com a primeira ocorrência de cada nome, em ordem de nome
+ *   ocorrências  16 bytes cada: arquivo, linha, coluna e marcas (tipo do símbolo << 1 |
+ *                declarado), ordenadas por nome, arquivo, linha e coluna
+ *   texto        os nomes em UTF-8, um após o outro
+ * @author Diogo Ferreira Saucedo
+ */
+final class SegmentoIndice {
+    // "LXIX"
+    static final int ASSINATURA = 0x4C584958;
+    static final short VERSAO = 1;
+    static final int DECLARADO = 1;
+
+    private static final int TAMANHO_OCORRENCIA = 16;
+
+    private final ByteBuffer dados;
+    private final long impressaoDigital;
+    private final String[] caminhos;
+    private final long[] tamanhos;
+    private final long[] modificados;
+    private final int quantidadeNomes;
+    private final int quantidadeOcorrencias;
+    private final int posicaoInicioNomes;
+    private final int posicaoPrimeiraOcorrencia;
+    private final int posicaoOcorrencias;
+    private final int posicaoTexto;
+
+    /**
+     * Mapeia o segmento gravado no arquivo. Lança IOException se ele estiver truncado ou
+     * não for um segmento
+     */
+    SegmentoIndice(Path arquivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            if (canal.size() > Integer.MAX_VALUE) {
+                throw new IOException("Segmento grande demais: " + arquivo);
+            }
+            this.dados = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+        try {
+            if (dados.getInt() != ASSINATURA || dados.getShort() != VERSAO) {
+                throw new IOException("Não é um segmento do índice nesta versão: " + arquivo);
+            }
+            dados.getShort();
+            this.impressaoDigital = dados.getLong();
+            int quantidadeArquivos = dados.getInt();
+            this.quantidadeNomes = dados.getInt();
+            this.quantidadeOcorrencias = dados.getInt();
+
+            this.caminhos = new String[quantidadeArquivos];
+            this.tamanhos = new long[quantidadeArquivos];
+            this.modificados = new long[quantidadeArquivos];
+            for (int i = 0; i < quantidadeArquivos; i++) {
+                tamanhos[i] = dados.getLong();
+                modificados[i] = dados.getLong();
+                byte[] caminho = new byte[dados.getInt()];
+                dados.get(caminho);
+                caminhos[i] = new String(caminho, StandardCharsets.UTF_8);
+            }
+            this.posicaoInicioNomes = dados.position();
+            this.posicaoPrimeiraOcorrencia = posicaoInicioNomes + 4 * (quantidadeNomes + 1);
+            this.posicaoOcorrencias = posicaoPrimeiraOcorrencia + 4 * (quantidadeNomes + 1);
+            this.posicaoTexto = posicaoOcorrencias + TAMANHO_OCORRENCIA * quantidadeOcorrencias;
+            if (quantidadeNomes < 0 || quantidadeOcorrencias < 0 || posicaoTexto < 0
+                    || posicaoTexto + inicioTexto(quantidadeNomes) != dados.limit()) {
+                throw new IOException("Segmento truncado: " + arquivo);
+            }
+        } catch (RuntimeException e) {
+            // Tamanhos inválidos levam a leituras fora do buffer
+            throw new IOException("Segmento corrompido: " + arquivo, e);
+        }
+    }
+
+    long getImpressaoDigital() {
+        return impressaoDigital;
+    }
+
+    int getQuantidadeArquivos() {
+        return caminhos.length;
+    }
+
+    String getCaminho(int arquivo) {
+        return caminhos[arquivo];
+    }
+
+    /**
+     * Tamanho do arquivo quando foi indexado, ou -1 se o segmento registra a sua remoção
+     */
+    long getTamanho(int arquivo) {
+        return tamanhos[arquivo];
+    }
+
+    long getModificado(int arquivo) {
+        return modificados[arquivo];
+    }
+
+    int getQuantidadeNomes() {
+        return quantidadeNomes;
+    }
+
+    int getQuantidadeOcorrencias() {
+        return quantidadeOcorrencias;
+    }
+
+    /**
+     * Acrescenta, em ordem, as posições dos nomes do segmento iguais ao nome sem diferenciar
+     * maiúsculas de minúsculas ASCII, como o analisador faz com as palavras reservadas. A
+     * cada letra, as duas grafias são procuradas por busca binária entre os nomes que começam
+     * com o prefixo já escolhido
+     */
+    void buscarGrafias(String nome, List<Integer> posicoes) {
+        buscarGrafias(nome, 0, 0, quantidadeNomes, posicoes);
+    }
+
+    /**
+     * Busca entre os nomes de [inicio, fim), que têm todos o mesmo prefixo de tamanho indice
+     */
+    private void buscarGrafias(String nome, int indice, int inicio, int fim, List<Integer> posicoes) {
+        if (inicio >= fim) {
+            return;
+        }
+        if (indice == nome.length()) {
+            // O próprio prefixo, se for um nome, vem antes dos nomes que começam com ele
+            if (getNome(inicio).length() == indice) {
+                posicoes.add(inicio);
+            }
+            return;
+        }
+        char c = nome.charAt(indice);
+        char maiuscula = c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+        char minuscula = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        buscarGrafias(nome, indice + 1, primeiroCom(indice, maiuscula, inicio, fim),
+                primeiroCom(indice, maiuscula + 1, inicio, fim), posicoes);
+        if (minuscula != maiuscula) {
+            buscarGrafias(nome, indice + 1, primeiroCom(indice, minuscula, inicio, fim),
+                    primeiroCom(indice, minuscula + 1, inicio, fim), posicoes);
+        }
+    }
+
+    /**
+     * Primeira posição em [inicio, fim) cujo nome tem um caractere maior ou igual a c na
+     * posição indice, ou fim. Os nomes mais curtos que indice + 1 vêm antes dos demais
+     */
+    private int primeiroCom(int indice, int c, int inicio, int fim) {
+        while (inicio < fim) {
+            int meio = (inicio + fim) >>> 1;
+            String atual = getNome(meio);
+            if (atual.length() <= indice || atual.charAt(indice) < c) {
+                inicio = meio + 1;
+            } else {
+                fim = meio;
+            }
+        }
+        return inicio;
+    }
+
+    String getNome(int nome) {
+        int inicio = inicioTexto(nome);
+        byte[] texto = new byte[inicioTexto(nome + 1) - inicio];
+        ByteBuffer trecho = dados.duplicate();
+        trecho.position(posicaoTexto + inicio);
+        trecho.get(texto);
+        return new String(texto, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Primeira ocorrência do nome; as dele vão até a primeira do nome seguinte
+     */
+    int primeiraOcorrencia(int nome) {
+        return dados.getInt(posicaoPrimeiraOcorrencia + 4 * nome);
+    }
+
+    int arquivoDe(int ocorrencia) {
+        return dados.getInt(posicaoOcorrencias + TAMANHO_OCORRENCIA * ocorrencia);
+    }
+
+    int linhaDe(int ocorrencia) {
+        return dados.getInt(posicaoOcorrencias + TAMANHO_OCORRENCIA * ocorrencia + 4);
+    }
+
+    int colunaDe(int ocorrencia) {
+        return dados.getInt(posicaoOcorrencias + TAMANHO_OCORRENCIA * ocorrencia + 8);
+    }
+
+    int marcasDe(int ocorrencia) {
+        return dados.getInt(posicaoOcorrencias + TAMANHO_OCORRENCIA * ocorrencia + 12);
+    }
+
+    private int inicioTexto(int nome) {
+        return dados.getInt(posicaoInicioNomes + 4 * nome);
+    }
+
+    /**
+     * Monta um segmento em memória e o grava. Os arquivos devem ser adicionados em ordem de
+     * caminho; as ocorrências de cada arquivo, em ordem de linha e coluna
+     */
+    static final class Construtor {
+        private final List<String> caminhos;
+        private final List<long[]> estados;
+        // Ocorrências de cada nome, em quádruplas (arquivo, linha, coluna, marcas)
+        private final Map<String, Ocorrencias> nomes;
+        private int quantidadeOcorrencias;
+
+        Construtor() {
+            this.caminhos = new ArrayList<>();
+            this.estados = new ArrayList<>();
+            this.nomes = new HashMap<>();
+            this.quantidadeOcorrencias = 0;
+        }
+
+        /**
+         * Adiciona um arquivo, com tamanho -1 se ele foi removido, e retorna o seu número
+         */
+        int adicionarArquivo(String caminho, long tamanho, long modificado) {
+            caminhos.add(caminho);
+            estados.add(new long[] { tamanho, modificado });
+            return caminhos.size() - 1;
+        }
+
+        void adicionarOcorrencia(String nome, int arquivo, int linha, int coluna, int marcas) {
+            Ocorrencias ocorrencias = nomes.get(nome);
+            if (ocorrencias == null) {
+                ocorrencias = new Ocorrencias();
+                nomes.put(nome, ocorrencias);
+            }
+            ocorrencias.adicionar(arquivo, linha, coluna, marcas);
+            quantidadeOcorrencias++;
+        }
+
+        boolean isVazio() {
+            return caminhos.isEmpty();
+        }
+
+        /**
+         * Grava o segmento em um arquivo temporário e o move para o destino, para que um
+         * segmento incompleto nunca seja lido
+         */
+        void gravar(Path destino, long impressaoDigital) throws IOException {
+            String[] ordenados = nomes.keySet().toArray(new String[0]);
+            Arrays.sort(ordenados);
+            byte[][] textos = new byte[ordenados.length][];
+            for (int i = 0; i < ordenados.length; i++) {
+                textos[i] = ordenados[i].getBytes(StandardCharsets.UTF_8);
+            }
+
+            Path temporario = destino.resolveSibling(destino.getFileName() + ".tmp");
+            try (DataOutputStream saida = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporario), 1 << 16))) {
+                saida.writeInt(ASSINATURA);
+                saida.writeShort(VERSAO);
+                saida.writeShort(0);
+                saida.writeLong(impressaoDigital);
+                saida.writeInt(caminhos.size());
+                saida.writeInt(ordenados.length);
+                saida.writeInt(quantidadeOcorrencias);
+
+                for (int i = 0; i < caminhos.size(); i++) {
+                    saida.writeLong(estados.get(i)[0]);
+                    saida.writeLong(estados.get(i)[1]);
+                    byte[] caminho = caminhos.get(i).getBytes(StandardCharsets.UTF_8);
+                    saida.writeInt(caminho.length);
+                    saida.write(caminho);
+                }
+
+                int inicio = 0;
+                for (byte[] texto : textos) {
+                    saida.writeInt(inicio);
+                    inicio += texto.length;
+                }
+                saida.writeInt(inicio);
+                int primeira = 0;
+                for (String nome : ordenados) {
+                    saida.writeInt(primeira);
+                    primeira += nomes.get(nome).quantidade;
+                }
+                saida.writeInt(primeira);
+
+                for (String nome : ordenados) {
+                    Ocorrencias ocorrencias = nomes.get(nome);
+                    ocorrencias.ordenarPorArquivo();
+                    for (int i = 0; i < ocorrencias.quantidade * 4; i++) {
+                        saida.writeInt(ocorrencias.dados[i]);
+                    }
+                }
+                for (byte[] texto : textos) {
+                    saida.write(texto);
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(temporario);
+                throw e;
+            }
+            Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Ocorrências de um nome em quádruplas de inteiros, sem um objeto por ocorrência
+     */
+    private static final class Ocorrencias {
+        private int[] dados = new int[16];
+        private int quantidade;
+
+        void adicionar(int arquivo, int linha, int coluna, int marcas) {
+            if (quantidade * 4 == dados.length) {
+                dados = Arrays.copyOf(dados, dados.length * 2);
+            }
+            dados[quantidade * 4] = arquivo;
+            dados[quantidade * 4 + 1] = linha;
+            dados[quantidade * 4 + 2] = coluna;
+            dados[quantidade * 4 + 3] = marcas;
+            quantidade++;
+        }
+
+        /**
+         * Ordena por arquivo mantendo a ordem de cada arquivo, que já está por linha e coluna.
+         * Só é preciso quando os arquivos vieram de segmentos diferentes, na compactação
+         */
+        void ordenarPorArquivo() {
+            boolean ordenadas = true;
+            for (int i = 1; i < quantidade && ordenadas; i++) {
+                ordenadas = dados[(i - 1) * 4] <= dados[i * 4];
+            }
+            if (ordenadas) {
+                return;
+            }
+            long[] chaves = new long[quantidade];
+            for (int i = 0; i < quantidade; i++) {
+                chaves[i] = (long) dados[i * 4] << 32 | i;
+            }
+            Arrays.sort(chaves);
+            int[] ordenados = new int[quantidade * 4];
+            for (int i = 0; i < quantidade; i++) {
+                System.arraycopy(dados, (int) chaves[i] * 4, ordenados, i * 4, 4);
+            }
+            dados = ordenados;
+        }
+    }
+}
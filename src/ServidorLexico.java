@@ -0,0 +1,597 @@
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Modo servidor: mantém o analisador carregado e aquecido e atende requisições de análise
+ * de ClienteLexico por TCP, só no endereço local. Cada conexão é atendida por uma thread do
+ * pool, e as requisições de conexões diferentes são analisadas ao mesmo tempo. Assim, cada
+ * arquivo não paga a inicialização da JVM, o carregamento das classes e o aquecimento do JIT.
+ * O código de cada requisição é lido em um vetor que cresce à medida que chega, e o total de
+ * bytes em memória entre todas as conexões é limitado. Só quem lê o token gravado na
+ * inicialização, em um arquivo que só o usuário do servidor pode ler, consegue encerrá-lo
+ *
+ * Uso: java CompiladorMain --servidor [--porta=N] [--conexoes=N] [--metricas]
+ * @author Diogo Ferreira Saucedo
+ */
+public class ServidorLexico {
+    public static final int MAXIMO_CONEXOES_PADRAO = 64;
+    // Bytes de código recebidos e ainda não analisados, somados entre as conexões. Cabe ao
+    // menos uma requisição do tamanho máximo
+    public static final int LIMITE_BYTES_CODIGO = 2 * ProtocoloServidor.TAMANHO_MAXIMO_CODIGO;
+
+    // Conexões sem requisições por mais tempo que isso são encerradas
+    private static final int TEMPO_OCIOSO_MS = 5 * 60 * 1000;
+    private static final long TEMPO_AQUECIMENTO_NS = 1_000_000_000L;
+    // O vetor do código começa com este tamanho e dobra à medida que os bytes chegam
+    private static final int TAMANHO_LEITURA = 64 << 10;
+    // Uma requisição que espera mais que isso por espaço no limite de bytes é recusada
+    private static final int TEMPO_ESPERA_BYTES_MS = 30 * 1000;
+
+    private final int porta;
+    private final int maximoConexoes;
+    private ServerSocket servidor;
+    private ThreadPoolExecutor executor;
+    private Thread aceitador;
+    private final CountDownLatch encerrado;
+    private final AtomicInteger conexoesAtivas;
+    private final AtomicLong requisicoes;
+    private final AtomicLong falhas;
+    // Permissões em bytes: cada requisição reserva o vetor do código antes de aumentá-lo
+    private final Semaphore bytesCodigo;
+    // Token exigido por ENCERRAR, gravado em ProtocoloServidor.arquivoToken(porta)
+    private String token;
+    private Path arquivoToken;
+    // Analisadores reaproveitados entre as requisições, um por conexão simultânea
+    private final PoolAnalisadores pool;
+    // Coleta as métricas de cada requisição em MetricasLexico.global(), também visível via JMX
+    private boolean metricas;
+    private long inicio;
+
+    /**
+     * Servidor na porta informada; 0 escolhe uma porta livre, consultada depois em getPorta()
+     */
+    public ServidorLexico(int porta, int maximoConexoes) {
+        if (porta < 0 || porta > 65535) {
+            throw new IllegalArgumentException("Porta inválida: " + porta);
+        }
+        if (maximoConexoes < 1) {
+            throw new IllegalArgumentException("O número de conexões deve ser positivo");
+        }
+        this.porta = porta;
+        this.maximoConexoes = maximoConexoes;
+        this.encerrado = new CountDownLatch(1);
+        this.conexoesAtivas = new AtomicInteger();
+        this.requisicoes = new AtomicLong();
+        this.falhas = new AtomicLong();
+        this.bytesCodigo = new Semaphore(LIMITE_BYTES_CODIGO);
+        this.pool = new PoolAnalisadores(maximoConexoes);
+    }
+
+    /**
+     * Ponto de entrada do modo servidor, com os argumentos após "--servidor"
+     */
+    public static void executar(String[] args) {
+        int porta = ProtocoloServidor.PORTA_PADRAO;
+        int maximoConexoes = MAXIMO_CONEXOES_PADRAO;
+        boolean metricas = false;
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--porta=")) {
+                    porta = Integer.parseInt(arg.substring("--porta=".length()));
+                } else if (arg.startsWith("--conexoes=")) {
+                    maximoConexoes = Integer.parseInt(arg.substring("--conexoes=".length()));
+                } else if (arg.equals("--metricas")) {
+                    metricas = true;
+                } else {
+                    throw new IllegalArgumentException("Opção desconhecida: " + arg);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Uso: java CompiladorMain --servidor [--porta=N] [--conexoes=N] [--metricas]");
+            return;
+        }
+
+        ServidorLexico servidor = new ServidorLexico(porta, maximoConexoes);
+        servidor.setMetricas(metricas);
+        try {
+            System.out.println("=== COMPILADOR LÉXICO PASCAL - MODO SERVIDOR ===");
+            System.out.println("Aquecendo o analisador...");
+            long duracaoMs = aquecer(TEMPO_AQUECIMENTO_NS);
+            System.out.println("Analisador aquecido em " + duracaoMs + " ms");
+            servidor.iniciar();
+            System.out.println("Aguardando conexões em " + InetAddress.getLoopbackAddress().getHostAddress()
+                    + ":" + servidor.getPorta());
+            servidor.aguardarEncerramento();
+            System.out.println("Servidor encerrado");
+        } catch (IOException e) {
+            System.err.println("Erro no modo servidor: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            servidor.encerrar();
+        }
+    }
+
+    /**
+     * Abre a porta e passa a aceitar conexões em uma thread própria
+     */
+    public synchronized void iniciar() throws IOException {
+        if (servidor != null) {
+            throw new IllegalStateException("O servidor já foi iniciado");
+        }
+        servidor = new ServerSocket(porta, 50, InetAddress.getLoopbackAddress());
+        try {
+            token = gerarToken();
+            arquivoToken = ProtocoloServidor.arquivoToken(servidor.getLocalPort());
+            gravarToken(arquivoToken, token);
+        } catch (IOException e) {
+            servidor.close();
+            servidor = null;
+            throw new IOException("Não foi possível gravar o token de encerramento: " + e.getMessage(), e);
+        }
+        // Sem fila: acima do limite, a conexão é recusada com uma mensagem, em vez de esperar
+        executor = new ThreadPoolExecutor(0, maximoConexoes, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                tarefa -> {
+                    Thread thread = new Thread(tarefa, "servidor-lexico-conexao");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        if (metricas) {
+            // Registra as métricas via JMX antes da primeira requisição
+            MetricasLexico.global();
+        }
+        inicio = System.nanoTime();
+        aceitador = new Thread(this::aceitarConexoes, "servidor-lexico");
+        aceitador.start();
+    }
+
+    /**
+     * Porta em que o servidor aceita conexões
+     */
+    public synchronized int getPorta() {
+        if (servidor == null) {
+            throw new IllegalStateException("O servidor não foi iniciado");
+        }
+        return servidor.getLocalPort();
+    }
+
+    /**
+     * Arquivo com o token que o ClienteLexico envia para encerrar o servidor
+     */
+    public synchronized Path getArquivoToken() {
+        if (servidor == null) {
+            throw new IllegalStateException("O servidor não foi iniciado");
+        }
+        return arquivoToken;
+    }
+
+    /**
+     * Para de aceitar conexões, encerra as que estão abertas e apaga o arquivo do token
+     */
+    public synchronized void encerrar() {
+        if (servidor == null || servidor.isClosed()) {
+            return;
+        }
+        try {
+            servidor.close();
+        } catch (IOException e) {
+            // A porta já não aceita conexões
+        }
+        try {
+            Files.deleteIfExists(arquivoToken);
+        } catch (IOException e) {
+            // O token perde a validade com o servidor, mesmo que o arquivo fique
+        }
+        executor.shutdownNow();
+        encerrado.countDown();
+    }
+
+    /**
+     * Liga a coleta de métricas das requisições, exibidas também no estado do servidor.
+     * Deve ser chamado antes de iniciar()
+     */
+    public synchronized void setMetricas(boolean metricas) {
+        if (servidor != null) {
+            throw new IllegalStateException("O servidor já foi iniciado");
+        }
+        this.metricas = metricas;
+    }
+
+    public void aguardarEncerramento() throws InterruptedException {
+        encerrado.await();
+    }
+
+    /**
+     * Analisa um programa de exemplo com todos os formatos de relatório
+     * até completar o tempo informado, para que o JIT compile o caminho quente antes da
+     * primeira requisição. Retorna a duração em milissegundos
+     */
+    static long aquecer(long tempoNs) {
+        StringBuilder programa = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            programa.append("program Exemplo").append(i).append(";\n")
+                    .append("var x, y").append(i).append(" : integer; c : char;\n")
+                    .append("begin\n")
+                    .append("  x := ").append(i * 37).append(";\n")
+                    .append("  if x = y").append(i).append(" then writeln('texto ").append(i).append("');\n")
+                    .append("  c = 'a'; progra @ begi\n")
+                    .append("end.\n");
+        }
+        String codigo = programa.toString();
+
+        long inicio = System.nanoTime();
+        do {
+            for (FormatoRelatorio formato : FormatoRelatorio.values()) {
+                AnalisadorLexico analisador = new AnalisadorLexico(codigo);
+                analisador.setGuardarTokens(false);
+                RelatorioAnalise relatorio = RelatorioAnalise.criar(formato,
+                        new EscritorRelatorio(new Descarte()), "aquecimento.pas", RelatorioAnalise.Conteudo.COMPLETO);
+                relatorio.acompanhar(analisador);
+                analisador.analisar();
+            }
+        } while (System.nanoTime() - inicio < tempoNs);
+        return (System.nanoTime() - inicio) / 1_000_000;
+    }
+
+    private void aceitarConexoes() {
+        while (!servidor.isClosed()) {
+            Socket conexao;
+            try {
+                conexao = servidor.accept();
+            } catch (IOException e) {
+                // Porta fechada por encerrar()
+                break;
+            }
+            try {
+                executor.execute(() -> atender(conexao));
+            } catch (RejectedExecutionException e) {
+                recusar(conexao, "Servidor ocupado: " + maximoConexoes + " conexões abertas");
+            }
+        }
+    }
+
+    /**
+     * Atende as requisições de uma conexão até o cliente fechá-la
+     */
+    private void atender(Socket conexao) {
+        conexoesAtivas.incrementAndGet();
+        try (Socket socket = conexao) {
+            socket.setSoTimeout(TEMPO_OCIOSO_MS);
+            socket.setTcpNoDelay(true);
+            DataInputStream entrada = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream saida = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+
+            while (true) {
+                int assinatura;
+                try {
+                    assinatura = entrada.readInt();
+                } catch (EOFException e) {
+                    // Cliente fechou a conexão entre duas requisições
+                    return;
+                }
+                if (assinatura != ProtocoloServidor.ASSINATURA) {
+                    responderFalha(saida, "Requisição inválida");
+                    return;
+                }
+                byte comando = entrada.readByte();
+                if (comando == ProtocoloServidor.ANALISAR) {
+                    analisar(entrada, saida);
+                } else if (comando == ProtocoloServidor.ESTADO) {
+                    responderEstado(saida);
+                } else if (comando == ProtocoloServidor.ENCERRAR) {
+                    byte[] recebido = entrada.readUTF().getBytes(StandardCharsets.UTF_8);
+                    if (!MessageDigest.isEqual(recebido, token.getBytes(StandardCharsets.UTF_8))) {
+                        responderFalha(saida, "Token de encerramento inválido");
+                        return;
+                    }
+                    responderTexto(saida, "Servidor encerrado");
+                    encerrar();
+                    return;
+                } else {
+                    responderFalha(saida, "Comando desconhecido: " + comando);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // Conexão interrompida ou ociosa demais; o cliente verá o erro do lado dele
+        } finally {
+            conexoesAtivas.decrementAndGet();
+        }
+    }
+
+    /**
+     * Lê uma requisição de análise e envia o relatório à medida que os tokens são emitidos
+     */
+    private void analisar(DataInputStream entrada, DataOutputStream saida) throws IOException {
+        String nomeArquivo = entrada.readUTF();
+        int quantidadeOpcoes = entrada.readUnsignedShort();
+        if (quantidadeOpcoes > ProtocoloServidor.MAXIMO_OPCOES) {
+            throw new IOException("Opções demais: " + quantidadeOpcoes);
+        }
+        List<String> opcoes = new ArrayList<>();
+        for (int i = 0; i < quantidadeOpcoes; i++) {
+            opcoes.add(entrada.readUTF());
+        }
+        int tamanho = entrada.readInt();
+        if (tamanho < 0 || tamanho > ProtocoloServidor.TAMANHO_MAXIMO_CODIGO) {
+            throw new IOException("Tamanho de código inválido: " + tamanho);
+        }
+        byte[] bytes = lerCodigo(entrada, tamanho);
+        if (bytes == null) {
+            falhas.incrementAndGet();
+            responderFalha(saida, "Servidor ocupado: " + (LIMITE_BYTES_CODIGO >> 20)
+                    + " MB de código em análise");
+            return;
+        }
+        requisicoes.incrementAndGet();
+        try {
+            analisar(nomeArquivo, opcoes, bytes, saida);
+        } finally {
+            bytesCodigo.release(tamanho);
+        }
+    }
+
+    /**
+     * Lê os tamanho bytes do código em um vetor que começa pequeno e dobra à medida que os
+     * bytes chegam, reservando cada aumento no limite de bytes do servidor; quem chama libera
+     * tamanho bytes depois da análise. Se o limite não abrir espaço a tempo, descarta o
+     * restante do código, libera o que reservou e retorna null
+     */
+    private byte[] lerCodigo(DataInputStream entrada, int tamanho) throws IOException {
+        byte[] bytes = new byte[0];
+        int reservados = 0;
+        int lidos = 0;
+        boolean concluido = false;
+        try {
+            while (lidos < tamanho) {
+                if (lidos == bytes.length) {
+                    int capacidade = (int) Math.min(tamanho, Math.max(TAMANHO_LEITURA, 2L * bytes.length));
+                    if (!bytesCodigo.tryAcquire(capacidade - reservados, TEMPO_ESPERA_BYTES_MS, TimeUnit.MILLISECONDS)) {
+                        descartar(entrada, tamanho - lidos);
+                        return null;
+                    }
+                    reservados = capacidade;
+                    bytes = Arrays.copyOf(bytes, capacidade);
+                }
+                int quantidade = entrada.read(bytes, lidos, bytes.length - lidos);
+                if (quantidade < 0) {
+                    throw new EOFException("Conexão encerrada no meio do código");
+                }
+                lidos += quantidade;
+            }
+            concluido = true;
+            return bytes;
+        } catch (InterruptedException e) {
+            // Servidor encerrado enquanto a requisição esperava
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Servidor encerrado");
+        } finally {
+            if (!concluido) {
+                bytesCodigo.release(reservados);
+            }
+        }
+    }
+
+    private static void descartar(DataInputStream entrada, int quantidade) throws IOException {
+        while (quantidade > 0) {
+            int descartados = entrada.skipBytes(quantidade);
+            if (descartados == 0) {
+                // skipBytes pode parar antes do fim sem indicar o motivo
+                entrada.readByte();
+                descartados = 1;
+            }
+            quantidade -= descartados;
+        }
+    }
+
+    /**
+     * Analisa o código de uma requisição e envia o relatório
+     */
+    private void analisar(String nomeArquivo, List<String> opcoes, byte[] bytes, DataOutputStream saida)
+            throws IOException {
+        EventoAnaliseJfr evento = EventoAnaliseJfr.iniciar();
+        MetricasAnalise metricasRequisicao = metricas ? new MetricasAnalise() : null;
+        AnalisadorLexico analisador = null;
+        RelatorioAnalise relatorio;
+        try {
+            OpcoesRequisicao requisicao = new OpcoesRequisicao(opcoes);
+            ByteBuffer conteudo = ByteBuffer.wrap(bytes);
+            if (requisicao.recuperar) {
+                FonteArquivo.verificarTexto(conteudo, requisicao.codificacao);
+            }
+            analisador = pool.obter(FonteArquivo.ler(conteudo, requisicao.codificacao));
+            analisador.setRecuperacao(requisicao.recuperar);
+            analisador.getDiagnosticos().copiarConfiguracao(requisicao.diagnosticos);
+            analisador.setGuardarTokens(false);
+            analisador.setMetricas(metricasRequisicao);
+            EscritorRelatorio texto = new EscritorRelatorio(new OutputStreamWriter(
+                    new ProtocoloServidor.SaidaEmBlocos(saida), StandardCharsets.UTF_8));
+            relatorio = RelatorioAnalise.criar(requisicao.formato, texto, nomeArquivo, requisicao.conteudo);
+        } catch (IllegalArgumentException | IOException e) {
+            // Opção inválida, conteúdo binário ou que não pôde ser decodificado
+            if (analisador != null) {
+                pool.devolver(analisador);
+            }
+            falhas.incrementAndGet();
+            responderFalha(saida, e.getMessage());
+            return;
+        }
+
+        try {
+            String falha = null;
+            try {
+                relatorio.acompanhar(analisador);
+                analisador.analisar();
+            } catch (RuntimeException e) {
+                falha = e.getClass().getSimpleName() + ": " + e.getMessage();
+            } finally {
+                // Envia o restante do relatório e o bloco final
+                relatorio.close();
+            }
+            if (falha == null) {
+                if (metricasRequisicao != null) {
+                    metricasRequisicao.registrarBytes(bytes.length);
+                    MetricasLexico.global().acumular(metricasRequisicao);
+                }
+                if (evento != null) {
+                    evento.concluir(nomeArquivo, analisador);
+                }
+            }
+
+            if (falha != null) {
+                falhas.incrementAndGet();
+                saida.writeByte(ProtocoloServidor.FALHA);
+                saida.writeUTF(falha);
+            } else {
+                saida.writeByte(ProtocoloServidor.SUCESSO);
+                saida.writeInt(analisador.getTotalTokens());
+                saida.writeInt(analisador.getErros().size());
+            }
+            saida.flush();
+        } finally {
+            pool.devolver(analisador);
+        }
+    }
+
+    private void responderEstado(DataOutputStream saida) throws IOException {
+        long segundos = (System.nanoTime() - inicio) / 1_000_000_000L;
+        responderTexto(saida, "Ativo há " + segundos + " s" + System.lineSeparator()
+                + "Conexões abertas: " + conexoesAtivas.get() + " de " + maximoConexoes + System.lineSeparator()
+                + "Requisições atendidas: " + requisicoes.get() + System.lineSeparator()
+                + "Requisições com falha: " + falhas.get() + System.lineSeparator()
+                + "Código em memória: " + ((LIMITE_BYTES_CODIGO - bytesCodigo.availablePermits()) >> 20)
+                + " MB de " + (LIMITE_BYTES_CODIGO >> 20) + " MB"
+                + (metricas ? System.lineSeparator() + "Métricas:" + System.lineSeparator()
+                        + MetricasLexico.global().getResumoJson().trim() : ""));
+    }
+
+    /**
+     * Token aleatório de 128 bits, em hexadecimal
+     */
+    private static String gerarToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder texto = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            texto.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return texto.toString();
+    }
+
+    /**
+     * Grava o token em um arquivo que só o dono pode ler (0600 onde há permissões POSIX). O
+     * arquivo é criado com outro nome já com as permissões e depois renomeado, para que o
+     * token nunca fique legível por outros usuários
+     */
+    private static void gravarToken(Path arquivo, String token) throws IOException {
+        Path diretorio = arquivo.getParent();
+        Path temporario;
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(diretorio,
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            temporario = Files.createTempFile(diretorio, "token", ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            // Sem POSIX (Windows), o diretório do usuário já só é acessível por ele
+            Files.createDirectories(diretorio);
+            temporario = Files.createTempFile(diretorio, "token", ".tmp");
+        }
+        try {
+            Files.write(temporario, token.getBytes(StandardCharsets.US_ASCII));
+            Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporario);
+        }
+    }
+
+    private static void responderTexto(DataOutputStream saida, String texto) throws IOException {
+        try (OutputStream blocos = new ProtocoloServidor.SaidaEmBlocos(saida)) {
+            blocos.write((texto + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        }
+        saida.writeByte(ProtocoloServidor.SUCESSO);
+        saida.writeInt(0);
+        saida.writeInt(0);
+        saida.flush();
+    }
+
+    private static void responderFalha(DataOutputStream saida, String mensagem) throws IOException {
+        saida.writeInt(0);
+        saida.writeByte(ProtocoloServidor.FALHA);
+        saida.writeUTF(mensagem);
+        saida.flush();
+    }
+
+    private static void recusar(Socket conexao, String mensagem) {
+        try (Socket socket = conexao) {
+            responderFalha(new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())), mensagem);
+        } catch (IOException e) {
+            // O cliente já desistiu da conexão
+        }
+    }
+
+    /**
+     * Opções de uma requisição, as mesmas da análise de um arquivo na linha de comando
+     */
+    private static class OpcoesRequisicao {
+        private Charset codificacao = FonteArquivo.CODIFICACAO_PADRAO;
+        private FormatoRelatorio formato = FormatoRelatorio.CONSOLE;
+        private RelatorioAnalise.Conteudo conteudo = RelatorioAnalise.Conteudo.COMPLETO;
+        private boolean recuperar = false;
+        private final Diagnosticos diagnosticos = new Diagnosticos();
+
+        OpcoesRequisicao(List<String> opcoes) {
+            boolean resumo = false;
+            boolean somenteErros = false;
+            for (String opcao : opcoes) {
+                if (opcao.startsWith("--codificacao=")) {
+                    codificacao = Charset.forName(opcao.substring("--codificacao=".length()));
+                } else if (opcao.startsWith("--formato=")) {
+                    formato = FormatoRelatorio.deNome(opcao.substring("--formato=".length()));
+                } else if (opcao.equals("--resumo")) {
+                    resumo = true;
+                } else if (opcao.equals("--somente-erros")) {
+                    somenteErros = true;
+                } else if (opcao.equals("--recuperar")) {
+                    recuperar = true;
+                } else if (!diagnosticos.configurarOpcao(opcao)) {
+                    throw new IllegalArgumentException("Opção desconhecida: " + opcao);
+                }
+            }
+            if (resumo) {
+                conteudo = RelatorioAnalise.Conteudo.RESUMO;
+            } else if (somenteErros) {
+                conteudo = RelatorioAnalise.Conteudo.SEM_TOKENS;
+            }
+        }
+    }
+
+    /**
+     * Writer que descarta o texto, usado no aquecimento
+     */
+    private static class Descarte extends Writer {
+        @Override
+        public void write(char[] caracteres, int inicio, int tamanho) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -1,47 +1,92 @@
 /**
- * Classe que representa um símbolo na tabela de símbolos
+ * Classe que representa um símbolo na tabela de símbolos. Os dados ficam nos vetores da
+ * TabelaSimbolos; o Simbolo é só uma visão de uma posição da tabela, e as alterações feitas
+ * por ele aparecem na tabela
  * @author Diogo Ferreira Saucedo
  */
 public class Simbolo {
-    private String nome;
-    private String tipo;
-    private int linha;
-    private boolean declarado;
+    private final TabelaSimbolos tabela;
+    private final int indice;
 
+    /**
+     * Cria um símbolo avulso, numa tabela própria
+     */
     public Simbolo(String nome, String tipo, int linha) {
-        this.nome = nome;
-        this.tipo = tipo;
-        this.linha = linha;
-        this.declarado = false;
+        this.tabela = new TabelaSimbolos();
+        this.indice = tabela.inserir(tabela.getNomes().registrar(nome), TipoSimbolo.deNome(tipo), linha);
+    }
+
+    Simbolo(TabelaSimbolos tabela, int indice) {
+        this.tabela = tabela;
+        this.indice = indice;
+    }
+
+    /**
+     * Id do nome do símbolo na tabela de nomes
+     */
+    public int getId() {
+        return tabela.idNomeDe(indice);
     }
 
     public String getNome() {
-        return nome;
+        return tabela.getNomes().getNome(tabela.idNomeDe(indice));
     }
 
     public String getTipo() {
-        return tipo;
+        return tabela.tipoDe(indice).getNome();
+    }
+
+    public TipoSimbolo getTipoSimbolo() {
+        return tabela.tipoDe(indice);
     }
 
     public void setTipo(String tipo) {
-        this.tipo = tipo;
+        tabela.alterarTipo(indice, TipoSimbolo.deNome(tipo));
+    }
+
+    public void setTipo(TipoSimbolo tipo) {
+        tabela.alterarTipo(indice, tipo);
     }
 
     public int getLinha() {
-        return linha;
+        return tabela.linhaDe(indice);
+    }
+
+    /**
+     * Profundidade do escopo em que o símbolo foi declarado; 0 é o escopo global
+     */
+    public int getEscopo() {
+        return tabela.escopoDe(indice);
     }
 
     public boolean isDeclarado() {
-        return declarado;
+        return tabela.declaradoDe(indice);
     }
 
     public void setDeclarado(boolean declarado) {
-        this.declarado = declarado;
+        tabela.alterarDeclarado(indice, declarado);
+    }
+
+    @Override
+    public boolean equals(Object outro) {
+        if (this == outro) {
+            return true;
+        }
+        if (!(outro instanceof Simbolo)) {
+            return false;
+        }
+        Simbolo simbolo = (Simbolo) outro;
+        return tabela == simbolo.tabela && indice == simbolo.indice;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(tabela) + indice;
     }
 
     @Override
     public String toString() {
         return String.format("Simbolo{nome='%s', tipo='%s', linha=%d, declarado=%s}",
-                nome, tipo, linha, declarado);
+                getNome(), getTipo(), getLinha(), isDeclarado());
     }
 }
@@ -0,0 +1,225 @@
+import java.util.Arrays;
+
+/**
+ * Tabela de nomes (interning): associa cada identificador distinto a uma única String e a
+ * um número (id). Os nomes são procurados direto no trecho do código por endereçamento
+ * aberto, e uma String só é criada quando o nome aparece pela primeira vez. Um instantâneo
+ * não muda mais e pode ser lido por várias threads
+ * @author Diogo Ferreira Saucedo
+ */
+public class TabelaNomes {
+    private static final int CAPACIDADE_INICIAL = 64;
+
+    private String[] nomes;
+    private int[] hashes;
+    private int quantidade;
+    // Posições da tabela hash guardam id + 1; 0 indica posição livre
+    private int[] tabela;
+    private boolean somenteLeitura;
+
+    public TabelaNomes() {
+        this.nomes = new String[CAPACIDADE_INICIAL];
+        this.hashes = new int[CAPACIDADE_INICIAL];
+        this.quantidade = 0;
+        this.tabela = new int[CAPACIDADE_INICIAL * 2];
+        this.somenteLeitura = false;
+    }
+
+    /**
+     * Cópia independente dos vetores de outra tabela, que não pode ser alterada
+     */
+    private TabelaNomes(TabelaNomes origem) {
+        this.nomes = Arrays.copyOf(origem.nomes, Math.max(origem.quantidade, 1));
+        this.hashes = Arrays.copyOf(origem.hashes, Math.max(origem.quantidade, 1));
+        this.quantidade = origem.quantidade;
+        this.tabela = origem.tabela.clone();
+        this.somenteLeitura = true;
+    }
+
+    /**
+     * Retorna o id do nome que ocupa o trecho [inicio, fim) do código, registrando-o se
+     * ainda não existir
+     */
+    public int registrar(CharSequence codigo, int inicio, int fim) {
+        int hash = calcularHash(codigo, inicio, fim);
+        int posicao = localizar(hash, codigo, inicio, fim);
+        if (tabela[posicao] != 0) {
+            return tabela[posicao] - 1;
+        }
+
+        verificarAlteravel();
+        if (quantidade == nomes.length) {
+            nomes = Arrays.copyOf(nomes, quantidade * 2);
+            hashes = Arrays.copyOf(hashes, quantidade * 2);
+        }
+        int id = quantidade++;
+        nomes[id] = codigo.subSequence(inicio, fim).toString();
+        hashes[id] = hash;
+        tabela[posicao] = id + 1;
+
+        // Mantém a ocupação abaixo de 50% para sondagens curtas
+        if (quantidade * 2 > tabela.length) {
+            redimensionar();
+        }
+        return id;
+    }
+
+    /**
+     * Retorna o id do nome, registrando-o se ainda não existir
+     */
+    public int registrar(String nome) {
+        return registrar(nome, 0, nome.length());
+    }
+
+    /**
+     * Retorna o id do nome, ou -1 se ele nunca foi registrado
+     */
+    public int buscar(CharSequence nome) {
+        int hash = calcularHash(nome, 0, nome.length());
+        return tabela[localizar(hash, nome, 0, nome.length())] - 1;
+    }
+
+    public String getNome(int id) {
+        if (id < 0 || id >= quantidade) {
+            throw new IndexOutOfBoundsException("Id de nome inválido: " + id);
+        }
+        return nomes[id];
+    }
+
+    public int tamanho() {
+        return quantidade;
+    }
+
+    /**
+     * Cópia da tabela no estado atual, com os mesmos ids, que não muda com os registros
+     * seguintes e não pode ser alterada. As Strings dos nomes são compartilhadas
+     */
+    public TabelaNomes instantaneo() {
+        return somenteLeitura ? this : new TabelaNomes(this);
+    }
+
+    public boolean isSomenteLeitura() {
+        return somenteLeitura;
+    }
+
+    /**
+     * Remove todos os nomes, mantendo os vetores já alocados. Ids obtidos antes deixam de
+     * valer
+     */
+    void limpar() {
+        verificarAlteravel();
+        Arrays.fill(nomes, 0, quantidade, null);
+        Arrays.fill(tabela, 0);
+        quantidade = 0;
+    }
+
+    /**
+     * Passa a ter os mesmos nomes e ids de outra tabela, copiando os seus vetores
+     */
+    void copiar(TabelaNomes origem) {
+        verificarAlteravel();
+        nomes = Arrays.copyOf(origem.nomes, Math.max(origem.nomes.length, CAPACIDADE_INICIAL));
+        hashes = Arrays.copyOf(origem.hashes, nomes.length);
+        quantidade = origem.quantidade;
+        tabela = origem.tabela.clone();
+    }
+
+    /**
+     * Remove os nomes registrados depois dos quantidade primeiros. Os ids restantes não mudam
+     */
+    void truncar(int quantidade) {
+        verificarAlteravel();
+        int mascara = tabela.length - 1;
+        for (int id = this.quantidade - 1; id >= quantidade; id--) {
+            int posicao = espalhar(hashes[id]) & mascara;
+            while (tabela[posicao] != id + 1) {
+                posicao = (posicao + 1) & mascara;
+            }
+            // Os nomes seguintes da mesma sondagem voltam para trás, para que nenhuma busca
+            // pare na posição liberada antes de encontrá-los
+            int livre = posicao;
+            int atual = posicao;
+            while (tabela[atual = (atual + 1) & mascara] != 0) {
+                int inicio = espalhar(hashes[tabela[atual] - 1]) & mascara;
+                if (((atual - inicio) & mascara) >= ((atual - livre) & mascara)) {
+                    tabela[livre] = tabela[atual];
+                    livre = atual;
+                }
+            }
+            tabela[livre] = 0;
+            nomes[id] = null;
+        }
+        this.quantidade = Math.min(this.quantidade, quantidade);
+    }
+
+    /**
+     * Capacidade atual, em nomes
+     */
+    int capacidade() {
+        return nomes.length;
+    }
+
+    /**
+     * Posição da tabela onde o nome está, ou a posição livre onde ele deve entrar
+     */
+    private int localizar(int hash, CharSequence codigo, int inicio, int fim) {
+        int mascara = tabela.length - 1;
+        int posicao = espalhar(hash) & mascara;
+        while (tabela[posicao] != 0) {
+            int id = tabela[posicao] - 1;
+            if (hashes[id] == hash && iguais(nomes[id], codigo, inicio, fim)) {
+                return posicao;
+            }
+            posicao = (posicao + 1) & mascara;
+        }
+        return posicao;
+    }
+
+    private void redimensionar() {
+        tabela = new int[tabela.length * 2];
+        int mascara = tabela.length - 1;
+        for (int id = 0; id < quantidade; id++) {
+            int posicao = espalhar(hashes[id]) & mascara;
+            while (tabela[posicao] != 0) {
+                posicao = (posicao + 1) & mascara;
+            }
+            tabela[posicao] = id + 1;
+        }
+    }
+
+    /**
+     * Mesmo cálculo de String.hashCode(), feito sobre o trecho do código
+     */
+    private static int calcularHash(CharSequence codigo, int inicio, int fim) {
+        int hash = 0;
+        for (int i = inicio; i < fim; i++) {
+            hash = 31 * hash + codigo.charAt(i);
+        }
+        return hash;
+    }
+
+    /**
+     * Mistura os bits altos nos baixos, já que a tabela usa só os bits baixos do hash
+     */
+    private static int espalhar(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void verificarAlteravel() {
+        if (somenteLeitura) {
+            throw new UnsupportedOperationException("Instantâneo da tabela de nomes não pode ser alterado");
+        }
+    }
+
+    private static boolean iguais(String nome, CharSequence codigo, int inicio, int fim) {
+        if (nome.length() != fim - inicio) {
+            return false;
+        }
+        for (int i = 0; i < nome.length(); i++) {
+            if (nome.charAt(i) != codigo.charAt(inicio + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
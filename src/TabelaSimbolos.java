@@ -1,46 +1,212 @@
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
- * Classe que gerencia a tabela de símbolos do compilador
+ * Classe que gerencia a tabela de símbolos do compilador, com escopos aninhados.
+ * Os símbolos ficam em vetores paralelos, na ordem em que foram adicionados, e um hash com
+ * endereçamento aberto leva o id de cada nome ao símbolo visível. Um símbolo declarado num
+ * escopo interno esconde o de mesmo nome dos escopos externos até o escopo ser fechado.
+ * A tabela em uso não deve ser lida por outras threads; elas recebem instantâneos, que não
+ * mudam e podem ser lidos ao mesmo tempo sem travas
  * @author Diogo Ferreira Saucedo
  */
 public class TabelaSimbolos {
-    private Map<String, Simbolo> tabela;
+    private static final int CAPACIDADE_INICIAL = 64;
+    // Símbolos a partir dos quais a mesclagem divide as tabelas entre tarefas paralelas
+    private static final int SIMBOLOS_POR_TAREFA = 1 << 14;
+
+    private TabelaNomes nomes;
+    private boolean somenteLeitura;
+
+    // Símbolos, indexados pela ordem em que foram adicionados
+    private int quantidade;
+    private int[] idsNomes;
+    private byte[] tipos;
+    private int[] linhas;
+    private boolean[] declarados;
+    private int[] escopos;
+    // Símbolo de mesmo nome escondido por este, ou -1
+    private int[] escondidos;
+
+    // Hash por id do nome: chaves guardam id + 1 (0 é posição livre) e visiveis o índice do
+    // símbolo visível, ou -1 se o nome não tem símbolo visível no momento
+    private int[] chaves;
+    private int[] visiveis;
+    private int ocupadas;
+
+    // Índice do primeiro símbolo de cada escopo aberto; o escopo 0 é o global
+    private int[] iniciosEscopo;
+    private int profundidade;
+
+    // Histórico das alterações de tipo e de declarado, em trios (índice do símbolo, valor
+    // anterior, valor novo), com o valor de valorDe(); null se não é registrado
+    private int[] alteracoes;
+    private int quantidadeAlteracoes;
 
     public TabelaSimbolos() {
-        this.tabela = new HashMap<>();
+        this(new TabelaNomes());
+    }
+
+    /**
+     * Cria a tabela usando uma tabela de nomes já existente, compartilhada com os tokens
+     */
+    public TabelaSimbolos(TabelaNomes nomes) {
+        this.nomes = nomes;
+        this.somenteLeitura = false;
+        this.quantidade = 0;
+        this.idsNomes = new int[CAPACIDADE_INICIAL];
+        this.tipos = new byte[CAPACIDADE_INICIAL];
+        this.linhas = new int[CAPACIDADE_INICIAL];
+        this.declarados = new boolean[CAPACIDADE_INICIAL];
+        this.escopos = new int[CAPACIDADE_INICIAL];
+        this.escondidos = new int[CAPACIDADE_INICIAL];
+        this.chaves = new int[CAPACIDADE_INICIAL * 2];
+        this.visiveis = new int[CAPACIDADE_INICIAL * 2];
+        this.ocupadas = 0;
+        this.iniciosEscopo = new int[8];
+        this.profundidade = 0;
+    }
+
+    /**
+     * Cópia independente dos vetores de outra tabela
+     */
+    private TabelaSimbolos(TabelaSimbolos origem, boolean somenteLeitura) {
+        this.nomes = somenteLeitura ? origem.nomes.instantaneo() : origem.nomes;
+        this.somenteLeitura = somenteLeitura;
+        this.quantidade = origem.quantidade;
+        int capacidade = Math.max(origem.quantidade, 1);
+        this.idsNomes = Arrays.copyOf(origem.idsNomes, capacidade);
+        this.tipos = Arrays.copyOf(origem.tipos, capacidade);
+        this.linhas = Arrays.copyOf(origem.linhas, capacidade);
+        this.declarados = Arrays.copyOf(origem.declarados, capacidade);
+        this.escopos = Arrays.copyOf(origem.escopos, capacidade);
+        this.escondidos = Arrays.copyOf(origem.escondidos, capacidade);
+        this.chaves = origem.chaves.clone();
+        this.visiveis = origem.visiveis.clone();
+        this.ocupadas = origem.ocupadas;
+        this.iniciosEscopo = Arrays.copyOf(origem.iniciosEscopo, origem.profundidade + 1);
+        this.profundidade = origem.profundidade;
     }
 
     /**
      * Adiciona um símbolo à tabela
      */
     public void adicionarSimbolo(String nome, String tipo, int linha) {
-        if (!tabela.containsKey(nome)) {
-            tabela.put(nome, new Simbolo(nome, tipo, linha));
+        adicionarSimbolo(nomes.registrar(nome), TipoSimbolo.deNome(tipo), linha);
+    }
+
+    /**
+     * Adiciona um símbolo à tabela a partir do id do seu nome
+     */
+    public void adicionarSimbolo(int id, String tipo, int linha) {
+        adicionarSimbolo(id, TipoSimbolo.deNome(tipo), linha);
+    }
+
+    /**
+     * Adiciona ao escopo atual um símbolo para o nome, se ele ainda não tiver um símbolo
+     * visível. Usos de um nome declarado num escopo externo não criam um novo símbolo
+     */
+    public void adicionarSimbolo(int id, TipoSimbolo tipo, int linha) {
+        if (indiceVisivel(id) < 0) {
+            inserir(id, tipo, linha);
         }
     }
 
+    /**
+     * Declara o nome no escopo atual, escondendo o símbolo de mesmo nome de um escopo
+     * externo. Se o nome já foi declarado neste escopo, o símbolo existente é mantido
+     */
+    public Simbolo declararNoEscopo(int id, TipoSimbolo tipo, int linha) {
+        int indice = indiceVisivel(id);
+        if (indice < 0 || escopos[indice] != profundidade) {
+            indice = inserir(id, tipo, linha);
+        }
+        return new Simbolo(this, indice);
+    }
+
+    /**
+     * Abre um escopo aninhado no escopo atual
+     */
+    public void entrarEscopo() {
+        verificarAlteravel();
+        if (profundidade + 1 == iniciosEscopo.length) {
+            iniciosEscopo = Arrays.copyOf(iniciosEscopo, iniciosEscopo.length * 2);
+        }
+        iniciosEscopo[++profundidade] = quantidade;
+    }
+
+    /**
+     * Fecha o escopo atual. Os seus símbolos continuam em getSimbolos(), mas deixam de ser
+     * encontrados pelas buscas, e os símbolos que eles escondiam voltam a ser visíveis
+     */
+    public void sairEscopo() {
+        verificarAlteravel();
+        if (profundidade == 0) {
+            throw new IllegalStateException("O escopo global não pode ser fechado");
+        }
+        for (int i = quantidade - 1; i >= iniciosEscopo[profundidade]; i--) {
+            // Símbolos de escopos mais internos já foram tratados quando eles fecharam
+            if (escopos[i] == profundidade) {
+                visiveis[posicaoDe(idsNomes[i])] = escondidos[i];
+            }
+        }
+        profundidade--;
+    }
+
+    /**
+     * Profundidade do escopo atual; 0 é o escopo global
+     */
+    public int getProfundidade() {
+        return profundidade;
+    }
+
     /**
      * Busca um símbolo na tabela
      */
     public Simbolo buscarSimbolo(String nome) {
-        return tabela.get(nome);
+        int id = nomes.buscar(nome);
+        return id < 0 ? null : buscarSimbolo(id);
+    }
+
+    /**
+     * Busca o símbolo visível pelo id do seu nome
+     */
+    public Simbolo buscarSimbolo(int id) {
+        int indice = indiceVisivel(id);
+        return indice < 0 ? null : new Simbolo(this, indice);
     }
 
     /**
      * Verifica se um símbolo existe na tabela
      */
     public boolean existeSimbolo(String nome) {
-        return tabela.containsKey(nome);
+        return buscarSimbolo(nome) != null;
+    }
+
+    /**
+     * Indica se o símbolo visível com o id informado foi declarado, sem criar um Simbolo
+     */
+    public boolean isDeclarado(int id) {
+        int indice = indiceVisivel(id);
+        return indice >= 0 && declarados[indice];
     }
 
     /**
      * Marca um símbolo como declarado
      */
     public void marcarComoDeclarado(String nome) {
-        Simbolo simbolo = tabela.get(nome);
-        if (simbolo != null) {
-            simbolo.setDeclarado(true);
+        marcarComoDeclarado(nomes.buscar(nome));
+    }
+
+    /**
+     * Marca como declarado o símbolo visível com o id informado
+     */
+    public void marcarComoDeclarado(int id) {
+        int indice = indiceVisivel(id);
+        if (indice >= 0) {
+            alterarDeclarado(indice, true);
         }
     }
 
@@ -48,34 +214,510 @@ public class TabelaSimbolos {
      * Define o tipo de um símbolo
      */
     public void definirTipo(String nome, String tipo) {
-        Simbolo simbolo = tabela.get(nome);
-        if (simbolo != null) {
-            simbolo.setTipo(tipo);
+        definirTipo(nomes.buscar(nome), TipoSimbolo.deNome(tipo));
+    }
+
+    /**
+     * Define o tipo do símbolo visível com o id informado
+     */
+    public void definirTipo(int id, TipoSimbolo tipo) {
+        int indice = indiceVisivel(id);
+        if (indice >= 0) {
+            alterarTipo(indice, tipo);
         }
     }
 
     /**
-     * Retorna todos os símbolos da tabela
+     * Retorna todos os símbolos da tabela, de todos os escopos, na ordem em que apareceram.
+     * A visão acompanha as alterações da tabela
      */
     public Collection<Simbolo> getSimbolos() {
-        return tabela.values();
+        return new AbstractList<Simbolo>() {
+            @Override
+            public Simbolo get(int indice) {
+                if (indice < 0 || indice >= quantidade) {
+                    throw new IndexOutOfBoundsException("Índice: " + indice + ", tamanho: " + quantidade);
+                }
+                return new Simbolo(TabelaSimbolos.this, indice);
+            }
+
+            @Override
+            public int size() {
+                return quantidade;
+            }
+        };
+    }
+
+    /**
+     * Tabela de nomes usada para os ids dos símbolos
+     */
+    public TabelaNomes getNomes() {
+        return nomes;
+    }
+
+    /**
+     * Número de símbolos, de todos os escopos
+     */
+    public int tamanho() {
+        return quantidade;
+    }
+
+    /**
+     * Cópia da tabela no estado atual, que não muda com as alterações seguintes e não pode
+     * ser alterada. Os vetores são copiados, inclusive os da tabela de nomes, sem um objeto
+     * por símbolo. Pode ser lida por várias threads ao mesmo tempo, desde que entregue a elas
+     * por um meio seguro (um campo volatile, uma coleção concorrente ou um Future), como faz
+     * AnalisadorLexico.getTabelaPublicada()
+     */
+    public TabelaSimbolos instantaneo() {
+        return somenteLeitura ? this : new TabelaSimbolos(this, true);
+    }
+
+    /**
+     * Combina as tabelas de vários arquivos em uma tabela de projeto, somente leitura, usando
+     * o pool comum
+     */
+    public static TabelaSimbolos mesclar(List<TabelaSimbolos> tabelas) {
+        return mesclar(tabelas, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Combina as tabelas de vários arquivos em uma tabela de projeto, somente leitura, com um
+     * símbolo no escopo global para cada nome distinto, na ordem em que os nomes aparecem nas
+     * tabelas. O símbolo fica com a linha da primeira ocorrência e, se o nome foi declarado
+     * em alguma tabela, com o tipo da primeira declaração. Como essa combinação é associativa,
+     * grupos de tabelas são mesclados em paralelo no pool informado e depois combinados em
+     * ordem, com o mesmo resultado da mesclagem sequencial. As tabelas não são alteradas e
+     * podem ser instantâneos lidos por outras threads
+     */
+    public static TabelaSimbolos mesclar(List<TabelaSimbolos> tabelas, ForkJoinPool pool) {
+        List<TabelaSimbolos> copia = new ArrayList<>(tabelas);
+        return pool.invoke(new Mesclagem(copia, 0, copia.size())).instantaneo();
+    }
+
+    /**
+     * Acrescenta os símbolos de outra tabela ao escopo global desta, seguindo as regras de
+     * mesclar()
+     */
+    private void incorporar(TabelaSimbolos origem) {
+        for (int i = 0; i < origem.quantidade; i++) {
+            int id = nomes.registrar(origem.nomes.getNome(origem.idsNomes[i]));
+            int indice = indiceVisivel(id);
+            if (indice < 0) {
+                indice = inserir(id, TipoSimbolo.deCodigo(origem.tipos[i]), origem.linhas[i]);
+                declarados[indice] = origem.declarados[i];
+            } else if (origem.declarados[i] && !declarados[indice]) {
+                tipos[indice] = origem.tipos[i];
+                declarados[indice] = true;
+            }
+        }
+    }
+
+    /**
+     * Mescla as tabelas [inicio, fim) da lista, dividindo-as ao meio enquanto tiverem
+     * símbolos suficientes para compensar uma tarefa a mais
+     */
+    private static final class Mesclagem extends RecursiveTask<TabelaSimbolos> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<TabelaSimbolos> tabelas;
+        private final int inicio;
+        private final int fim;
+
+        Mesclagem(List<TabelaSimbolos> tabelas, int inicio, int fim) {
+            this.tabelas = tabelas;
+            this.inicio = inicio;
+            this.fim = fim;
+        }
+
+        @Override
+        protected TabelaSimbolos compute() {
+            long simbolos = 0;
+            for (int i = inicio; i < fim; i++) {
+                simbolos += tabelas.get(i).quantidade;
+            }
+            if (fim - inicio < 2 || simbolos <= SIMBOLOS_POR_TAREFA) {
+                TabelaSimbolos resultado = new TabelaSimbolos();
+                for (int i = inicio; i < fim; i++) {
+                    resultado.incorporar(tabelas.get(i));
+                }
+                return resultado;
+            }
+
+            int meio = (inicio + fim) >>> 1;
+            Mesclagem segunda = new Mesclagem(tabelas, meio, fim);
+            segunda.fork();
+            TabelaSimbolos resultado = new Mesclagem(tabelas, inicio, meio).compute();
+            resultado.incorporar(segunda.join());
+            return resultado;
+        }
+    }
+
+    /**
+     * Remove todos os símbolos e fecha os escopos, mantendo os vetores já alocados. A tabela
+     * de nomes também é limpa; os instantâneos tirados antes não são afetados
+     */
+    void limpar() {
+        verificarAlteravel();
+        nomes.limpar();
+        quantidade = 0;
+        Arrays.fill(chaves, 0);
+        ocupadas = 0;
+        profundidade = 0;
+        alteracoes = null;
+        quantidadeAlteracoes = 0;
+    }
+
+    /**
+     * Capacidade atual, em símbolos
+     */
+    int capacidade() {
+        return idsNomes.length;
+    }
+
+    /**
+     * Passa a registrar as alterações de tipo e de declarado, para que reanálises possam
+     * voltar a tabela a um ponto anterior com voltarPara()
+     */
+    void registrarAlteracoes() {
+        if (alteracoes == null) {
+            alteracoes = new int[3 * 16];
+        }
+    }
+
+    /**
+     * Número de alterações registradas até aqui; 0 se não são registradas
+     */
+    int getQuantidadeAlteracoes() {
+        return quantidadeAlteracoes;
+    }
+
+    /**
+     * Passa a ter o mesmo conteúdo de outra tabela, incluindo a tabela de nomes e o histórico
+     * de alterações, copiando os seus vetores
+     */
+    void copiar(TabelaSimbolos origem) {
+        verificarAlteravel();
+        nomes.copiar(origem.nomes);
+        quantidade = origem.quantidade;
+        int capacidade = Math.max(origem.idsNomes.length, CAPACIDADE_INICIAL);
+        idsNomes = Arrays.copyOf(origem.idsNomes, capacidade);
+        tipos = Arrays.copyOf(origem.tipos, capacidade);
+        linhas = Arrays.copyOf(origem.linhas, capacidade);
+        declarados = Arrays.copyOf(origem.declarados, capacidade);
+        escopos = Arrays.copyOf(origem.escopos, capacidade);
+        escondidos = Arrays.copyOf(origem.escondidos, capacidade);
+        chaves = origem.chaves.clone();
+        visiveis = origem.visiveis.clone();
+        ocupadas = origem.ocupadas;
+        iniciosEscopo = origem.iniciosEscopo.clone();
+        profundidade = origem.profundidade;
+        alteracoes = origem.alteracoes == null ? null : origem.alteracoes.clone();
+        quantidadeAlteracoes = origem.quantidadeAlteracoes;
+    }
+
+    /**
+     * Volta a tabela ao ponto em que tinha simbolos símbolos, nomes nomes e alteracoes
+     * alterações registradas: as alterações seguintes são desfeitas da última para a
+     * primeira, e os símbolos e nomes seguintes são removidos. Só vale para tabelas que não
+     * usaram escopos aninhados, como a do analisador léxico
+     */
+    void voltarPara(int simbolos, int nomes, int alteracoes) {
+        verificarAlteravel();
+        if (profundidade != 0) {
+            throw new IllegalStateException("A tabela tem escopos abertos");
+        }
+        while (quantidadeAlteracoes > alteracoes) {
+            quantidadeAlteracoes -= 3;
+            definirValor(this.alteracoes[quantidadeAlteracoes], this.alteracoes[quantidadeAlteracoes + 1]);
+        }
+        for (int i = quantidade - 1; i >= simbolos; i--) {
+            if (escopos[i] != 0) {
+                continue;
+            }
+            int posicao = posicaoDe(idsNomes[i]);
+            visiveis[posicao] = escondidos[i];
+            if (escondidos[i] < 0) {
+                removerChave(posicao);
+            }
+        }
+        quantidade = Math.min(quantidade, simbolos);
+        this.nomes.truncar(nomes);
+    }
+
+    /**
+     * Tipo e marcação de declarado do símbolo visível com o id informado, no valor do
+     * histórico de alterações, ou -1 se não houver símbolo visível
+     */
+    int valorDoNome(int id) {
+        int indice = indiceVisivel(id);
+        return indice < 0 ? -1 : valorDe(indice);
+    }
+
+    /**
+     * Valor de um símbolo adicionado pelo analisador léxico e ainda não alterado
+     */
+    static int valorInicial() {
+        return TipoSimbolo.INDEFINIDO.getCodigo() << 1;
+    }
+
+    /**
+     * Valores dos símbolos alterados pelas alterações registradas [de, ate), pelo id do nome:
+     * o valor antes da primeira alteração de cada um ou, com finais, o valor depois da última
+     */
+    Map<Integer, Integer> valoresAlterados(int de, int ate, boolean finais) {
+        Map<Integer, Integer> valores = new HashMap<>();
+        for (int i = de; i < ate; i += 3) {
+            int id = idsNomes[alteracoes[i]];
+            if (finais) {
+                valores.put(id, alteracoes[i + 2]);
+            } else {
+                valores.putIfAbsent(id, alteracoes[i + 1]);
+            }
+        }
+        return valores;
+    }
+
+    /**
+     * Acrescenta os nomes de outra tabela a partir de nomesDe e os seus símbolos a partir de
+     * simbolosDe, com as linhas deslocadas em deslocamentoLinha, e aplica as suas alterações
+     * a partir de alteracoesDe. ids leva cada id de nome da outra tabela ao id do mesmo nome
+     * nesta e é completado com os ids dos nomes acrescentados, que não podem existir aqui.
+     * Os valores ficam os finais da outra tabela, que são os que as alterações deixariam
+     */
+    void acrescentar(TabelaSimbolos outra, int simbolosDe, int nomesDe, int alteracoesDe, int deslocamentoLinha,
+            int[] ids) {
+        for (int id = nomesDe; id < outra.nomes.tamanho(); id++) {
+            ids[id] = nomes.registrar(outra.nomes.getNome(id));
+        }
+        for (int i = simbolosDe; i < outra.quantidade; i++) {
+            int indice = inserir(ids[outra.idsNomes[i]], TipoSimbolo.INDEFINIDO, outra.linhas[i] + deslocamentoLinha);
+            tipos[indice] = outra.tipos[i];
+            declarados[indice] = outra.declarados[i];
+        }
+        for (int i = alteracoesDe; i < outra.quantidadeAlteracoes; i += 3) {
+            int indiceOutra = outra.alteracoes[i];
+            int indice = indiceVisivel(ids[outra.idsNomes[indiceOutra]]);
+            definirValor(indice, outra.valorDe(indiceOutra));
+            if (alteracoes != null) {
+                acrescentarAlteracao(indice, outra.alteracoes[i + 1], outra.alteracoes[i + 2]);
+            }
+        }
+    }
+
+    /**
+     * Libera a posição de uma chave do hash. As chaves seguintes da mesma sondagem voltam
+     * para trás, para que nenhuma busca pare na posição liberada antes de encontrá-las
+     */
+    private void removerChave(int posicao) {
+        int mascara = chaves.length - 1;
+        int livre = posicao;
+        int atual = posicao;
+        while (chaves[atual = (atual + 1) & mascara] != 0) {
+            int inicio = espalhar(chaves[atual] - 1) & mascara;
+            if (((atual - inicio) & mascara) >= ((atual - livre) & mascara)) {
+                chaves[livre] = chaves[atual];
+                visiveis[livre] = visiveis[atual];
+                livre = atual;
+            }
+        }
+        chaves[livre] = 0;
+        ocupadas--;
+    }
+
+    /**
+     * Tipo e marcação de declarado de um símbolo num só valor, para o histórico
+     */
+    private int valorDe(int indice) {
+        return tipos[indice] << 1 | (declarados[indice] ? 1 : 0);
+    }
+
+    private void definirValor(int indice, int valor) {
+        tipos[indice] = (byte) (valor >> 1);
+        declarados[indice] = (valor & 1) != 0;
+    }
+
+    private void registrarAlteracao(int indice, int anterior) {
+        int valor = valorDe(indice);
+        if (alteracoes != null && valor != anterior) {
+            acrescentarAlteracao(indice, anterior, valor);
+        }
+    }
+
+    private void acrescentarAlteracao(int indice, int anterior, int valor) {
+        if (quantidadeAlteracoes == alteracoes.length) {
+            alteracoes = Arrays.copyOf(alteracoes, alteracoes.length * 2);
+        }
+        alteracoes[quantidadeAlteracoes++] = indice;
+        alteracoes[quantidadeAlteracoes++] = anterior;
+        alteracoes[quantidadeAlteracoes++] = valor;
+    }
+
+    public boolean isSomenteLeitura() {
+        return somenteLeitura;
     }
 
     /**
      * Exibe a tabela de símbolos
      */
     public void exibirTabela() {
-        System.out.println("\n=== TABELA DE SÍMBOLOS ===");
-        System.out.printf("%-15s %-10s %-8s %-10s%n", "Nome", "Tipo", "Linha", "Declarado");
-        System.out.println("------------------------------------------------");
-
-        for (Simbolo simbolo : tabela.values()) {
-            System.out.printf("%-15s %-10s %-8d %-10s%n",
-                    simbolo.getNome(),
-                    simbolo.getTipo(),
-                    simbolo.getLinha(),
-                    simbolo.isDeclarado() ? "Sim" : "Não");
-        }
-        System.out.println();
+        EscritorRelatorio saida = EscritorRelatorio.paraConsole();
+        saida.novaLinha().linha("=== TABELA DE SÍMBOLOS ===");
+        RelatorioAnalise.escreverTabelaSimbolos(this, saida);
+        saida.novaLinha();
+        try {
+            saida.descarregar();
+        } catch (IOException e) {
+            // System.out não lança erros de escrita
+        }
+    }
+
+    // Acesso aos campos de um símbolo pelo índice, usado por Simbolo
+
+    int idNomeDe(int indice) {
+        return idsNomes[indice];
+    }
+
+    TipoSimbolo tipoDe(int indice) {
+        return TipoSimbolo.deCodigo(tipos[indice]);
+    }
+
+    void alterarTipo(int indice, TipoSimbolo tipo) {
+        verificarAlteravel();
+        int anterior = valorDe(indice);
+        tipos[indice] = tipo.getCodigo();
+        registrarAlteracao(indice, anterior);
+    }
+
+    int linhaDe(int indice) {
+        return linhas[indice];
+    }
+
+    boolean declaradoDe(int indice) {
+        return declarados[indice];
+    }
+
+    void alterarDeclarado(int indice, boolean declarado) {
+        verificarAlteravel();
+        int anterior = valorDe(indice);
+        declarados[indice] = declarado;
+        registrarAlteracao(indice, anterior);
+    }
+
+    int escopoDe(int indice) {
+        return escopos[indice];
+    }
+
+    /**
+     * Adiciona um símbolo ao escopo atual, tornando-o o símbolo visível do nome
+     */
+    int inserir(int id, TipoSimbolo tipo, int linha) {
+        verificarAlteravel();
+        if (quantidade == idsNomes.length) {
+            crescer();
+        }
+        int posicao = posicaoDe(id);
+        if (chaves[posicao] == 0) {
+            chaves[posicao] = id + 1;
+            visiveis[posicao] = -1;
+            ocupadas++;
+        }
+
+        int indice = quantidade++;
+        idsNomes[indice] = id;
+        tipos[indice] = tipo.getCodigo();
+        linhas[indice] = linha;
+        declarados[indice] = false;
+        escopos[indice] = profundidade;
+        escondidos[indice] = visiveis[posicao];
+        visiveis[posicao] = indice;
+
+        // Mantém a ocupação do hash abaixo de 50%
+        if (ocupadas * 2 > chaves.length) {
+            redimensionarHash();
+        }
+        return indice;
+    }
+
+    /**
+     * Adiciona um símbolo lido de um resultado gravado. Os de escopos internos já estavam
+     * fechados no fim da análise: entram em getSimbolos(), mas não ficam visíveis
+     */
+    int restaurar(int id, TipoSimbolo tipo, int linha, boolean declarado, int escopo) {
+        int indice;
+        if (escopo == 0) {
+            indice = inserir(id, tipo, linha);
+        } else {
+            verificarAlteravel();
+            if (quantidade == idsNomes.length) {
+                crescer();
+            }
+            indice = quantidade++;
+            idsNomes[indice] = id;
+            tipos[indice] = tipo.getCodigo();
+            linhas[indice] = linha;
+            escopos[indice] = escopo;
+            escondidos[indice] = -1;
+        }
+        declarados[indice] = declarado;
+        return indice;
+    }
+
+    private int indiceVisivel(int id) {
+        if (id < 0) {
+            return -1;
+        }
+        int posicao = posicaoDe(id);
+        return chaves[posicao] == 0 ? -1 : visiveis[posicao];
+    }
+
+    /**
+     * Posição do id no hash, ou a posição livre onde ele deve entrar
+     */
+    private int posicaoDe(int id) {
+        int mascara = chaves.length - 1;
+        int posicao = espalhar(id) & mascara;
+        while (chaves[posicao] != 0 && chaves[posicao] != id + 1) {
+            posicao = (posicao + 1) & mascara;
+        }
+        return posicao;
+    }
+
+    /**
+     * Ids são sequenciais; a multiplicação espalha ids vizinhos pela tabela
+     */
+    private static int espalhar(int id) {
+        int hash = id * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private void crescer() {
+        int capacidade = idsNomes.length + (idsNomes.length >> 1);
+        idsNomes = Arrays.copyOf(idsNomes, capacidade);
+        tipos = Arrays.copyOf(tipos, capacidade);
+        linhas = Arrays.copyOf(linhas, capacidade);
+        declarados = Arrays.copyOf(declarados, capacidade);
+        escopos = Arrays.copyOf(escopos, capacidade);
+        escondidos = Arrays.copyOf(escondidos, capacidade);
+    }
+
+    private void redimensionarHash() {
+        int[] chavesAntigas = chaves;
+        int[] visiveisAntigos = visiveis;
+        chaves = new int[chavesAntigas.length * 2];
+        visiveis = new int[chavesAntigas.length * 2];
+        for (int i = 0; i < chavesAntigas.length; i++) {
+            if (chavesAntigas[i] != 0) {
+                int posicao = posicaoDe(chavesAntigas[i] - 1);
+                chaves[posicao] = chavesAntigas[i];
+                visiveis[posicao] = visiveisAntigos[i];
+            }
+        }
+    }
+
+    private void verificarAlteravel() {
+        if (somenteLeitura) {
+            throw new UnsupportedOperationException("Instantâneo da tabela de símbolos não pode ser alterado");
+        }
     }
 }
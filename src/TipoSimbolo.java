@@ -0,0 +1,47 @@
+/**
+ * Tipos que um símbolo pode ter, guardados na tabela de símbolos como um byte
+ * @author Diogo Ferreira Saucedo
+ */
+public enum TipoSimbolo {
+    INDEFINIDO("indefinido"),
+    INTEGER("integer"),
+    CHAR("char");
+
+    private static final TipoSimbolo[] VALORES = values();
+
+    private final String nome;
+
+    TipoSimbolo(String nome) {
+        this.nome = nome;
+    }
+
+    /**
+     * Nome do tipo como aparece nos relatórios
+     */
+    public String getNome() {
+        return nome;
+    }
+
+    /**
+     * Código guardado na tabela de símbolos
+     */
+    public byte getCodigo() {
+        return (byte) ordinal();
+    }
+
+    public static TipoSimbolo deCodigo(byte codigo) {
+        return VALORES[codigo];
+    }
+
+    /**
+     * Converte o nome usado nos relatórios ("indefinido", "integer", "char")
+     */
+    public static TipoSimbolo deNome(String nome) {
+        for (TipoSimbolo tipo : VALORES) {
+            if (tipo.nome.equals(nome)) {
+                return tipo;
+            }
+        }
+        throw new IllegalArgumentException("Tipo de símbolo desconhecido: " + nome);
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Varredura em blocos para código em String, em vetor de char ou em outro CharSequence.
+ * Em String, o fim do conteúdo de uma string é achado com indexOf, que a JVM executa com
+ * instruções vetoriais; as posições encontradas são guardadas e reaproveitadas enquanto a
+ * análise avança, então cada trecho do código é percorrido uma vez. Como indexOf não tem
+ * limite, a busca de um caractere ausente vai até o fim do código; numa varredura que para
+ * antes (um bloco da análise paralela ou a de reanalisar()), as buscas são feitas em janelas
+ * de TAMANHO_JANELA caracteres copiadas do código e não passam da janela que contém fim
+ * @author Diogo Ferreira Saucedo
+ */
+final class VarreduraCaracteres implements VarreduraEmBlocos {
+    // As janelas começam em múltiplos deste tamanho
+    private static final int TAMANHO_JANELA = 4096;
+
+    private final CharSequence codigo;
+    private final String texto;
+    private final char[] vetor;
+    private final int deslocamento;
+    private final Ocorrencia aspas;
+    private final Ocorrencia quebrasLf;
+    private final Ocorrencia quebrasCr;
+    private final boolean emJanelas;
+    // Cópia do trecho [inicioJanela, inicioJanela + janela.length()) do texto
+    private String janela;
+    private int inicioJanela;
+
+    VarreduraCaracteres(CharSequence codigo) {
+        this(codigo, false);
+    }
+
+    /**
+     * Varredura do código; com emJanelas, as buscas em String são limitadas às janelas
+     */
+    VarreduraCaracteres(CharSequence codigo, boolean emJanelas) {
+        this.codigo = codigo;
+        this.texto = codigo instanceof String ? (String) codigo : null;
+        this.vetor = null;
+        this.deslocamento = 0;
+        this.aspas = new Ocorrencia('\'');
+        this.quebrasLf = new Ocorrencia('\n');
+        this.quebrasCr = new Ocorrencia('\r');
+        this.emJanelas = emJanelas;
+        this.janela = "";
+        this.inicioJanela = 0;
+    }
+
+    /**
+     * Varredura sobre um vetor de char, com o caractere 0 do código em deslocamento
+     */
+    VarreduraCaracteres(char[] vetor, int deslocamento) {
+        this.codigo = null;
+        this.texto = null;
+        this.vetor = vetor;
+        this.deslocamento = deslocamento;
+        this.aspas = null;
+        this.quebrasLf = null;
+        this.quebrasCr = null;
+        this.emJanelas = false;
+    }
+
+    @Override
+    public int fimDosEspacos(int inicio, int fim) {
+        if (vetor != null) {
+            int i = inicio + deslocamento;
+            int limite = fim + deslocamento;
+            while (i < limite && (vetor[i] == ' ' || vetor[i] == '\t')) {
+                i++;
+            }
+            return i - deslocamento;
+        }
+        int i = inicio;
+        while (i < fim) {
+            char c = codigo.charAt(i);
+            if (c != ' ' && c != '\t') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    @Override
+    public int fimDosDigitos(int inicio, int fim) {
+        if (vetor != null) {
+            int i = inicio + deslocamento;
+            int limite = fim + deslocamento;
+            while (i < limite && (char) (vetor[i] - '0') <= 9) {
+                i++;
+            }
+            return i - deslocamento;
+        }
+        int i = inicio;
+        while (i < fim && (char) (codigo.charAt(i) - '0') <= 9) {
+            i++;
+        }
+        return i;
+    }
+
+    @Override
+    public int fimDoTextoString(int inicio, int fim) {
+        if (texto != null && !emJanelas) {
+            int encontrado = Math.min(aspas.em(texto, 0, inicio),
+                    Math.min(quebrasLf.em(texto, 0, inicio), quebrasCr.em(texto, 0, inicio)));
+            return Math.min(encontrado, fim);
+        }
+        if (texto != null) {
+            int i = inicio;
+            while (i < fim) {
+                if (i < inicioJanela || i - inicioJanela >= janela.length()) {
+                    inicioJanela = i - i % TAMANHO_JANELA;
+                    janela = texto.substring(inicioJanela, Math.min(texto.length(), inicioJanela + TAMANHO_JANELA));
+                }
+                int encontrado = Math.min(aspas.em(janela, inicioJanela, i),
+                        Math.min(quebrasLf.em(janela, inicioJanela, i), quebrasCr.em(janela, inicioJanela, i)));
+                if (encontrado < Integer.MAX_VALUE) {
+                    return Math.min(encontrado, fim);
+                }
+                i = inicioJanela + janela.length();
+            }
+            return fim;
+        }
+        if (vetor != null) {
+            int i = inicio + deslocamento;
+            int limite = fim + deslocamento;
+            while (i < limite) {
+                char c = vetor[i];
+                if (c == '\'' || c == '\n' || c == '\r') {
+                    break;
+                }
+                i++;
+            }
+            return i - deslocamento;
+        }
+        int i = inicio;
+        while (i < fim) {
+            char c = codigo.charAt(i);
+            if (c == '\'' || c == '\n' || c == '\r') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Última ocorrência encontrada de um caractere em uma janela (ou no texto todo, que é a
+     * janela que começa em 0), válida para buscas na mesma janela que começam entre a posição
+     * de onde ela foi procurada e a própria ocorrência
+     */
+    private static final class Ocorrencia {
+        private final char caractere;
+        private int inicioJanela;
+        private int buscadoDe;
+        private int posicao;
+
+        Ocorrencia(char caractere) {
+            this.caractere = caractere;
+            this.inicioJanela = -1;
+            this.buscadoDe = Integer.MAX_VALUE;
+            this.posicao = -1;
+        }
+
+        /**
+         * Posição no código da primeira ocorrência a partir de inicio na janela que começa
+         * em inicioJanela, ou Integer.MAX_VALUE se não houver até o fim da janela
+         */
+        int em(String janela, int inicioJanela, int inicio) {
+            if (inicioJanela != this.inicioJanela || inicio < buscadoDe || (posicao >= 0 && inicio > posicao)) {
+                this.inicioJanela = inicioJanela;
+                buscadoDe = inicio;
+                int encontrado = janela.indexOf(caractere, inicio - inicioJanela);
+                posicao = encontrado < 0 ? -1 : inicioJanela + encontrado;
+            }
+            return posicao < 0 ? Integer.MAX_VALUE : posicao;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+import java.nio.CharBuffer;
+
+/**
+ * Varredura de sequências longas do código (espaços, dígitos e conteúdo de strings) em
+ * blocos, em vez de um charAt por caractere. Nenhuma dessas sequências atravessa uma quebra
+ * de linha, então quem chama só precisa somar o avanço à coluna
+ * @author Diogo Ferreira Saucedo
+ */
+interface VarreduraEmBlocos {
+    /**
+     * Primeira posição em [inicio, fim) que não é espaço nem tabulação, ou fim
+     */
+    int fimDosEspacos(int inicio, int fim);
+
+    /**
+     * Primeira posição em [inicio, fim) que não é um dígito ASCII, ou fim
+     */
+    int fimDosDigitos(int inicio, int fim);
+
+    /**
+     * Primeira posição em [inicio, fim) com aspa simples ou quebra de linha, ou fim
+     */
+    int fimDoTextoString(int inicio, int fim);
+
+    /**
+     * Escolhe a varredura mais rápida para o tipo do código: visões mapeadas de um byte por
+     * caractere varrem 8 bytes por vez, e os demais usam VarreduraCaracteres
+     */
+    static VarreduraEmBlocos para(CharSequence codigo) {
+        if (codigo instanceof VarreduraEmBlocos) {
+            return (VarreduraEmBlocos) codigo;
+        }
+        if (codigo instanceof CharBuffer && ((CharBuffer) codigo).hasArray()) {
+            CharBuffer buffer = (CharBuffer) codigo;
+            return new VarreduraCaracteres(buffer.array(), buffer.arrayOffset() + buffer.position());
+        }
+        return new VarreduraCaracteres(codigo);
+    }
+
+    /**
+     * Como para(), mas para varreduras que param antes do fim do código: nenhuma busca vai
+     * muito além do fim pedido, mesmo atrás de um caractere que não aparece mais no código
+     */
+    static VarreduraEmBlocos paraTrecho(CharSequence codigo) {
+        if (codigo instanceof String) {
+            return new VarreduraCaracteres(codigo, true);
+        }
+        return para(codigo);
+    }
+}
@@ -0,0 +1,32 @@
+@echo off
+echo === Compilando o Compilador Lexico ===
+javac -encoding UTF-8 -d out ./src/*.java
+
+if %errorlevel% neq 0 (
+    echo Erro na compilacao!
+    pause
+    exit /b 1
+)
+
+echo === Compilando o Teste de Regressao ===
+javac -encoding UTF-8 -cp out -d out-teste ./teste/*.java
+
+if %errorlevel% neq 0 (
+    echo Erro na compilacao dos testes!
+    pause
+    exit /b 1
+)
+
+echo.
+echo === Executando o Teste de Regressao ===
+rem Compara os exemplos e os casos de teste\casos com as saidas de teste\esperado
+java -cp out;out-teste TesteRegressao
+
+if %errorlevel% neq 0 (
+    echo Falhas no teste de regressao!
+    pause
+    exit /b 1
+)
+
+echo.
+echo === Testes concluidos ===
@@ -0,0 +1,341 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * Teste de regressão do analisador léxico. Os tokens, os erros e a tabela de símbolos dos
+ * programas de exemplo e dos casos de teste/casos são comparados com a saída esperada em
+ * teste/esperado, gerada pela implementação original, que procurava um IF/THEN na lista de
+ * tokens para classificar cada '='. A mesma saída é exigida dos caminhos alternativos de
+ * análise: o iterador de tokens, um analisador reaproveitado do pool e a reanálise após uma
+ * edição. A análise paralela é comparada com a sequencial sobre um código grande o bastante
+ * para ser dividido em blocos, e reanálises encadeadas de um código com muitos pontos de
+ * controle são comparadas com análises do zero. O modo observação é exercitado com
+ * diretórios criados e removidos em seguida
+ *
+ * Uso: java TesteRegressao [--diretorio=DIR]
+ * @author Diogo Ferreira Saucedo
+ */
+public class TesteRegressao {
+    // Edições desfeitas por reanalisar() em cada caso, espalhadas pelo código
+    private static final int EDICOES_POR_CASO = 16;
+    // Tamanho mínimo do código da análise paralela, acima do mínimo para dividir em blocos
+    private static final int TAMANHO_PARALELO = 3 << 20;
+    // Tamanho do código e número de edições das reanálises encadeadas
+    private static final int TAMANHO_ENCADEADO = 200_000;
+    private static final int EDICOES_ENCADEADAS = 60;
+    // Diretórios criados e removidos logo em seguida durante o modo observação
+    private static final int DIRETORIOS_TRANSITORIOS = 200;
+    // Espera máxima, em ms, por uma saída do modo observação
+    private static final int ESPERA_OBSERVADOR_MS = 10_000;
+    // Palavras reservadas incorretas em maiúsculas, cujo 'I' vira 'ı' em turco
+    private static final String PALAVRAS_MAIUSCULAS = "PROGRA teste;\nvar x: INTEGE;\nBEGI\nend.\n";
+    // Grafias de um mesmo nome e um nome que começa com ele, para a consulta ao índice
+    private static final String GRAFIAS = "program grafias;\nbegin\nifx := IFX + Ifx;\nifxa := 1;\nend.\n";
+    private static final String[] INSERCOES = {"", "x", "if ", "'", "\n", "\r\n", " = ", "var b: integer;\n",
+            "begin ", "end ", "{", "}", "then ", "z := 1;\n", "#"};
+
+    // Erros do código que faz o analisador crescer além do limite do pool
+    private static final int ERROS_POOL = 3000;
+
+    private int verificacoes;
+    private final List<String> falhas = new ArrayList<>();
+    // Com um só analisador livre, cada caso reaproveita com reiniciar() o do caso anterior
+    private final PoolAnalisadores pool = new PoolAnalisadores(1);
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path diretorio = Paths.get("");
+        for (String arg : args) {
+            if (arg.startsWith("--diretorio=")) {
+                diretorio = Paths.get(arg.substring("--diretorio=".length()));
+            } else {
+                System.err.println("Opção desconhecida: " + arg);
+                System.exit(2);
+            }
+        }
+
+        TesteRegressao teste = new TesteRegressao();
+        List<Path> casos = new ArrayList<>();
+        try (Stream<Path> exemplos = Files.list(diretorio.toAbsolutePath())) {
+            exemplos.filter(arquivo -> arquivo.getFileName().toString().matches("Programa_.*\\.txt"))
+                    .forEach(casos::add);
+        }
+        try (Stream<Path> arquivos = Files.list(diretorio.resolve("teste").resolve("casos"))) {
+            arquivos.forEach(casos::add);
+        }
+        Collections.sort(casos);
+
+        StringBuilder todos = new StringBuilder();
+        for (Path caso : casos) {
+            String nome = caso.getFileName().toString();
+            String codigo = new String(Files.readAllBytes(caso), StandardCharsets.UTF_8);
+            Path arquivoEsperado = diretorio.resolve("teste").resolve("esperado").resolve(nome + ".esperado");
+            // Quebras de linha normalizadas, caso o checkout tenha convertido o arquivo
+            String esperado = new String(Files.readAllBytes(arquivoEsperado), StandardCharsets.UTF_8)
+                    .replace("\r\n", "\n");
+            teste.verificarCaso(nome, codigo, esperado);
+            todos.append(codigo).append('\n');
+        }
+        teste.verificarParalelo(todos.toString());
+        teste.verificarEncadeadas(todos.toString());
+        teste.verificarPoolCrescido();
+        teste.verificarLocale();
+        teste.verificarIndice();
+        teste.verificarObservador();
+
+        System.out.println(teste.verificacoes + " verificações, " + teste.falhas.size() + " falhas");
+        for (String falha : teste.falhas) {
+            System.out.println(falha);
+        }
+        System.exit(teste.falhas.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * Compara cada forma de analisar o código com a saída esperada
+     */
+    private void verificarCaso(String nome, String codigo, String esperado) {
+        AnalisadorLexico analisador = new AnalisadorLexico(codigo);
+        analisador.analisar();
+        verificar(nome + " [analisar]", esperado, formatar(analisador));
+
+        AnalisadorLexico reaproveitado = pool.obter(codigo);
+        try {
+            reaproveitado.analisar();
+            verificar(nome + " [pool]", esperado, formatar(reaproveitado));
+        } finally {
+            pool.devolver(reaproveitado);
+        }
+
+        AnalisadorLexico iterado = new AnalisadorLexico(codigo);
+        List<Token> tokens = new ArrayList<>();
+        for (Iterator<Token> iterador = iterado.iterator(); iterador.hasNext();) {
+            tokens.add(iterador.next());
+        }
+        verificar(nome + " [iterador]", esperado,
+                formatar(tokens, iterado.getErros(), iterado.getTabelaSimbolos().getSimbolos()));
+
+        // Cada edição parte do código com um caractere a menos ou a mais e o restaura
+        int passo = Math.max(1, codigo.length() / EDICOES_POR_CASO);
+        for (int offset = 0; offset <= codigo.length(); offset += passo) {
+            if (offset < codigo.length()) {
+                String semCaractere = codigo.substring(0, offset) + codigo.substring(offset + 1);
+                AnalisadorLexico anterior = new AnalisadorLexico(semCaractere);
+                anterior.analisar();
+                verificar(nome + " [reanalisar inserindo em " + offset + "]", esperado,
+                        formatar(anterior.reanalisar(offset, 0, codigo.substring(offset, offset + 1))));
+            }
+            String comCaractere = codigo.substring(0, offset) + "x=" + codigo.substring(offset);
+            AnalisadorLexico anterior = new AnalisadorLexico(comCaractere);
+            anterior.analisar();
+            verificar(nome + " [reanalisar removendo em " + offset + "]", esperado,
+                    formatar(anterior.reanalisar(offset, 2, "")));
+        }
+    }
+
+    /**
+     * A análise paralela de um código com vários blocos deve ser igual à sequencial
+     */
+    private void verificarParalelo(String casos) {
+        StringBuilder codigo = new StringBuilder(TAMANHO_PARALELO + casos.length());
+        while (codigo.length() < TAMANHO_PARALELO) {
+            codigo.append(casos);
+        }
+        AnalisadorLexico sequencial = new AnalisadorLexico(codigo);
+        sequencial.analisar();
+        String esperado = formatar(sequencial);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            AnalisadorLexico paralelo = new AnalisadorLexico(codigo);
+            paralelo.analisarParalelo(pool);
+            verificar("paralelo", esperado, formatar(paralelo));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Cada reanálise parte da anterior, que já foi retomada de pontos de controle, e deve
+     * ser igual a uma análise do zero do código editado
+     */
+    private void verificarEncadeadas(String casos) {
+        StringBuilder inicial = new StringBuilder(TAMANHO_ENCADEADO + casos.length());
+        while (inicial.length() < TAMANHO_ENCADEADO) {
+            inicial.append(casos);
+        }
+        String codigo = inicial.toString();
+        AnalisadorLexico analisador = new AnalisadorLexico(codigo);
+        analisador.analisar();
+        Random aleatorio = new Random(1);
+        for (int edicao = 0; edicao < EDICOES_ENCADEADAS; edicao++) {
+            int offset = aleatorio.nextInt(codigo.length() + 1);
+            int removidos = Math.min(aleatorio.nextInt(edicao % 4 == 0 ? 2000 : 6), codigo.length() - offset);
+            String inseridos = INSERCOES[aleatorio.nextInt(INSERCOES.length)];
+            codigo = codigo.substring(0, offset) + inseridos + codigo.substring(offset + removidos);
+            analisador = analisador.reanalisar(offset, removidos, inseridos);
+
+            AnalisadorLexico completo = new AnalisadorLexico(codigo);
+            completo.analisar();
+            verificar("reanalisar encadeado " + edicao + " em " + offset, formatar(completo), formatar(analisador));
+        }
+    }
+
+    /**
+     * O valor das palavras reservadas incorretas não depende do idioma padrão da JVM
+     */
+    private void verificarLocale() {
+        Locale padrao = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.ROOT);
+            AnalisadorLexico esperado = new AnalisadorLexico(PALAVRAS_MAIUSCULAS);
+            esperado.analisar();
+            Locale.setDefault(new Locale("tr", "TR"));
+            AnalisadorLexico turco = new AnalisadorLexico(PALAVRAS_MAIUSCULAS);
+            turco.analisar();
+            verificar("idioma [tr-TR]", formatar(esperado), formatar(turco));
+        } finally {
+            Locale.setDefault(padrao);
+        }
+    }
+
+    /**
+     * A consulta ao índice encontra o nome em qualquer combinação de maiúsculas e minúsculas
+     */
+    private void verificarIndice() throws IOException, InterruptedException {
+        Path raiz = Files.createTempDirectory("indice");
+        try {
+            Path arquivo = raiz.resolve("grafias.pas");
+            Files.write(arquivo, GRAFIAS.getBytes(StandardCharsets.UTF_8));
+            IndiceIdentificadores indice = new IndiceIdentificadores(raiz.resolve("indice"));
+            indice.atualizar(Collections.singletonList(arquivo), StandardCharsets.UTF_8, 1);
+            StringBuilder encontrados = new StringBuilder();
+            for (OcorrenciaIdentificador ocorrencia : indice.usos("iFX")) {
+                encontrados.append(ocorrencia.getNome()).append(' ');
+            }
+            verificar("índice [grafias]", "ifx IFX Ifx ", encontrados.toString());
+        } finally {
+            try (Stream<Path> arquivos = Files.walk(raiz)) {
+                arquivos.sorted(Comparator.reverseOrder()).forEach(arquivo -> arquivo.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Um analisador que guardou mais diagnósticos que o limite do pool não volta para ele,
+     * mesmo sem guardar os tokens
+     */
+    private void verificarPoolCrescido() {
+        StringBuilder codigo = new StringBuilder("program erros;\nbegin\n");
+        for (int i = 0; i < ERROS_POOL; i++) {
+            codigo.append("@\n");
+        }
+        codigo.append("end.\n");
+        PoolAnalisadores limitado = new PoolAnalisadores(1, ERROS_POOL / 2);
+        AnalisadorLexico analisador = limitado.obter(codigo);
+        analisador.setGuardarTokens(false);
+        analisador.analisar();
+        limitado.devolver(analisador);
+        verificar("pool [diagnósticos acima do limite]", "0 livres", limitado.getLivres() + " livres");
+    }
+
+    /**
+     * Diretórios que somem antes de o modo observação percorrê-los não podem encerrar a
+     * observação: um arquivo criado depois deles ainda deve ser analisado
+     */
+    private void verificarObservador() throws IOException {
+        Path raiz = Files.createTempDirectory("observador");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(bytes, true, "UTF-8"));
+        Thread observacao = new Thread(() -> CompiladorObservador.executar(new String[] {raiz.toString()}));
+        observacao.setDaemon(true);
+        try {
+            observacao.start();
+            boolean iniciado = aguardarSaida(bytes, "Observando alterações");
+            for (int i = 0; iniciado && i < DIRETORIOS_TRANSITORIOS; i++) {
+                Path transitorio = raiz.resolve("transitorio" + i);
+                Files.createDirectories(transitorio.resolve("interno"));
+                Files.delete(transitorio.resolve("interno"));
+                Files.delete(transitorio);
+            }
+            Files.write(raiz.resolve("depois.pas"), "program depois; begin end.".getBytes(StandardCharsets.UTF_8));
+            boolean analisado = iniciado && aguardarSaida(bytes, "depois.pas");
+            verificar("observador [diretórios transitórios]", "analisado", analisado && observacao.isAlive()
+                    ? "analisado" : "observação encerrada");
+        } finally {
+            observacao.interrupt();
+            System.setOut(console);
+            try (Stream<Path> arquivos = Files.walk(raiz)) {
+                arquivos.sorted(Comparator.reverseOrder()).forEach(arquivo -> arquivo.toFile().delete());
+            }
+        }
+    }
+
+    private static boolean aguardarSaida(ByteArrayOutputStream bytes, String trecho) {
+        long limite = System.nanoTime() + ESPERA_OBSERVADOR_MS * 1_000_000L;
+        while (System.nanoTime() < limite) {
+            if (new String(bytes.toByteArray(), StandardCharsets.UTF_8).contains(trecho)) {
+                return true;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private void verificar(String descricao, String esperado, String obtido) {
+        verificacoes++;
+        if (esperado.equals(obtido)) {
+            return;
+        }
+        String[] linhasEsperadas = esperado.split("\n", -1);
+        String[] linhasObtidas = obtido.split("\n", -1);
+        int linha = 0;
+        while (linha < linhasEsperadas.length && linha < linhasObtidas.length
+                && linhasEsperadas[linha].equals(linhasObtidas[linha])) {
+            linha++;
+        }
+        falhas.add("FALHA " + descricao + ", linha " + (linha + 1) + " da saída\n  esperado: "
+                + (linha < linhasEsperadas.length ? linhasEsperadas[linha] : "(fim)") + "\n  obtido:   "
+                + (linha < linhasObtidas.length ? linhasObtidas[linha] : "(fim)"));
+    }
+
+    private static String formatar(AnalisadorLexico analisador) {
+        return formatar(analisador.getTokens(), analisador.getErros(), analisador.getTabelaSimbolos().getSimbolos());
+    }
+
+    /**
+     * Saída comparada: tokens e erros na ordem da análise e os símbolos em ordem alfabética,
+     * pois a implementação original os guardava em um HashMap
+     */
+    static String formatar(List<Token> tokens, List<String> erros, Collection<Simbolo> simbolos) {
+        StringBuilder saida = new StringBuilder();
+        saida.append("== Tokens\n");
+        for (Token token : tokens) {
+            saida.append(token).append('\n');
+        }
+        saida.append("== Erros\n");
+        for (String erro : erros) {
+            saida.append(erro).append('\n');
+        }
+        saida.append("== Símbolos\n");
+        List<String> ordenados = new ArrayList<>();
+        for (Simbolo simbolo : simbolos) {
+            ordenados.add(simbolo.toString());
+        }
+        Collections.sort(ordenados);
+        for (String simbolo : ordenados) {
+            saida.append(simbolo).append('\n');
+        }
+        return saida.toString();
+    }
+}
@@ -0,0 +1,7 @@
+program p;
+var x: integer;
+begin
+  x := 1 @ 2;
+  x = #3;
+  if x = $4 then x := 5 ! 6
+end.
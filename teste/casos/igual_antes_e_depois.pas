@@ -0,0 +1,8 @@
+program p;
+var a, b, c, d: integer;
+begin
+  a = 1;
+  b = 2;
+  if b = 2 then c = 3;
+  d = 4
+end.
@@ -0,0 +1,7 @@
+program p;
+var x, y, z: integer;
+begin
+  if x = 1 then y := 2;
+  z = 3;
+  if y >= z then x := z
+end.
@@ -0,0 +1,8 @@
+program p;
+var a, b: integer;
+begin
+  a := 1;
+  then
+  a = b;
+  b = a
+end.
@@ -0,0 +1,7 @@
+program p;
+var x, y: integer;
+begin
+  x = 1;
+  y = x + 2;
+  x := y
+end.
@@ -0,0 +1,6 @@
+PROGRAM P;
+VAR A: INTEGER;
+BEGIN
+  A = 1;
+  If A = 1 THEN A := 2
+END.
@@ -0,0 +1,11 @@
+program p;
+var ifx, thenx, s: char;
+begin
+  s := 'if a = b then';
+  ifx = 1;
+  thenx = 2;
+  writeln('=');
+  if ifx <= thenx then s := 'x';
+  if ifx <> thenx then write(s);
+  IF s = 'y' Then writeln(s)
+end.
@@ -0,0 +1,6 @@
+progra p;
+var x: intege;
+begi
+  x := 1;
+  y = x
+end.
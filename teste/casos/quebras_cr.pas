@@ -0,0 +1 @@
+program p;var x: integer;begin  x = 1;  if x = 1 then    x := 2end.
\ No newline at end of file
@@ -0,0 +1,7 @@
+program p;
+var x: integer;
+begin
+  x = 1;
+  if x = 1 then
+    x := 2
+end.
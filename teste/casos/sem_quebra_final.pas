@@ -0,0 +1 @@
+begin x = 1 end
\ No newline at end of file
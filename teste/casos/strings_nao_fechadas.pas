@@ -0,0 +1,6 @@
+program p;
+var s: char;
+begin
+  s := 'aberta;
+  s = 'it''s';
+  if s = 'ok' then s := 'fim